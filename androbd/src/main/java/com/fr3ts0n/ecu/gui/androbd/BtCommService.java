@@ -69,6 +69,7 @@ public class BtCommService extends CommService
 		// set up protocol handlers
 		elm.addTelegramWriter(ser);
 		ser.setMessageHandler(elm);
+		ser.setMetrics(elm.getMetrics());
 	}
 
 	/**
@@ -183,6 +184,7 @@ public class BtCommService extends CommService
 	{
 		log.log(Level.FINE, "stop");
 		elm.removeTelegramWriter(ser);
+		ser.close();
 
 		if (mBtConnectThread != null)
 		{
@@ -215,6 +215,11 @@ public class ChartActivity extends Activity
 			switch (msg.what)
 			{
 				case MainActivity.MESSAGE_UPDATE_VIEW:
+					/* update chart data from recorded samples */
+					for (XYSeries series : sensorData.getSeries())
+					{
+						((ChartSeries) series).update();
+					}
 					/* update chart */
 					chartView.invalidate();
 					break;
@@ -334,7 +339,7 @@ public class ChartActivity extends Activity
 		long startTime = System.currentTimeMillis();
 		int i = 0;
 		EcuDataPv currPv;
-		XYSeries currSeries;
+		ChartSeries currSeries;
 
 		pidNumbers.clear();
 
@@ -352,12 +357,14 @@ public class ChartActivity extends Activity
 			int pidColor = ColorAdapter.getItemColor(currPv);
 
 			// get contained data series
-			currSeries = (XYSeries) currPv.get(ObdItemAdapter.FID_DATA_SERIES);
-			if (currSeries == null) continue;
+			Object series = currPv.get(ObdItemAdapter.FID_DATA_SERIES);
+			if (!(series instanceof ChartSeries)) continue;
+			currSeries = (ChartSeries) series;
 			// add initial measurement to series data to ensure
 			// at least one measurement is available
-			if (currSeries.getItemCount() < 1)
-				currSeries.add(startTime, Float.parseFloat(currPv.get(EcuDataPv.FID_VALUE).toString()));
+			if (currSeries.getData().size() < 1)
+				currSeries.addSample(startTime, Float.parseFloat(currPv.get(EcuDataPv.FID_VALUE).toString()));
+			currSeries.update();
 
 			// set scale to display series
 			currSeries.setScaleNumber(i);
@@ -0,0 +1,152 @@
+/*
+ * (C) Copyright 2015 by fr3ts0n <erwin.scheuch-heilig@gmx.at>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston,
+ * MA 02111-1307 USA
+ */
+
+package com.fr3ts0n.ecu.gui.androbd;
+
+import com.fr3ts0n.pvs.TimeSeries;
+
+import org.achartengine.model.XYSeries;
+
+/**
+ * Chart data series of a single process variable
+ *
+ * Samples are recorded into a bounded {@link TimeSeries}. The chart view
+ * data of the XYSeries is only updated from the recorded samples on
+ * {@link #update()}, so memory consumption is constant regardless of
+ * the session length. New samples are appended and dropped samples removed,
+ * the view is only re-built completely after decimation of the samples.
+ *
+ * @author erwin
+ */
+class ChartSeries extends XYSeries
+{
+	private static final long serialVersionUID = -3317262508460421796L;
+
+	/** recorded samples */
+	private final TimeSeries data;
+	/** modification count of samples at last view update */
+	private transient long viewModCount;
+	/** layout count of samples at last view update */
+	private transient long viewLayout;
+	/** sequence numbers of first and behind last sample in view */
+	private transient long viewFirst;
+	private transient long viewEnd;
+	/** snapshot buffers for view update */
+	private transient long[] viewTimes;
+	private transient double[] viewValues;
+
+	/**
+	 * Create chart series with default capacity
+	 *
+	 * @param title series title
+	 */
+	ChartSeries(String title)
+	{
+		this(title, TimeSeries.DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Create chart series with specified capacity
+	 *
+	 * @param title    series title
+	 * @param capacity max. number of samples
+	 */
+	ChartSeries(String title, int capacity)
+	{
+		super(title);
+		data = new TimeSeries(capacity);
+	}
+
+	/**
+	 * @return recorded samples
+	 */
+	TimeSeries getData()
+	{
+		return data;
+	}
+
+	/**
+	 * Record new sample
+	 *
+	 * @param time  time stamp [ms]
+	 * @param value sample value
+	 */
+	void addSample(long time, double value)
+	{
+		data.add(time, value);
+	}
+
+	/**
+	 * Update chart view data from recorded samples (if changed)
+	 */
+	synchronized void update()
+	{
+		boolean rebuild;
+		int numDropped = 0;
+		int numAdded;
+		// take consistent snapshot, since samples are recorded concurrently
+		synchronized (data)
+		{
+			long modCount = data.getModCount();
+			rebuild = (viewTimes == null);
+			if (rebuild)
+			{
+				// first update (or de-serialized): allocate snapshot buffers
+				viewTimes = new long[data.getCapacity()];
+				viewValues = new double[data.getCapacity()];
+			}
+			else if (modCount == viewModCount)
+			{
+				return;
+			}
+			viewModCount = modCount;
+
+			long first = data.getFirstSequence();
+			rebuild |= data.getLayoutCount() != viewLayout || first > viewEnd;
+			if (rebuild)
+			{
+				numAdded = data.copyTo(viewTimes, viewValues);
+			}
+			else
+			{
+				numDropped = (int) (first - viewFirst);
+				numAdded = data.copySince(viewEnd, viewTimes, viewValues);
+			}
+			viewLayout = data.getLayoutCount();
+			viewFirst = first;
+			viewEnd = first + data.size();
+		}
+
+		if (rebuild)
+		{
+			clearSeriesValues();
+		}
+		else
+		{
+			// remove samples which were dropped from recorded data
+			for (int i = 0; i < numDropped; i++)
+			{
+				remove(0);
+			}
+		}
+		for (int i = 0; i < numAdded; i++)
+		{
+			add(viewTimes[i], viewValues[i]);
+		}
+	}
+}
@@ -23,8 +23,6 @@ import android.app.Activity;
 import android.content.Intent;
 import android.content.res.Configuration;
 import android.os.Bundle;
-import android.os.Handler;
-import android.os.Message;
 import android.os.PowerManager;
 import android.util.DisplayMetrics;
 import android.view.View;
@@ -38,7 +36,6 @@ import com.fr3ts0n.ecu.EcuDataItems;
 import com.fr3ts0n.ecu.EcuDataPv;
 import com.fr3ts0n.ecu.prot.obd.ObdProt;
 import com.fr3ts0n.pvs.PvChangeEvent;
-import com.fr3ts0n.pvs.PvChangeListener;
 import com.github.anastr.speedviewlib.Gauge;
 
 import java.util.HashSet;
@@ -49,7 +46,7 @@ import java.util.Objects;
  * Display selected data items as dashboard
  */
 public class DashBoardActivity extends Activity
-		implements PvChangeListener, AdapterView.OnItemLongClickListener
+		implements AdapterView.OnItemLongClickListener
 {
 	/**
 	 * For passing the index number of the <code>Sensor</code> in its
@@ -76,8 +73,6 @@ public class DashBoardActivity extends Activity
 	/** Map to uniquely collect PID numbers */
 	private final HashSet<Integer> pidNumbers = new HashSet<>();
 
-	protected static final int MESSAGE_UPDATE_VIEW = 1;
-
 	private static ListAdapter mAdapter = null;
 	/** display metrics */
 	private static final DisplayMetrics metrics = new DisplayMetrics();
@@ -108,33 +103,8 @@ public class DashBoardActivity extends Activity
 		mAdapter = Adapter;
 	}
 
-	/**
-	 * Handle message requests
-	 */
-	protected transient final Handler mHandler = new Handler()
-	{
-		@Override
-		public void handleMessage(Message msg)
-		{
-
-			switch (msg.what)
-			{
-				case MESSAGE_UPDATE_VIEW:
-					EcuDataPv currPv = (EcuDataPv)msg.obj;
-					View itemView = grid.getChildAt(msg.arg1);
-					if(itemView != null)
-					{
-						Gauge gauge = itemView.findViewById(R.id.chart);
-						if(gauge != null)
-						{
-							Number val = (Number)currPv.get(EcuDataPv.FID_VALUE);
-							gauge.speedTo(val.floatValue());
-						}
-					}
-					break;
-			}
-		}
-	};
+	/** frame synchronized update of changed gauges */
+	private transient UiUpdateBridge updateBridge;
 
 	/**
 	 * Update scaling of dashboard items
@@ -174,7 +144,7 @@ public class DashBoardActivity extends Activity
 			{
 				pidNumbers.add(currPv.getAsInt(EcuDataPv.FID_PID));
 				adapter.add(currPv);
-				currPv.addPvChangeListener(this, PvChangeEvent.PV_MODIFIED);
+				currPv.addPvChangeListener(updateBridge, PvChangeEvent.PV_MODIFIED);
 			}
 		}
 		grid.setAdapter(adapter);
@@ -208,6 +178,20 @@ public class DashBoardActivity extends Activity
 		setContentView(resId);
 		grid = findViewById(android.R.id.list);
 		grid.setOnItemLongClickListener(this);
+		updateBridge = new UiUpdateBridge(grid)
+		{
+			@Override
+			protected void updateRow(ListAdapter adapter, int position, View rowView)
+			{
+				// just move gauge to new value
+				Gauge gauge = rowView.findViewById(R.id.chart);
+				EcuDataPv currPv = (EcuDataPv) adapter.getItem(position);
+				if (gauge != null && currPv.get(EcuDataPv.FID_VALUE) instanceof Number)
+				{
+					gauge.speedTo(((Number) currPv.get(EcuDataPv.FID_VALUE)).floatValue());
+				}
+			}
+		};
 
 		// create data adapter
 		adapter = new ObdGaugeAdapter( this,
@@ -240,6 +224,7 @@ public class DashBoardActivity extends Activity
 		super.onResume();
 		// set scaling of dashboard items
 		updateDashboardScaling();
+		updateBridge.start();
 		// limit selected PIDs to selection
 		MainActivity.setFixedPids(pidNumbers);
 	}
@@ -257,20 +242,14 @@ public class DashBoardActivity extends Activity
 	@Override
 	protected void onPause()
 	{
-		adapter.clear();
-		super.onPause();
-	}
-
-	@Override
-	public void pvChanged(PvChangeEvent event)
-	{
-		if(event.getKey().equals(EcuDataPv.FIELDS[EcuDataPv.FID_VALUE])
-				&& event.getValue() instanceof Number)
+		updateBridge.stop();
+		// stop listening to data items
+		for (int i = 0; i < adapter.getCount(); i++)
 		{
-			int pos = adapter.getPosition((EcuDataPv)event.getSource());
-			Message msg = mHandler.obtainMessage(MESSAGE_UPDATE_VIEW, pos,0, event.getSource());
-			mHandler.sendMessage(msg);
+			adapter.getItem(i).removePvChangeListener(updateBridge);
 		}
+		adapter.clear();
+		super.onPause();
 	}
 
 	@Override
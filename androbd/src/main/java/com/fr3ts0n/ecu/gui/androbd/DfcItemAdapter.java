@@ -50,6 +50,12 @@ public class DfcItemAdapter extends ObdItemAdapter
 		return pvs.values();
 	}
 
+	@Override
+	protected int getItemsPerRow()
+	{
+		return 1;
+	}
+
 	/* (non-Javadoc)
 	 * @see com.fr3ts0n.ecu.gui.androbd.ObdItemAdapter#getView(int, android.view.View, android.view.ViewGroup)
 	 */
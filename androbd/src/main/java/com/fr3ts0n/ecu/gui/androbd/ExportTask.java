@@ -18,7 +18,6 @@
 
 package com.fr3ts0n.ecu.gui.androbd;
 
-import android.annotation.SuppressLint;
 import android.app.Activity;
 import android.content.Intent;
 import android.content.SharedPreferences;
@@ -27,16 +26,15 @@ import android.os.AsyncTask;
 import android.preference.PreferenceManager;
 import android.widget.Toast;
 
+import com.fr3ts0n.pvs.TimeSeries;
+import com.fr3ts0n.pvs.io.SeriesExporter;
+
 import org.achartengine.model.XYMultipleSeriesDataset;
 import org.achartengine.model.XYSeries;
 
 import java.io.File;
-import java.io.FileWriter;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
-import java.util.Date;
-import java.util.SortedMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -49,13 +47,12 @@ class ExportTask extends AsyncTask<XYMultipleSeriesDataset, Integer, String>
 {
 
 	private final Activity activity;
-	@SuppressLint("SimpleDateFormat")
-	private static final DateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
 
 	private static final String OPT_FIELD_DELIM		= "csv_field_delimiter";
 	private static final String OPT_RECORD_DELIM	= "csv_record_delimiter";
 	private static final String OPT_TEXT_QUOTED 	= "csv_text_quoted";
 	private static final String OPT_SEND_EXPORT 	= "send_after_export";
+	private static final String OPT_COLUMNAR		= "export_columnar";
 
 	private static String CSV_FIELD_DELIMITER = ",";
 	private static String CSV_LINE_DELIMITER = "\n";
@@ -69,90 +66,83 @@ class ExportTask extends AsyncTask<XYMultipleSeriesDataset, Integer, String>
 	// file name to be saved
     private final String path;
 	private final String fileName;
+	// export in compact columnar format
+	private final boolean columnar;
 
 	public ExportTask(Activity activity)
 	{
 		this.activity = activity;
-        path = FileHelper.getPath(activity).concat(File.separator+"csv");
-		fileName = path.concat(File.separator+FileHelper.getFileName()
-                       .concat(".csv"));
 
 		// get preferences
 		prefs = PreferenceManager.getDefaultSharedPreferences(activity);
+		columnar = prefs.getBoolean(OPT_COLUMNAR, false);
+
+        path = FileHelper.getPath(activity).concat(File.separator+"csv");
+		fileName = path.concat(File.separator+FileHelper.getFileName()
+                       .concat(columnar ? ".obdc" : ".csv"));
+
 		CSV_FIELD_DELIMITER = prefs.getString(OPT_FIELD_DELIM,",");
 		CSV_LINE_DELIMITER  = prefs.getString(OPT_RECORD_DELIM,"\n");
 		CSV_TEXT_QUOTED     = prefs.getBoolean(OPT_TEXT_QUOTED,false);
 	}
 
-	private static String quoteStringIfNeeded(String string)
-	{
-		return String.format( CSV_TEXT_QUOTED ? "\"%s\"" : "%s", string);
-	}
-
 	@Override
 	protected String doInBackground(XYMultipleSeriesDataset... params)
 	{
-		double currX;
-		double currY;
-		int maxCounts = 0;
-		int highestResChannel = 0;	/* channel id with highest x-resolution */
-
 		XYSeries series[] = params[0].getSeries();
 
-		// find channel with highest x-resolution
+		// take consistent snapshot of recorded samples
+		String[] names = new String[series.length];
+		long[][] times = new long[series.length][];
+		double[][] values = new double[series.length][];
+		int[] counts = new int[series.length];
 		for (int i = 0; i < series.length; i++)
 		{
-			if (maxCounts < series[i].getItemCount())
+			TimeSeries data = ((ChartSeries) series[i]).getData();
+			names[i] = series[i].getTitle();
+			times[i] = new long[data.getCapacity()];
+			values[i] = new double[data.getCapacity()];
+			counts[i] = data.copyTo(times[i], values[i]);
+		}
+
+		SeriesExporter exporter = new SeriesExporter(names, times, values, counts);
+		exporter.setProgressListener(new SeriesExporter.ProgressListener()
+		{
+			@Override
+			public void onProgress(long done, long total)
 			{
-				maxCounts = series[i].getItemCount();
-				highestResChannel = i;
+				publishProgress((int) (10000 * done / Math.max(1, total)));
 			}
-		}
-		
+		});
+
 		//noinspection ResultOfMethodCallIgnored
 		new File(path).mkdirs();
-		FileWriter writer;
 		try
 		{
-			writer = new FileWriter(new File(fileName));
-
-			// create header line
-			writer.append(quoteStringIfNeeded(activity.getString(R.string.time)));
-			writer.append(CSV_FIELD_DELIMITER);
-			for (XYSeries sery : series)
-			{
-				writer.append(quoteStringIfNeeded(sery.getTitle()));
-				writer.append(CSV_FIELD_DELIMITER);
-			}
-			writer.append(CSV_LINE_DELIMITER);
-
-			// generate data
-			for (int i = 0; i < maxCounts; i++)
+			FileOutputStream out = new FileOutputStream(new File(fileName));
+			try
 			{
-				currX = series[highestResChannel].getX(i);
-				writer.append(dateFormat.format(new Date((long)currX)));
-				writer.append(CSV_FIELD_DELIMITER);
-				for (XYSeries sery : series)
+				if (columnar)
+				{
+					exporter.writeColumnar(out.getChannel());
+				}
+				else
 				{
-					try
-					{
-						SortedMap<Double, Double> map = sery.getRange(currX, currX, true);
-						currY = map.get(map.firstKey());
-						writer.append(String.valueOf(currY));
-						writer.append(CSV_FIELD_DELIMITER);
-					} catch (Exception ex)
-					{
-						// do nothing, just catch the error
-					}
+					exporter.writeCsv(out.getChannel(),
+					                  activity.getString(R.string.time),
+					                  CSV_FIELD_DELIMITER,
+					                  CSV_LINE_DELIMITER,
+					                  CSV_TEXT_QUOTED);
 				}
-				writer.append(CSV_LINE_DELIMITER);
-				publishProgress(10000 * i / maxCounts);
 			}
-			writer.close();
+			finally
+			{
+				out.close();
+			}
 		}
 		catch (IOException e)
 		{
-			e.printStackTrace();
+			log.log(Level.SEVERE, fileName, e);
 		}
 		return fileName;
 	}
@@ -25,18 +25,27 @@ import android.net.Uri;
 import android.os.Environment;
 import android.os.Handler;
 import android.os.Looper;
+import android.os.ParcelFileDescriptor;
 import android.widget.Toast;
 
+import com.fr3ts0n.ecu.EcuDataItem;
+import com.fr3ts0n.ecu.EcuDataItems;
+import com.fr3ts0n.ecu.EcuDataPv;
 import com.fr3ts0n.ecu.prot.obd.ElmProt;
 import com.fr3ts0n.ecu.prot.obd.ObdProt;
+import com.fr3ts0n.pvs.PvChangeEvent;
 import com.fr3ts0n.pvs.PvList;
+import com.fr3ts0n.pvs.io.SessionRecorder;
+import com.fr3ts0n.pvs.io.SessionReplay;
 
 import java.io.File;
 import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.text.SimpleDateFormat;
+import java.util.HashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -51,6 +60,10 @@ class FileHelper
 	@SuppressLint("SimpleDateFormat")
 	private static final SimpleDateFormat dateFmt = new SimpleDateFormat("yyyy.MM.dd-HH.mm.ss");
 	private static ProgressDialog progress;
+	/** continuous recorder of measured data */
+	private static SessionRecorder recorder;
+	/** replay of loaded session file */
+	private static SessionReplay replay;
 
 	private static final Logger log = Logger.getLogger(FileHelper.class.getName());
 	
@@ -93,11 +106,70 @@ class FileHelper
 	}
 
 
+	/**
+	 * Start continuous recording of measured data into a new session file
+	 * - recording runs until stopRecording is called
+	 */
+	void startRecording()
+	{
+		if (recorder != null)
+		{
+			return;
+		}
+		String mPath = getPath(context);
+		//noinspection ResultOfMethodCallIgnored
+		new File(mPath).mkdirs();
+		File file = new File(mPath + File.separator + getFileName() + ".obdr");
+		try
+		{
+			recorder = new SessionRecorder(file,
+			                               EcuDataPv.FIELDS[EcuDataPv.FID_VALUE],
+			                               EcuDataPv.FID_MNEMONIC);
+			ObdProt.PidPvs.addPvChangeListener(recorder, PvChangeEvent.PV_MODIFIED);
+			MainActivity.mPluginPvs.addPvChangeListener(recorder, PvChangeEvent.PV_MODIFIED);
+			log.info("Recording started: " + file);
+		}
+		catch (IOException e)
+		{
+			Toast.makeText(context, e.toString(), Toast.LENGTH_SHORT).show();
+			log.log(Level.SEVERE, file.toString(), e);
+		}
+	}
+
+	/**
+	 * Stop continuous recording of measured data
+	 */
+	void stopRecording()
+	{
+		if (recorder == null)
+		{
+			return;
+		}
+		ObdProt.PidPvs.removePvChangeListener(recorder);
+		MainActivity.mPluginPvs.removePvChangeListener(recorder);
+		recorder.close();
+		recorder = null;
+	}
+
 	/**
 	 * Save all data in a independent thread
+	 * - if data is recorded continuously, the recording is just flushed
+	 *   without interrupting data updates
 	 */
 	void saveDataThreaded()
 	{
+		if (recorder != null)
+		{
+			recorder.flush();
+			@SuppressLint("DefaultLocale")
+			String msg = String.format("%s %d Bytes to %s",
+				context.getString(R.string.saved),
+				recorder.getBytesWritten(),
+				recorder.getFile().getName());
+			Toast.makeText(context, msg, Toast.LENGTH_SHORT).show();
+			return;
+		}
+
 		// generate file name
 		final String mPath = getPath(context);
 		final String mFileName = mPath
@@ -211,8 +283,13 @@ class FileHelper
 		String msg;
 		InputStream inStr;
 
+		stopReplay();
 		try
 		{
+			if (isSessionFile(uri))
+			{
+				return loadSession(uri);
+			}
 			inStr = context.getContentResolver().openInputStream(uri);
 			numBytesLoaded = inStr != null ? inStr.available() : 0;
 			msg = context.getString(R.string.loaded).concat(String.format(" %d Bytes", numBytesLoaded));
@@ -239,4 +316,109 @@ class FileHelper
 		}
 		return numBytesLoaded;
 	}
+
+	/**
+	 * Check if file contains a recorded session (by file magic)
+	 *
+	 * @param uri URI of file to be checked
+	 * @return true if file is a recorded session
+	 * @throws IOException if file can't be read
+	 */
+	private boolean isSessionFile(final Uri uri) throws IOException
+	{
+		InputStream in = context.getContentResolver().openInputStream(uri);
+		if (in == null)
+		{
+			return false;
+		}
+		try
+		{
+			return SessionReplay.isSession(in);
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+
+	/**
+	 * Load recorded session for replay
+	 * - the session file is memory mapped, data is replayed into
+	 *   the PVs of the recorded data items
+	 *
+	 * @param uri URI of session file
+	 * @return number of recorded samples
+	 * @throws IOException if session can't be read
+	 */
+	@SuppressLint("DefaultLocale")
+	private int loadSession(final Uri uri) throws IOException
+	{
+		ParcelFileDescriptor fd = context.getContentResolver().openFileDescriptor(uri, "r");
+		if (fd == null)
+		{
+			throw new IOException(uri.toString());
+		}
+		replay = new SessionReplay(new ParcelFileDescriptor.AutoCloseInputStream(fd).getChannel());
+
+		// set up PVs of recorded data items
+		HashMap<String, EcuDataPv> pvs = new HashMap<String, EcuDataPv>();
+		HashMap<String, EcuDataPv> byName = new HashMap<String, EcuDataPv>();
+		for (String name : replay.getNames())
+		{
+			EcuDataItem item = name != null ? EcuDataItems.byMnemonic.get(name) : null;
+			if (item != null)
+			{
+				pvs.put(item.toString(), item.pv);
+				byName.put(name, item.pv);
+			}
+		}
+		PvList pidPvs = new PvList();
+		pidPvs.putAll(pvs, PvChangeEvent.PV_ADDED, false);
+		ObdProt.PidPvs = pidPvs;
+		replay.bind(byName, EcuDataPv.FIELDS[EcuDataPv.FID_VALUE]);
+		elm.setService(ObdProt.OBD_SVC_DATA, false);
+
+		String msg = context.getString(R.string.loaded)
+			.concat(String.format(" %d samples", replay.getSampleCount()));
+		log.info(msg);
+		Toast.makeText(context, msg, Toast.LENGTH_SHORT).show();
+		return (int) replay.getSampleCount();
+	}
+
+	/**
+	 * Start replay of a loaded session
+	 * - to be called after data listeners are set up
+	 */
+	void startReplay()
+	{
+		if (replay == null || replay.isRunning())
+		{
+			return;
+		}
+		// replayed data shall update items and charts
+		ObdItemAdapter.allowDataUpdates = true;
+		Thread replayTask = new Thread(replay, "SessionReplay");
+		replayTask.setDaemon(true);
+		replayTask.start();
+	}
+
+	/**
+	 * Stop replay of a loaded session and release session file
+	 */
+	void stopReplay()
+	{
+		if (replay == null)
+		{
+			return;
+		}
+		try
+		{
+			replay.close();
+		}
+		catch (IOException e)
+		{
+			log.log(Level.WARNING, "replay", e);
+		}
+		replay = null;
+	}
 }
@@ -64,10 +64,13 @@ import com.fr3ts0n.ecu.EcuDataItems;
 import com.fr3ts0n.ecu.EcuDataPv;
 import com.fr3ts0n.ecu.prot.obd.ElmProt;
 import com.fr3ts0n.ecu.prot.obd.ObdProt;
+import com.fr3ts0n.ecu.prot.obd.PidScheduler;
+import com.fr3ts0n.prot.PipelineMetrics;
 import com.fr3ts0n.pvs.ProcessVar;
 import com.fr3ts0n.pvs.PvChangeEvent;
 import com.fr3ts0n.pvs.PvChangeListener;
 import com.fr3ts0n.pvs.PvList;
+import com.fr3ts0n.pvs.TimeSeries;
 
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
@@ -79,8 +82,6 @@ import java.util.Date;
 import java.util.HashSet;
 import java.util.Objects;
 import java.util.Set;
-import java.util.Timer;
-import java.util.TimerTask;
 import java.util.TreeSet;
 import java.util.logging.FileHandler;
 import java.util.logging.Level;
@@ -132,9 +133,19 @@ public class MainActivity extends PluginManager
     private static final String NIGHT_MODE = "night_mode";
     private static final String ELM_ADAPTIVE_TIMING = "adaptive_timing_mode";
     private static final String ELM_RESET_ON_NRC = "elm_reset_on_nrc";
+    private static final String ELM_PID_BATCHING = "elm_pid_batching";
+    private static final String PID_SCHEDULING = "pid_scheduling_policy";
+    private static final String PLUGIN_DATA_ALL_SAMPLES = "plugin_data_all_samples";
+    private static final String RECORD_SESSION = "record_session";
+    private static final String TIMING_VIN = "adaptive_timing_vin";
+    private static final String TIMING_LEARNED = "adaptive_timing_learned.";
     private static final String PREF_USE_LAST = "USE_LAST_SETTINGS";
     private static final String PREF_OVERLAY = "toolbar_overlay";
     private static final String PREF_DATA_DISABLE_MAX = "data_disable_max";
+    private static final String PREF_CHART_CAPACITY = "chart_capacity";
+    private static final String PREF_CHART_WINDOW = "chart_window";
+    /** max. number of samples per chart series */
+    private static final int MAX_CHART_CAPACITY = 0x10000;
     private static final int MESSAGE_FILE_WRITTEN = 3;
     private static final int MESSAGE_DATA_ITEMS_CHANGED = 6;
     private static final int MESSAGE_OBD_STATE_CHANGED = 8;
@@ -156,10 +167,6 @@ public class MainActivity extends PluginManager
      * app exit parameters
      */
     private static final int EXIT_TIMEOUT = 2500;
-    /**
-     * time between display updates to represent data changes
-     */
-    private static final int DISPLAY_UPDATE_TIME = 250;
     private static final String LOG_MASTER = "log_master";
     private static final String KEEP_SCREEN_ON = "keep_screen_on";
     private static final String ELM_CUSTOM_INIT_CMDS = "elm_custom_init_cmds";
@@ -169,9 +176,9 @@ public class MainActivity extends PluginManager
     private static final Logger rootLogger = Logger.getLogger("");
     private static final Logger log = Logger.getLogger(TAG);
     /**
-     * Timer for display updates
+     * Frame synchronized display updates of changed data items
      */
-    private static Timer updateTimer;
+    private UiUpdateBridge updateBridge;
     /**
      * empty string set as default parameter
      */
@@ -282,6 +289,10 @@ public class MainActivity extends PluginManager
      * current operating mode
      */
     private MODE mode = MODE.OFFLINE;
+    /**
+     * VIN seen on current connection, null = vehicle not identified yet
+     */
+    private String timingVin = null;
     /**
      * Handle message requests
      */
@@ -339,6 +350,8 @@ public class MainActivity extends PluginManager
                             checkToRestoreLastDataSelection();
                             checkToRestoreLastViewMode();
                         }
+                        // start replay if a recorded session was loaded
+                        fileHelper.startReplay();
                         break;
 
                     case MESSAGE_DEVICE_NAME:
@@ -648,25 +661,19 @@ public class MainActivity extends PluginManager
     {
         super.onPause();
 
-        // stop data display update timer
-        updateTimer.cancel();
+        // stop data display updates
+        updateBridge.stop();
     }
 
     @Override protected void onResume()
     {
-        // set up data display update timer
-        updateTimer = new Timer();
-        final TimerTask updateTask = new TimerTask()
+        // set up data display updates on data changes
+        if (updateBridge == null)
         {
-            @Override
-            public void run()
-            {
-                /* forward message to update the view */
-                Message msg = mHandler.obtainMessage(MainActivity.MESSAGE_UPDATE_VIEW);
-                mHandler.sendMessage(msg);
-            }
-        };
-        updateTimer.schedule(updateTask, 0, DISPLAY_UPDATE_TIME);
+            updateBridge = new UiUpdateBridge(getListView());
+            setDataListeners();
+        }
+        updateBridge.start();
 
         super.onResume();
     }
@@ -696,6 +703,14 @@ public class MainActivity extends PluginManager
 
         /* don't listen to ELM data changes any more */
         removeDataListeners();
+        // finish recording of measured data
+        fileHelper.stopRecording();
+        fileHelper.stopReplay();
+        // keep timing learned with current vehicle
+        if (mode == MODE.ONLINE)
+        {
+            saveLearnedTiming();
+        }
         // don't listen to ELM property changes any more
         CommService.elm.removePropertyChangeListener(this);
 
@@ -836,6 +851,10 @@ public class MainActivity extends PluginManager
                 setManagerView();
                 return true;
 
+            case R.id.pipeline_metrics:
+                showPipelineMetrics();
+                return true;
+
             case R.id.save:
                 // save recorded data (threaded)
                 fileHelper.saveDataThreaded();
@@ -878,6 +897,63 @@ public class MainActivity extends PluginManager
         return super.onOptionsItemSelected(item);
     }
 
+    /**
+     * Load adaptive timing values learned with a vehicle
+     * - values of a previously used vehicle are replaced
+     *
+     * @param vin vehicle identification number
+     */
+    private void loadLearnedTiming(String vin)
+    {
+        // values learned in this session are stored for this vehicle
+        timingVin = vin;
+        prefs.edit().putString(TIMING_VIN, vin).apply();
+        CommService.elm.mAdaptiveTiming.setLearnedTimeouts(
+                prefs.getString(TIMING_LEARNED + vin, null));
+    }
+
+    /**
+     * Save adaptive timing values learned with current vehicle
+     * - nothing is saved as long as the vehicle was not identified
+     *   on the current connection
+     */
+    private void saveLearnedTiming()
+    {
+        if (timingVin == null || timingVin.length() == 0)
+        {
+            return;
+        }
+        String learned = CommService.elm.mAdaptiveTiming.getLearnedTimeouts();
+        if (learned.length() > 0)
+        {
+            prefs.edit()
+                 .putString(TIMING_LEARNED + timingVin, learned)
+                 .apply();
+        }
+    }
+
+    /**
+     * Show latency and throughput metrics of communication pipeline
+     */
+    private void showPipelineMetrics()
+    {
+        final PipelineMetrics metrics = CommService.elm.getMetrics();
+        log.info(metrics.toString());
+        new AlertDialog.Builder(this)
+                .setTitle(R.string.pipeline_metrics)
+                .setMessage(metrics.toString())
+                .setPositiveButton(android.R.string.ok, null)
+                .setNeutralButton(R.string.reset, new DialogInterface.OnClickListener()
+                {
+                    @Override
+                    public void onClick(DialogInterface dialog, int which)
+                    {
+                        metrics.reset();
+                    }
+                })
+                .show();
+    }
+
     @Override
     public void onItemCheckedStateChanged(ActionMode mode, int position, long id, boolean checked)
     {
@@ -1063,6 +1139,33 @@ public class MainActivity extends PluginManager
             CommService.elm.setResetOnNrc(prefs.getBoolean(ELM_RESET_ON_NRC, false));
         }
 
+        // request multiple PIDs within one service 01 request
+        if (key == null || ELM_PID_BATCHING.equals(key))
+        {
+            CommService.elm.setPidBatching(prefs.getBoolean(ELM_PID_BATCHING, false));
+        }
+
+        // select order of PID data requests
+        if (key == null || PID_SCHEDULING.equals(key))
+        {
+            CommService.elm.setSchedulingPolicy(
+                    PidScheduler.Policies.valueOf(
+                            prefs.getString(PID_SCHEDULING,
+                                    PidScheduler.Policies.DEADLINE.toString())));
+        }
+
+        // forward every sample or only latest value of each item to plugins
+        if (key == null || PLUGIN_DATA_ALL_SAMPLES.equals(key))
+        {
+            PluginDataChannel.instance.setCoalescing(!prefs.getBoolean(PLUGIN_DATA_ALL_SAMPLES, false));
+        }
+
+        // continuous recording of measured data
+        if (key != null && RECORD_SESSION.equals(key))
+        {
+            updateRecording();
+        }
+
         // set custom ELM init commands
         if (key == null || ELM_CUSTOM_INIT_CMDS.equals(key))
         {
@@ -1123,6 +1226,17 @@ public class MainActivity extends PluginManager
             EcuDataItem.MAX_ERROR_COUNT = getPrefsInt(PREF_DATA_DISABLE_MAX, 3);
         }
 
+        // chart data limits (used for newly created data series)
+        if (key == null || PREF_CHART_CAPACITY.equals(key))
+        {
+            ObdItemAdapter.chartCapacity = Math.min(MAX_CHART_CAPACITY,
+                    getPrefsInt(PREF_CHART_CAPACITY, TimeSeries.DEFAULT_CAPACITY));
+        }
+        if (key == null || PREF_CHART_WINDOW.equals(key))
+        {
+            ObdItemAdapter.chartWindow_ms = Math.max(0, getPrefsInt(PREF_CHART_WINDOW, 0)) * 1000L;
+        }
+
         // Customized PID display color preference
         if (key != null)
         {
@@ -1620,6 +1734,15 @@ public class MainActivity extends PluginManager
                 PvChangeEvent.PV_ADDED
                         | PvChangeEvent.PV_CLEARED
         );
+
+        // changes of data items trigger display updates
+        if (updateBridge != null)
+        {
+            ObdProt.PidPvs.addPvChangeListener(updateBridge, PvChangeEvent.PV_MODIFIED);
+            ObdProt.VidPvs.addPvChangeListener(updateBridge, PvChangeEvent.PV_MODIFIED);
+            ObdProt.tCodes.addPvChangeListener(updateBridge, PvChangeEvent.PV_MODIFIED);
+            mPluginPvs.addPvChangeListener(updateBridge, PvChangeEvent.PV_MODIFIED);
+        }
     }
 
     /**
@@ -1632,6 +1755,13 @@ public class MainActivity extends PluginManager
         ObdProt.VidPvs.removePvChangeListener(this);
         ObdProt.tCodes.removePvChangeListener(this);
         mPluginPvs.removePvChangeListener(this);
+        if (updateBridge != null)
+        {
+            ObdProt.PidPvs.removePvChangeListener(updateBridge);
+            ObdProt.VidPvs.removePvChangeListener(updateBridge);
+            ObdProt.tCodes.removePvChangeListener(updateBridge);
+            mPluginPvs.removePvChangeListener(updateBridge);
+        }
     }
 
     /**
@@ -1656,10 +1786,21 @@ public class MainActivity extends PluginManager
             {
                 stopDemoService();
             }
+            // stop replay of previously loaded session
+            if (fileHelper != null)
+            {
+                fileHelper.stopReplay();
+            }
 
             // Disable data updates in FILE mode
             ObdItemAdapter.allowDataUpdates = (mode != MODE.FILE);
 
+            // keep timing learned with current vehicle
+            if (this.mode == MODE.ONLINE)
+            {
+                saveLearnedTiming();
+            }
+
             switch (mode)
             {
                 case OFFLINE:
@@ -1670,6 +1811,11 @@ public class MainActivity extends PluginManager
                     break;
 
                 case ONLINE:
+                    // start with timing learned with last vehicle,
+                    // but don't save before this vehicle is identified
+                    CommService.elm.mAdaptiveTiming.setLearnedTimeouts(
+                            prefs.getString(TIMING_LEARNED + prefs.getString(TIMING_VIN, ""), null));
+                    timingVin = null;
                     switch (CommService.medium)
                     {
                         case BLUETOOTH:
@@ -1724,6 +1870,28 @@ public class MainActivity extends PluginManager
             // set new mode
             this.mode = mode;
             setStatus(mode.toString());
+            updateRecording();
+        }
+    }
+
+    /**
+     * Start/stop continuous recording of measured data
+     * - data is recorded while live data is measured and recording is enabled
+     */
+    private void updateRecording()
+    {
+        if (fileHelper == null)
+        {
+            return;
+        }
+        if (obdService == ObdProt.OBD_SVC_DATA
+            && (mode == MODE.ONLINE || mode == MODE.DEMO)
+            && prefs.getBoolean(RECORD_SESSION, false))
+        {
+            fileHelper.startRecording();
+        } else
+        {
+            fileHelper.stopRecording();
         }
     }
 
@@ -2010,6 +2178,7 @@ public class MainActivity extends PluginManager
         }
         // set protocol service
         CommService.elm.setService(newObdService, (getMode() != MODE.FILE && getMode() != MODE.OFFLINE));
+        updateRecording();
         // show / hide freeze frame selector */
         Spinner ff_selector = findViewById(R.id.ff_selector);
         ff_selector.setOnItemSelectedListener(ff_selected);
@@ -2232,6 +2401,13 @@ public class MainActivity extends PluginManager
                         Message msg = mHandler.obtainMessage(MESSAGE_OBD_NRC);
                         msg.obj = evt;
                         mHandler.sendMessage(msg);
+                    } else
+                    {
+                        if (ObdProt.PROP_VIN.equals(evt.getPropertyName()))
+                        {
+                            // use timing learned with this vehicle
+                            loadLearnedTiming((String) evt.getNewValue());
+                        }
                     }
                 }
             }
@@ -2414,15 +2590,7 @@ public class MainActivity extends PluginManager
                     // fill field content
                     for (Plugin.CsvField fld : Plugin.CsvField.values())
                     {
-                        try
-                        {
-                            // if content is numeric, set numeric value
-                            Double value = Double.valueOf(fields[fld.ordinal()]);
-                            pv.put(csvFidMap[fld.ordinal()], value);
-                        } catch (Exception ex)
-                        {
-                            pv.put(csvFidMap[fld.ordinal()], fields[fld.ordinal()]);
-                        }
+                        pv.put(csvFidMap[fld.ordinal()], parsePluginValue(fields[fld.ordinal()]));
                     }
                     // add/update into pv list
                     mPluginPvs.put(pv.getKeyValue(), pv);
@@ -2441,17 +2609,44 @@ public class MainActivity extends PluginManager
             ProcessVar pv = (ProcessVar) mPluginPvs.get(key);
             if (pv != null)
             {
-                try
-                {
-                    // if content is numeric, set numeric value
-                    Double numVal = Double.valueOf(value);
-                    pv.put(EcuDataPv.FIELDS[EcuDataPv.FID_VALUE], numVal);
-                } catch (Exception ex)
-                {
-                    pv.put(EcuDataPv.FIELDS[EcuDataPv.FID_VALUE], value);
-                }
+                pv.put(EcuDataPv.FIELDS[EcuDataPv.FID_VALUE], parsePluginValue(value));
+            }
+        }
+    }
+
+    /**
+     * convert plugin data value to numeric value if possible
+     * - text values are detected by a character check, not by exceptions
+     *
+     * @param value value string
+     * @return Double value if numeric, otherwise value string
+     */
+    private static Object parsePluginValue(String value)
+    {
+        boolean hasDigits = false;
+        for (int i = 0; i < value.length(); i++)
+        {
+            char chr = value.charAt(i);
+            if (chr >= '0' && chr <= '9')
+            {
+                hasDigits = true;
+            }
+            else if ("+-.eE".indexOf(chr) < 0)
+            {
+                return value;
+            }
+        }
+        if (hasDigits)
+        {
+            try
+            {
+                return Double.valueOf(value);
+            } catch (NumberFormatException ex)
+            {
+                // malformed number, keep text
             }
         }
+        return value;
     }
 
     /*
@@ -56,6 +56,7 @@ public class NetworkCommService
 	{
 		super(context, handler);
 		ser.setMessageHandler(elm);
+		ser.setMetrics(elm.getMetrics());
 	}
 
 	@Override
@@ -74,6 +75,7 @@ public class NetworkCommService
 	{
 		log.fine("stop");
 		elm.removeTelegramWriter(ser);
+		ser.close();
 		// close socket
 		try
 		{
@@ -38,6 +38,7 @@ import com.fr3ts0n.pvs.IndexedProcessVar;
 import com.fr3ts0n.pvs.PvChangeEvent;
 import com.fr3ts0n.pvs.PvChangeListener;
 import com.fr3ts0n.pvs.PvList;
+import com.fr3ts0n.pvs.TimeSeries;
 
 import org.achartengine.model.XYSeries;
 
@@ -63,6 +64,10 @@ class ObdItemAdapter extends ArrayAdapter<Object>
      * allow data updates to be handled
      */
     static boolean allowDataUpdates = true;
+    /** max. number of samples per chart series */
+    static int chartCapacity = TimeSeries.DEFAULT_CAPACITY;
+    /** time window of chart series [ms], 0 = unlimited */
+    static long chartWindow_ms = 0;
     private final transient SharedPreferences prefs;
 
 
@@ -217,6 +222,38 @@ class ObdItemAdapter extends ArrayAdapter<Object>
         return super.getItem(position);
     }
 
+    /**
+     * Get number of data items shown in one list row
+     *
+     * @return number of items per row
+     */
+    protected int getItemsPerRow()
+    {
+        return 2;
+    }
+
+    /**
+     * Check if a list row shows any of the specified items
+     *
+     * @param row   list row position
+     * @param items set of items to check
+     * @return true if any item of the row is contained in the set
+     */
+    boolean isRowAffected(int row, Set<?> items)
+    {
+        int itemsPerRow = getItemsPerRow();
+        int first = row * itemsPerRow;
+        int last = Math.min(first + itemsPerRow, super.getCount());
+        for (int pos = first; pos < last; pos++)
+        {
+            if (items.contains(super.getItem(pos)))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
     private void populateColumn(View view, EcuDataPv pv, boolean isLeft)
     {
         String suffix = isLeft ? "" : "_right";
@@ -332,13 +369,13 @@ class ObdItemAdapter extends ArrayAdapter<Object>
             if (allowDataUpdates)
             {
                 IndexedProcessVar pv = (IndexedProcessVar) event.getSource();
-                XYSeries series = (XYSeries) pv.get(FID_DATA_SERIES);
-                if (series != null)
+                Object series = pv.get(FID_DATA_SERIES);
+                if (series instanceof ChartSeries)
                 {
                     if (event.getValue() instanceof Number)
                     {
-                        series.add(event.getTime(),
-                                   ((Number) event.getValue()).doubleValue());
+                        ((ChartSeries) series).addSample(event.getTime(),
+                                                         ((Number) event.getValue()).doubleValue());
 
                     }
                 }
@@ -346,14 +383,35 @@ class ObdItemAdapter extends ArrayAdapter<Object>
                 // send update to plugin handler
                 if (PluginManager.pluginHandler != null)
                 {
-                    PluginManager.pluginHandler.sendDataUpdate(
-                            pv.get(EcuDataPv.FID_MNEMONIC).toString(),
-                            event.getValue().toString());
+                    String mnemonic = pv.get(EcuDataPv.FID_MNEMONIC).toString();
+                    if (event.getValue() instanceof Number)
+                    {
+                        // numeric samples are coalesced
+                        PluginDataChannel.instance.publish(mnemonic, event.getValue());
+                    }
+                    else
+                    {
+                        PluginManager.pluginHandler.sendDataUpdate(mnemonic,
+                                                                   event.getValue().toString());
+                    }
                 }
             }
         }
     };
 
+    /**
+     * Create chart series with configured capacity and time window
+     *
+     * @param title series title
+     * @return new chart series
+     */
+    private static ChartSeries createSeries(String title)
+    {
+        ChartSeries series = new ChartSeries(title, chartCapacity);
+        series.getData().setWindow(chartWindow_ms);
+        return series;
+    }
+
     /**
      * Add data series to all process variables
      */
@@ -363,13 +421,24 @@ class ObdItemAdapter extends ArrayAdapter<Object>
         for (int pos = 0; pos < getCount(); pos++)
         {
             IndexedProcessVar pv = (IndexedProcessVar)getItem(pos);
-            XYSeries series = (XYSeries) pv.get(FID_DATA_SERIES);
+            Object series = pv.get(FID_DATA_SERIES);
             if (series == null)
             {
-                series = new XYSeries(String.valueOf(pv.get(EcuDataPv.FID_DESCRIPT)));
+                series = createSeries(String.valueOf(pv.get(EcuDataPv.FID_DESCRIPT)));
                 pv.put(FID_DATA_SERIES, series);
                 pv.addPvChangeListener(dataChangeHandler, PvChangeEvent.PV_MODIFIED);
             }
+            else if (!(series instanceof ChartSeries))
+            {
+                // take over data series loaded from previous version data files
+                XYSeries oldSeries = (XYSeries) series;
+                ChartSeries newSeries = createSeries(oldSeries.getTitle());
+                for (int i = 0; i < oldSeries.getItemCount(); i++)
+                {
+                    newSeries.addSample((long) oldSeries.getX(i), oldSeries.getY(i));
+                }
+                pv.put(FID_DATA_SERIES, newSeries);
+            }
 
             // assemble data items for plugin notification
             pluginStr.append(String.format("%s;%s;%s;%s\n",
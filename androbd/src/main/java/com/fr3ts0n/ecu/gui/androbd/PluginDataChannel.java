@@ -0,0 +1,118 @@
+package com.fr3ts0n.ecu.gui.androbd;
+
+import com.fr3ts0n.androbd.plugin.mgr.PluginManager;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+
+/**
+ * Coalescing data channel to plugins
+ * - by default only the latest value of each item is forwarded once per
+ *   flush interval, so the number of plugin messages depends on the number
+ *   of items rather than the number of samples
+ * - optionally every sample is forwarded immediately
+ * - values are forwarded via the string based plugin data interface
+ *   with their original text representation
+ */
+class PluginDataChannel
+{
+    /** max. time [ms] values are held back */
+    static final long FLUSH_INTERVAL = 200;
+
+    /** the channel instance */
+    static final PluginDataChannel instance = new PluginDataChannel();
+
+    /** latest values by mnemonic which are not sent yet */
+    private final LinkedHashMap<String, Object> pending = new LinkedHashMap<>();
+    /** send only latest value of each item per flush interval? */
+    private volatile boolean coalescing = true;
+
+    private PluginDataChannel()
+    {
+        // flush values which are held back
+        Timer timer = new Timer("PluginData", true);
+        timer.schedule(new TimerTask()
+        {
+            @Override
+            public void run()
+            {
+                flush();
+            }
+        }, FLUSH_INTERVAL, FLUSH_INTERVAL);
+    }
+
+    /**
+     * Set coalescing of samples
+     *
+     * @param coalescing true = send only latest value of each item per flush interval,
+     *                   false = send every sample immediately
+     */
+    void setCoalescing(boolean coalescing)
+    {
+        this.coalescing = coalescing;
+        if (!coalescing)
+        {
+            flush();
+        }
+    }
+
+    /**
+     * publish data sample to plugins
+     *
+     * @param mnemonic mnemonic of data item
+     * @param value    sample value
+     */
+    void publish(String mnemonic, Object value)
+    {
+        if (coalescing)
+        {
+            synchronized (pending)
+            {
+                pending.put(mnemonic, value);
+            }
+        }
+        else
+        {
+            send(mnemonic, value);
+        }
+    }
+
+    /**
+     * send all values which are held back
+     */
+    private void flush()
+    {
+        Object[] items;
+        synchronized (pending)
+        {
+            if (pending.isEmpty())
+            {
+                return;
+            }
+            items = pending.entrySet().toArray();
+            pending.clear();
+        }
+        for (Object item : items)
+        {
+            @SuppressWarnings("unchecked")
+            Map.Entry<String, Object> entry = (Map.Entry<String, Object>) item;
+            send(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * send one value to plugins
+     *
+     * @param mnemonic mnemonic of data item
+     * @param value    value
+     */
+    private void send(String mnemonic, Object value)
+    {
+        if (PluginManager.pluginHandler != null)
+        {
+            PluginManager.pluginHandler.sendDataUpdate(mnemonic, value.toString());
+        }
+    }
+}
@@ -36,6 +36,7 @@ import android.widget.Toast;
 import com.fr3ts0n.ecu.EcuDataItem;
 import com.fr3ts0n.ecu.prot.obd.ElmProt;
 import com.fr3ts0n.ecu.prot.obd.ObdProt;
+import com.fr3ts0n.ecu.prot.obd.PidScheduler;
 
 import java.util.HashSet;
 import java.util.Objects;
@@ -93,6 +94,7 @@ public class SettingsActivity
 	static final String ELM_MIN_TIMEOUT = "elm_min_timeout";
 	static final String ELM_CMD_DISABLE = "elm_cmd_disable";
     static final String ELM_TIMING_SELECT = "adaptive_timing_mode";
+    static final String PID_SCHEDULING_SELECT = "pid_scheduling_policy";
     private static final String KEY_BITCOIN = "bitcoin";
 
 	/*
@@ -141,6 +143,8 @@ public class SettingsActivity
 			setupElmCmdSelection();
             // set up ELM adaptive timing mode selection
 			setupElmTimingSelection();
+			// set up PID scheduling policy selection
+			setupPidSchedulingSelection();
 					// set up data items manager preference
 		setupDataItemsManager();
 			// update network selection fields
@@ -198,6 +202,27 @@ public class SettingsActivity
             pref.setSummary(pref.getEntry());
         }
 
+        /**
+         * set up PID scheduling policy selection
+         */
+        void setupPidSchedulingSelection()
+        {
+            ListPreference pref = (ListPreference) findPreference(PID_SCHEDULING_SELECT);
+            PidScheduler.Policies[] values = PidScheduler.Policies.values();
+            CharSequence[] keys = new CharSequence[values.length];
+            int i = 0;
+            for (PidScheduler.Policies policy : values)
+            {
+                keys[i++] = policy.toString();
+            }
+            // set entries and keys
+            pref.setEntries(keys);
+            pref.setEntryValues(keys);
+            pref.setDefaultValue(PidScheduler.Policies.DEADLINE.toString());
+            // show current selection
+            pref.setSummary(pref.getEntry());
+        }
+
 		/**
 		 * set up protocol selection
 		 */
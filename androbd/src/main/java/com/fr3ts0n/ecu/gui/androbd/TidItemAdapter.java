@@ -47,6 +47,12 @@ public class TidItemAdapter extends ObdItemAdapter
         return pvs.values();
     }
 
+    @Override
+    protected int getItemsPerRow()
+    {
+        return 1;
+    }
+
     @Override
     public View getView(int position, View convertView, ViewGroup parent)
     {
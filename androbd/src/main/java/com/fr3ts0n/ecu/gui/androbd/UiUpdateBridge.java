@@ -0,0 +1,197 @@
+/*
+ * (C) Copyright 2015 by fr3ts0n <erwin.scheuch-heilig@gmx.at>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston,
+ * MA 02111-1307 USA
+ */
+
+package com.fr3ts0n.ecu.gui.androbd;
+
+import android.view.Choreographer;
+import android.view.View;
+import android.widget.AbsListView;
+import android.widget.ListAdapter;
+
+import com.fr3ts0n.pvs.PvChangeEvent;
+import com.fr3ts0n.pvs.PvChangeListener;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+/**
+ * Frame synchronized update of list/grid views on process var changes
+ *
+ * Changed process vars are collected between display frames (each PV only
+ * once) and on the next frame only the visible rows which show a changed
+ * PV are refreshed. So UI load scales with the changed data, not with the
+ * sample rate.
+ *
+ * The bridge may be registered directly at data PVs, or at PV lists
+ * (child change events of the list items).
+ *
+ * @author erwin
+ */
+class UiUpdateBridge
+	implements PvChangeListener, Choreographer.FrameCallback
+{
+	/** view to be updated */
+	private final AbsListView view;
+	/** frame scheduler of UI thread */
+	private final Choreographer choreographer;
+	/** PVs changed since last frame */
+	private Set<Object> dirty = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+	/** PVs being refreshed in current frame */
+	private Set<Object> refreshing = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+	/** frame callback is posted */
+	private boolean scheduled = false;
+	/** updates are active */
+	private boolean running = false;
+
+	/**
+	 * Create update bridge
+	 * - must be created on UI thread
+	 *
+	 * @param view view to be updated
+	 */
+	UiUpdateBridge(AbsListView view)
+	{
+		this.view = view;
+		choreographer = Choreographer.getInstance();
+	}
+
+	/**
+	 * Start view updates
+	 */
+	synchronized void start()
+	{
+		running = true;
+		scheduleFrame();
+	}
+
+	/**
+	 * Stop view updates
+	 */
+	synchronized void stop()
+	{
+		running = false;
+		if (scheduled)
+		{
+			choreographer.removeFrameCallback(this);
+			scheduled = false;
+		}
+		dirty.clear();
+	}
+
+	/**
+	 * Mark PV as changed
+	 *
+	 * @param pv the changed process var
+	 */
+	synchronized void markDirty(Object pv)
+	{
+		if (dirty.add(pv))
+		{
+			scheduleFrame();
+		}
+	}
+
+	/**
+	 * Collect changed PVs
+	 * - may be called from any thread
+	 *
+	 * @param event PvChangeEvent which is reported
+	 */
+	@Override
+	public void pvChanged(PvChangeEvent event)
+	{
+		// child events of a PV list carry the changed child PV as value
+		markDirty(event.isChildEvent() ? event.getValue() : event.getSource());
+	}
+
+	/**
+	 * Refresh visible rows which show changed PVs
+	 *
+	 * @param frameTimeNanos frame time
+	 */
+	@Override
+	public void doFrame(long frameTimeNanos)
+	{
+		synchronized (this)
+		{
+			scheduled = false;
+			if (!running)
+			{
+				return;
+			}
+			// swap change sets to allow collecting changes during refresh
+			Set<Object> changed = dirty;
+			dirty = refreshing;
+			refreshing = changed;
+		}
+
+		ListAdapter adapter = view.getAdapter();
+		if (adapter != null)
+		{
+			int first = view.getFirstVisiblePosition();
+			for (int i = 0; i < view.getChildCount(); i++)
+			{
+				int position = first + i;
+				if (position < adapter.getCount() && isRowAffected(adapter, position))
+				{
+					updateRow(adapter, position, view.getChildAt(i));
+				}
+			}
+		}
+		refreshing.clear();
+	}
+
+	/**
+	 * Check if row shows any changed PV
+	 *
+	 * @param adapter  adapter of view
+	 * @param position row position
+	 * @return true if row needs to be refreshed
+	 */
+	private boolean isRowAffected(ListAdapter adapter, int position)
+	{
+		if (adapter instanceof ObdItemAdapter)
+		{
+			return ((ObdItemAdapter) adapter).isRowAffected(position, refreshing);
+		}
+		return refreshing.contains(adapter.getItem(position));
+	}
+
+	/**
+	 * Refresh a single row
+	 * - default is to re-bind the existing row view
+	 *
+	 * @param adapter  adapter of view
+	 * @param position row position
+	 * @param rowView  view of row
+	 */
+	protected void updateRow(ListAdapter adapter, int position, View rowView)
+	{
+		adapter.getView(position, rowView, view);
+	}
+
+	private void scheduleFrame()
+	{
+		if (running && !scheduled && !dirty.isEmpty())
+		{
+			choreographer.postFrameCallback(this);
+			scheduled = true;
+		}
+	}
+}
@@ -0,0 +1,103 @@
+/*
+ * (C) Copyright 2015 by fr3ts0n <erwin.scheuch-heilig@gmx.at>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston,
+ * MA 02111-1307 USA
+ */
+
+package com.fr3ts0n.ecu;
+
+import com.fr3ts0n.pvs.PvLimits;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of all data conversion types
+ *
+ * @author erwin
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConversionBenchmark
+{
+	@Param({"LINEAR", "LINEAR_LIMITED", "INT", "HASH", "BITMAP", "VAG", "CODELIST"})
+	public String type;
+
+	private Conversion cnv;
+	private String format = "%.1f";
+	private long raw = 0;
+
+	@Setup
+	public void setup()
+	{
+		switch (type)
+		{
+			case "LINEAR":
+				cnv = new LinearConversion(9, 5, -40, 32, "°F");
+				break;
+			case "LINEAR_LIMITED":
+				cnv = new LinearConversion(1, 4, 0, 0, "/min", new PvLimits(0.0f, 6000.0f));
+				break;
+			case "INT":
+				cnv = new IntConversion();
+				format = "%d";
+				break;
+			case "HASH":
+				cnv = new HashConversion(new String[]{"0=Off;1=On;2=Open loop;4=Closed loop;8=Fault"});
+				format = "%d";
+				break;
+			case "BITMAP":
+				cnv = new BitmapConversion(new String[]{"1=A;2=B;4=C;8=D;16=E;32=F;64=G;128=H"});
+				format = "%d";
+				break;
+			case "VAG":
+				cnv = new VagConversion(1, 0.2, 0, "/min");
+				break;
+			case "CODELIST":
+				cnv = new EcuCodeList("com.fr3ts0n.ecu.prot.obd.res.codes");
+				format = "%d";
+				break;
+			default:
+				throw new IllegalArgumentException(type);
+		}
+	}
+
+	@Benchmark
+	public Number memToPhys()
+	{
+		return cnv.memToPhys(raw++ & 0xFF);
+	}
+
+	@Benchmark
+	public String physToPhysFmtString()
+	{
+		return cnv.physToPhysFmtString(cnv.memToPhys(raw++ & 0xFF), format);
+	}
+}
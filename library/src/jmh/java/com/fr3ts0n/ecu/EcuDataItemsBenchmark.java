@@ -0,0 +1,86 @@
+/*
+ * (C) Copyright 2015 by fr3ts0n <erwin.scheuch-heilig@gmx.at>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston,
+ * MA 02111-1307 USA
+ */
+
+package com.fr3ts0n.ecu;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Benchmark of data item updates for all service 01 PIDs of pids.csv
+ *
+ * @author erwin
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EcuDataItemsBenchmark
+{
+	private EcuDataItems items;
+	private int[] pids;
+	private char[][] buffers;
+
+	@Setup
+	public void setup()
+	{
+		Logger.getLogger("").setLevel(Level.OFF);
+		items = new EcuDataItems();
+
+		ArrayList<Integer> pidList = new ArrayList<>(items.get(1).keySet());
+		pids = new int[pidList.size()];
+		buffers = new char[pidList.size()][];
+		for (int i = 0; i < pids.length; i++)
+		{
+			pids[i] = pidList.get(i);
+			// data pattern for all data bytes of the PID
+			char[] buffer = new char[Math.max(1, items.getPidDataLength(1, pids[i]))];
+			for (int j = 0; j < buffer.length; j++)
+			{
+				buffer[j] = (char) ((0x35 + 0x11 * j + pids[i]) & 0xFF);
+			}
+			buffers[i] = buffer;
+		}
+	}
+
+	@Benchmark
+	public long updateDataItems_AllPids()
+	{
+		long result = 0;
+		for (int i = 0; i < pids.length; i++)
+		{
+			result += items.updateDataItems(1, pids[i], buffers[i]);
+		}
+		return result;
+	}
+}
@@ -0,0 +1,119 @@
+/*
+ * (C) Copyright 2015 by fr3ts0n <erwin.scheuch-heilig@gmx.at>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston,
+ * MA 02111-1307 USA
+ */
+
+package com.fr3ts0n.ecu.prot.obd;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Benchmark of ELM response telegram handling
+ *
+ * @author erwin
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ElmProtBenchmark
+{
+	/**
+	 * Service 01 data responses (single line)
+	 */
+	@State(Scope.Thread)
+	public static class DataState
+	{
+		ElmProt prot;
+		final char[][] responses =
+			{
+				"410C1AF8".toCharArray(),
+				"410D32".toCharArray(),
+				"41057B".toCharArray(),
+				"41110F".toCharArray(),
+			};
+
+		@Setup
+		public void setup()
+		{
+			Logger.getLogger("").setLevel(Level.OFF);
+			prot = new ElmProt();
+			prot.setService(ObdProt.OBD_SVC_DATA);
+			// supported PIDs
+			prot.handleTelegram("4100BE3EA813".toCharArray());
+		}
+	}
+
+	/**
+	 * Service 09 VIN response (ISO multi line)
+	 */
+	@State(Scope.Thread)
+	public static class VinState
+	{
+		ElmProt prot;
+		final char[][] responses =
+			{
+				"49020100000057".toCharArray(),
+				"49020241555A5A".toCharArray(),
+				"4902035A385034".toCharArray(),
+				"49020436413030".toCharArray(),
+				"49020535353434".toCharArray(),
+				">".toCharArray(),
+			};
+
+		@Setup
+		public void setup()
+		{
+			Logger.getLogger("").setLevel(Level.OFF);
+			prot = new ElmProt();
+			prot.setService(ObdProt.OBD_SVC_VEH_INFO);
+			prot.sendTelegram("0902".toCharArray());
+		}
+	}
+
+	@Benchmark
+	public void handleTelegram_SingleLine(DataState state, Blackhole bh)
+	{
+		for (char[] response : state.responses)
+		{
+			bh.consume(state.prot.handleTelegram(response));
+		}
+	}
+
+	@Benchmark
+	public void handleTelegram_IsoMultiLine(VinState state, Blackhole bh)
+	{
+		for (char[] response : state.responses)
+		{
+			bh.consume(state.prot.handleTelegram(response));
+		}
+	}
+}
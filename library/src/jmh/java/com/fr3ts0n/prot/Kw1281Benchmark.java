@@ -0,0 +1,95 @@
+package com.fr3ts0n.prot;
+
+import com.fr3ts0n.prot.sim.Kw1281Simulator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Benchmark of KW1281 measurement group reads against the ECU simulator
+ * - score is measurement groups per second
+ *
+ * @author erwin
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class Kw1281Benchmark
+	implements TelegramListener
+{
+	private static final Logger log = Logger.getLogger("prot.benchmark");
+
+	/** delay [us] before each ECU byte (0 = max. speed) */
+	@Param({"0", "100"})
+	public int byteDelay;
+
+	private final Semaphore responses = new Semaphore(0);
+	/** group read request, a copy is sent with each call */
+	private final char[] groupRead = {0x04, 0x00, Kw1281Simulator.BLK_GROUP_READ, 0x01, 0x03};
+	private Kw1281StreamHandler handler;
+	private Kw1281Simulator sim;
+
+	@Override
+	public int handleTelegram(char[] buffer)
+	{
+		if (buffer[2] == Kw1281Simulator.BLK_GROUP_DATA)
+		{
+			responses.release();
+		}
+		return 0;
+	}
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException, InterruptedException
+	{
+		// only report benchmark results, no protocol logging
+		Logger.getLogger("").setLevel(java.util.logging.Level.OFF);
+		log.setLevel(java.util.logging.Level.INFO);
+		handler = new Kw1281StreamHandler();
+		handler.setMessageHandler(this);
+		sim = Kw1281Simulator.connect(handler, 0x01);
+		sim.setByteDelay(TimeUnit.MICROSECONDS.toNanos(byteDelay));
+		Thread rxThread = new Thread(handler, "Kw1281Rx");
+		rxThread.setDaemon(true);
+		rxThread.start();
+		handler.init(0x01);
+		if (!handler.awaitState(Kw1281Engine.STATE_RECEIVING, 1000))
+		{
+			throw new IllegalStateException("KW1281 init failed");
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown()
+	{
+		log.info(String.format("byteDelay=%d us: %s", byteDelay, handler.getEngine()));
+		sim.stop();
+	}
+
+	@Benchmark
+	public boolean readGroup() throws InterruptedException
+	{
+		// telegram is sent asynchronously, so don't share the buffer
+		handler.writeTelegram(groupRead.clone());
+		return responses.tryAcquire(1, TimeUnit.SECONDS);
+	}
+}
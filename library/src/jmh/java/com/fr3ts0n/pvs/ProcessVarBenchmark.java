@@ -0,0 +1,81 @@
+/*
+ * (C) Copyright 2015 by fr3ts0n <erwin.scheuch-heilig@gmx.at>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston,
+ * MA 02111-1307 USA
+ */
+
+package com.fr3ts0n.pvs;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of process var change notification with N listeners
+ *
+ * @author erwin
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProcessVarBenchmark
+{
+	@Param({"1", "4", "16"})
+	public int numListeners;
+
+	private ProcessVar pv;
+	private PvChangeEvent event;
+	private long notifications = 0;
+	private int value = 0;
+
+	@Setup
+	public void setup()
+	{
+		pv = new ProcessVar();
+		for (int i = 0; i < numListeners; i++)
+		{
+			pv.addPvChangeListener(e -> notifications++, PvChangeEvent.PV_MODIFIED);
+		}
+		pv.put("VALUE", value);
+		event = new PvChangeEvent(pv, "VALUE", value, PvChangeEvent.PV_MODIFIED);
+	}
+
+	@Benchmark
+	public long firePvChanged()
+	{
+		pv.firePvChanged(event);
+		return notifications;
+	}
+
+	@Benchmark
+	public long put()
+	{
+		pv.put("VALUE", ++value & 0xFF);
+		return notifications;
+	}
+}
@@ -21,22 +21,62 @@ package com.fr3ts0n.ecu;
 import com.fr3ts0n.common.UTF8Bundle;
 import com.fr3ts0n.ecu.prot.obd.Messages;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.MissingResourceException;
 import java.util.ResourceBundle;
 import java.util.Set;
+import java.util.TreeMap;
 
 /**
  * Vehicle fault code list
  *
+ * Code descriptions are loaded lazily from the resource bundle of the
+ * current locale into a catalog sorted by numeric code, so lookups and
+ * range queries are binary searches without string keys or exceptions.
+ * The catalog is re-loaded if the default locale changes.
+ *
  * @author erwin
  */
 public class EcuCodeList
 	implements Conversion
 {
 	private static final long serialVersionUID = 219865459629423028L;
-	private final transient ResourceBundle codes;
+	private final String resourceBundleName;
 	private transient int radix = 10;
+	/** catalog of current locale */
+	private transient Catalog catalog;
+
+	/**
+	 * Catalog of known codes of one locale
+	 */
+	private static final class Catalog
+	{
+		/** locale of catalog */
+		final Locale locale;
+		/** numeric codes (ascending) */
+		final long[] codes;
+		/** code strings */
+		final String[] keys;
+		/** descriptions */
+		final String[] descriptions;
+		/** set of all descriptions */
+		final Set<String> values;
+
+		Catalog(Locale locale, long[] codes, String[] keys, String[] descriptions)
+		{
+			this.locale = locale;
+			this.codes = codes;
+			this.keys = keys;
+			this.descriptions = descriptions;
+			this.values = Collections.unmodifiableSet(new HashSet<String>(Arrays.asList(descriptions)));
+		}
+	}
 
 	/**
 	 * construct a new code list
@@ -53,7 +93,7 @@ public class EcuCodeList
 	 */
 	public EcuCodeList(String resourceBundleName)
 	{
-		codes = UTF8Bundle.getBundle(resourceBundleName);
+		this.resourceBundleName = resourceBundleName;
 	}
 
 	/**
@@ -73,20 +113,131 @@ public class EcuCodeList
 		return(Long.toString(value.longValue(),radix));
 	}
 
+	/**
+	 * Return numeric code from code string
+	 *
+	 * @param code code string
+	 * @return numeric code
+	 * @throws RuntimeException if code string is invalid
+	 */
+	long parseCode(String code)
+	{
+		return Long.parseLong(code, radix);
+	}
+
+	/**
+	 * get catalog of current locale, load it if required
+	 *
+	 * @return catalog, null if resources are not available
+	 */
+	private synchronized Catalog getCatalog()
+	{
+		Locale locale = Locale.getDefault();
+		if (catalog == null || !catalog.locale.equals(locale))
+		{
+			ResourceBundle bundle;
+			try
+			{
+				bundle = UTF8Bundle.getBundle(resourceBundleName);
+			}
+			catch (MissingResourceException e)
+			{
+				return catalog;
+			}
+			// collect all codes which are found by their numeric value
+			TreeMap<Long, String> sorted = new TreeMap<Long, String>();
+			for (String key : bundle.keySet())
+			{
+				try
+				{
+					long code = parseCode(key);
+					if (key.equals(getCode(code)))
+					{
+						sorted.put(code, key);
+					}
+				}
+				catch (RuntimeException e)
+				{
+					// no valid code key
+				}
+			}
+			long[] codes = new long[sorted.size()];
+			String[] keys = new String[sorted.size()];
+			String[] descriptions = new String[sorted.size()];
+			int i = 0;
+			for (Map.Entry<Long, String> entry : sorted.entrySet())
+			{
+				codes[i] = entry.getKey();
+				keys[i] = entry.getValue();
+				descriptions[i] = bundle.getString(entry.getValue());
+				i++;
+			}
+			catalog = new Catalog(locale, codes, keys, descriptions);
+		}
+		return catalog;
+	}
+
 	public EcuCodeItem get(Number value)
 	{
 		EcuCodeItem result = null;
-		if (codes != null)
+		Catalog cat = getCatalog();
+		if (cat != null)
 		{
-			String key = getCode(value);
-			try
+			int idx = Arrays.binarySearch(cat.codes, value.longValue());
+			result = (idx >= 0)
+			         ? new EcuCodeItem(cat.keys[idx], cat.descriptions[idx])
+			         : new EcuCodeItem(getCode(value),
+			                           Messages.getString(
+				                           "customer.specific.trouble.code.see.manual"));
+		}
+		return result;
+	}
+
+	/**
+	 * Get all known codes within a range of numeric codes
+	 *
+	 * @param first first numeric code of range
+	 * @param last  last numeric code of range (inclusive)
+	 * @return known codes within range in ascending order
+	 */
+	public List<EcuCodeItem> getRange(long first, long last)
+	{
+		List<EcuCodeItem> result = new ArrayList<EcuCodeItem>();
+		Catalog cat = getCatalog();
+		if (cat != null)
+		{
+			int idx = Arrays.binarySearch(cat.codes, first);
+			for (idx = idx >= 0 ? idx : -idx - 1;
+			     idx < cat.codes.length && cat.codes[idx] <= last;
+			     idx++)
 			{
-				result = new EcuCodeItem(key, codes.getString(key));
-			} catch (MissingResourceException e)
+				result.add(new EcuCodeItem(cat.keys[idx], cat.descriptions[idx]));
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Find known codes by code prefix or description text
+	 *
+	 * @param text code prefix (e.g. P03) or part of description (case insensitive)
+	 * @return matching codes in ascending order
+	 */
+	public List<EcuCodeItem> find(String text)
+	{
+		List<EcuCodeItem> result = new ArrayList<EcuCodeItem>();
+		Catalog cat = getCatalog();
+		if (cat != null)
+		{
+			String prefix = text.toUpperCase(cat.locale);
+			String part = text.toLowerCase(cat.locale);
+			for (int i = 0; i < cat.codes.length; i++)
 			{
-				result = new EcuCodeItem(key,
-				                         Messages.getString(
-					                         "customer.specific.trouble.code.see.manual"));
+				if (cat.keys[i].toUpperCase(cat.locale).startsWith(prefix)
+				    || cat.descriptions[i].toLowerCase(cat.locale).contains(part))
+				{
+					result.add(new EcuCodeItem(cat.keys[i], cat.descriptions[i]));
+				}
 			}
 		}
 		return result;
@@ -98,12 +249,8 @@ public class EcuCodeList
 	 */
 	public Set<String> values()
 	{
-		Set<String> values = new HashSet<String>();
-		for( String key : codes.keySet())
-		{
-			values.add(codes.getString(key));
-		}
-		return values;
+		Catalog cat = getCatalog();
+		return cat != null ? cat.values : Collections.<String>emptySet();
 	}
 
 	@Override
@@ -21,6 +21,7 @@ package com.fr3ts0n.ecu;
 import com.fr3ts0n.prot.ProtUtils;
 import com.fr3ts0n.prot.ProtoHeader;
 
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
@@ -58,6 +59,9 @@ public class EcuDataItem
 	private String mnemonic;     ///< unique textual mnemonic
 	public EcuDataPv pv;        ///< the process variable for displaying
 	private int currErrorCount = 0;     ///< current number of consecutive conversion errors
+	private transient LinearDecoder decoder;    ///< precompiled decoder for current conversion system
+	private transient int decoderSystem = -1;   ///< conversion system of decoder (-1 = not compiled)
+	transient long notifyTime_ns = 0;           ///< time spent notifying PV listeners on last update
 	public long updatePeriod_ms = 0; ///< Minimum update period in ms
 
 	// Logger object
@@ -135,6 +139,50 @@ public class EcuDataItem
 		pv.put(EcuDataPv.FID_FORMAT, fmt);
 		pv.put(EcuDataPv.FID_CNVID, cnv);
 		updateLimits(minValue, maxValue);
+		getDecoder();
+	}
+
+	/**
+	 * Creates a new instance of EcuDataItem with same definition as template,
+	 * but with a separate process variable
+	 *
+	 * @param template data item to copy definition from
+	 */
+	public EcuDataItem(EcuDataItem template)
+	{
+		this(template.pid,
+		     template.ofs,
+		     template.bytes,
+		     template.bitOffset,
+		     template.numBits,
+		     template.bitMask,
+		     template.cnv,
+		     template.fmt,
+		     (Number) template.pv.get(EcuDataPv.FID_MIN),
+		     (Number) template.pv.get(EcuDataPv.FID_MAX),
+		     template.updatePeriod_ms,
+		     template.label,
+		     template.mnemonic);
+	}
+
+	/**
+	 * Get precompiled decoder for current conversion system
+	 * - decoder is (re-)compiled on first use and on change of
+	 *   conversion system or offset
+	 *
+	 * @return decoder, null if item has no compilable (linear) conversion
+	 */
+	LinearDecoder getDecoder()
+	{
+		if (decoderSystem != cnvSystem || (decoder != null && decoder.ofs != ofs))
+		{
+			decoder = (cnv != null && cnv[cnvSystem] instanceof LinearConversion)
+			          ? ((LinearConversion) cnv[cnvSystem])
+				          .compile(ofs, bytes, bitOffset, ((1L << numBits) - 1) & bitMask)
+			          : null;
+			decoderSystem = cnvSystem;
+		}
+		return decoder;
 	}
 
 	/**
@@ -167,6 +215,16 @@ public class EcuDataItem
 		pv.put(EcuDataPv.FID_MAX, maxVal);
 	}
 
+	/**
+	 * Return number of data bytes expected from vehicle
+	 *
+	 * @return number of data bytes
+	 */
+	public int getNumBytes()
+	{
+		return bytes;
+	}
+
 	/**
 	 * Return minimum raw (integer) value before conversion
 	 * - calculated based on bit width & mask
@@ -241,6 +299,26 @@ public class EcuDataItem
 		return (String.format("%02X.%d.%d", pid, ofs, bitOffset));
 	}
 
+	/**
+	 * get raw (integer) value from buffer
+	 * - extract value, shift on bit offset and apply bit masks
+	 *
+	 * @param buffer communication buffer content
+	 * @return raw value
+	 */
+	long rawFromBuffer(char[] buffer)
+	{
+		// extract value from buffer
+		long value = ProtoHeader.getParamLong(ofs, bytes, buffer);
+		// calculate effective value ...
+		// shift on bit offset
+		value = (value >> bitOffset);
+		// mask with bit lenth mask
+		value = (value & ((1L << numBits)-1));
+		// mask with specific bit mask
+		return (value & bitMask);
+	}
+
 	/**
 	 * get physical value from buffer
 	 *
@@ -254,18 +332,8 @@ public class EcuDataItem
 		{
 			if (cnv != null && cnv[cnvSystem] != null)
 			{
-				// extract value from buffer
-				long value = ProtoHeader.getParamInt(ofs, bytes, buffer).longValue();
-				// calculate effective value ...
-				// shift on bit offset
-				value = (value >> bitOffset);
-				// mask with bit lenth mask
-				value = (value & ((1L << numBits)-1));
-				// mask with specific bit mask
-				value = (value & bitMask);
-
 				// now run conversion to physical value on it ...
-				result = physVal(value);
+				result = physVal(rawFromBuffer(buffer));
 			}
 			else
 			{
@@ -299,18 +367,59 @@ public class EcuDataItem
 		// process data item
 		try
 		{
-			// get physical value
-			Object result = physFromBuffer(buffer);
+			// linear conversions are handled without boxing of intermediate values
+			boolean linear = cnv != null && cnv[cnvSystem] instanceof LinearConversion;
+			double numResult = 0;
+			Object result = null;
+			if (linear)
+			{
+				try
+				{
+					LinearDecoder dec = getDecoder();
+					numResult = (dec != null)
+					            ? dec.decode(buffer)
+					            : ((LinearConversion) cnv[cnvSystem]).memToPhysDouble(rawFromBuffer(buffer));
+					// decrement error counter
+					currErrorCount = Math.max(0, currErrorCount -1);
+				}
+				catch (Exception ex)
+				{
+					linear = false;
+					result = physFromBuffer(buffer);
+				}
+			}
+			else
+			{
+				// get physical value
+				result = physFromBuffer(buffer);
+			}
 			// if consecutive conversion error counter not exceeded
 			if(currErrorCount < MAX_ERROR_COUNT)
 			{
-				pv.put(EcuDataPv.FID_VALUE, result);
-				pv.put(EcuDataPv.FID_UNITS, pv.getUnits());
-				log.fine(String.format("%02X %-30s %16s %s",
-										pid,
-										label,
-										pv.get(EcuDataPv.FID_VALUE),
-										pv.get(EcuDataPv.FID_UNITS)));
+				long notifyStart = System.nanoTime();
+				if (linear)
+				{
+					pv.setNumericValue(numResult);
+				}
+				else
+				{
+					pv.put(EcuDataPv.FID_VALUE, result);
+				}
+				// units only change with conversion system
+				String units = pv.getUnits();
+				if (!units.equals(pv.get(EcuDataPv.FID_UNITS)))
+				{
+					pv.put(EcuDataPv.FID_UNITS, units);
+				}
+				notifyTime_ns = System.nanoTime() - notifyStart;
+				if (log.isLoggable(Level.FINE))
+				{
+					log.fine(String.format("%02X %-30s %16s %s",
+											pid,
+											label,
+											pv.get(EcuDataPv.FID_VALUE),
+											pv.get(EcuDataPv.FID_UNITS)));
+				}
 			}
 			else
 			{
@@ -19,12 +19,14 @@
 package com.fr3ts0n.ecu;
 
 import com.fr3ts0n.ecu.prot.obd.Messages;
+import com.fr3ts0n.prot.PipelineMetrics;
 
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Vector;
 import java.util.logging.Logger;
 
@@ -40,6 +42,9 @@ import java.util.logging.Logger;
  *         |- ... -- ...
  * Service ...
  * </pre>
+ * For telegram decoding, all items are additionally held in a flat
+ * [service][pid] array index which is rebuilt (and replaced atomically)
+ * whenever items are added.
  *
  * @author erwin
  */
@@ -80,6 +85,11 @@ public class EcuDataItems extends HashMap<Integer, HashMap<Integer, Vector<EcuDa
 	// map of MNEMONIC data item
 	public static final HashMap<String, EcuDataItem> byMnemonic = new HashMap<>();
 
+	/** number of services / PIDs covered by array index */
+	static final int INDEX_SIZE = 0x100;
+	/** array index of data items [service][pid] (null = no items) */
+	private transient volatile EcuDataItem[][][] index = new EcuDataItem[0][][];
+
 	/**
 	 * Create data items from default CSV pidResource files
 	 * (prot/obd/res/pids.csv, prot/obd/res/conversions.csv)
@@ -104,6 +114,40 @@ public class EcuDataItems extends HashMap<Integer, HashMap<Integer, Vector<EcuDa
 		loadFromResource(pidResource);
 	}
 
+	/**
+	 * Create data items with same definitions as template
+	 * - every item gets its own process variable, so the copy may be used
+	 *   by an independent protocol session
+	 * - conversions are shared with template, mnemonic map is not changed
+	 *
+	 * @param template data items to copy definitions from
+	 */
+	public EcuDataItems(EcuDataItems template)
+	{
+		// items which are registered for multiple services are copied once
+		IdentityHashMap<EcuDataItem, EcuDataItem> copies = new IdentityHashMap<>();
+		synchronized (template)
+		{
+			for (Entry<Integer, HashMap<Integer, Vector<EcuDataItem>>> service : template.entrySet())
+			{
+				for (Vector<EcuDataItem> items : service.getValue().values())
+				{
+					for (EcuDataItem item : items)
+					{
+						EcuDataItem copy = copies.get(item);
+						if (copy == null)
+						{
+							copy = new EcuDataItem(item);
+							copies.put(item, copy);
+						}
+						addItem(service.getKey(), copy);
+					}
+				}
+			}
+		}
+		rebuildIndex();
+	}
+
 	/**
 	 * read data from resource file into data structure
 	 *
@@ -192,10 +236,11 @@ public class EcuDataItems extends HashMap<Integer, HashMap<Integer, Vector<EcuDa
 				for (String service : services)
 				{
 					int svcId = Integer.decode(service);
-					appendItemToService(svcId, newItm);
+					addItem(svcId, newItm);
 				}
 			}
 			rdr.close();
+			rebuildIndex();
 		} catch (IOException e)
 		{
 			e.printStackTrace();
@@ -220,6 +265,72 @@ public class EcuDataItems extends HashMap<Integer, HashMap<Integer, Vector<EcuDa
 		return (currVec);
 	}
 
+	/**
+	 * get indexed data items for selected service and PID
+	 *
+	 * @param service service to search data items for
+	 * @param pid     pid to search data items for
+	 * @return array of data items - or null if no data items are indexed
+	 */
+	private EcuDataItem[] getIndexedItems(int service, int pid)
+	{
+		EcuDataItem[][][] idx = index;
+		if (idx == null
+		    || service < 0 || service >= idx.length
+		    || idx[service] == null
+		    || pid < 0 || pid >= INDEX_SIZE)
+		{
+			return null;
+		}
+		return idx[service][pid];
+	}
+
+	/**
+	 * check if service and PID are within range of array index
+	 *
+	 * @param service service to check
+	 * @param pid     pid to check
+	 * @return true if items are looked up in array index
+	 */
+	private boolean isIndexed(int service, int pid)
+	{
+		return index != null
+		       && service >= 0 && service < INDEX_SIZE
+		       && pid >= 0 && pid < INDEX_SIZE;
+	}
+
+	/**
+	 * get length of data for selected service and PID
+	 * (calculated from the data items of this PID)
+	 *
+	 * @param service service to get data length for
+	 * @param pid     pid to get data length for
+	 * @return number of data bytes, 0 if unknown
+	 */
+	public int getPidDataLength(int service, int pid)
+	{
+		int result = 0;
+		EcuDataItem[] currItms = getIndexedItems(service, pid);
+		if (!isIndexed(service, pid))
+		{
+			Vector<EcuDataItem> pidItems = getPidDataItems(service, pid);
+			currItms = pidItems != null ? pidItems.toArray(new EcuDataItem[0]) : null;
+		}
+		if (currItms != null)
+		{
+			for (EcuDataItem currItm : currItms)
+			{
+				// unknown length of any item -> unknown data length
+				if (currItm.getNumBytes() <= 0)
+				{
+					return 0;
+				}
+				result = Math.max(result, currItm.ofs + currItm.getNumBytes());
+			}
+		}
+		return result;
+	}
+
 	/**
 	 * get all data items for selected service
 	 *
@@ -267,7 +378,19 @@ public class EcuDataItems extends HashMap<Integer, HashMap<Integer, Vector<EcuDa
 	 * @param service service to add item to
 	 * @param newItem EcuDataItem to be added
 	 */
-	public void appendItemToService(int service, EcuDataItem newItem)
+	public synchronized void appendItemToService(int service, EcuDataItem newItem)
+	{
+		addItem(service, newItem);
+		rebuildIndex();
+	}
+
+	/**
+	 * add new data item to map of services (without index update)
+	 *
+	 * @param service service to add item to
+	 * @param newItem EcuDataItem to be added
+	 */
+	private void addItem(int service, EcuDataItem newItem)
 	{
 		// check if service existes already
 		HashMap<Integer, Vector<EcuDataItem>> currSvc = get(service);
@@ -296,6 +419,40 @@ public class EcuDataItems extends HashMap<Integer, HashMap<Integer, Vector<EcuDa
 		log.finer("+" + service + "/" + String.format("0x%02X", newItem.pid) + " - " + currVec); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
 	}
 
+	/**
+	 * rebuild array index from map of services and replace current index
+	 */
+	private synchronized void rebuildIndex()
+	{
+		int numServices = 0;
+		for (Integer service : keySet())
+		{
+			if (service >= 0 && service < INDEX_SIZE)
+			{
+				numServices = Math.max(numServices, service + 1);
+			}
+		}
+		EcuDataItem[][][] newIndex = new EcuDataItem[numServices][][];
+		for (Entry<Integer, HashMap<Integer, Vector<EcuDataItem>>> service : entrySet())
+		{
+			if (service.getKey() < 0 || service.getKey() >= numServices)
+			{
+				continue;
+			}
+			EcuDataItem[][] pids = new EcuDataItem[INDEX_SIZE][];
+			for (Entry<Integer, Vector<EcuDataItem>> pid : service.getValue().entrySet())
+			{
+				if (pid.getKey() >= 0 && pid.getKey() < INDEX_SIZE)
+				{
+					pids[pid.getKey()] = pid.getValue().toArray(new EcuDataItem[0]);
+				}
+			}
+			newIndex[service.getKey()] = pids;
+		}
+		index = newIndex;
+	}
+
+
 	/**
 	 * Update all EcuDataItems with new data from buffer
 	 *
@@ -305,9 +462,48 @@ public class EcuDataItems extends HashMap<Integer, HashMap<Integer, Vector<EcuDa
 	 * @return Next expected update interval
 	 */
 	public long updateDataItems(int service, int pid, char[] buffer)
+	{
+		return updateDataItems(service, pid, buffer, null);
+	}
+
+	/**
+	 * Update all EcuDataItems with new data from buffer
+	 * and record decoding and notification latencies
+	 *
+	 * @param service service of current data
+	 * @param pid     pid of current data
+	 * @param buffer  data buffer to do conversions on
+	 * @param metrics pipeline metrics to record latencies to, null = none
+	 * @return Next expected update interval
+	 */
+	public long updateDataItems(int service, int pid, char[] buffer, PipelineMetrics metrics)
 	{
 		long nextUpdate = 0;
 
+		if (isIndexed(service, pid))
+		{
+			EcuDataItem[] currItms = getIndexedItems(service, pid);
+			if (currItms != null)
+			{
+				long start = metrics != null ? System.nanoTime() : 0;
+				long notifyTime = 0;
+				for (EcuDataItem currItm : currItms)
+				{
+					currItm.notifyTime_ns = 0;
+					nextUpdate = Math.max(nextUpdate, currItm.updatePvFomBuffer(buffer));
+					notifyTime += currItm.notifyTime_ns;
+				}
+				if (metrics != null)
+				{
+					long total = System.nanoTime() - start;
+					metrics.record(PipelineMetrics.Stage.DECODE, pid, total - notifyTime);
+					metrics.record(PipelineMetrics.Stage.LISTENERS, pid, notifyTime);
+				}
+			}
+			return nextUpdate;
+		}
+
+		// service / PID beyond range of array index
 		Vector<EcuDataItem> currItms = getPidDataItems(service, pid);
 		if(currItms != null)
 		{
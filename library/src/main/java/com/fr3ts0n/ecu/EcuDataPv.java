@@ -56,6 +56,10 @@ public class EcuDataPv extends IndexedProcessVar
 		};
 
 	private transient Object renderingComponent;
+	/** primitive copy of numeric value, NaN if not numeric */
+	private transient double numValue = Double.NaN;
+	/** boxed numeric value, re-used as long as value is unchanged */
+	private transient Float boxedValue;
 
 	/**
 	 * Creates a new instance of EcuDataPv
@@ -101,6 +105,62 @@ public class EcuDataPv extends IndexedProcessVar
 		return result;
 	}
 
+	/**
+	 * Set numeric (physical) value
+	 * - The boxed value object is only re-created if the value has changed
+	 *
+	 * @param value new numeric value
+	 */
+	public void setNumericValue(double value)
+	{
+		Float boxed;
+		synchronized (this)
+		{
+			if (boxedValue == null || value != numValue)
+			{
+				boxedValue = (float) value;
+			}
+			boxed = boxedValue;
+			numValue = value;
+		}
+		// notify outside of lock
+		super.put(FIELDS[FID_VALUE], boxed);
+	}
+
+	/**
+	 * Get numeric (physical) value without boxing
+	 *
+	 * @return numeric value, NaN if current value is not numeric
+	 */
+	public synchronized double getNumericValue()
+	{
+		return numValue;
+	}
+
+	/**
+	 * set attribute with time of change
+	 * - keeps numeric value in sync with value field
+	 */
+	@Override
+	public Object put(Object key, Object value, int action, long time)
+	{
+		if (FIELDS[FID_VALUE].equals(key))
+		{
+			synchronized (this)
+			{
+				// value set by setNumericValue is already cached
+				if (value != boxedValue || value == null)
+				{
+					boxedValue = null;
+					numValue = (value instanceof Number)
+					           ? ((Number) value).doubleValue()
+					           : Double.NaN;
+				}
+			}
+		}
+		return super.put(key, value, action, time);
+	}
+
 	public Object getRenderingComponent()
 	{
 		return renderingComponent;
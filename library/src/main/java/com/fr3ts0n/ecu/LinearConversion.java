@@ -140,16 +140,65 @@ public class LinearConversion extends NumericConversion
 	 * @param value raw memory value to be converted
 	 */
 	public Number memToPhys(long value)
+	{
+		return (float) memToPhysDouble(value);
+	}
+
+	/**
+	 * convert measurement item from storage format to primitive physical value
+	 *
+	 * @param value raw memory value to be converted
+	 * @return physical value
+	 */
+	@Override
+	public double memToPhysDouble(long value)
 	{
 		updateCnvFromDynamicFactor();
-		float result = ((float) (value + offset) * factor / divider + offsetPhys);
+		double result = (double) (value + offset) * factor / divider + offsetPhys;
 		if (limits != null)
 		{
-			result = (Float) limits.limitedValue(result);
+			Number min = (Number) limits.getMinValue();
+			Number max = (Number) limits.getMaxValue();
+			if (min != null && result < min.doubleValue())
+			{
+				result = min.doubleValue();
+			}
+			else if (max != null && result > max.doubleValue())
+			{
+				result = max.doubleValue();
+			}
 		}
 		return result;
 	}
 
+	/**
+	 * Compile decoder for a data item using this conversion
+	 *
+	 * @param ofs   byte offset within buffer
+	 * @param len   number of bytes (0 = rest of buffer)
+	 * @param shift bit shift of raw value
+	 * @param mask  bit mask of raw value (after shift)
+	 * @return decoder, null if conversion uses a dynamic factor
+	 */
+	LinearDecoder compile(int ofs, int len, int shift, long mask)
+	{
+		if (factMnemonic != null)
+		{
+			return null;
+		}
+		double min = Double.NaN;
+		double max = Double.NaN;
+		if (limits != null)
+		{
+			Number minVal = (Number) limits.getMinValue();
+			Number maxVal = (Number) limits.getMaxValue();
+			if (minVal != null) min = minVal.doubleValue();
+			if (maxVal != null) max = maxVal.doubleValue();
+		}
+		return new LinearDecoder(ofs, len, shift, mask,
+		                         offset, factor, divider, offsetPhys, min, max);
+	}
+
 	/**
 	 * convert measurement item from physical value to raw storage format
 	 *
@@ -0,0 +1,113 @@
+/*
+ * (C) Copyright 2015 by fr3ts0n <erwin.scheuch-heilig@gmx.at>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston,
+ * MA 02111-1307 USA
+ */
+
+package com.fr3ts0n.ecu;
+
+/**
+ * Precompiled decoder of a data item with linear conversion
+ *
+ * Extraction from the telegram buffer (offset, length, bit shift, mask)
+ * and linear conversion (offsets, factor, divider, limits) of one data item
+ * and measurement system are held in constants, so decoding is a short
+ * primitive calculation without virtual calls or boxing.
+ * The result is identical to the generic extraction and
+ * {@link LinearConversion#memToPhysDouble(long)}.
+ *
+ * @author erwin
+ */
+final class LinearDecoder
+{
+	/** byte offset within buffer */
+	final int ofs;
+	/** number of bytes (0 = rest of buffer) */
+	private final int len;
+	/** bit shift of raw value */
+	private final int shift;
+	/** combined bit mask of raw value */
+	private final long mask;
+	/** raw offset */
+	private final long offset;
+	/** conversion factor */
+	private final double factor;
+	/** conversion divider */
+	private final double divider;
+	/** physical offset */
+	private final double offsetPhys;
+	/** physical limits (NaN = no limit) */
+	private final double min;
+	private final double max;
+
+	/**
+	 * Create decoder
+	 *
+	 * @param ofs        byte offset within buffer
+	 * @param len        number of bytes (0 = rest of buffer)
+	 * @param shift      bit shift of raw value
+	 * @param mask       bit mask of raw value (after shift)
+	 * @param offset     raw offset
+	 * @param factor     conversion factor
+	 * @param divider    conversion divider
+	 * @param offsetPhys physical offset
+	 * @param min        min. physical value (NaN = no limit)
+	 * @param max        max. physical value (NaN = no limit)
+	 */
+	LinearDecoder(int ofs, int len, int shift, long mask,
+	              long offset, double factor, double divider, double offsetPhys,
+	              double min, double max)
+	{
+		this.ofs = ofs;
+		this.len = len;
+		this.shift = shift;
+		this.mask = mask;
+		this.offset = offset;
+		this.factor = factor;
+		this.divider = divider;
+		this.offsetPhys = offsetPhys;
+		this.min = min;
+		this.max = max;
+	}
+
+	/**
+	 * Decode physical value from telegram buffer
+	 *
+	 * @param buffer telegram buffer
+	 * @return physical value
+	 * @throws IndexOutOfBoundsException if buffer is too short
+	 */
+	double decode(char[] buffer)
+	{
+		int end = len != 0 ? ofs + len : buffer.length;
+		long value = 0;
+		for (int i = ofs; i < end; i++)
+		{
+			value = (value << 8) | buffer[i];
+		}
+		value = (value >> shift) & mask;
+
+		double result = (double) (value + offset) * factor / divider + offsetPhys;
+		if (result < min)
+		{
+			result = min;
+		}
+		else if (result > max)
+		{
+			result = max;
+		}
+		return result;
+	}
+}
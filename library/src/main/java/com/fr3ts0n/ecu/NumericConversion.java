@@ -75,6 +75,18 @@ public abstract class NumericConversion implements Conversion
 	 */
 	public abstract Number memToPhys(long value);
 
+	/**
+	 * convert measurement item from storage format to primitive physical value
+	 * - Conversions with numeric results should override this to avoid boxing
+	 *
+	 * @param value raw memory value to be converted
+	 * @return physical value
+	 */
+	public double memToPhysDouble(long value)
+	{
+		return memToPhys(value).doubleValue();
+	}
+
 	/**
 	 * convert measurement item from physical value to raw storage format
 	 *
@@ -109,6 +109,7 @@ public class ObdCodeItem extends EcuCodeItem
 		int codeVal = numericCode & 0x3FFF;
 		ProtoHeader.setParamValue(ID_CODE_TYPE, TC_PARAMETERS, buffer, codeTypes.substring(codeType, codeType + 1));
 		ProtoHeader.setParamValue(ID_CODE_VALUE, TC_PARAMETERS, buffer, Integer.valueOf(codeVal));
-		return (new String(buffer));
+		// code digits are zero padded, independent of protocol padding char
+		return (new String(buffer).replace(' ', '0'));
 	}
 }
@@ -18,6 +18,8 @@
 
 package com.fr3ts0n.ecu;
 
+import java.util.List;
+
 /**
  * List of all known OBD failure codes
  * This list is initialized by reading data files 'res/pcodes' and 'res/ucodes'
@@ -54,4 +56,35 @@ public class ObdCodeList
 	{
 		return ObdCodeItem.getPCode(value.intValue());
 	}
+
+	@Override
+	long parseCode(String code)
+	{
+		return ObdCodeItem.getNumericCode(code);
+	}
+
+	/**
+	 * Get all known codes with a code prefix
+	 *
+	 * @param prefix code prefix (e.g. P03 for all P03xx codes)
+	 * @return known codes with this prefix in ascending order
+	 * @throws IllegalArgumentException if prefix is no valid code prefix
+	 */
+	public List<EcuCodeItem> getPrefix(String prefix)
+	{
+		prefix = prefix.toUpperCase();
+		if (prefix.isEmpty() || prefix.length() > 5 || "PCBU".indexOf(prefix.charAt(0)) < 0)
+		{
+			throw new IllegalArgumentException("Code prefix " + prefix);
+		}
+		try
+		{
+			return getRange(ObdCodeItem.getNumericCode((prefix + "0000").substring(0, 5)),
+			                ObdCodeItem.getNumericCode((prefix + "FFFF").substring(0, 5)));
+		}
+		catch (NumberFormatException e)
+		{
+			throw new IllegalArgumentException("Code prefix " + prefix, e);
+		}
+	}
 }
@@ -27,6 +27,7 @@ import com.fr3ts0n.pvs.PvList;
 import org.jfree.data.time.Second;
 import org.jfree.data.time.TimeSeries;
 
+import java.util.Date;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.logging.Level;
@@ -305,7 +306,7 @@ public class ObdDataPanel extends JPanel
 				if ((ts = selPids.get(getPvId(pv))) != null)
 					try
 					{
-						ts.addOrUpdate(new Second(), ((Number)pv.get(EcuDataPv.FID_VALUE)).floatValue());
+						ts.addOrUpdate(new Second(new Date(event.getTime())), ((Number)pv.get(EcuDataPv.FID_VALUE)).floatValue());
 					} catch (Exception e)
 					{
 						ProcessVar.log.log(Level.SEVERE, "", e);
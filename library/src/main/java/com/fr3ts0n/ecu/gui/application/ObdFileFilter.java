@@ -33,6 +33,7 @@ class ObdFileFilter extends FileFilter
 	private static final String[] FLT_EXTENSIONS =
 		{
 			"obd",
+			"obdr",
 		};
 	private static final String FLT_DESCRIPTION = "OBD Files";
 
@@ -21,6 +21,7 @@ package com.fr3ts0n.ecu.gui.application;
 import com.fr3ts0n.common.UTF8Bundle;
 import com.fr3ts0n.common.UTF8Control;
 import com.fr3ts0n.ecu.EcuDataItem;
+import com.fr3ts0n.ecu.EcuDataItems;
 import com.fr3ts0n.ecu.EcuDataPv;
 import com.fr3ts0n.ecu.prot.obd.ElmProt;
 import com.fr3ts0n.ecu.prot.obd.ObdProt;
@@ -28,6 +29,7 @@ import com.fr3ts0n.prot.gui.SerialHandler;
 import com.fr3ts0n.pvs.PvChangeEvent;
 import com.fr3ts0n.pvs.PvChangeListener;
 import com.fr3ts0n.pvs.PvList;
+import com.fr3ts0n.pvs.io.SessionReplay;
 
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
@@ -75,6 +77,8 @@ public class ObdTestFrame extends javax.swing.JFrame
 
 	/** is this a simulation, or the real world? */
 	static boolean isSimulation = false;
+	/** replay of loaded session file */
+	private transient SessionReplay replay;
 
 	/**
 	 * Action listener to handle read/clear code actions
@@ -162,6 +166,11 @@ public class ObdTestFrame extends javax.swing.JFrame
 		miCommInit = new javax.swing.JMenuItem();
 		miCommStart = new javax.swing.JMenuItem();
 		miCommStop = new javax.swing.JMenuItem();
+		miCommMetrics = new javax.swing.JMenuItem();
+		javax.swing.JMenu mnuReplay = new javax.swing.JMenu();
+		miReplayRewind = new javax.swing.JMenuItem();
+		miReplaySkip = new javax.swing.JMenuItem();
+		miReplayFast = new javax.swing.JCheckBoxMenuItem();
 
 		FormListener formListener = new FormListener();
 
@@ -300,8 +309,38 @@ public class ObdTestFrame extends javax.swing.JFrame
 		miCommStop.addActionListener(formListener);
 		mnuComm.add(miCommStop);
 
+		miCommMetrics.setFont(new java.awt.Font("Dialog", 0, 10));
+		miCommMetrics.setMnemonic('T');
+		miCommMetrics.setText("Timing statistics...");
+		miCommMetrics.addActionListener(formListener);
+		mnuComm.add(miCommMetrics);
+
 		mbMain.add(mnuComm);
 
+		mnuReplay.setMnemonic('R');
+		mnuReplay.setText("Replay");
+		mnuReplay.setFont(new java.awt.Font("Dialog", 0, 10));
+
+		miReplayRewind.setFont(new java.awt.Font("Dialog", 0, 10));
+		miReplayRewind.setMnemonic('R');
+		miReplayRewind.setText("Rewind");
+		miReplayRewind.addActionListener(formListener);
+		mnuReplay.add(miReplayRewind);
+
+		miReplaySkip.setFont(new java.awt.Font("Dialog", 0, 10));
+		miReplaySkip.setMnemonic('S');
+		miReplaySkip.setText("Skip 10 s");
+		miReplaySkip.addActionListener(formListener);
+		mnuReplay.add(miReplaySkip);
+
+		miReplayFast.setFont(new java.awt.Font("Dialog", 0, 10));
+		miReplayFast.setMnemonic('F');
+		miReplayFast.setText("Fast forward (x10)");
+		miReplayFast.addActionListener(formListener);
+		mnuReplay.add(miReplayFast);
+
+		mbMain.add(mnuReplay);
+
 		setJMenuBar(mbMain);
 
 		pack();
@@ -338,6 +377,18 @@ public class ObdTestFrame extends javax.swing.JFrame
 			} else if (evt.getSource() == miCommStop)
 			{
 				ObdTestFrame.this.miCommStopActionPerformed();
+			} else if (evt.getSource() == miCommMetrics)
+			{
+				ObdTestFrame.this.miCommMetricsActionPerformed();
+			} else if (evt.getSource() == miReplayRewind)
+			{
+				ObdTestFrame.this.miReplaySeekActionPerformed(false);
+			} else if (evt.getSource() == miReplaySkip)
+			{
+				ObdTestFrame.this.miReplaySeekActionPerformed(true);
+			} else if (evt.getSource() == miReplayFast)
+			{
+				ObdTestFrame.this.miReplayFastActionPerformed();
 			}
 		}
 
@@ -369,6 +420,16 @@ public class ObdTestFrame extends javax.swing.JFrame
 		prt.setService(ElmProt.OBD_SVC_NONE);
 	}//GEN-LAST:event_miCommStopActionPerformed
 
+	private void miCommMetricsActionPerformed()//GEN-FIRST:event_miCommMetricsActionPerformed
+	{//GEN-HEADEREND:event_miCommMetricsActionPerformed
+		javax.swing.JTextArea txtMetrics = new javax.swing.JTextArea(prt.getMetrics().toString());
+		txtMetrics.setFont(new java.awt.Font(java.awt.Font.MONOSPACED, 0, 10));
+		txtMetrics.setEditable(false);
+		javax.swing.JOptionPane.showMessageDialog(this, new javax.swing.JScrollPane(txtMetrics),
+		                                          "Timing statistics",
+		                                          javax.swing.JOptionPane.INFORMATION_MESSAGE);
+	}//GEN-LAST:event_miCommMetricsActionPerformed
+
 	private void miCommStartActionPerformed()//GEN-FIRST:event_miCommStartActionPerformed
 	{//GEN-HEADEREND:event_miCommStartActionPerformed
 		// request OBD service for selected Tab
@@ -424,6 +485,11 @@ public class ObdTestFrame extends javax.swing.JFrame
 			File file = fChoose.getSelectedFile();
 			try
 			{
+				if (file.getName().endsWith(".obdr"))
+				{
+					loadSession(file);
+					return;
+				}
 				FileInputStream in = new FileInputStream(file);
 				ObjectInputStream oIn = new ObjectInputStream(in);
         /* ensure that measurement page is activated
@@ -451,6 +517,88 @@ public class ObdTestFrame extends javax.swing.JFrame
 		}
 	}//GEN-LAST:event_miLoadActionPerformed
 
+	/**
+	 * Load recorded session and start replay into PID data
+	 *
+	 * @param file session file
+	 * @throws IOException if session can't be read
+	 */
+	private void loadSession(File file) throws IOException
+	{
+		if (replay != null)
+		{
+			replay.close();
+		}
+		replay = new SessionReplay(file);
+
+		// set up PVs of recorded data items
+		HashMap<String, EcuDataPv> pvs = new HashMap<String, EcuDataPv>();
+		HashMap<String, EcuDataPv> byName = new HashMap<String, EcuDataPv>();
+		for (String name : replay.getNames())
+		{
+			EcuDataItem item = name != null ? EcuDataItems.byMnemonic.get(name) : null;
+			if (item != null)
+			{
+				pvs.put(item.toString(), item.pv);
+				byName.put(name, item.pv);
+			}
+		}
+		ObdProt.PidPvs = new PvList();
+		ObdProt.PidPvs.putAll(pvs, PvChangeEvent.PV_ADDED, false);
+		panObdData.setPidPvs(ObdProt.PidPvs);
+		replay.bind(byName, EcuDataPv.FIELDS[EcuDataPv.FID_VALUE]);
+		replay.setSpeed(miReplayFast.isSelected() ? 10 : 1);
+		startReplay();
+	}
+
+	/**
+	 * Start playback of loaded session if not running already
+	 */
+	private void startReplay()
+	{
+		if (replay == null || replay.isRunning())
+		{
+			return;
+		}
+		Thread replayTask = new Thread(replay, "SessionReplay");
+		replayTask.setDaemon(true);
+		replayTask.start();
+	}
+
+	/**
+	 * Rewind or skip forward within loaded session
+	 *
+	 * @param skip true = skip forward, false = rewind to session start
+	 */
+	private void miReplaySeekActionPerformed(boolean skip)
+	{
+		if (replay == null)
+		{
+			return;
+		}
+		if (skip)
+		{
+			replay.seek(Math.min(replay.getTime() + 10000, replay.getEndTime()));
+		}
+		else
+		{
+			replay.rewind();
+		}
+		// restart playback which ended at end of session
+		startReplay();
+	}
+
+	/**
+	 * Toggle fast forward of session replay
+	 */
+	private void miReplayFastActionPerformed()
+	{
+		if (replay != null)
+		{
+			replay.setSpeed(miReplayFast.isSelected() ? 10 : 1);
+		}
+	}
+
 	private void cbProtocolActionPerformed()//GEN-FIRST:event_cbProtocolActionPerformed
 	{//GEN-HEADEREND:event_cbProtocolActionPerformed
 		prt.sendCommand(ElmProt.CMD.SETPROTAUTO, cbProtocol.getSelectedIndex());
@@ -616,9 +764,13 @@ public class ObdTestFrame extends javax.swing.JFrame
 	private javax.swing.JLabel lblStatus;
 	private javax.swing.JMenuItem miCommConfigure;
 	private javax.swing.JMenuItem miCommInit;
+	private javax.swing.JMenuItem miCommMetrics;
 	private javax.swing.JMenuItem miCommStart;
 	private javax.swing.JMenuItem miCommStop;
 	private javax.swing.JMenuItem miLoad;
+	private javax.swing.JCheckBoxMenuItem miReplayFast;
+	private javax.swing.JMenuItem miReplayRewind;
+	private javax.swing.JMenuItem miReplaySkip;
 	private javax.swing.JMenuItem miSave;
 	private com.fr3ts0n.ecu.gui.application.ObdDataPanel panCanData;
 	private com.fr3ts0n.ecu.gui.application.ObdDataPanel panObdData;
@@ -0,0 +1,263 @@
+/*
+ * (C) Copyright 2015 by fr3ts0n <erwin.scheuch-heilig@gmx.at>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston,
+ * MA 02111-1307 USA
+ */
+
+package com.fr3ts0n.ecu.prot.obd;
+
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+import java.util.HashSet;
+
+/**
+ * Queue of pending adapter commands of one protocol instance
+ *
+ * Commands are queued with a priority. Commands of higher priority are
+ * always sent first. Within a priority, commands may either be pushed
+ * (sent before all other pending commands of this priority) or added
+ * (sent after them).
+ *
+ * A command which is already pending with the same priority is not
+ * queued again. Commands may be queued with a timeout, after which they
+ * are dropped if not sent yet.
+ * All operations are O(1).
+ *
+ * @author erwin
+ */
+public class CommandQueue
+{
+	/**
+	 * Command priorities (highest first)
+	 */
+	public enum Priority
+	{
+		/** adapter initialisation, configuration and error recovery */
+		INIT,
+		/** user actions (e.g. service selection, reading trouble codes) */
+		USER,
+		/** scheduled polling of data */
+		POLL
+	}
+
+	/**
+	 * A pending command
+	 */
+	public static class Command
+	{
+		/** command string */
+		public final String cmd;
+		/** command priority */
+		public final Priority priority;
+		/** time [ms] after which command is dropped, 0 = never */
+		final long deadline;
+
+		Command(String cmd, Priority priority, long deadline)
+		{
+			this.cmd = cmd;
+			this.priority = priority;
+			this.deadline = deadline;
+		}
+
+		@Override
+		public String toString()
+		{
+			return cmd;
+		}
+	}
+
+	/** pending commands per priority */
+	private final EnumMap<Priority, ArrayDeque<Command>> queues =
+		new EnumMap<Priority, ArrayDeque<Command>>(Priority.class);
+	/** pending command strings per priority (for de-duplication) */
+	private final EnumMap<Priority, HashSet<String>> pending =
+		new EnumMap<Priority, HashSet<String>>(Priority.class);
+	/** total number of pending commands */
+	private int size = 0;
+
+	public CommandQueue()
+	{
+		for (Priority priority : Priority.values())
+		{
+			queues.put(priority, new ArrayDeque<Command>());
+			pending.put(priority, new HashSet<String>());
+		}
+	}
+
+	/**
+	 * Push command to be sent before all pending commands of same priority
+	 *
+	 * @param cmd      command string
+	 * @param priority command priority
+	 * @return true if queued, false if already pending
+	 */
+	public boolean push(String cmd, Priority priority)
+	{
+		return push(cmd, priority, 0);
+	}
+
+	/**
+	 * Push command to be sent before all pending commands of same priority
+	 *
+	 * @param cmd        command string
+	 * @param priority   command priority
+	 * @param timeout_ms time [ms] after which command is dropped if not sent, 0 = never
+	 * @return true if queued, false if already pending
+	 */
+	public synchronized boolean push(String cmd, Priority priority, long timeout_ms)
+	{
+		if (!pending.get(priority).add(cmd))
+		{
+			return false;
+		}
+		queues.get(priority).addFirst(new Command(cmd, priority, getDeadline(timeout_ms)));
+		size++;
+		return true;
+	}
+
+	/**
+	 * Add command to be sent after all pending commands of same priority
+	 *
+	 * @param cmd      command string
+	 * @param priority command priority
+	 * @return true if queued, false if already pending
+	 */
+	public boolean add(String cmd, Priority priority)
+	{
+		return add(cmd, priority, 0);
+	}
+
+	/**
+	 * Add command to be sent after all pending commands of same priority
+	 *
+	 * @param cmd        command string
+	 * @param priority   command priority
+	 * @param timeout_ms time [ms] after which command is dropped if not sent, 0 = never
+	 * @return true if queued, false if already pending
+	 */
+	public synchronized boolean add(String cmd, Priority priority, long timeout_ms)
+	{
+		if (!pending.get(priority).add(cmd))
+		{
+			return false;
+		}
+		queues.get(priority).addLast(new Command(cmd, priority, getDeadline(timeout_ms)));
+		size++;
+		return true;
+	}
+
+	/**
+	 * get deadline for timeout
+	 *
+	 * @param timeout_ms timeout [ms], 0 = never
+	 * @return deadline [ms], 0 = never
+	 */
+	private static long getDeadline(long timeout_ms)
+	{
+		return timeout_ms > 0 ? System.currentTimeMillis() + timeout_ms : 0;
+	}
+
+	/**
+	 * Remove next command to be sent
+	 * - expired commands are dropped
+	 *
+	 * @return next command, null if no command is pending
+	 */
+	public synchronized Command poll()
+	{
+		long now = 0;
+		for (ArrayDeque<Command> queue : queues.values())
+		{
+			Command result;
+			while ((result = queue.pollFirst()) != null)
+			{
+				pending.get(result.priority).remove(result.cmd);
+				size--;
+				if (result.deadline != 0)
+				{
+					if (now == 0)
+					{
+						now = System.currentTimeMillis();
+					}
+					if (now > result.deadline)
+					{
+						continue;
+					}
+				}
+				return result;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return number of pending commands (incl. expired ones)
+	 */
+	public synchronized int size()
+	{
+		return size;
+	}
+
+	/**
+	 * @return true if no command is pending
+	 */
+	public synchronized boolean isEmpty()
+	{
+		return size == 0;
+	}
+
+	/**
+	 * Check if command is pending
+	 *
+	 * @param cmd      command string
+	 * @param priority command priority
+	 * @return true if command is pending with this priority
+	 */
+	public synchronized boolean contains(String cmd, Priority priority)
+	{
+		return pending.get(priority).contains(cmd);
+	}
+
+	/**
+	 * Remove all pending commands
+	 */
+	public synchronized void clear()
+	{
+		for (Priority priority : Priority.values())
+		{
+			queues.get(priority).clear();
+			pending.get(priority).clear();
+		}
+		size = 0;
+	}
+
+	@Override
+	public synchronized String toString()
+	{
+		StringBuilder result = new StringBuilder("[");
+		for (ArrayDeque<Command> queue : queues.values())
+		{
+			for (Command cmd : queue)
+			{
+				if (result.length() > 1)
+				{
+					result.append(", ");
+				}
+				result.append(cmd.priority).append(':').append(cmd.cmd);
+			}
+		}
+		return result.append(']').toString();
+	}
+}
@@ -18,6 +18,8 @@
 
 package com.fr3ts0n.ecu.prot.obd;
 
+import com.fr3ts0n.ecu.EcuDataItems;
+import com.fr3ts0n.prot.PipelineMetrics;
 import com.fr3ts0n.prot.TelegramListener;
 import com.fr3ts0n.prot.TelegramWriter;
 
@@ -52,11 +54,19 @@ public class ElmProt
 	 * property name for protocol status
 	 */
 	public static final String PROP_STATUS = "status";
+	/**
+	 * time [ms] after which a queued polling request is dropped
+	 */
+	private static final long POLL_CMD_TIMEOUT = 2000;
 	
 	/**
-	 * CAN protocol handler
+	 * CAN protocol handler (shared instances)
 	 */
 	public static final CanProtFord canProt = new CanProtFord();
+	/**
+	 * CAN protocol handler of this instance
+	 */
+	private final CanProtFord canHandler;
 	/**
 	 * Adaptive timing handler
 	 */
@@ -70,6 +80,26 @@ public class ElmProt
 	 * remember last command which was sent
 	 */
 	private char[] lastCommand;
+	/**
+	 * time [ns] when last command was sent (0 = no response pending)
+	 */
+	private long lastCommandTime = 0;
+	/**
+	 * PID of last single PID data request (-1 = none)
+	 */
+	private int lastCommandPid = -1;
+	/**
+	 * service of last OBD request (-1 = last command was an ELM command)
+	 */
+	private int lastCommandService = -1;
+	/**
+	 * queue priority of last command (for re-queueing)
+	 */
+	private CommandQueue.Priority lastCommandPriority = CommandQueue.Priority.INIT;
+	/**
+	 * first response line to last OBD request is pending
+	 */
+	private boolean responseLatencyPending = false;
 	
 	/**
 	 * preferred ELM protocol to be selected
@@ -279,6 +309,8 @@ public class ElmProt
 	/**
 	 * Adaptive ELM timing handler
 	 * * optimizes ELM message timeout at runtime
+	 * * SOFTWARE mode sets the timeout from a model of measured response
+	 *   latencies per ECU address and service (see {@link TimingModel})
 	 */
 	public class AdaptiveTiming
 	{
@@ -294,21 +326,21 @@ public class ElmProt
 		 */
 		private static final int ELM_TIMEOUT_DEFAULT = 200;
 		/**
-		 * Learning resolution of ELM Message Timeout [ms]
+		 * Resolution of ELM Message Timeout [ms]
 		 */
 		private static final int ELM_TIMEOUT_RES = 4;
 		/**
 		 * minimum ELM timeout
 		 */
 		int ELM_TIMEOUT_MIN = 12;
-		/**
-		 * minimum ELM timeout (learned from vehicle)
-		 */
-		int ELM_TIMEOUT_LRN_LOW = 12;
 		/**
 		 * ELM message timeout: defaults to approx 200 [ms]
 		 */
 		int elmMsgTimeout = ELM_TIMEOUT_MAX;
+		/**
+		 * response latency model
+		 */
+		private final TimingModel model = new TimingModel();
 		
 		/**
 		 * adaptive timing handling enabled?
@@ -353,6 +385,47 @@ public class ElmProt
 			ELM_TIMEOUT_MIN = elmTimeoutMin;
 		}
 		
+		/**
+		 * Set target of timeout calculation
+		 *
+		 * @param percentile target percentile of response latencies (0 .. 100)
+		 * @param margin     safety margin [ms] added to percentile
+		 */
+		public void setTarget(double percentile, int margin)
+		{
+			model.setTarget(percentile, margin);
+		}
+		
+		/**
+		 * Get learned timeouts (e.g. to be stored per vehicle)
+		 *
+		 * @return learned timeouts of all ECU addresses and services
+		 */
+		public String getLearnedTimeouts()
+		{
+			return model.getLearned();
+		}
+		
+		/**
+		 * Set timeouts learned in a previous session with same vehicle
+		 *
+		 * @param learned learned timeouts as created by {@link #getLearnedTimeouts()}
+		 */
+		public void setLearnedTimeouts(String learned)
+		{
+			model.setLearned(learned);
+		}
+		
+		/**
+		 * Get current ELM message timeout
+		 *
+		 * @return ELM message timeout [ms]
+		 */
+		public int getElmMsgTimeout()
+		{
+			return elmMsgTimeout;
+		}
+		
 		/**
 		 * Initialize timing hadler
 		 */
@@ -360,8 +433,8 @@ public class ElmProt
 		{
 			if (mode == AdaptTimingMode.SOFTWARE)
 			{
-				// ... reset learned minimum timeout ...
-				setElmTimeoutLrnLow(getElmTimeoutMin());
+				// ... forget latencies of previous connection ...
+				model.clearLatencies();
 				// set default timeout
 				setElmMsgTimeout(ELM_TIMEOUT_DEFAULT);
 				// switch OFF ELM internal adaptive timing
@@ -374,55 +447,54 @@ public class ElmProt
 		}
 		
 		/**
-		 * Adapt ELM message timeout
+		 * Response to a request was received
 		 *
-		 * @param increaseTimeout increase/decrease timeout
+		 * @param service    service of request
+		 * @param latency_ms time from request to first response line [ms]
 		 */
-		void adapt(boolean increaseTimeout)
+		void responseReceived(int service, int latency_ms)
 		{
 			if (mode != AdaptTimingMode.SOFTWARE) { return; }
-			if (increaseTimeout)
-			{
-				// increase OBD timeout since we may expect answers too fast
-				if ((elmMsgTimeout + ELM_TIMEOUT_RES) < ELM_TIMEOUT_MAX)
-				{
-					// increase timeout, since we have just timed out
-					setElmMsgTimeout(elmMsgTimeout + ELM_TIMEOUT_RES);
-					// ... and limit MIN timeout for this session
-					setElmTimeoutLrnLow(elmMsgTimeout);
-				}
-			}
-			else
-			{
-				// reduce OBD timeout towards minimum limit
-				if ((elmMsgTimeout - ELM_TIMEOUT_RES) >= getElmTimeoutLrnLow())
-				{
-					setElmMsgTimeout(elmMsgTimeout - ELM_TIMEOUT_RES);
-				}
-				
-			}
+			int key = TimingModel.getKey(selectedEcuAddress, service);
+			model.addLatency(key, latency_ms);
+			update(key);
 		}
 		
 		/**
-		 * LOW Learn value ELM Message Timeout
+		 * Adapt ELM message timeout
 		 *
-		 * @return currently learned timout value [ms]
+		 * @param increaseTimeout request timed out (NO DATA)
 		 */
-		private int getElmTimeoutLrnLow()
+		void adapt(boolean increaseTimeout)
 		{
-			return ELM_TIMEOUT_LRN_LOW;
+			if (mode != AdaptTimingMode.SOFTWARE) { return; }
+			int key = TimingModel.getKey(selectedEcuAddress,
+			                             lastCommandService >= 0 ? lastCommandService : service);
+			if (increaseTimeout)
+			{
+				model.addTimeout(key, elmMsgTimeout, ELM_TIMEOUT_RES);
+			}
+			update(key);
 		}
 		
 		/**
-		 * set LOW Learn value ELM Message Timeout
+		 * set ELM message timeout from latency model
+		 * - timeout is increased immediately, but only reduced by at least
+		 *   two steps to avoid frequent timeout commands
 		 *
-		 * @param elmTimeoutLrnLow new learn value [ms]
+		 * @param key model key of current ECU address and service
 		 */
-		private void setElmTimeoutLrnLow(int elmTimeoutLrnLow)
+		private void update(int key)
 		{
-			log.info(String.format("ELM learn timeout: %d -> %d",
-				ELM_TIMEOUT_LRN_LOW, elmTimeoutLrnLow));
-			ELM_TIMEOUT_LRN_LOW = elmTimeoutLrnLow;
+			int timeout = model.getTimeout(key, ELM_TIMEOUT_DEFAULT);
+			timeout = Math.max(getElmTimeoutMin(), Math.min(ELM_TIMEOUT_MAX, timeout));
+			// round up to timeout resolution
+			timeout = (timeout + ELM_TIMEOUT_RES - 1) / ELM_TIMEOUT_RES * ELM_TIMEOUT_RES;
+			if (timeout > elmMsgTimeout
+			    || timeout <= elmMsgTimeout - 2 * ELM_TIMEOUT_RES)
+			{
+				setElmMsgTimeout(timeout);
+			}
 		}
 		
 		/**
@@ -447,9 +519,32 @@ public class ElmProt
 	
 	/**
 	 * Creates a new instance of ElmProtocol
+	 * - data items, data lists and CAN handler are shared with all other
+	 *   instances created by this constructor
 	 */
 	public ElmProt()
 	{
+		canHandler = canProt;
+	}
+
+	/**
+	 * Creates a new ELM protocol session with own data lists and CAN handler
+	 *
+	 * @param items data items of this session
+	 *              (e.g. new EcuDataItems(ObdProt.dataItems))
+	 */
+	public ElmProt(EcuDataItems items)
+	{
+		super(items);
+		canHandler = new CanProtFord();
+	}
+
+	/**
+	 * @return CAN protocol handler of this instance
+	 */
+	public CanProtFord getCanHandler()
+	{
+		return canHandler;
 	}
 	
 	/**
@@ -527,9 +622,23 @@ public class ElmProt
 	{
 		// now send command
 		String cmd = createCommand(cmdID, param);
-		if (cmd != null) { sendTelegram(cmd.toCharArray()); }
+		if (cmd != null) { sendTelegram(cmd.toCharArray(), CommandQueue.Priority.INIT); }
 	}
 	
+	/**
+	 * Batched requests are only sent with CAN protocols
+	 * - with automatic protocol selection the protocol is not known,
+	 *   so non-CAN vehicles fall back after rejected / unanswered requests
+	 *
+	 * @return true if preferred protocol is automatic or a CAN protocol
+	 */
+	@Override
+	boolean isPidBatchingSupported()
+	{
+		return preferredProtocol == PROT.ELM_PROT_AUTO
+		       || preferredProtocol.ordinal() >= PROT.ELM_PROT_15765_11_F.ordinal();
+	}
+
 	/**
 	 * queue command to ELM command queue
 	 *
@@ -539,17 +648,57 @@ public class ElmProt
 	private void pushCommand(CMD cmdID, int param)
 	{
 		String cmd = createCommand(cmdID, param);
-		if (cmd != null) { cmdQueue.add(cmd); }
+		if (cmd != null) { cmdQueue.push(cmd, CommandQueue.Priority.INIT); }
 	}
 	
 	@Override
-	public void sendTelegram(char[] buffer)
+	protected void sendTelegram(char[] buffer, CommandQueue.Priority priority)
 	{
 		log.fine(this.toString() + " TX:'" + String.valueOf(buffer) + "'");
 		lastCommand = buffer;
-		super.sendTelegram(buffer);
+		lastCommandPid = getDataPid(buffer);
+		lastCommandService = getService(buffer);
+		lastCommandPriority = priority;
+		responseLatencyPending = (lastCommandService >= 0);
+		lastCommandTime = System.nanoTime();
+		metrics.countRequest(cmdQueue.size());
+		super.sendTelegram(buffer, priority);
 	}
 	
+	/**
+	 * get service of an OBD request
+	 *
+	 * @param buffer request telegram
+	 * @return service, -1 if telegram is an ELM command
+	 */
+	private static int getService(char[] buffer)
+	{
+		if (buffer.length < 2)
+		{
+			return -1;
+		}
+		int hi = Character.digit(buffer[0], 16);
+		int lo = Character.digit(buffer[1], 16);
+		return (hi < 0 || lo < 0) ? -1 : (hi << 4) | lo;
+	}
+
+	/**
+	 * get PID of a single PID service 01 request
+	 *
+	 * @param buffer request telegram
+	 * @return PID, -1 if telegram is no single PID data request
+	 */
+	private static int getDataPid(char[] buffer)
+	{
+		if (buffer.length != 4 || buffer[0] != '0' || buffer[1] != '1')
+		{
+			return -1;
+		}
+		int hi = Character.digit(buffer[2], 16);
+		int lo = Character.digit(buffer[3], 16);
+		return (hi < 0 || lo < 0) ? -1 : (hi << 4) | lo;
+	}
+
 	/**
 	 * return numeric ID to given response
 	 *
@@ -608,7 +757,7 @@ public class ElmProt
 		// remember to disable headers again
 		pushCommand(CMD.SETHEADER, 0);
 		// request PIDs (from all devices)
-		cmdQueue.add("0100");
+		cmdQueue.push("0100", CommandQueue.Priority.INIT);
 		// enable headers
 		sendCommand(CMD.SETHEADER, 1);
 	}
@@ -619,13 +768,18 @@ public class ElmProt
 		setStatus(STAT.INITIALIZING);
 		
 		// push custom init commands
-		cmdQueue.addAll(customInitCommands);
+		for (String cmd : customInitCommands)
+		{
+			cmdQueue.push(cmd, CommandQueue.Priority.INIT);
+		}
 		
 		// set to preferred protocol
 		pushCommand(CMD.SETPROT, preferredProtocol.ordinal());
 		
 		// initialize adaptive timing handler
 		mAdaptiveTiming.initialize();
+		// (re-)connected adapter may handle batched requests again
+		resumePidBatching();
 		
 		// speed up protocol by removing spaces and line feeds from output
 		pushCommand(CMD.SETSPACES, 0);
@@ -644,6 +798,60 @@ public class ElmProt
 	 */
 	private boolean responsePending = false;
 	
+	/**
+	 * prompt telegram, handled without copy of receive buffer
+	 */
+	private static final char[] PROMPT_TELEGRAM = {'>'};
+	
+	/**
+	 * handle incoming protocol telegram from a slice of the receive buffer
+	 * - empty lines, echoes of the last command and prompts are handled
+	 *   in place, only response lines are copied for parsing
+	 *
+	 * @param buffer - buffer containing the telegram
+	 * @param offset - offset of telegram within buffer
+	 * @param length - length of telegram
+	 * @return number of listeners notified
+	 */
+	@Override
+	public synchronized int handleTelegram(char[] buffer, int offset, int length)
+	{
+		if (length == 0 || isEcho(buffer, offset, length))
+		{
+			return 0;
+		}
+		if (length == 1 && buffer[offset] == '>')
+		{
+			return handleTelegram(PROMPT_TELEGRAM);
+		}
+		return handleTelegram(Arrays.copyOfRange(buffer, offset, offset + length));
+	}
+	
+	/**
+	 * check if buffer slice is echo of last sent command
+	 *
+	 * @param buffer - buffer containing the telegram
+	 * @param offset - offset of telegram within buffer
+	 * @param length - length of telegram
+	 * @return true if slice equals last sent command (ignoring case)
+	 */
+	private boolean isEcho(char[] buffer, int offset, int length)
+	{
+		String cmd = lastTxMsg;
+		if (cmd.length() != length)
+		{
+			return false;
+		}
+		for (int i = 0; i < length; i++)
+		{
+			if (Character.toUpperCase(cmd.charAt(i)) != Character.toUpperCase(buffer[offset + i]))
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+	
 	/**
 	 * handle incoming protocol telegram
 	 *
@@ -705,7 +913,8 @@ public class ElmProt
 				// remember this as last received message
 				lastRxMsg = bufferStr;
 				// re-queue last command
-				cmdQueue.add(String.valueOf(lastCommand));
+				cmdQueue.push(String.valueOf(lastCommand), lastCommandPriority);
+				metrics.countRetry();
 				break;
 
 			case MODEL:
@@ -714,6 +923,13 @@ public class ElmProt
 			
 			// received a PROMPT, what was the last response?
 			case PROMPT:
+				// request is finished, record round trip time
+				if (lastCommandTime != 0)
+				{
+					metrics.record(PipelineMetrics.Stage.ROUND_TRIP, lastCommandPid,
+					               System.nanoTime() - lastCommandTime);
+					lastCommandTime = 0;
+				}
 				// check for last received message
 				switch (getResponseId(lastRxMsg))
 				{
@@ -728,7 +944,8 @@ public class ElmProt
 					case FBERROR:
 						setStatus(STAT.DISCONNECTED);
 						// re-queue last command
-						cmdQueue.add(String.valueOf(lastCommand));
+						cmdQueue.push(String.valueOf(lastCommand), lastCommandPriority);
+						metrics.countRetry();
 						// queue setting to preferred protocol
 						pushCommand(CMD.SETPROT, preferredProtocol.ordinal());
 						// Initialize adaptive timing
@@ -755,13 +972,19 @@ public class ElmProt
 
 					case NODATA:
 						setStatus(STAT.NODATA);
+						metrics.countNoData();
+						// batched request not answered (maybe just too slow)
+						if (isBatchPending())
+						{
+							batchNotAnswered(lastRxMsg);
+						}
 						// re-queue next data item
 						if (service != OBD_SVC_NONE)
 						{
-							cmdQueue.add(
+							cmdQueue.push(
 								String.valueOf(
-									createTelegram(emptyBuffer, service, getNextSupportedPid()))
-							);
+									createTelegram(emptyBuffer, service, getNextSupportedPid())),
+								CommandQueue.Priority.POLL, POLL_CMD_TIMEOUT);
 						}
 						// increase OBD timeout since we may expect answers too fast
 						mAdaptiveTiming.adapt(true);
@@ -774,7 +997,12 @@ public class ElmProt
 					case STOPPED:
 						// was already handled before prompt
 					case QMARK:
-						// last command stays ignored
+						// batched request rejected -> fall back to single PID requests
+						if (getResponseId(lastRxMsg) == RSP_ID.QMARK && isBatchPending())
+						{
+							suspendPidBatching(lastRxMsg);
+						}
+						// otherwise last command stays ignored
 					
 					case OK:
 					default:
@@ -785,14 +1013,11 @@ public class ElmProt
 						}
 						
 						// queued commands will be sent first
-						if (cmdQueue.size() > 0)
+						CommandQueue.Command cmd = cmdQueue.poll();
+						if (cmd != null)
 						{
-							// get last command
-							String cmd = cmdQueue.lastElement();
-							// and remove it from list
-							cmdQueue.remove(cmd);
 							// send the command
-							sendTelegram(cmd.toCharArray());
+							sendTelegram(cmd.cmd.toCharArray(), cmd.priority);
 						}
 						else
 						{
@@ -822,8 +1047,8 @@ public class ElmProt
 								case OBD_SVC_DATA:
 								case OBD_SVC_FREEZEFRAME:
 								{
-									// otherwise the next PID will be requested
-									writeTelegram(emptyBuffer, service, getNextSupportedPid());
+									// otherwise the next PID(s) will be requested
+									requestNextPids();
 									// reduce OBD timeout towards minimum limit
 									mAdaptiveTiming.adapt(false);
 								}
@@ -839,6 +1064,13 @@ public class ElmProt
 			
 			// handle data response
 			default:
+				// first response line to OBD request, feed timing model
+				if (responseLatencyPending)
+				{
+					responseLatencyPending = false;
+					mAdaptiveTiming.responseReceived(lastCommandService,
+					                                 (int) ((System.nanoTime() - lastCommandTime) / 1000000));
+				}
 				// if we are still initializing check for address entries
 				switch (status)
 				{
@@ -926,7 +1158,9 @@ public class ElmProt
 				int idx = bufferStr.indexOf(':');
 
 				// .. or a ISO multi line response with format SVC PID MSGID DATA...
-				if((idx < 0) && (buffer.length == 14))
+				// (not applicable to batched requests, since these are CAN only,
+				//  see isPidBatchingSupported)
+				if((idx < 0) && (buffer.length == 14) && !isBatchPending())
 				{
 					final int[] dfcServices = {OBD_SVC_READ_CODES, OBD_SVC_PENDINGCODES, OBD_SVC_PERMACODES};
 					int msgService = Integer.valueOf(bufferStr.substring(0, 2), 0x10) & ~0x40;
@@ -1030,7 +1264,7 @@ public class ElmProt
 				break;
 			
 			case OBD_SVC_CAN_MONITOR:
-				result = canProt.handleTelegram(lastRxMsg.toCharArray());
+				result = canHandler.handleTelegram(lastRxMsg.toCharArray());
 				break;
 			
 			default:
@@ -0,0 +1,226 @@
+/*
+ * (C) Copyright 2015 by fr3ts0n <erwin.scheuch-heilig@gmx.at>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston,
+ * MA 02111-1307 USA
+ */
+
+
+package com.fr3ts0n.ecu.prot.obd;
+
+import com.fr3ts0n.ecu.EcuDataItems;
+import com.fr3ts0n.prot.StreamHandler;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Pool of concurrent ELM adapter sessions
+ *
+ * Each session consists of an independent protocol instance (own data
+ * items, data lists, PID scheduler and command queue) and the stream
+ * handler of its adapter. The receive loops of all sessions run on one
+ * shared executor, so N adapters (serial, TCP, UDP streams) communicate
+ * in parallel without sharing any protocol state.
+ *
+ * The RX loop of a session blocks one executor thread while the session
+ * is open, so the executor has to provide a thread per session.
+ *
+ * @author erwin
+ */
+public class ElmSessionPool implements Closeable
+{
+	private static final Logger log = Logger.getLogger("ElmSessionPool");
+
+	/**
+	 * A single adapter session
+	 */
+	public static class Session
+	{
+		/** protocol instance of session */
+		private final ElmProt prot;
+		/** stream handler of adapter */
+		private final StreamHandler handler;
+		/** running RX loop */
+		private Future<?> rxTask;
+
+		Session(ElmProt prot, StreamHandler handler)
+		{
+			this.prot = prot;
+			this.handler = handler;
+		}
+
+		/**
+		 * @return protocol instance of session
+		 */
+		public ElmProt getProt()
+		{
+			return prot;
+		}
+
+		/**
+		 * @return stream handler of adapter
+		 */
+		public StreamHandler getHandler()
+		{
+			return handler;
+		}
+
+		/**
+		 * @return true if RX loop of session is running
+		 */
+		public boolean isActive()
+		{
+			return rxTask != null && !rxTask.isDone();
+		}
+	}
+
+	/** executor to run RX loops on */
+	private final ExecutorService executor;
+	/** executor is owned (and shut down) by this pool */
+	private final boolean ownExecutor;
+	/** open sessions */
+	private final List<Session> sessions = new ArrayList<Session>();
+
+	/**
+	 * Create session pool with own executor
+	 * - one daemon thread is created per open session
+	 */
+	public ElmSessionPool()
+	{
+		this(Executors.newCachedThreadPool(new ThreadFactory()
+		{
+			private int count = 0;
+
+			@Override
+			public synchronized Thread newThread(Runnable r)
+			{
+				Thread thread = new Thread(r, "ElmSession-" + count++);
+				thread.setDaemon(true);
+				return thread;
+			}
+		}), true);
+	}
+
+	/**
+	 * Create session pool on shared executor
+	 *
+	 * @param executor executor to run RX loops on (not shut down by pool)
+	 */
+	public ElmSessionPool(ExecutorService executor)
+	{
+		this(executor, false);
+	}
+
+	private ElmSessionPool(ExecutorService executor, boolean ownExecutor)
+	{
+		this.executor = executor;
+		this.ownExecutor = ownExecutor;
+	}
+
+	/**
+	 * Open session for adapter streams
+	 *
+	 * @param in  stream to receive adapter responses from
+	 * @param out stream to send adapter commands to
+	 * @return the new session
+	 */
+	public Session open(InputStream in, OutputStream out)
+	{
+		return open(new StreamHandler(in, out));
+	}
+
+	/**
+	 * Open session for prepared stream handler
+	 * - protocol is not initialized, use {@link ElmProt#reset()} to start
+	 *   communication with the adapter
+	 *
+	 * @param handler stream handler of adapter (streams already set)
+	 * @return the new session
+	 */
+	public synchronized Session open(StreamHandler handler)
+	{
+		ElmProt prot = new ElmProt(new EcuDataItems(ObdProt.dataItems));
+		handler.setMessageHandler(prot);
+		handler.setMetrics(prot.getMetrics());
+		prot.addTelegramWriter(handler);
+
+		Session session = new Session(prot, handler);
+		session.rxTask = executor.submit(handler);
+		sessions.add(session);
+		log.info(String.format("Session opened (%d sessions)", sessions.size()));
+		return session;
+	}
+
+	/**
+	 * Close session
+	 * - protocol is stopped and RX loop is cancelled
+	 * - adapter streams have to be closed by caller to end blocking reads
+	 *
+	 * @param session session to be closed
+	 */
+	public synchronized void close(Session session)
+	{
+		if (sessions.remove(session))
+		{
+			session.prot.setService(ObdProt.OBD_SVC_NONE);
+			session.prot.removeTelegramWriter(session.handler);
+			session.handler.setMessageHandler(null);
+			session.rxTask.cancel(true);
+			session.handler.close();
+			log.info(String.format("Session closed (%d sessions)", sessions.size()));
+		}
+	}
+
+	/**
+	 * @return copy of currently open sessions
+	 */
+	public synchronized List<Session> getSessions()
+	{
+		return new ArrayList<Session>(sessions);
+	}
+
+	/**
+	 * Close all sessions and shut down own executor
+	 */
+	@Override
+	public synchronized void close()
+	{
+		for (Session session : getSessions())
+		{
+			try
+			{
+				close(session);
+			}
+			catch (RuntimeException ex)
+			{
+				log.log(Level.WARNING, "close", ex);
+			}
+		}
+		if (ownExecutor)
+		{
+			executor.shutdownNow();
+		}
+	}
+}
@@ -28,6 +28,7 @@ import com.fr3ts0n.ecu.EcuDataItems;
 import com.fr3ts0n.ecu.EcuDataPv;
 import com.fr3ts0n.ecu.ObdCodeItem;
 import com.fr3ts0n.ecu.ObdPid;
+import com.fr3ts0n.prot.PipelineMetrics;
 import com.fr3ts0n.prot.ProtoHeader;
 import com.fr3ts0n.prot.TelegramListener;
 import com.fr3ts0n.prot.TelegramWriter;
@@ -36,7 +37,6 @@ import com.fr3ts0n.pvs.PvList;
 
 import java.beans.PropertyChangeEvent;
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.Vector;
 
@@ -81,6 +81,106 @@ public class ObdProt extends ProtoHeader
         this.resetOnNrc = resetOnNrc;
     }
 
+    /**
+     * Is batching of multiple PIDs within one service 01 request enabled?
+     * @return true if batching is enabled
+     */
+    public boolean isPidBatching()
+    {
+        return pidBatching;
+    }
+
+    /** Set protocol parameter
+     * @param pidBatching request multiple PIDs within one service 01 request
+     */
+    public void setPidBatching(boolean pidBatching)
+    {
+        log.info(String.format("PID batching = %b", pidBatching));
+        this.pidBatching = pidBatching;
+        batchSize = 0;
+        resumePidBatching();
+    }
+
+    /**
+     * Get latency and throughput metrics of request/response pipeline
+     * @return pipeline metrics of this protocol
+     */
+    public PipelineMetrics getMetrics()
+    {
+        return metrics;
+    }
+
+    /**
+     * Is PID batching temporarily suspended (fall back to single PID requests)?
+     * @return true if batching is suspended
+     */
+    public boolean isPidBatchingSuspended()
+    {
+        return batchSuspended;
+    }
+
+    /**
+     * Fall back to single PID requests until service is set up again
+     * - PIDs of the pending batch are re-requested one at a time
+     * @param reason reason for fall back (for logging)
+     */
+    void suspendPidBatching(String reason)
+    {
+        log.warning("PID batching suspended: " + reason);
+        batchSuspended = true;
+        for (int i = 0; i < batchSize; i++)
+        {
+            cmdQueue.push(String.valueOf(createTelegram(emptyBuffer, OBD_SVC_DATA, batchPids[i])),
+                          CommandQueue.Priority.POLL);
+        }
+        batchSize = 0;
+        batchNoData = 0;
+    }
+
+    /**
+     * Batched request was not answered (NO DATA)
+     * - batching is suspended after MAX_BATCH_NODATA consecutive occurrences
+     * @param reason reason for fall back (for logging)
+     */
+    void batchNotAnswered(String reason)
+    {
+        if (++batchNoData >= MAX_BATCH_NODATA)
+        {
+            suspendPidBatching(batchNoData + "x " + reason);
+        }
+    }
+
+    /**
+     * Resume suspended PID batching (if enabled)
+     */
+    void resumePidBatching()
+    {
+        if (batchSuspended)
+        {
+            log.info("PID batching resumed");
+        }
+        batchSuspended = false;
+        batchNoData = 0;
+    }
+
+    /**
+     * Can multiple PIDs be requested within one request with current protocol?
+     * @return true if batched requests are supported
+     */
+    boolean isPidBatchingSupported()
+    {
+        return true;
+    }
+
+    /**
+     * Is a batched request with multiple PIDs pending?
+     * @return true if a batched request is pending
+     */
+    boolean isBatchPending()
+    {
+        return batchSize > 1;
+    }
+
     /** negative response codes */
     public enum NRC
     {
@@ -168,22 +268,32 @@ public class ObdProt extends ProtoHeader
     /** property name "number of codes" */
     public static final String PROP_NUM_CODES = "numCodes";
     public static final String PROP_NRC = "NRC";
+    /** property name for vehicle identification number */
+    public static final String PROP_VIN = "VIN";
+    /** vehicle info PID of vehicle identification number */
+    private static final int OBD_VID_VIN = 0x02;
+    /** mnemonic of vehicle identification number data item */
+    private static final String MNEMONIC_VIN = "vehicle_identification_number";
 
     // current supported PID
-    private static int currSupportedPid = 0;
-    static boolean pidsWrapped = false;
+    private int currSupportedPid = 0;
+    boolean pidsWrapped = false;
 
     /** content of last sent message */
-    static String lastTxMsg = "";
+    String lastTxMsg = "";
+    /** queue priority of last sent message */
+    CommandQueue.Priority lastTxPriority = CommandQueue.Priority.USER;
     /** content of last received message */
-    static String lastRxMsg = "";
+    String lastRxMsg = "";
     /** Holds value of property service. */
     int service = OBD_SVC_NONE;
     /** service of last incoming message */
     private int msgService = OBD_SVC_NONE;
 
-    /** List of PIDs supported by the vehicle */
-    private static final Vector<ObdPid> pidSupported = new Vector<ObdPid>();
+    /** List of PIDs supported by the vehicle (shared instances) */
+    private static final Vector<ObdPid> sharedPidSupported = new Vector<ObdPid>();
+    /** Scheduler for cyclic PID requests (shared instances) */
+    private static final PidScheduler sharedPidScheduler = new PidScheduler();
 
     /** positive response fields */
     private static final int ID_OBD_SVC = 0;
@@ -266,21 +376,128 @@ public class ObdProt extends ProtoHeader
     public static PvList tCodes = new PvList();
     /** list of known fault codes */
     private static final EcuCodeList knownCodes = EcuConversions.codeList;
-    /** queue of ELM commands to be sent */
-    static final Vector<String> cmdQueue = new Vector<String>();
+    /** data items of protocol session, null for shared instances */
+    private final EcuDataItems sessionItems;
+    /** data lists of protocol session, null for shared instances */
+    private final PvList sessionPidPvs;
+    private final PvList sessionVidPvs;
+    private final PvList sessionCodes;
+    /** List of PIDs supported by the vehicle */
+    private final Vector<ObdPid> pidSupported;
+    /** Scheduler for cyclic PID requests */
+    protected final PidScheduler pidScheduler;
+    /** queue of adapter commands to be sent */
+    protected final CommandQueue cmdQueue = new CommandQueue();
     /** freeze frame ID to request */
     private int freezeFrame_Id = 0;
     /** perform reset on NRC reception */
     private boolean resetOnNrc = false;
 
-    /** Creates a new instance of ObdProt */
+    /** max. number of PIDs within one batched service 01 request */
+    public static final int MAX_BATCH_PIDS = 6;
+    /** request multiple PIDs within one service 01 request */
+    private boolean pidBatching = false;
+    /** number of consecutive unanswered batch requests before fall back */
+    static final int MAX_BATCH_NODATA = 3;
+    /** batching suspended after rejection / repeated NO DATA */
+    private boolean batchSuspended = false;
+    /** number of consecutive unanswered batch requests */
+    private int batchNoData = 0;
+    /** PIDs of pending batched request */
+    private final int[] batchPids = new int[MAX_BATCH_PIDS];
+    /** number of PIDs in pending request */
+    private int batchSize = 0;
+    /** telegram of pending batched request */
+    private char[] batchRequest = null;
+
+    /** latency and throughput metrics of request/response pipeline */
+    protected final PipelineMetrics metrics = new PipelineMetrics();
+
+    /**
+     * Creates a new instance of ObdProt
+     * - data items, data lists and PID scheduler are shared with all other
+     *   instances created by this constructor
+     */
     ObdProt()
+    {
+        sessionItems = null;
+        sessionPidPvs = null;
+        sessionVidPvs = null;
+        sessionCodes = null;
+        pidSupported = sharedPidSupported;
+        pidScheduler = sharedPidScheduler;
+        init();
+    }
+
+    /**
+     * Creates a new protocol session
+     * - the session uses own data lists and PID scheduler, so multiple sessions
+     *   may communicate with different vehicles concurrently
+     *
+     * @param items data items of this session
+     *              (e.g. new EcuDataItems(ObdProt.dataItems))
+     */
+    ObdProt(EcuDataItems items)
+    {
+        sessionItems = items;
+        sessionPidPvs = new PvList();
+        sessionVidPvs = new PvList();
+        sessionCodes = new PvList();
+        pidSupported = new Vector<ObdPid>();
+        pidScheduler = new PidScheduler();
+        init();
+    }
+
+    /**
+     * initialize protocol data lists
+     */
+    private void init()
     {
         paddingChr = '0';
         // prepare PID PV list
-        PidPvs.put(0, new EcuDataPv());
-        VidPvs.put(0, new EcuDataPv());
-        tCodes.put(0, new ObdCodeItem(0, "No trouble codes set"));
+        getPidPvs().put(0, new EcuDataPv());
+        getVidPvs().put(0, new EcuDataPv());
+        getCodes().put(0, new ObdCodeItem(0, "No trouble codes set"));
+    }
+
+    /**
+     * @return true if this instance is an independent protocol session
+     */
+    public boolean isSession()
+    {
+        return sessionItems != null;
+    }
+
+    /**
+     * @return data items used by this instance
+     */
+    public EcuDataItems getDataItems()
+    {
+        return sessionItems != null ? sessionItems : dataItems;
+    }
+
+    /**
+     * @return OBD data items of this instance
+     */
+    public PvList getPidPvs()
+    {
+        return sessionPidPvs != null ? sessionPidPvs : PidPvs;
+    }
+
+    /**
+     * @return OBD vehicle identification items of this instance
+     */
+    public PvList getVidPvs()
+    {
+        return sessionVidPvs != null ? sessionVidPvs : VidPvs;
+    }
+
+    /**
+     * @return current fault codes of this instance
+     */
+    public PvList getCodes()
+    {
+        return sessionCodes != null ? sessionCodes : tCodes;
     }
 
     /**
@@ -407,12 +624,13 @@ public class ObdProt extends ProtoHeader
     private void preparePidPvs(int obdService, PvList pvList)
     {
         // reset fixed PIDs
-        resetFixedPid();
+        resetFixedPids();
 
+        EcuDataItems ecuItems = getDataItems();
         HashMap<String, EcuDataPv> newList = new HashMap<String, EcuDataPv>();
         for (ObdPid currPid : pidSupported)
         {
-            Vector<EcuDataItem> items = dataItems.getPidDataItems(obdService, currPid.intValue());
+            Vector<EcuDataItem> items = ecuItems.getPidDataItems(obdService, currPid.intValue());
             // if no items defined, create dummy item
             if (items == null)
             {
@@ -425,19 +643,23 @@ public class ObdProt extends ProtoHeader
                                                       String.format("PID %02X", currPid.intValue()),
                                                       String.format("PID_%02X", currPid.intValue())
                                                      );
-                dataItems.appendItemToService(obdService, newItem);
+                ecuItems.appendItemToService(obdService, newItem);
 
                 // re-load data items for this PID
-                items = dataItems.getPidDataItems(obdService, currPid.intValue());
+                items = ecuItems.getPidDataItems(obdService, currPid.intValue());
             }
             // loop through all items found ...
+            long updatePeriod = Long.MAX_VALUE;
             for (EcuDataItem pidPv : items)
             {
                 if (pidPv != null)
                 {
                     newList.put(pidPv.toString(), pidPv.pv);
+                    updatePeriod = Math.min(updatePeriod, pidPv.updatePeriod_ms);
                 }
             }
+            // weight PID by the fastest update period of its items
+            pidScheduler.setPriority(currPid.intValue(), PidScheduler.priorityOf(updatePeriod));
         }
         pvList.putAll(newList, PvChangeEvent.PV_ADDED, false);
     }
@@ -455,7 +677,7 @@ public class ObdProt extends ProtoHeader
         // Clear PID list on initial bitmask (offset 0)
         if( start == 0)
         {
-            pidSupported.clear();
+            clearSupportedPids();
         }
 
         // loop through bits and mark corresponding PIDs as supported
@@ -463,7 +685,9 @@ public class ObdProt extends ProtoHeader
         {
             if ((bitmask & (0x80000000L >> i)) != 0)
             {
-                pidSupported.add(new ObdPid(i + start + 1));
+                ObdPid pid = new ObdPid(i + start + 1);
+                pidSupported.add(pid);
+                pidScheduler.add(pid);
             }
         }
 
@@ -475,7 +699,8 @@ public class ObdProt extends ProtoHeader
         if ((bitmask & 1) != 0)
         {
             // request next block
-            cmdQueue.add(String.format("%02X%02X", obdService, start + 0x20));
+            cmdQueue.push(String.format("%02X%02X", obdService, start + 0x20),
+                          CommandQueue.Priority.USER);
         }
         else
         {
@@ -487,27 +712,73 @@ public class ObdProt extends ProtoHeader
     /** Holds value of property numCodes. */
     private int numCodes;
 
-    /** fixed PIDs to limit PID loop to single access */
-    private static final Vector<ObdPid> fixedPids = new Vector<ObdPid>();
-
     /**
-     * Set fixed PID for faster data update
+     * Set fixed PID for faster data update of shared instances
      * @param pidCodes the fixedPid to set
      */
     public static synchronized void setFixedPid(int[] pidCodes)
     {
-        for (ObdPid currPid : pidSupported)
-        {
-            if (Arrays.binarySearch(pidCodes, currPid.intValue()) >= 0)
-            {
-                fixedPids.add(currPid);
-            }
-        }
+        sharedPidScheduler.setActivePids(pidCodes);
     }
 
     public static synchronized void resetFixedPid()
     {
-        fixedPids.clear();
+        sharedPidScheduler.setActivePids(null);
+    }
+
+    /**
+     * Set fixed PID for faster data update of this instance
+     * @param pidCodes the fixedPid to set
+     */
+    public void setFixedPids(int[] pidCodes)
+    {
+        pidScheduler.setActivePids(pidCodes);
+    }
+
+    /**
+     * Reset fixed PIDs of this instance
+     */
+    public void resetFixedPids()
+    {
+        pidScheduler.setActivePids(null);
+    }
+
+    /**
+     * Get the PID scheduler of this protocol instance
+     * - allows to select the scheduling policy and to query sample rates
+     * @return PID scheduler
+     */
+    public PidScheduler getPidScheduler()
+    {
+        return pidScheduler;
+    }
+
+    /**
+     * Set the policy used to schedule PID requests
+     * @param policy scheduling policy
+     */
+    public void setSchedulingPolicy(PidScheduler.Policy policy)
+    {
+        pidScheduler.setPolicy(policy);
+    }
+
+    /**
+     * Get achieved sample rate of a PID
+     * @param pid PID number
+     * @return averaged sample rate [1/s], 0 if unknown
+     */
+    public float getSampleRate(int pid)
+    {
+        return pidScheduler.getSampleRate(pid);
+    }
+
+    /**
+     * clear list of supported PIDs
+     */
+    private void clearSupportedPids()
+    {
+        pidSupported.clear();
+        pidScheduler.clear();
     }
 
     /**
@@ -517,26 +788,141 @@ public class ObdProt extends ProtoHeader
     synchronized Integer getNextSupportedPid()
     {
         Integer result = 0;
-        /* get corresponding PID list */
-        Vector<ObdPid> pidsToCheck = (fixedPids.size() > 0) ? fixedPids : pidSupported;
-        try
+        synchronized (pidScheduler)
         {
-            /* sort by next expected request */
-            Collections.sort(pidsToCheck, ObdPid.requestSorter);
-            ObdPid pid = pidsToCheck.firstElement();
-            /* detect wrap around in PID list */
-            pidsWrapped = pid.getNextRequest() != 0;
-            /* mark PID as handled */
-            pid.setNextRequest(System.currentTimeMillis());
-            /* and return first list element */
-            result = pid.intValue();
+            PidScheduler.Entry pid = pidScheduler.peek();
+            if (pid != null)
+            {
+                /* detect wrap around in PID list */
+                pidsWrapped = pid.getNextRequest() != 0;
+                /* mark PID as handled */
+                pidScheduler.next(System.currentTimeMillis());
+                result = pid.getPid();
+            }
         }
-        catch(Exception e)
+        return result;
+    }
+
+    /**
+     * Request next PID(s) of current service
+     *
+     * With PID batching enabled, up to MAX_BATCH_PIDS due service 01 PIDs
+     * are requested within one request.
+     */
+    void requestNextPids()
+    {
+        if (!pidBatching || batchSuspended || service != OBD_SVC_DATA
+            || !isPidBatchingSupported())
         {
-            /* ignore */
+            batchSize = 0;
+            writeTelegram(emptyBuffer, service, getNextSupportedPid(), CommandQueue.Priority.POLL);
+            return;
         }
 
-        return result;
+        StringBuilder request = new StringBuilder(2 + 2 * MAX_BATCH_PIDS);
+        request.append(String.format("%02X", service));
+        batchSize = 0;
+        long now = System.currentTimeMillis();
+        synchronized (pidScheduler)
+        {
+            while (batchSize < MAX_BATCH_PIDS)
+            {
+                PidScheduler.Entry next = pidScheduler.peek();
+                // only add PIDs which are due and not yet requested
+                if (next == null
+                    || (batchSize > 0 && next.getNextRequest() > now)
+                    || batchContains(next.getPid()))
+                {
+                    break;
+                }
+                // PIDs with unknown data length can't be de-multiplexed
+                if (getDataItems().getPidDataLength(service, next.getPid()) <= 0
+                    && batchSize > 0)
+                {
+                    break;
+                }
+                int pid = getNextSupportedPid();
+                batchPids[batchSize++] = pid;
+                request.append(String.format("%02X", pid));
+                if (getDataItems().getPidDataLength(service, pid) <= 0)
+                {
+                    break;
+                }
+            }
+        }
+
+        if (batchSize > 1)
+        {
+            batchRequest = request.toString().toCharArray();
+            sendTelegram(batchRequest, CommandQueue.Priority.POLL);
+        }
+        else
+        {
+            writeTelegram(emptyBuffer, service, batchSize > 0 ? batchPids[0] : 0,
+                          CommandQueue.Priority.POLL);
+        }
+    }
+
+    /**
+     * Check if PID is part of pending batched request
+     * @param pid PID to check
+     * @return true if PID is part of pending request
+     */
+    private boolean batchContains(int pid)
+    {
+        for (int i = 0; i < batchSize; i++)
+        {
+            if (batchPids[i] == pid)
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Handle response to batched request
+     * - de-multiplex response into data of the individual PIDs
+     * @param buffer response telegram
+     */
+    private void handleBatchResponse(char[] buffer)
+    {
+        int handled = 0;
+        long now = System.currentTimeMillis();
+        // response data after service ID: PID DATA [PID DATA ...]
+        EcuDataItems ecuItems = getDataItems();
+        char[] payload = hexToBytes(new String(buffer, 2, buffer.length - 2));
+        int ofs = 0;
+        while (ofs < payload.length)
+        {
+            int pid = payload[ofs];
+            int len = ecuItems.getPidDataLength(OBD_SVC_DATA, pid);
+            // stop on unexpected PID, or truncated data (padding)
+            if (!batchContains(pid) || len <= 0 || ofs + 1 + len > payload.length)
+            {
+                break;
+            }
+            char[] data = Arrays.copyOfRange(payload, ofs + 1, ofs + 1 + len);
+            // OBD number of fault codes
+            if (pid == 1)
+            {
+                setNumCodes(data[0]);
+            }
+            long updatePeriod = ecuItems.updateDataItems(OBD_SVC_DATA, pid, data, metrics);
+            /* Update expected request timestamp for PID */
+            pidScheduler.responseReceived(pid, now, updatePeriod);
+            ofs += 1 + len;
+            handled++;
+        }
+
+        if (handled == 0)
+        {
+            suspendPidBatching("unexpected response " + new String(buffer));
+        }
+        else
+        {
+            batchNoData = 0;
+        }
     }
 
     /**
@@ -565,6 +951,12 @@ public class ObdProt extends ProtoHeader
                     int nrcCode = (Integer) getParamValue(ID_NR_CODE, buffer);
                     // get NRC object
                     NRC nrc = NRC.get(nrcCode);
+                    // batched request rejected -> fall back to single PID requests
+                    if (svc == OBD_SVC_DATA && isBatchPending())
+                    {
+                        suspendPidBatching(nrc.toString(svc));
+                        return result;
+                    }
                     // create NRC error message
                     String error = nrc.toString(svc);
                     // log error
@@ -593,7 +985,7 @@ public class ObdProt extends ProtoHeader
     
                         case REPEAT:
                             // Repeat last TX message
-                            sendTelegram(lastTxMsg.toCharArray());
+                            sendTelegram(lastTxMsg.toCharArray(), lastTxPriority);
                             break;
                             
                         case SKIP:
@@ -614,6 +1006,14 @@ public class ObdProt extends ProtoHeader
                     case OBD_SVC_FREEZEFRAME:
                     case OBD_SVC_DATA:
                         msgPid = (Integer) getParamValue(ID_OBD_PID, buffer);
+                        // response to batched request
+                        if (msgService == OBD_SVC_DATA
+                            && isBatchPending()
+                            && batchContains(msgPid))
+                        {
+                            handleBatchResponse(buffer);
+                            break;
+                        }
                         switch (msgPid)
                         {
                             case 0x00:
@@ -628,7 +1028,7 @@ public class ObdProt extends ProtoHeader
                                 int offset = (buffer.length % 4 == 0) ? 4 : 6;
                                 // get payload data and mark the indicated supported PIDs
                                 long msgPayload = Long.valueOf(new String(buffer, offset, 8), 16);
-                                markSupportedPids(msgService, msgPid, msgPayload, PidPvs);
+                                markSupportedPids(msgService, msgPid, msgPayload, getPidPvs());
                                 break;
 
                             // OBD number of fault codes
@@ -640,18 +1040,15 @@ public class ObdProt extends ProtoHeader
                                 // no break here ...
                             default:
                                 long updatePeriod =
-                                    dataItems.updateDataItems(msgService,
+                                    getDataItems().updateDataItems(msgService,
                                                             msgPid,
                                                             hexToBytes(String.valueOf(
-                                                                    getPayLoad(buffer))));
+                                                                    getPayLoad(buffer))),
+                                                            metrics);
                                 /* Update expected request timestamp for PID */
-                                for( ObdPid pid : pidSupported)
-                                {
-                                    if(pid.intValue()==msgPid)
-                                    {
-                                        pid.setNextRequest(System.currentTimeMillis()+updatePeriod);
-                                    }
-                                }
+                                pidScheduler.responseReceived(msgPid,
+                                                              System.currentTimeMillis(),
+                                                              updatePeriod);
                                 break;
                         }
                         break;
@@ -673,22 +1070,23 @@ public class ObdProt extends ProtoHeader
                                 int offset = (buffer.length % 4 == 0) ? 4 : 6;
                                 // get payload data and mark the indicated supported PIDs
                                 long msgPayload = Long.valueOf(new String(buffer, offset, 8), 16);
-                                markSupportedPids(msgService, msgPid, msgPayload, VidPvs);
+                                markSupportedPids(msgService, msgPid, msgPayload, getVidPvs());
                                 break;
 
                             default:
                                 long updatePeriod =
-                                    dataItems.updateDataItems(msgService,
+                                    getDataItems().updateDataItems(msgService,
                                                                 msgPid,
                                                                 hexToBytes(String.valueOf(
                                                                         getPayLoad(buffer))));
                                 /* Update expected request timestamp for PID */
-                                for( ObdPid pid : pidSupported)
+                                pidScheduler.responseReceived(msgPid,
+                                                              System.currentTimeMillis(),
+                                                              updatePeriod);
+                                // notify about vehicle identification
+                                if (msgService == OBD_SVC_VEH_INFO && msgPid == OBD_VID_VIN)
                                 {
-                                    if(pid.intValue()==msgPid)
-                                    {
-                                        pid.setNextRequest(System.currentTimeMillis()+updatePeriod);
-                                    }
+                                    notifyVin();
                                 }
                                 break;
                         }
@@ -732,7 +1130,7 @@ public class ObdProt extends ProtoHeader
                                 log.fine(String.format("+DFC: %04x: %s", key, code.toString()));
                                 // Remember received message service to know code status
                                 code.put(EcuCodeItem.FID_STATUS, Integer.valueOf(msgService));
-                                tCodes.put(key, code);
+                                getCodes().put(key, code);
                                 // if number of codes hasn't been delivered yet ...
                                 if(!hasNumCodes)
                                 {
@@ -743,7 +1141,7 @@ public class ObdProt extends ProtoHeader
                         }
                         if (nCodes == 0)
                         {
-                            tCodes.put(0, new ObdCodeItem(0, Messages.getString(
+                            getCodes().put(0, new ObdCodeItem(0, Messages.getString(
                                     "no.trouble.codes.set")));
                         }
                         break;
@@ -765,16 +1163,46 @@ public class ObdProt extends ProtoHeader
 
     /**
      * Notify all telegram Writers about new telegram
+     * - telegram is sent with USER priority
      * @param buffer - telegram buffer
      */
     @Override
     public void sendTelegram(char[] buffer)
     {
+        sendTelegram(buffer, CommandQueue.Priority.USER);
+    }
+
+    /**
+     * Notify all telegram Writers about new telegram
+     * @param buffer - telegram buffer
+     * @param priority - queue priority of telegram (used if it needs to be re-sent)
+     */
+    protected void sendTelegram(char[] buffer, CommandQueue.Priority priority)
+    {
+        // any other request ends a pending batched request
+        if (buffer != batchRequest)
+        {
+            batchSize = 0;
+            batchRequest = null;
+        }
         // remember last sent message
         lastTxMsg = new String(buffer);
+        lastTxPriority = priority;
         super.sendTelegram(buffer);
     }
 
+    /**
+     * create telegram and send it with specified priority
+     * @param buffer - payload buffer
+     * @param type - OBD service
+     * @param id - PID
+     * @param priority - queue priority of telegram (used if it needs to be re-sent)
+     */
+    void writeTelegram(char[] buffer, int type, Object id, CommandQueue.Priority priority)
+    {
+        sendTelegram(createTelegram(buffer, type, id), priority);
+    }
+
     /**
      * Getter for property numCodes.
      * @return Value of property numCodes.
@@ -798,6 +1226,30 @@ public class ObdProt extends ProtoHeader
                                                    Integer.valueOf(numCodes)));
     }
 
+    /**
+     * notify listeners about received vehicle identification number
+     */
+    private void notifyVin()
+    {
+        Object vin = null;
+        Vector<EcuDataItem> items = getDataItems().getPidDataItems(OBD_SVC_VEH_INFO, OBD_VID_VIN);
+        if (items != null)
+        {
+            for (EcuDataItem item : items)
+            {
+                if (MNEMONIC_VIN.equals(item.pv.get(EcuDataPv.FID_MNEMONIC)))
+                {
+                    vin = item.pv.get(EcuDataPv.FID_VALUE);
+                }
+            }
+        }
+        if (vin != null)
+        {
+            firePropertyChange(new PropertyChangeEvent(this, PROP_VIN, null,
+                                                       String.valueOf(vin).trim()));
+        }
+    }
+
     /**
      * Getter for property service.
      * @return Value of property service.
@@ -817,13 +1269,13 @@ public class ObdProt extends ProtoHeader
         // clear command queue
         cmdQueue.clear();
         // clear supported PIDs
-        pidSupported.clear();
+        clearSupportedPids();
         // reset fixed PIDs
-        resetFixedPid();
+        resetFixedPids();
         // Clear data items
-        PidPvs.clear();
-        tCodes.clear();
-        VidPvs.clear();
+        getPidPvs().clear();
+        getCodes().clear();
+        getVidPvs().clear();
     }
 
     /**
@@ -838,21 +1290,21 @@ public class ObdProt extends ProtoHeader
             case OBD_SVC_DATA:
             case OBD_SVC_FREEZEFRAME:
                 // Clear data items
-                pidSupported.clear();
-                PidPvs.clear();
+                clearSupportedPids();
+                getPidPvs().clear();
                 break;
 
             case OBD_SVC_READ_CODES:
             case OBD_SVC_PENDINGCODES:
             case OBD_SVC_PERMACODES:
-                tCodes.clear();
+                getCodes().clear();
                 break;
 
             case OBD_SVC_VEH_INFO:
             case OBD_SVC_CTRL_MODE:
                 // Clear data items
-                pidSupported.clear();
-                VidPvs.clear();
+                clearSupportedPids();
+                getVidPvs().clear();
                 break;
         }
     }
@@ -867,6 +1319,8 @@ public class ObdProt extends ProtoHeader
     {
         this.service = obdService;
         pidsWrapped = false;
+        batchSize = 0;
+        resumePidBatching();
         // if lists shall be cleared
         if (clearLists)
         {
@@ -895,9 +1349,9 @@ public class ObdProt extends ProtoHeader
             case OBD_SVC_PERMACODES:
                 numCodes = 0;
                 // Queue requests for reading all trouble codes
-                cmdQueue.add(String.format("%02X", OBD_SVC_READ_CODES, 0));
-                cmdQueue.add(String.format("%02X", OBD_SVC_PENDINGCODES, 0));
-                cmdQueue.add(String.format("%02X", OBD_SVC_PERMACODES, 0));
+                cmdQueue.push(String.format("%02X", OBD_SVC_READ_CODES), CommandQueue.Priority.USER);
+                cmdQueue.push(String.format("%02X", OBD_SVC_PENDINGCODES), CommandQueue.Priority.USER);
+                cmdQueue.push(String.format("%02X", OBD_SVC_PERMACODES), CommandQueue.Priority.USER);
                 // read PID number of codes ...
                 writeTelegram(emptyBuffer, OBD_SVC_DATA, 1);
                 break;
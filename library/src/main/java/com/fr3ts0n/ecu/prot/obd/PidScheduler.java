@@ -0,0 +1,513 @@
+/*
+ * (C) Copyright 2015 by fr3ts0n <erwin.scheuch-heilig@gmx.at>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston,
+ * MA 02111-1307 USA
+ */
+
+package com.fr3ts0n.ecu.prot.obd;
+
+import com.fr3ts0n.ecu.ObdPid;
+
+import java.util.Arrays;
+import java.util.logging.Logger;
+
+/**
+ * Scheduler for cyclic PID requests
+ *
+ * All active PIDs are kept in a binary heap which is ordered by the
+ * scheduling key (ObdPid.getNextRequest()), ties are resolved in order of
+ * the last key update. Selecting the next PID and processing a response
+ * are both O(log n).
+ *
+ * The scheduling keys are calculated by a pluggable {@link Policy}.
+ *
+ * @author erwin
+ */
+public class PidScheduler
+{
+	/** max. number of PIDs per service */
+	private static final int MAX_PIDS = 0x100;
+	/** weight of new sample interval for sample rate averaging */
+	private static final float RATE_FILTER = 0.2f;
+	/** nominal request period of a PID with priority 1 [ms] */
+	public static final long BASE_PERIOD = 1000;
+	/** max. scheduling priority, used for PIDs without update period limit */
+	public static final int MAX_PRIORITY = 10;
+
+	private static final Logger log = Logger.getLogger("data.scheduler");
+
+	/**
+	 * Scheduling policy
+	 * - calculates scheduling key of a PID on request and on response
+	 */
+	public interface Policy
+	{
+		/**
+		 * Calculate new scheduling key when PID gets requested
+		 *
+		 * @param pid  PID to be requested
+		 * @param now  current time [ms]
+		 * @return new scheduling key
+		 */
+		long onRequest(Entry pid, long now);
+
+		/**
+		 * Calculate new scheduling key when PID response is received
+		 *
+		 * @param pid          PID which was received
+		 * @param now          current time [ms]
+		 * @param updatePeriod min. update period of the PID data items [ms]
+		 * @return new scheduling key
+		 */
+		long onResponse(Entry pid, long now, long updatePeriod);
+	}
+
+	/**
+	 * Built-in scheduling policies
+	 */
+	public enum Policies implements Policy
+	{
+		/** Request all PIDs in turn, ignoring update periods */
+		ROUND_ROBIN
+			{
+				@Override
+				public long onRequest(Entry pid, long now)
+				{
+					return now;
+				}
+
+				@Override
+				public long onResponse(Entry pid, long now, long updatePeriod)
+				{
+					return pid.getNextRequest();
+				}
+			},
+
+		/** Request PID with earliest deadline (last response + update period) */
+		DEADLINE
+			{
+				@Override
+				public long onRequest(Entry pid, long now)
+				{
+					return now;
+				}
+
+				@Override
+				public long onResponse(Entry pid, long now, long updatePeriod)
+				{
+					return now + updatePeriod;
+				}
+			},
+
+		/**
+		 * Request PIDs proportional to their priority
+		 * (a PID with priority 2 is requested twice as often as one with priority 1)
+		 * while still honoring the update periods
+		 */
+		WEIGHTED
+			{
+				@Override
+				public long onRequest(Entry pid, long now)
+				{
+					return Math.max(pid.getNextRequest(), now) + BASE_PERIOD / pid.getPriority();
+				}
+
+				@Override
+				public long onResponse(Entry pid, long now, long updatePeriod)
+				{
+					return Math.max(pid.getNextRequest(), now + updatePeriod);
+				}
+			}
+	}
+
+	/**
+	 * Scheduling entry of a single PID
+	 */
+	public static class Entry
+	{
+		/** the PID */
+		final ObdPid pid;
+		/** position in heap, -1 if not active */
+		private int heapIdx = -1;
+		/** sequence number of last key update (tie breaker) */
+		private long seq;
+		/** scheduling priority (weight) */
+		private int priority = 1;
+		/** time of last response [ms] */
+		private long lastResponse = 0;
+		/** number of responses */
+		private long numResponses = 0;
+		/** averaged sample interval [ms] */
+		private float avgInterval = 0;
+
+		Entry(ObdPid pid)
+		{
+			this.pid = pid;
+		}
+
+		/** @return PID number */
+		public int getPid()
+		{
+			return pid.intValue();
+		}
+
+		/** @return current scheduling key */
+		public long getNextRequest()
+		{
+			return pid.getNextRequest();
+		}
+
+		/** @return scheduling priority */
+		public int getPriority()
+		{
+			return priority;
+		}
+
+		/** @return number of responses received */
+		public long getNumResponses()
+		{
+			return numResponses;
+		}
+
+		/** @return achieved sample rate [1/s] */
+		public float getSampleRate()
+		{
+			return avgInterval > 0 ? 1000f / avgInterval : 0f;
+		}
+	}
+
+	/** entries by PID number */
+	private final Entry[] entries = new Entry[MAX_PIDS];
+	/** heap of active entries */
+	private Entry[] heap = new Entry[MAX_PIDS];
+	/** number of active entries */
+	private int size = 0;
+	/** sequence counter for key updates */
+	private long seqCounter = 0;
+	/** active scheduling policy */
+	private Policy policy = Policies.DEADLINE;
+	/** PIDs to be scheduled exclusively, null = all PIDs */
+	private int[] activePids = null;
+	/** none of the active PIDs is known, so all PIDs are scheduled */
+	private boolean activeFallback = false;
+
+	/**
+	 * Set scheduling policy
+	 *
+	 * @param policy new scheduling policy
+	 */
+	public synchronized void setPolicy(Policy policy)
+	{
+		log.info(String.format("Scheduling policy: %s -> %s", this.policy, policy));
+		this.policy = policy;
+	}
+
+	/**
+	 * @return current scheduling policy
+	 */
+	public synchronized Policy getPolicy()
+	{
+		return policy;
+	}
+
+	/**
+	 * Remove all PIDs from scheduler
+	 * - the set of active PIDs is kept for PIDs added later
+	 */
+	public synchronized void clear()
+	{
+		Arrays.fill(entries, null);
+		Arrays.fill(heap, null);
+		size = 0;
+		activeFallback = (activePids != null);
+	}
+
+	/**
+	 * Add PID to scheduler
+	 * - the PID is only activated if allowed by {@link #setActivePids(int[])}
+	 *
+	 * @param pid PID to be added
+	 */
+	public synchronized void add(ObdPid pid)
+	{
+		int pidNum = pid.intValue() & (MAX_PIDS - 1);
+		Entry entry = entries[pidNum];
+		if (entry == null || entry.pid != pid)
+		{
+			// replace previous entry of same PID
+			if (entry != null && entry.heapIdx >= 0)
+			{
+				removeAt(entry.heapIdx);
+			}
+			entry = new Entry(pid);
+			entries[pidNum] = entry;
+		}
+		if (activeFallback && contains(activePids, entry.getPid()))
+		{
+			// first of the active PIDs is known -> schedule active PIDs only
+			setActivePids(activePids);
+		}
+		else if (entry.heapIdx < 0
+		         && (activePids == null || activeFallback || contains(activePids, entry.getPid())))
+		{
+			entry.seq = seqCounter++;
+			insert(entry);
+		}
+	}
+
+	/**
+	 * Limit scheduling to a set of PIDs
+	 * - If none of the specified PIDs is known, all known PIDs are scheduled
+	 *
+	 * @param pidCodes PIDs to be scheduled exclusively, null/empty to schedule all known PIDs
+	 */
+	public synchronized void setActivePids(int[] pidCodes)
+	{
+		activePids = (pidCodes == null || pidCodes.length == 0) ? null : pidCodes.clone();
+		activeFallback = false;
+		Arrays.fill(heap, null);
+		size = 0;
+		for (Entry entry : entries)
+		{
+			if (entry != null)
+			{
+				entry.heapIdx = -1;
+				if (activePids == null || contains(activePids, entry.getPid()))
+				{
+					insert(entry);
+				}
+			}
+		}
+		// no matching PIDs -> schedule all PIDs
+		if (size == 0 && activePids != null)
+		{
+			activeFallback = true;
+			for (Entry entry : entries)
+			{
+				if (entry != null)
+				{
+					insert(entry);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return number of actively scheduled PIDs
+	 */
+	public synchronized int size()
+	{
+		return size;
+	}
+
+	/**
+	 * Set scheduling priority of a PID (used by WEIGHTED policy)
+	 *
+	 * @param pid      PID number
+	 * @param priority scheduling priority (weight) &gt;= 1
+	 */
+	public synchronized void setPriority(int pid, int priority)
+	{
+		Entry entry = entries[pid & (MAX_PIDS - 1)];
+		if (entry != null)
+		{
+			entry.priority = Math.max(1, priority);
+		}
+	}
+
+	/**
+	 * Get scheduling priority matching a minimum update period
+	 *
+	 * @param updatePeriod minimum update period [ms], 0 if unlimited
+	 * @return priority to request the PID at the given period (1 ... MAX_PRIORITY)
+	 */
+	public static int priorityOf(long updatePeriod)
+	{
+		if (updatePeriod <= 0)
+		{
+			return MAX_PRIORITY;
+		}
+		return (int) Math.max(1, Math.min(MAX_PRIORITY, BASE_PERIOD / updatePeriod));
+	}
+
+	/**
+	 * Get entry of next PID to be requested without re-scheduling it
+	 *
+	 * @return entry of next PID, or null if no PID is active
+	 */
+	public synchronized Entry peek()
+	{
+		return size > 0 ? heap[0] : null;
+	}
+
+	/**
+	 * Get entry of next PID to be requested and re-schedule it
+	 *
+	 * @param now current time [ms]
+	 * @return entry of next PID, or null if no PID is active
+	 */
+	public synchronized Entry next(long now)
+	{
+		if (size == 0)
+		{
+			return null;
+		}
+		Entry entry = heap[0];
+		updateKey(entry, policy.onRequest(entry, now));
+		return entry;
+	}
+
+	/**
+	 * Notify reception of PID response
+	 *
+	 * @param pid          PID number
+	 * @param now          current time [ms]
+	 * @param updatePeriod min. update period of the PID data items [ms]
+	 */
+	public synchronized void responseReceived(int pid, long now, long updatePeriod)
+	{
+		Entry entry = entries[pid & (MAX_PIDS - 1)];
+		if (entry == null)
+		{
+			return;
+		}
+
+		// update sample rate statistics
+		if (entry.numResponses > 0)
+		{
+			long interval = now - entry.lastResponse;
+			entry.avgInterval = (entry.avgInterval == 0)
+			                    ? interval
+			                    : entry.avgInterval + RATE_FILTER * (interval - entry.avgInterval);
+		}
+		entry.lastResponse = now;
+		entry.numResponses++;
+
+		if (entry.heapIdx >= 0)
+		{
+			updateKey(entry, policy.onResponse(entry, now, updatePeriod));
+		}
+	}
+
+	/**
+	 * Get achieved sample rate of a PID
+	 *
+	 * @param pid PID number
+	 * @return averaged sample rate [1/s], 0 if unknown
+	 */
+	public synchronized float getSampleRate(int pid)
+	{
+		Entry entry = entries[pid & (MAX_PIDS - 1)];
+		return entry != null ? entry.getSampleRate() : 0f;
+	}
+
+	private static boolean contains(int[] values, int value)
+	{
+		for (int v : values)
+		{
+			if (v == value)
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/*
+	 * binary heap handling
+	 */
+
+	private static boolean less(Entry a, Entry b)
+	{
+		long ka = a.getNextRequest();
+		long kb = b.getNextRequest();
+		return ka < kb || (ka == kb && a.seq < b.seq);
+	}
+
+	private void updateKey(Entry entry, long key)
+	{
+		entry.pid.setNextRequest(key);
+		entry.seq = seqCounter++;
+		siftDown(siftUp(entry.heapIdx));
+	}
+
+	private void insert(Entry entry)
+	{
+		if (size == heap.length)
+		{
+			heap = Arrays.copyOf(heap, size * 2);
+		}
+		heap[size] = entry;
+		entry.heapIdx = size++;
+		siftUp(entry.heapIdx);
+	}
+
+	private void removeAt(int idx)
+	{
+		Entry removed = heap[idx];
+		removed.heapIdx = -1;
+		size--;
+		if (idx != size)
+		{
+			heap[idx] = heap[size];
+			heap[idx].heapIdx = idx;
+			siftDown(siftUp(idx));
+		}
+		heap[size] = null;
+	}
+
+	private int siftUp(int idx)
+	{
+		Entry entry = heap[idx];
+		while (idx > 0)
+		{
+			int parent = (idx - 1) >> 1;
+			if (!less(entry, heap[parent]))
+			{
+				break;
+			}
+			heap[idx] = heap[parent];
+			heap[idx].heapIdx = idx;
+			idx = parent;
+		}
+		heap[idx] = entry;
+		entry.heapIdx = idx;
+		return idx;
+	}
+
+	private void siftDown(int idx)
+	{
+		Entry entry = heap[idx];
+		int half = size >> 1;
+		while (idx < half)
+		{
+			int child = (idx << 1) + 1;
+			int right = child + 1;
+			if (right < size && less(heap[right], heap[child]))
+			{
+				child = right;
+			}
+			if (!less(heap[child], entry))
+			{
+				break;
+			}
+			heap[idx] = heap[child];
+			heap[idx].heapIdx = idx;
+			idx = child;
+		}
+		heap[idx] = entry;
+		entry.heapIdx = idx;
+	}
+}
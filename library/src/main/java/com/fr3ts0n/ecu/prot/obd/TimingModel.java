@@ -0,0 +1,238 @@
+/*
+ * (C) Copyright 2015 by fr3ts0n <erwin.scheuch-heilig@gmx.at>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston,
+ * MA 02111-1307 USA
+ */
+
+package com.fr3ts0n.ecu.prot.obd;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Response latency model for adaptive ELM timing
+ *
+ * For each ECU address and service the latencies of the most recent
+ * responses are kept. The message timeout is set to a target percentile
+ * of these latencies plus a safety margin. Requests which were not
+ * answered within the timeout are counted as censored samples: the
+ * response would have taken at least the expired timeout plus one
+ * timeout step, so consecutive missing responses raise the timeout in
+ * bounded steps.
+ *
+ * Timeouts learned in previous sessions are used until enough latencies
+ * have been measured in the current session.
+ *
+ * @author erwin
+ */
+class TimingModel
+{
+	/** number of recent latencies per key */
+	static final int WINDOW = 32;
+	/** min. number of latencies for timeout calculation */
+	static final int MIN_SAMPLES = 4;
+
+	private static final Logger log = Logger.getLogger("prot.timing");
+
+	/**
+	 * latency statistics of one ECU address and service
+	 */
+	private static class Entry
+	{
+		/** ring of recent latencies [ms] */
+		final int[] samples = new int[WINDOW];
+		/** number of valid samples */
+		int count = 0;
+		/** next sample position */
+		int pos = 0;
+		/** timeout learned in this or previous sessions [ms], 0 = none */
+		int learned = 0;
+	}
+
+	/** latency statistics by key */
+	private final HashMap<Integer, Entry> entries = new HashMap<Integer, Entry>();
+	/** target percentile of latencies */
+	private double percentile = 95.0;
+	/** safety margin [ms] added to percentile */
+	private int margin = 8;
+
+	/**
+	 * get model key for ECU address and service
+	 *
+	 * @param ecuAddress ECU address (0 = any)
+	 * @param service    OBD service
+	 * @return model key
+	 */
+	static int getKey(int ecuAddress, int service)
+	{
+		return (ecuAddress << 8) | (service & 0xFF);
+	}
+
+	/**
+	 * get entry for key, create if not existing
+	 *
+	 * @param key model key
+	 * @return entry for key
+	 */
+	private Entry getEntry(int key)
+	{
+		Entry result = entries.get(key);
+		if (result == null)
+		{
+			result = new Entry();
+			entries.put(key, result);
+		}
+		return result;
+	}
+
+	/**
+	 * Add measured response latency
+	 *
+	 * @param key        model key
+	 * @param latency_ms response latency [ms]
+	 */
+	synchronized void addLatency(int key, int latency_ms)
+	{
+		Entry entry = getEntry(key);
+		entry.samples[entry.pos] = Math.max(0, latency_ms);
+		entry.pos = (entry.pos + 1) % WINDOW;
+		entry.count = Math.min(WINDOW, entry.count + 1);
+	}
+
+	/**
+	 * Add request which was not answered within timeout
+	 * - the unknown latency is recorded as its lower bound
+	 *
+	 * @param key        model key
+	 * @param timeout_ms timeout which expired [ms]
+	 * @param step_ms    resolution of timeout [ms]
+	 */
+	synchronized void addTimeout(int key, int timeout_ms, int step_ms)
+	{
+		addLatency(key, timeout_ms + step_ms);
+	}
+
+	/**
+	 * Get timeout for key
+	 *
+	 * @param key     model key
+	 * @param dfltVal timeout to be used if nothing is known yet [ms]
+	 * @return timeout [ms]
+	 */
+	synchronized int getTimeout(int key, int dfltVal)
+	{
+		Entry entry = entries.get(key);
+		if (entry == null)
+		{
+			return dfltVal;
+		}
+		if (entry.count >= MIN_SAMPLES)
+		{
+			int[] sorted = Arrays.copyOf(entry.samples, entry.count);
+			Arrays.sort(sorted);
+			int idx = (int) Math.ceil(entry.count * percentile / 100.0) - 1;
+			entry.learned = sorted[Math.max(0, Math.min(idx, entry.count - 1))] + margin;
+		}
+		return entry.learned > 0 ? entry.learned : dfltVal;
+	}
+
+	/**
+	 * Forget latencies of current session, keep learned timeouts
+	 */
+	synchronized void clearLatencies()
+	{
+		for (Entry entry : entries.values())
+		{
+			entry.count = 0;
+			entry.pos = 0;
+		}
+	}
+
+	/**
+	 * Set target percentile and safety margin
+	 *
+	 * @param percentile target percentile of latencies (0 .. 100)
+	 * @param margin     safety margin [ms]
+	 */
+	synchronized void setTarget(double percentile, int margin)
+	{
+		this.percentile = Math.max(0, Math.min(100, percentile));
+		this.margin = Math.max(0, margin);
+	}
+
+	/**
+	 * Get learned timeouts for persistence
+	 *
+	 * @return learned timeouts as "key=timeout" list (key in hex, ';' separated)
+	 */
+	synchronized String getLearned()
+	{
+		StringBuilder result = new StringBuilder();
+		for (Map.Entry<Integer, Entry> entry : entries.entrySet())
+		{
+			int timeout = getTimeout(entry.getKey(), 0);
+			if (timeout > 0)
+			{
+				if (result.length() > 0)
+				{
+					result.append(';');
+				}
+				result.append(Integer.toHexString(entry.getKey()).toUpperCase())
+				      .append('=')
+				      .append(timeout);
+			}
+		}
+		return result.toString();
+	}
+
+	/**
+	 * Set learned timeouts from previous sessions
+	 * - previously learned timeouts are replaced
+	 * - latencies of current session are kept
+	 *
+	 * @param learned learned timeouts as created by {@link #getLearned()},
+	 *                null = nothing learned yet
+	 */
+	synchronized void setLearned(String learned)
+	{
+		for (Entry entry : entries.values())
+		{
+			entry.learned = 0;
+		}
+		if (learned == null)
+		{
+			return;
+		}
+		for (String item : learned.split(";"))
+		{
+			String[] keyVal = item.split("=");
+			if (keyVal.length != 2)
+			{
+				continue;
+			}
+			try
+			{
+				int key = (int) Long.parseLong(keyVal[0].trim(), 16);
+				getEntry(key).learned = Integer.parseInt(keyVal[1].trim());
+			}
+			catch (NumberFormatException ex)
+			{
+				log.warning("Invalid learned timeout: " + item);
+			}
+		}
+	}
+}
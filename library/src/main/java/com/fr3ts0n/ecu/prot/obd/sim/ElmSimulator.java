@@ -0,0 +1,976 @@
+/*
+ * (C) Copyright 2015 by fr3ts0n <erwin.scheuch-heilig@gmx.at>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston,
+ * MA 02111-1307 USA
+ */
+
+package com.fr3ts0n.ecu.prot.obd.sim;
+
+import com.fr3ts0n.ecu.prot.obd.ElmProt;
+import com.fr3ts0n.prot.StreamHandler;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Headless ELM327 adapter simulator
+ *
+ * Emulates an ELM327 adapter with a vehicle defined by a {@link VehicleProfile}.
+ * Commands are read from an input stream and responses are written to an
+ * output stream, so the simulator may be connected to a StreamHandler
+ * via piped streams, or to any client via a (loopback) TCP socket.
+ *
+ * Supported are the AT commands used by ElmProt, service 01 single and
+ * multi PID requests, freeze frames, VIN and trouble code services with
+ * CAN and ISO/J1850 response formats, as well as injection of
+ * NO DATA / BUFFER FULL errors.
+ *
+ * @author erwin
+ */
+public class ElmSimulator implements Runnable
+{
+	/** default TCP port (as used by WiFi adapters) */
+	public static final int DEFAULT_PORT = 35000;
+	/** max. number of PIDs within one request */
+	private static final int MAX_PIDS = 6;
+	/** max. data bytes of a single CAN frame */
+	private static final int CAN_FRAME_DATA = 7;
+	/** max. data bytes of a single ISO/J1850 message */
+	private static final int ISO_MSG_DATA = 7;
+	/** size of piped stream buffers */
+	private static final int PIPE_SIZE = 4096;
+	/** AT commands which are acknowledged without further action */
+	private static final String[] AT_OK_COMMANDS =
+		{
+			"PC", "AT", "ST", "SH", "CRA", "CAF", "CFC", "CF", "CM", "AL", "NL",
+			"R0", "R1", "LP", "SW", "WM", "IIA", "IB", "M0", "M1", "AR", "FC",
+		};
+	private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+	private static final Logger log = Logger.getLogger("sim.elm");
+
+	/** simulated vehicle */
+	private final VehicleProfile profile;
+	/** random generator for error injection */
+	private final Random random;
+	/** trouble codes (may be cleared by service 04) */
+	private final List<Integer> storedCodes;
+	private final List<Integer> pendingCodes;
+	private final List<Integer> permanentCodes;
+	/** value index of each PID for cycling values */
+	private final int[] pidCycle = new int[0x100];
+
+	/** command / response streams */
+	private InputStream in;
+	private OutputStream out;
+
+	/** adapter settings */
+	private boolean echo;
+	private boolean linefeeds;
+	private boolean spaces;
+	private boolean headers;
+	private int selectedProtocol;
+	private boolean searching;
+	private String lastCommand = "";
+
+	/** response assembly */
+	private final StringBuilder rsp = new StringBuilder(512);
+	private final ArrayList<byte[]> messages = new ArrayList<byte[]>();
+	private final byte[] payload = new byte[0x100];
+	private byte[] txBuffer = new byte[512];
+
+	/** statistics */
+	private volatile long numRequests = 0;
+	private volatile long numErrors = 0;
+
+	/**
+	 * Create simulator for vehicle
+	 *
+	 * @param profile simulated vehicle
+	 */
+	public ElmSimulator(VehicleProfile profile)
+	{
+		this.profile = profile;
+		random = new Random(profile.getRandomSeed());
+		storedCodes = new ArrayList<Integer>(profile.getStoredCodes());
+		pendingCodes = new ArrayList<Integer>(profile.getPendingCodes());
+		permanentCodes = new ArrayList<Integer>(profile.getPermanentCodes());
+		reset();
+	}
+
+	/**
+	 * Create simulator for vehicle with command/response streams
+	 *
+	 * @param profile simulated vehicle
+	 * @param cmdIn   stream to read commands from
+	 * @param rspOut  stream to write responses to
+	 */
+	public ElmSimulator(VehicleProfile profile, InputStream cmdIn, OutputStream rspOut)
+	{
+		this(profile);
+		setStreams(cmdIn, rspOut);
+	}
+
+	/**
+	 * Set command/response streams
+	 *
+	 * @param cmdIn  stream to read commands from
+	 * @param rspOut stream to write responses to
+	 */
+	public void setStreams(InputStream cmdIn, OutputStream rspOut)
+	{
+		in = cmdIn;
+		out = rspOut;
+	}
+
+	/**
+	 * Connect stream handler to a new simulator via piped streams
+	 * - the simulator thread is started, the handler thread has to be started by caller
+	 *
+	 * @param handler stream handler to be connected
+	 * @param profile simulated vehicle
+	 * @return the started simulator
+	 * @throws IOException if pipes can't be connected
+	 */
+	public static ElmSimulator connect(StreamHandler handler, VehicleProfile profile)
+		throws IOException
+	{
+		PipedInputStream cmdIn = new PipedInputStream(PIPE_SIZE);
+		PipedOutputStream cmdOut = new PipedOutputStream(cmdIn);
+		PipedInputStream rspIn = new PipedInputStream(PIPE_SIZE);
+		PipedOutputStream rspOut = new PipedOutputStream(rspIn);
+
+		ElmSimulator sim = new ElmSimulator(profile, cmdIn, rspOut);
+		handler.setStreams(rspIn, cmdOut);
+		sim.start();
+		return sim;
+	}
+
+	/**
+	 * Start simulator thread
+	 */
+	public void start()
+	{
+		Thread thread = new Thread(this, "ElmSimulator");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Stop simulator by closing the streams
+	 */
+	public void stop()
+	{
+		try
+		{
+			if (in != null) { in.close(); }
+			if (out != null) { out.close(); }
+		}
+		catch (IOException ex)
+		{
+			log.log(Level.FINE, "stop", ex);
+		}
+	}
+
+	/**
+	 * Reset adapter settings to defaults
+	 */
+	private void reset()
+	{
+		echo = true;
+		linefeeds = false;
+		spaces = true;
+		headers = false;
+		selectedProtocol = 0;
+		searching = true;
+	}
+
+	/**
+	 * Command loop
+	 * - reads commands until end of stream
+	 */
+	@Override
+	public void run()
+	{
+		StringBuilder cmd = new StringBuilder();
+		log.info("ELM simulator started: " + profile);
+		try
+		{
+			int chr;
+			while ((chr = in.read()) >= 0)
+			{
+				switch (chr)
+				{
+					case '\r':
+						String command = cmd.toString();
+						cmd.setLength(0);
+						long received = System.currentTimeMillis();
+						String response = handleCommand(command);
+						// simulate response latency
+						long delay = received + profile.getLatency(lastCommand)
+						             - System.currentTimeMillis();
+						if (delay > 0)
+						{
+							Thread.sleep(delay);
+						}
+						write(response);
+						break;
+
+					case '\n':
+					case ' ':
+					case 0:
+						break;
+
+					default:
+						cmd.append((char) chr);
+				}
+			}
+		}
+		catch (InterruptedException ex)
+		{
+			Thread.currentThread().interrupt();
+		}
+		catch (IOException ex)
+		{
+			log.log(Level.FINE, "Stream closed", ex);
+		}
+		log.info("ELM simulator stopped");
+	}
+
+	/**
+	 * write response to output stream
+	 *
+	 * @param response response to be written
+	 * @throws IOException on write errors
+	 */
+	private void write(String response) throws IOException
+	{
+		int len = response.length();
+		if (txBuffer.length < len)
+		{
+			txBuffer = new byte[len * 2];
+		}
+		for (int i = 0; i < len; i++)
+		{
+			txBuffer[i] = (byte) response.charAt(i);
+		}
+		out.write(txBuffer, 0, len);
+		out.flush();
+	}
+
+	/**
+	 * Handle a single command
+	 *
+	 * @param command received command (without terminating CR)
+	 * @return complete response including echo and prompt
+	 */
+	public synchronized String handleCommand(String command)
+	{
+		String cmd = command.replace(" ", "").toUpperCase();
+		// empty command repeats last command
+		if (cmd.length() == 0)
+		{
+			cmd = lastCommand;
+		}
+		lastCommand = cmd;
+
+		if (log.isLoggable(Level.FINE))
+		{
+			log.fine("SIM RX:'" + cmd + "'");
+		}
+
+		rsp.setLength(0);
+		if (echo)
+		{
+			rsp.append(command).append('\r');
+		}
+
+		if (cmd.startsWith("AT"))
+		{
+			handleAtCommand(cmd.substring(2));
+		}
+		else if (cmd.length() > 0)
+		{
+			handleObdRequest(cmd);
+		}
+		newLine();
+		rsp.append('>');
+		return rsp.toString();
+	}
+
+	/**
+	 * Handle AT command
+	 *
+	 * @param cmd command without AT prefix
+	 */
+	private void handleAtCommand(String cmd)
+	{
+		if (cmd.equals("Z") || cmd.equals("WS"))
+		{
+			reset();
+			newLine();
+			appendLine(profile.getElmVersion());
+		}
+		else if (cmd.equals("I"))
+		{
+			appendLine(profile.getElmVersion());
+		}
+		else if (cmd.equals("D"))
+		{
+			reset();
+			appendLine("OK");
+		}
+		else if (cmd.equals("DP"))
+		{
+			int prot = selectedProtocol != 0 ? selectedProtocol : profile.getProtocol();
+			appendLine((selectedProtocol == 0 ? "AUTO, " : "")
+			           + ElmProt.PROT.values()[prot].toString());
+		}
+		else if (cmd.equals("DPN"))
+		{
+			appendLine(selectedProtocol == 0
+			           ? "A" + HEX[profile.getProtocol()]
+			           : String.valueOf(HEX[selectedProtocol]));
+		}
+		else if (cmd.equals("RV"))
+		{
+			appendLine("12.6V");
+		}
+		else if (cmd.matches("[ELSH][01]"))
+		{
+			boolean on = cmd.charAt(1) == '1';
+			switch (cmd.charAt(0))
+			{
+				case 'E': echo = on; break;
+				case 'L': linefeeds = on; break;
+				case 'S': spaces = on; break;
+				case 'H': headers = on; break;
+			}
+			appendLine("OK");
+		}
+		else if (cmd.matches("(SPA?|TPA?)[0-9A-C]"))
+		{
+			selectedProtocol = Integer.parseInt(cmd.substring(cmd.length() - 1), 16);
+			// auto protocol is searched on next request
+			if (cmd.length() == 4)
+			{
+				selectedProtocol = 0;
+			}
+			searching = true;
+			appendLine("OK");
+		}
+		else
+		{
+			for (String okCmd : AT_OK_COMMANDS)
+			{
+				if (cmd.startsWith(okCmd))
+				{
+					appendLine("OK");
+					return;
+				}
+			}
+			appendLine("?");
+		}
+	}
+
+	/**
+	 * Handle OBD request
+	 *
+	 * @param cmd request (hex digits)
+	 */
+	private void handleObdRequest(String cmd)
+	{
+		numRequests++;
+
+		// optional number of responses (single hex digit) is ignored
+		int reqLen = cmd.length() / 2;
+		byte[] req = new byte[reqLen];
+		try
+		{
+			for (int i = 0; i < reqLen; i++)
+			{
+				req[i] = (byte) Integer.parseInt(cmd.substring(2 * i, 2 * i + 2), 16);
+			}
+		}
+		catch (NumberFormatException ex)
+		{
+			appendLine("?");
+			return;
+		}
+
+		// wrong protocol selected?
+		if (selectedProtocol != 0 && selectedProtocol != profile.getProtocol())
+		{
+			appendLine("UNABLE TO CONNECT");
+			return;
+		}
+		if (searching)
+		{
+			if (selectedProtocol == 0)
+			{
+				appendLine("SEARCHING...");
+			}
+			searching = false;
+		}
+
+		// error injection
+		double rnd = random.nextDouble();
+		if (rnd < profile.getNoDataRate())
+		{
+			numErrors++;
+			appendLine("NO DATA");
+			return;
+		}
+		if (rnd < profile.getNoDataRate() + profile.getBufferFullRate())
+		{
+			numErrors++;
+			appendLine("BUFFER FULL");
+			return;
+		}
+
+		messages.clear();
+		createResponse(req);
+		if (messages.isEmpty())
+		{
+			appendLine("NO DATA");
+			return;
+		}
+		for (byte[] msg : messages)
+		{
+			if (profile.isCan())
+			{
+				formatCanMessage(msg);
+			}
+			else
+			{
+				formatIsoMessage(msg);
+			}
+		}
+	}
+
+	/**
+	 * Create response messages for request
+	 *
+	 * @param req request bytes
+	 */
+	private void createResponse(byte[] req)
+	{
+		int service = req[0] & 0xFF;
+		int len = 0;
+		payload[len++] = (byte) (service | 0x40);
+
+		switch (service)
+		{
+			case 0x01:
+				// multi PID requests are supported on CAN only
+				if (req.length < 2 || req.length > MAX_PIDS + 1
+				    || (req.length > 2 && !profile.isCan()))
+				{
+					return;
+				}
+				for (int i = 1; i < req.length; i++)
+				{
+					len = appendPidData(req[i] & 0xFF, len);
+				}
+				if (len > 1)
+				{
+					addMessage(payload, len);
+				}
+				break;
+
+			case 0x02:
+				if (req.length < 2)
+				{
+					return;
+				}
+				int pid = req[1] & 0xFF;
+				int frame = req.length > 2 ? req[2] & 0xFF : 0;
+				if (pid == 0x02)
+				{
+					// DTC which caused freeze frame
+					int code = storedCodes.isEmpty() ? 0 : storedCodes.get(0);
+					payload[len++] = (byte) pid;
+					payload[len++] = (byte) frame;
+					payload[len++] = (byte) (code >> 8);
+					payload[len++] = (byte) code;
+				}
+				else
+				{
+					int dataStart = len + 1;
+					len = appendPidData(pid, len);
+					if (len == 1)
+					{
+						return;
+					}
+					// insert frame number behind PID
+					System.arraycopy(payload, dataStart, payload, dataStart + 1, len - dataStart);
+					payload[dataStart] = (byte) frame;
+					len++;
+				}
+				addMessage(payload, len);
+				break;
+
+			case 0x03:
+				addCodes(storedCodes);
+				break;
+
+			case 0x07:
+				addCodes(pendingCodes);
+				break;
+
+			case 0x0A:
+				addCodes(permanentCodes);
+				break;
+
+			case 0x04:
+				storedCodes.clear();
+				pendingCodes.clear();
+				addMessage(payload, len);
+				break;
+
+			case 0x09:
+				if (req.length < 2)
+				{
+					return;
+				}
+				addVehicleInfo(req[1] & 0xFF);
+				break;
+
+			default:
+				// CAN ECUs respond negative, others stay quiet
+				if (profile.isCan())
+				{
+					payload[0] = 0x7F;
+					payload[len++] = (byte) service;
+					payload[len++] = 0x11;
+					addMessage(payload, len);
+				}
+		}
+	}
+
+	/**
+	 * Append data of a service 01/02 PID to payload
+	 *
+	 * @param pid PID to be appended
+	 * @param len current payload length
+	 * @return new payload length
+	 */
+	private int appendPidData(int pid, int len)
+	{
+		if ((pid % 0x20) == 0)
+		{
+			// supported PIDs bitmap
+			if (pid != 0 && !hasPidsAbove(pid))
+			{
+				return len;
+			}
+			long bitmap = 0;
+			for (int i = 1; i < 0x20; i++)
+			{
+				if (profile.getPidData(pid + i) != null)
+				{
+					bitmap |= 1L << (32 - i);
+				}
+			}
+			// next range of PIDs is supported?
+			if (hasPidsAbove(pid + 0x20))
+			{
+				bitmap |= 1;
+			}
+			payload[len++] = (byte) pid;
+			for (int i = 24; i >= 0; i -= 8)
+			{
+				payload[len++] = (byte) (bitmap >> i);
+			}
+		}
+		else
+		{
+			byte[][] values = profile.getPidData(pid);
+			if (values != null)
+			{
+				byte[] value = values[pidCycle[pid]++ % values.length];
+				payload[len++] = (byte) pid;
+				System.arraycopy(value, 0, payload, len, value.length);
+				len += value.length;
+			}
+		}
+		return len;
+	}
+
+	/**
+	 * Check if any PIDs above the specified PID are supported
+	 *
+	 * @param pid PID to check
+	 * @return true if PIDs above are supported
+	 */
+	private boolean hasPidsAbove(int pid)
+	{
+		for (int supported : profile.getPids())
+		{
+			if (supported > pid)
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Add trouble code response messages
+	 *
+	 * @param codes trouble codes to be reported
+	 */
+	private void addCodes(List<Integer> codes)
+	{
+		if (profile.isCan())
+		{
+			// single message with number of codes
+			int len = 1;
+			payload[len++] = (byte) codes.size();
+			for (int code : codes)
+			{
+				payload[len++] = (byte) (code >> 8);
+				payload[len++] = (byte) code;
+			}
+			addMessage(payload, len);
+		}
+		else
+		{
+			// 3 codes per message, padded with 0000
+			int i = 0;
+			do
+			{
+				int len = 1;
+				for (int n = 0; n < 3; n++, i++)
+				{
+					int code = i < codes.size() ? codes.get(i) : 0;
+					payload[len++] = (byte) (code >> 8);
+					payload[len++] = (byte) code;
+				}
+				addMessage(payload, len);
+			}
+			while (i < codes.size());
+		}
+	}
+
+	/**
+	 * Add vehicle info response messages (service 09)
+	 *
+	 * @param pid requested info type
+	 */
+	private void addVehicleInfo(int pid)
+	{
+		byte[] vin = profile.getVin().getBytes();
+		int len = 1;
+		payload[len++] = (byte) pid;
+		switch (pid)
+		{
+			case 0x00:
+				payload[len++] = (byte) (vin.length > 0 ? 0x40 : 0x00);
+				payload[len++] = 0;
+				payload[len++] = 0;
+				payload[len++] = 0;
+				addMessage(payload, len);
+				break;
+
+			case 0x02:
+				if (vin.length == 0)
+				{
+					return;
+				}
+				if (profile.isCan())
+				{
+					payload[len++] = 1;
+					System.arraycopy(vin, 0, payload, len, vin.length);
+					addMessage(payload, len + vin.length);
+				}
+				else
+				{
+					// messages with sequence number and 4 data bytes, leading zero padding
+					int numMsgs = (vin.length + 3) / 4;
+					int pos = vin.length - numMsgs * 4;
+					for (int msg = 1; msg <= numMsgs; msg++)
+					{
+						len = 2;
+						payload[len++] = (byte) msg;
+						for (int i = 0; i < 4; i++, pos++)
+						{
+							payload[len++] = pos < 0 ? 0 : vin[pos];
+						}
+						addMessage(payload, len);
+					}
+				}
+				break;
+
+			default:
+				break;
+		}
+	}
+
+	private void addMessage(byte[] data, int len)
+	{
+		byte[] msg = new byte[len];
+		System.arraycopy(data, 0, msg, 0, len);
+		messages.add(msg);
+	}
+
+	/**
+	 * Format CAN response (ISO 15765-4)
+	 *
+	 * @param msg message payload
+	 */
+	private void formatCanMessage(byte[] msg)
+	{
+		if (msg.length <= CAN_FRAME_DATA)
+		{
+			// single frame
+			appendCanHeader();
+			if (headers)
+			{
+				appendByte(msg.length);
+			}
+			appendBytes(msg, 0, msg.length);
+			newLine();
+			return;
+		}
+
+		// multi frame
+		if (headers)
+		{
+			appendCanHeader();
+			appendByte(0x10 | (msg.length >> 8));
+			appendByte(msg.length);
+		}
+		else
+		{
+			rsp.append(HEX[(msg.length >> 8) & 0x0F])
+			   .append(HEX[(msg.length >> 4) & 0x0F])
+			   .append(HEX[msg.length & 0x0F]);
+			newLine();
+			rsp.append("0:");
+			if (spaces) { rsp.append(' '); }
+		}
+		int pos = Math.min(CAN_FRAME_DATA - 1, msg.length);
+		appendBytes(msg, 0, pos);
+		newLine();
+
+		for (int seq = 1; pos < msg.length; seq++)
+		{
+			if (headers)
+			{
+				appendCanHeader();
+				appendByte(0x20 | (seq & 0x0F));
+			}
+			else
+			{
+				rsp.append(HEX[seq & 0x0F]).append(':');
+				if (spaces) { rsp.append(' '); }
+			}
+			int end = Math.min(pos + CAN_FRAME_DATA, msg.length);
+			appendBytes(msg, pos, end);
+			// padding of last frame
+			for (int i = end; i < pos + CAN_FRAME_DATA; i++)
+			{
+				appendByte(0);
+			}
+			pos = end;
+			newLine();
+		}
+	}
+
+	private void appendCanHeader()
+	{
+		if (!headers)
+		{
+			return;
+		}
+		int address = profile.getEcuAddress();
+		if (profile.isCan29Bit())
+		{
+			for (int i = 24; i >= 0; i -= 8)
+			{
+				appendByte(address >> i);
+			}
+		}
+		else
+		{
+			rsp.append(HEX[(address >> 8) & 0x0F])
+			   .append(HEX[(address >> 4) & 0x0F])
+			   .append(HEX[address & 0x0F]);
+			if (spaces) { rsp.append(' '); }
+		}
+	}
+
+	/**
+	 * Format ISO 9141 / ISO 14230 / J1850 response
+	 *
+	 * @param msg message payload
+	 */
+	private void formatIsoMessage(byte[] msg)
+	{
+		int len = Math.min(msg.length, ISO_MSG_DATA);
+		if (headers)
+		{
+			int[] header;
+			switch (profile.getProtocol())
+			{
+				case 1:
+					header = new int[]{0x41, 0x6B, profile.getEcuAddress()};
+					break;
+				case 4:
+				case 5:
+					header = new int[]{0x80 | len, 0xF1, profile.getEcuAddress()};
+					break;
+				default:
+					header = new int[]{0x48, 0x6B, profile.getEcuAddress()};
+			}
+			int checksum = 0;
+			for (int hdr : header)
+			{
+				appendByte(hdr);
+				checksum += hdr;
+			}
+			for (int i = 0; i < len; i++)
+			{
+				checksum += msg[i] & 0xFF;
+			}
+			appendBytes(msg, 0, len);
+			appendByte(checksum);
+		}
+		else
+		{
+			appendBytes(msg, 0, len);
+		}
+		newLine();
+	}
+
+	private void appendBytes(byte[] data, int start, int end)
+	{
+		for (int i = start; i < end; i++)
+		{
+			appendByte(data[i]);
+		}
+	}
+
+	private void appendByte(int value)
+	{
+		rsp.append(HEX[(value >> 4) & 0x0F]).append(HEX[value & 0x0F]);
+		if (spaces)
+		{
+			rsp.append(' ');
+		}
+	}
+
+	private void appendLine(String line)
+	{
+		rsp.append(line);
+		newLine();
+	}
+
+	private void newLine()
+	{
+		rsp.append('\r');
+		if (linefeeds)
+		{
+			rsp.append('\n');
+		}
+	}
+
+	/**
+	 * @return number of OBD requests handled
+	 */
+	public long getRequestCount()
+	{
+		return numRequests;
+	}
+
+	/**
+	 * @return number of injected errors
+	 */
+	public long getErrorCount()
+	{
+		return numErrors;
+	}
+
+	/**
+	 * Run simulator as TCP server
+	 * - every client connection gets its own simulator instance
+	 *
+	 * @param profile simulated vehicle
+	 * @param port    TCP port to listen on
+	 * @throws IOException on socket errors
+	 */
+	public static void serve(VehicleProfile profile, int port) throws IOException
+	{
+		ServerSocket server = new ServerSocket(port);
+		log.info(String.format("ELM simulator listening on port %d", port));
+		try
+		{
+			while (!Thread.currentThread().isInterrupted())
+			{
+				Socket client = server.accept();
+				client.setTcpNoDelay(true);
+				log.info("Client connected: " + client.getRemoteSocketAddress());
+				new ElmSimulator(profile, client.getInputStream(), client.getOutputStream()).start();
+			}
+		}
+		finally
+		{
+			server.close();
+		}
+	}
+
+	/**
+	 * main routine to run simulator as TCP server
+	 *
+	 * @param args [-p port] [profile file]
+	 */
+	public static void main(String[] args)
+	{
+		int port = DEFAULT_PORT;
+		VehicleProfile profile = null;
+		try
+		{
+			for (int i = 0; i < args.length; i++)
+			{
+				if (args[i].equals("-p") && i + 1 < args.length)
+				{
+					port = Integer.parseInt(args[++i]);
+				}
+				else
+				{
+					profile = VehicleProfile.load(new File(args[i]));
+				}
+			}
+			serve(profile != null ? profile : VehicleProfile.getDefault(), port);
+		}
+		catch (Exception ex)
+		{
+			log.log(Level.SEVERE, "ELM simulator", ex);
+			System.err.println("Usage: ElmSimulator [-p port] [profile.properties]");
+		}
+	}
+}
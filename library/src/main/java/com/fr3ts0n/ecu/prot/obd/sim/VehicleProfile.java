@@ -0,0 +1,459 @@
+/*
+ * (C) Copyright 2015 by fr3ts0n <erwin.scheuch-heilig@gmx.at>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston,
+ * MA 02111-1307 USA
+ */
+
+package com.fr3ts0n.ecu.prot.obd.sim;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * Vehicle profile for the ELM327 simulator
+ *
+ * A profile defines protocol, response latencies, supported PIDs with their
+ * data, VIN, trouble codes and error injection rates of a simulated vehicle.
+ * Profiles are loaded from property files, see res/vehicle_demo.properties
+ * for a description of the file format.
+ *
+ * @author erwin
+ */
+public class VehicleProfile
+{
+	/** resource of default profile */
+	public static final String DEFAULT_PROFILE = "/com/fr3ts0n/ecu/prot/obd/res/vehicle_demo.properties";
+
+	/** profile name */
+	private String name = "";
+	/** ELM protocol number (1..9) */
+	private int protocol = 6;
+	/** adapter version string */
+	private String elmVersion = "ELM327 v1.5";
+	/** ECU address */
+	private int ecuAddress = 0x7E8;
+	/** default response latency [ms] */
+	private long latency = 0;
+	/** response latencies of specific commands [ms] */
+	private final TreeMap<String, Long> cmdLatencies = new TreeMap<String, Long>();
+	/** service 01 data of supported PIDs (list of alternative values) */
+	private final TreeMap<Integer, byte[][]> pidData = new TreeMap<Integer, byte[][]>();
+	/** vehicle identification number */
+	private String vin = "";
+	/** trouble codes */
+	private List<Integer> storedCodes = Collections.emptyList();
+	private List<Integer> pendingCodes = Collections.emptyList();
+	private List<Integer> permanentCodes = Collections.emptyList();
+	/** error injection rates */
+	private double noDataRate = 0.0;
+	private double bufferFullRate = 0.0;
+	private long randomSeed = 0;
+
+	/**
+	 * Load default profile
+	 *
+	 * @return default vehicle profile
+	 */
+	public static VehicleProfile getDefault()
+	{
+		try
+		{
+			return load(VehicleProfile.class.getResourceAsStream(DEFAULT_PROFILE));
+		}
+		catch (IOException e)
+		{
+			throw new IllegalStateException(DEFAULT_PROFILE, e);
+		}
+	}
+
+	/**
+	 * Load profile from file
+	 *
+	 * @param file profile file
+	 * @return loaded vehicle profile
+	 * @throws IOException on read errors
+	 */
+	public static VehicleProfile load(File file) throws IOException
+	{
+		FileInputStream in = new FileInputStream(file);
+		try
+		{
+			return load(in);
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+
+	/**
+	 * Load profile from stream
+	 *
+	 * @param in stream to read profile properties from
+	 * @return loaded vehicle profile
+	 * @throws IOException on read errors
+	 */
+	public static VehicleProfile load(InputStream in) throws IOException
+	{
+		if (in == null)
+		{
+			throw new IOException("Profile not found");
+		}
+		Properties props = new Properties();
+		props.load(in);
+		return new VehicleProfile(props);
+	}
+
+	/**
+	 * Create empty profile
+	 * (CAN 11 bit, 500 kBit, no PIDs, no latency)
+	 */
+	public VehicleProfile()
+	{
+	}
+
+	/**
+	 * Create profile from properties
+	 *
+	 * @param props profile properties
+	 */
+	public VehicleProfile(Properties props)
+	{
+		for (Map.Entry<Object, Object> entry : props.entrySet())
+		{
+			String key = entry.getKey().toString().trim();
+			String value = entry.getValue().toString().trim();
+			try
+			{
+				if (key.startsWith("pid."))
+				{
+					setPidData(Integer.parseInt(key.substring(4), 16), value.split(","));
+				}
+				else if (key.startsWith("latency."))
+				{
+					setLatency(key.substring(8), Long.parseLong(value));
+				}
+				else if (key.equals("name")) { name = value; }
+				else if (key.equals("protocol")) { setProtocol(Integer.parseInt(value)); }
+				else if (key.equals("elm.version")) { elmVersion = value; }
+				else if (key.equals("ecu.address")) { ecuAddress = Integer.parseInt(value, 16); }
+				else if (key.equals("latency")) { latency = Long.parseLong(value); }
+				else if (key.equals("vin")) { vin = value; }
+				else if (key.equals("dtc.stored")) { storedCodes = parseCodes(value); }
+				else if (key.equals("dtc.pending")) { pendingCodes = parseCodes(value); }
+				else if (key.equals("dtc.permanent")) { permanentCodes = parseCodes(value); }
+				else if (key.equals("error.nodata")) { noDataRate = Double.parseDouble(value); }
+				else if (key.equals("error.bufferfull")) { bufferFullRate = Double.parseDouble(value); }
+				else if (key.equals("error.seed")) { randomSeed = Long.parseLong(value); }
+			}
+			catch (IllegalArgumentException ex)
+			{
+				throw new IllegalArgumentException(String.format("Invalid profile entry %s=%s", key, value), ex);
+			}
+		}
+	}
+
+	/**
+	 * Parse list of trouble codes
+	 *
+	 * @param codes comma separated codes (e.g. P0100,C1234)
+	 * @return list of numeric codes
+	 */
+	static List<Integer> parseCodes(String codes)
+	{
+		List<Integer> result = new ArrayList<Integer>();
+		for (String code : codes.split(","))
+		{
+			code = code.trim().toUpperCase();
+			if (code.length() != 5)
+			{
+				if (code.length() > 0)
+				{
+					throw new NumberFormatException(code);
+				}
+				continue;
+			}
+			int type = "PCBU".indexOf(code.charAt(0));
+			if (type < 0)
+			{
+				throw new NumberFormatException(code);
+			}
+			result.add((type << 14) | Integer.parseInt(code.substring(1), 16));
+		}
+		return result;
+	}
+
+	/**
+	 * @return profile name
+	 */
+	public String getName()
+	{
+		return name;
+	}
+
+	/**
+	 * @return ELM protocol number (1..9)
+	 */
+	public int getProtocol()
+	{
+		return protocol;
+	}
+
+	/**
+	 * Set ELM protocol of vehicle
+	 *
+	 * @param protocol ELM protocol number (1..9)
+	 */
+	public void setProtocol(int protocol)
+	{
+		if (protocol < 1 || protocol > 9)
+		{
+			throw new IllegalArgumentException("Protocol " + protocol);
+		}
+		this.protocol = protocol;
+	}
+
+	/**
+	 * @return true if vehicle uses a CAN protocol
+	 */
+	public boolean isCan()
+	{
+		return protocol >= 6;
+	}
+
+	/**
+	 * @return true if vehicle uses 29 bit CAN identifiers
+	 */
+	public boolean isCan29Bit()
+	{
+		return protocol == 7 || protocol == 9;
+	}
+
+	/**
+	 * @return adapter version string
+	 */
+	public String getElmVersion()
+	{
+		return elmVersion;
+	}
+
+	/**
+	 * @return ECU address
+	 */
+	public int getEcuAddress()
+	{
+		return ecuAddress;
+	}
+
+	/**
+	 * Set ECU address
+	 *
+	 * @param ecuAddress ECU address
+	 */
+	public void setEcuAddress(int ecuAddress)
+	{
+		this.ecuAddress = ecuAddress;
+	}
+
+	/**
+	 * Get response latency of a command
+	 *
+	 * @param command command (upper case, without spaces)
+	 * @return latency [ms]
+	 */
+	public long getLatency(String command)
+	{
+		// longest matching command prefix wins
+		Map.Entry<String, Long> entry = cmdLatencies.floorEntry(command);
+		while (entry != null)
+		{
+			if (command.startsWith(entry.getKey()))
+			{
+				return entry.getValue();
+			}
+			entry = cmdLatencies.lowerEntry(entry.getKey());
+		}
+		return latency;
+	}
+
+	/**
+	 * Set default response latency
+	 *
+	 * @param latency latency [ms]
+	 */
+	public void setLatency(long latency)
+	{
+		this.latency = latency;
+	}
+
+	/**
+	 * Set response latency of commands
+	 *
+	 * @param command command prefix (e.g. 0902, 09, ATZ)
+	 * @param latency latency [ms]
+	 */
+	public void setLatency(String command, long latency)
+	{
+		cmdLatencies.put(command.toUpperCase(), latency);
+	}
+
+	/**
+	 * Set data of a supported service 01 PID
+	 *
+	 * @param pid    PID
+	 * @param values list of hex data values, cycled on each request
+	 */
+	public void setPidData(int pid, String... values)
+	{
+		byte[][] data = new byte[values.length][];
+		for (int i = 0; i < values.length; i++)
+		{
+			String value = values[i].trim();
+			data[i] = new byte[value.length() / 2];
+			for (int j = 0; j < data[i].length; j++)
+			{
+				data[i][j] = (byte) Integer.parseInt(value.substring(2 * j, 2 * j + 2), 16);
+			}
+		}
+		pidData.put(pid, data);
+	}
+
+	/**
+	 * Get data of a supported service 01 PID
+	 *
+	 * @param pid PID
+	 * @return list of alternative data values, null if PID not supported
+	 */
+	public byte[][] getPidData(int pid)
+	{
+		return pidData.get(pid);
+	}
+
+	/**
+	 * @return supported service 01 PIDs
+	 */
+	public Iterable<Integer> getPids()
+	{
+		return pidData.keySet();
+	}
+
+	/**
+	 * @return vehicle identification number
+	 */
+	public String getVin()
+	{
+		return vin;
+	}
+
+	/**
+	 * Set vehicle identification number
+	 *
+	 * @param vin vehicle identification number
+	 */
+	public void setVin(String vin)
+	{
+		this.vin = vin;
+	}
+
+	/**
+	 * @return stored trouble codes (service 03)
+	 */
+	public List<Integer> getStoredCodes()
+	{
+		return storedCodes;
+	}
+
+	/**
+	 * @return pending trouble codes (service 07)
+	 */
+	public List<Integer> getPendingCodes()
+	{
+		return pendingCodes;
+	}
+
+	/**
+	 * @return permanent trouble codes (service 0A)
+	 */
+	public List<Integer> getPermanentCodes()
+	{
+		return permanentCodes;
+	}
+
+	/**
+	 * Set trouble codes
+	 *
+	 * @param stored    stored trouble codes (e.g. P0100)
+	 * @param pending   pending trouble codes
+	 * @param permanent permanent trouble codes
+	 */
+	public void setCodes(String stored, String pending, String permanent)
+	{
+		storedCodes = parseCodes(stored);
+		pendingCodes = parseCodes(pending);
+		permanentCodes = parseCodes(permanent);
+	}
+
+	/**
+	 * @return probability of injected NO DATA responses (0..1)
+	 */
+	public double getNoDataRate()
+	{
+		return noDataRate;
+	}
+
+	/**
+	 * @return probability of injected BUFFER FULL responses (0..1)
+	 */
+	public double getBufferFullRate()
+	{
+		return bufferFullRate;
+	}
+
+	/**
+	 * Set error injection rates
+	 *
+	 * @param noDataRate     probability of NO DATA responses (0..1)
+	 * @param bufferFullRate probability of BUFFER FULL responses (0..1)
+	 * @param randomSeed     random seed for reproducible error sequences
+	 */
+	public void setErrorRates(double noDataRate, double bufferFullRate, long randomSeed)
+	{
+		this.noDataRate = noDataRate;
+		this.bufferFullRate = bufferFullRate;
+		this.randomSeed = randomSeed;
+	}
+
+	/**
+	 * @return random seed of error injection
+	 */
+	public long getRandomSeed()
+	{
+		return randomSeed;
+	}
+
+	@Override
+	public String toString()
+	{
+		return String.format("%s (protocol %d, %d PIDs)", name, protocol, pidData.size());
+	}
+}
@@ -648,7 +648,10 @@ public class Kw1281Prot extends ProtoHeader
 	{
 		int cnt = 0;
 
-		log.fine("RX:" + ProtUtils.hexDumpBuffer(buffer));
+		if (log.isLoggable(Level.FINE))
+		{
+			log.fine("RX:" + ProtUtils.hexDumpBuffer(buffer));
+		}
 
 		// if telegram is OK
 		if (checkTelegram(buffer))
@@ -0,0 +1,515 @@
+/*
+ * (C) Copyright 2015 by fr3ts0n <erwin.scheuch-heilig@gmx.at>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston,
+ * MA 02111-1307 USA
+ */
+
+
+package com.fr3ts0n.prot;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Byte level state machine of KW1281 K-line communication
+ *
+ * Handles keyword reception after 5 baud init, echo and complement
+ * bytes of each transmitted/received block byte, block counters and
+ * acknowledge blocks while idle. The engine is driven by
+ * {@link #receiveByte(int)} from the reader thread of the adapter and
+ * sends bytes via its {@link Link}.
+ *
+ * Received blocks are collected in a preallocated buffer and delivered
+ * in reused arrays (one per block length), so the receive path does not
+ * allocate after warm-up. Listeners must not keep delivered arrays.
+ *
+ * @author erwin
+ */
+public class Kw1281Engine
+	implements TelegramWriter
+{
+	/** engine states */
+	public static final int STATE_IDLE = 0;
+	public static final int STATE_CONNECTING = 1;
+	public static final int STATE_RECEIVING = 2;
+	public static final int STATE_SENDING = 3;
+
+	/** packet states: expecting echo, complement or data byte */
+	static final int PKT_ECHO = 0;
+	static final int PKT_COMPLEMENT = 1;
+	static final int PKT_DATA = 2;
+
+	/** synch char of ECU init response */
+	public static final int SYNC_CHAR = 0x55;
+	/** block end character */
+	public static final int BLOCK_END = 0x03;
+	/** block title of acknowledge block */
+	public static final int BLOCK_ACK = 0x09;
+	/** max. length of a block */
+	private static final int MAX_BLOCK_LEN = 256;
+
+	private static final Logger log = Logger.getLogger("com.fr3ts0n.prot.kl");
+
+	/**
+	 * Physical link of the engine
+	 */
+	public interface Link
+	{
+		/**
+		 * send a single byte to K-line
+		 *
+		 * @param txByte byte to be sent
+		 * @throws IOException on send errors
+		 */
+		void sendByte(int txByte) throws IOException;
+
+		/**
+		 * engine state has changed
+		 *
+		 * @param state new state (STATE_xxx)
+		 */
+		void stateChanged(int state);
+	}
+
+	private final Link link;
+	private TelegramListener messageHandler;
+
+	/** current engine state */
+	private int state = STATE_IDLE;
+	/** current packet state */
+	private int pktStat = PKT_COMPLEMENT;
+	/** last byte sent */
+	private int lastTxChar = 0;
+	/** telegram block counter */
+	private int blockCounter = 0;
+
+	/** receive block buffer */
+	private final char[] block = new char[MAX_BLOCK_LEN];
+	private int blockLen = 0;
+	/** reused delivery arrays by block length */
+	private final char[][] blocks = new char[MAX_BLOCK_LEN + 1][];
+	/** keyword bytes of init response (sync, KW-lo, KW-hi) */
+	private final int[] keyword = new int[3];
+	private int keywordLen = 0;
+
+	/** queue of telegrams to be sent */
+	private final ArrayDeque<char[]> txQueue = new ArrayDeque<char[]>();
+	/** preallocated acknowledge block */
+	private final char[] ackBlock = {BLOCK_END, 0, BLOCK_ACK, BLOCK_END};
+	/** current telegram to be sent */
+	private char[] currTxTgm = {};
+	/** position of next byte to be sent from within currTxTgm */
+	private int currTxCharPos = 0;
+
+	/** time [ns] to wait before sending next byte */
+	private long interByteTime = 0;
+	/** time [ns] of last reception */
+	private long lastRxTime = 0;
+
+	/** statistics */
+	private final LatencyHistogram interByteStats = new LatencyHistogram();
+	private volatile long rxBlocks = 0;
+	private volatile long txBlocks = 0;
+	private volatile long complementErrors = 0;
+
+	/**
+	 * Create engine
+	 *
+	 * @param link physical link to send bytes and report state changes
+	 */
+	public Kw1281Engine(Link link)
+	{
+		this.link = link;
+	}
+
+	/**
+	 * Set handler for received blocks
+	 *
+	 * @param messageHandler handler for received blocks
+	 */
+	public void setMessageHandler(TelegramListener messageHandler)
+	{
+		this.messageHandler = messageHandler;
+	}
+
+	/**
+	 * Set min. time between reception and transmission of bytes
+	 *
+	 * @param interByteTime time [ns] to wait before sending next byte
+	 */
+	public void setInterByteTime(long interByteTime)
+	{
+		this.interByteTime = interByteTime;
+	}
+
+	/**
+	 * @return current engine state (STATE_xxx)
+	 */
+	public int getState()
+	{
+		return state;
+	}
+
+	/**
+	 * @return current block counter
+	 */
+	public int getBlockCounter()
+	{
+		return blockCounter;
+	}
+
+	/**
+	 * @return key word of last init response (KW-hi &lt;&lt; 8 | KW-lo)
+	 */
+	public int getKeyword()
+	{
+		return keyword[2] << 8 | keyword[1];
+	}
+
+	/**
+	 * @return statistics of time between received bytes
+	 */
+	public LatencyHistogram getInterByteStats()
+	{
+		return interByteStats;
+	}
+
+	/**
+	 * @return number of received blocks
+	 */
+	public long getRxBlocks()
+	{
+		return rxBlocks;
+	}
+
+	/**
+	 * @return number of sent blocks
+	 */
+	public long getTxBlocks()
+	{
+		return txBlocks;
+	}
+
+	/**
+	 * @return number of wrong complements received
+	 */
+	public long getComplementErrors()
+	{
+		return complementErrors;
+	}
+
+	/**
+	 * set engine state and notify link
+	 *
+	 * @param newState new state
+	 */
+	private void setState(int newState)
+	{
+		if (state != newState)
+		{
+			state = newState;
+			link.stateChanged(newState);
+		}
+	}
+
+	/**
+	 * Start of init sequence, 5 baud address is about to be sent
+	 * - expect sync and key word bytes from ECU
+	 */
+	public void startInit()
+	{
+		keywordLen = 0;
+		blockLen = 0;
+		// drop remains of an interrupted telegram
+		currTxCharPos = currTxTgm.length;
+		setState(STATE_CONNECTING);
+	}
+
+	/**
+	 * Stop communication and drop pending telegrams
+	 */
+	public void reset()
+	{
+		synchronized (txQueue)
+		{
+			txQueue.clear();
+		}
+		currTxCharPos = currTxTgm.length;
+		blockLen = 0;
+		setState(STATE_IDLE);
+	}
+
+	@Override
+	public int writeTelegram(char[] buffer)
+	{
+		return writeTelegram(buffer, 0, null);
+	}
+
+	/**
+	 * enqueue a telegram to be sent with next send cycle
+	 */
+	@Override
+	public int writeTelegram(char[] buffer, int type, Object id)
+	{
+		synchronized (txQueue)
+		{
+			txQueue.add(buffer);
+		}
+		return 0;
+	}
+
+	/**
+	 * Process received byte
+	 *
+	 * @param chr received byte
+	 */
+	public void receiveByte(int chr)
+	{
+		long now = System.nanoTime();
+		if (lastRxTime != 0)
+		{
+			interByteStats.record(now - lastRxTime);
+		}
+		lastRxTime = now;
+
+		if (log.isLoggable(Level.FINEST))
+		{
+			log.finest(String.format("RX:%02X\t%d\t%d", chr, state, pktStat));
+		}
+
+		switch (state)
+		{
+			case STATE_RECEIVING:
+				receiveData(chr);
+				break;
+
+			case STATE_SENDING:
+				switch (pktStat)
+				{
+					case PKT_ECHO:
+					case PKT_DATA:
+						// ignore the echo of sent data
+						pktStat = PKT_COMPLEMENT;
+						break;
+
+					case PKT_COMPLEMENT:
+						if (chr == (~lastTxChar & 0xFF))
+						{
+							pktStat = PKT_DATA;
+							sendNextByte();
+						}
+						else
+						{
+							complementErrors++;
+							log.severe(String.format("Wrong complement:%02X, expected:%02X",
+							                         chr, ~lastTxChar & 0xFF));
+						}
+						break;
+				}
+				break;
+
+			case STATE_CONNECTING:
+				receiveKeyword(chr);
+				break;
+
+			default:
+				break;
+		}
+	}
+
+	/**
+	 * process received byte in state RECEIVING
+	 *
+	 * @param chr received byte
+	 */
+	private void receiveData(int chr)
+	{
+		if (pktStat != PKT_DATA)
+		{
+			// ignore the echo of sent complement
+			pktStat = PKT_DATA;
+			return;
+		}
+		if (blockLen == block.length)
+		{
+			log.severe("RX block overflow");
+			blockLen = 0;
+		}
+		block[blockLen++] = (char) chr;
+		// do we have received a complete package?
+		if (chr == BLOCK_END && blockLen > block[0])
+		{
+			char[] result = blocks[blockLen];
+			if (result == null)
+			{
+				result = blocks[blockLen] = new char[blockLen];
+			}
+			System.arraycopy(block, 0, result, 0, blockLen);
+			blockLen = 0;
+			rxBlocks++;
+			if (log.isLoggable(Level.FINE))
+			{
+				log.fine("RX:" + ProtUtils.hexDumpBuffer(result));
+			}
+			// update block counter with the received one
+			blockCounter = result[1];
+			if (messageHandler != null)
+			{
+				messageHandler.handleTelegram(result);
+			}
+			// and change to send status
+			setState(STATE_SENDING);
+			sendNextByte();
+		}
+		else
+		{
+			// send out confirmation for received byte
+			confirmByte(chr);
+		}
+	}
+
+	/**
+	 * process received byte in state CONNECTING
+	 *
+	 * @param chr received byte
+	 */
+	private void receiveKeyword(int chr)
+	{
+		// ignore echo of the init byte
+		if (chr == lastTxChar)
+		{
+			return;
+		}
+		if (chr == SYNC_CHAR)
+		{
+			keywordLen = 0;
+		}
+		// otherwise collect sync and key bytes
+		if (keywordLen < keyword.length)
+		{
+			keyword[keywordLen++] = chr;
+		}
+		// did we receive all INIT bytes (SYNC_CHAR, KW-lo, KW-hi)?
+		if (keywordLen == keyword.length && keyword[0] == SYNC_CHAR)
+		{
+			if (log.isLoggable(Level.FINE))
+			{
+				log.fine(String.format("Keyword:%04X", getKeyword()));
+			}
+			// Initialization is finished, change to status RECEIVING
+			setState(STATE_RECEIVING);
+			// confirm the last received byte
+			confirmByte(chr);
+		}
+	}
+
+	/**
+	 * confirm reception of last byte by sending complement of it back
+	 *
+	 * @param lastByte last received byte
+	 */
+	private void confirmByte(int lastByte)
+	{
+		writeChar(~lastByte & 0xFF);
+	}
+
+	/**
+	 * send specified char to link, echo is expected next
+	 *
+	 * @param txByte byte to be sent
+	 */
+	private void writeChar(int txByte)
+	{
+		if (log.isLoggable(Level.FINEST))
+		{
+			log.finest(String.format("TX:%02X", txByte));
+		}
+		lastTxChar = txByte;
+		pktStat = PKT_ECHO;
+		try
+		{
+			link.sendByte(txByte);
+		}
+		catch (IOException ex)
+		{
+			log.log(Level.SEVERE, "TX", ex);
+		}
+	}
+
+	/**
+	 * send next byte of current telegram, or of next one
+	 */
+	private void sendNextByte()
+	{
+		// wait for slow ECUs
+		long remaining = interByteTime - (System.nanoTime() - lastRxTime);
+		if (remaining > 0)
+		{
+			LockSupport.parkNanos(remaining);
+		}
+
+		// if we have to dequeue a new telegram ...
+		if (currTxCharPos >= currTxTgm.length)
+		{
+			dequeueTelegram();
+		}
+		writeChar(currTxTgm[currTxCharPos++]);
+		if (currTxCharPos >= currTxTgm.length)
+		{
+			txBlocks++;
+			setState(STATE_RECEIVING);
+		}
+	}
+
+	/**
+	 * dequeue next telegram to be sent, or acknowledge block if none
+	 */
+	private void dequeueTelegram()
+	{
+		char[] next;
+		synchronized (txQueue)
+		{
+			next = txQueue.poll();
+		}
+		blockCounter = (blockCounter + 1) & 0xFF;
+		if (next == null)
+		{
+			// nothing in the pipe, so just send an acknowledge telegram
+			next = ackBlock;
+		}
+		else if (next[1] != blockCounter && log.isLoggable(Level.FINE))
+		{
+			log.fine(String.format("MsgCounter adjusted:%02x->%02x", (int) next[1], blockCounter));
+		}
+		// if necessary, adjust block counter
+		next[1] = (char) blockCounter;
+		if (next != ackBlock && log.isLoggable(Level.FINE))
+		{
+			log.fine("TX:" + ProtUtils.hexDumpBuffer(next));
+		}
+		currTxTgm = next;
+		currTxCharPos = 0;
+	}
+
+	@Override
+	public String toString()
+	{
+		return String.format("KW1281 (RX: %d blocks, TX: %d blocks, complement errors: %d, inter byte time: %s)",
+		                     rxBlocks, txBlocks, complementErrors, interByteStats);
+	}
+}
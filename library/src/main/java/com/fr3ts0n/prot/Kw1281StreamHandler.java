@@ -0,0 +1,167 @@
+/*
+ * (C) Copyright 2015 by fr3ts0n <erwin.scheuch-heilig@gmx.at>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston,
+ * MA 02111-1307 USA
+ */
+
+
+package com.fr3ts0n.prot;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * KW1281 communication via byte streams
+ *
+ * Drives a {@link Kw1281Engine} with bytes of an input stream and sends
+ * engine bytes to an output stream, e.g. for K-line adapters which are
+ * accessed as streams or for the KW1281 simulator.
+ *
+ * A byte stream can't carry the 5 baud timing of the init address,
+ * so {@link #init(int)} sends the address as a single byte. The
+ * stream peer has to perform the slow init (or simulate it).
+ *
+ * @author erwin
+ */
+public class Kw1281StreamHandler
+	implements Kw1281Engine.Link, TelegramWriter, Runnable
+{
+	private static final Logger log = Logger.getLogger("com.fr3ts0n.prot.kl");
+
+	/** the byte engine */
+	private final Kw1281Engine engine = new Kw1281Engine(this);
+	/** current engine state, for waiting threads */
+	private int state = Kw1281Engine.STATE_IDLE;
+
+	private InputStream in;
+	private OutputStream out;
+
+	/**
+	 * Set streams to communicate with
+	 *
+	 * @param inStream  stream to read K-line bytes from
+	 * @param outStream stream to write K-line bytes to
+	 */
+	public void setStreams(InputStream inStream, OutputStream outStream)
+	{
+		in = inStream;
+		out = outStream;
+	}
+
+	/**
+	 * Set handler for received blocks
+	 *
+	 * @param messageHandler handler for received blocks
+	 */
+	public void setMessageHandler(TelegramListener messageHandler)
+	{
+		engine.setMessageHandler(messageHandler);
+	}
+
+	/**
+	 * @return the byte engine (e.g. for timing statistics)
+	 */
+	public Kw1281Engine getEngine()
+	{
+		return engine;
+	}
+
+	/**
+	 * Initialize communication with ECU
+	 *
+	 * @param address ECU address
+	 * @throws IOException on write errors
+	 */
+	public void init(int address) throws IOException
+	{
+		log.info(String.format("Init Address:%02x", address));
+		engine.startInit();
+		out.write(address);
+		out.flush();
+	}
+
+	/**
+	 * Wait until engine reaches specified state
+	 *
+	 * @param expected expected state (Kw1281Engine.STATE_xxx)
+	 * @param timeout  max. time [ms] to wait
+	 * @return true if state was reached, false on timeout
+	 * @throws InterruptedException if waiting thread is interrupted
+	 */
+	public synchronized boolean awaitState(int expected, long timeout)
+		throws InterruptedException
+	{
+		long end = System.currentTimeMillis() + timeout;
+		long remaining = timeout;
+		while (state != expected && remaining > 0)
+		{
+			wait(remaining);
+			remaining = end - System.currentTimeMillis();
+		}
+		return state == expected;
+	}
+
+	@Override
+	public void sendByte(int txByte) throws IOException
+	{
+		out.write(txByte);
+		out.flush();
+	}
+
+	@Override
+	public synchronized void stateChanged(int newState)
+	{
+		state = newState;
+		notifyAll();
+	}
+
+	@Override
+	public int writeTelegram(char[] buffer)
+	{
+		return engine.writeTelegram(buffer);
+	}
+
+	@Override
+	public int writeTelegram(char[] buffer, int type, Object id)
+	{
+		return engine.writeTelegram(buffer, type, id);
+	}
+
+	/**
+	 * Receive loop, runs until end of input stream
+	 */
+	@Override
+	public void run()
+	{
+		log.info("KW1281 RX started");
+		try
+		{
+			int chr;
+			while ((chr = in.read()) >= 0)
+			{
+				engine.receiveByte(chr);
+			}
+		}
+		catch (IOException ex)
+		{
+			log.log(Level.FINE, "Stream closed", ex);
+		}
+		engine.reset();
+		log.info("KW1281 RX finished: " + engine);
+	}
+}
@@ -0,0 +1,175 @@
+/*
+ * (C) Copyright 2015 by fr3ts0n <erwin.scheuch-heilig@gmx.at>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston,
+ * MA 02111-1307 USA
+ */
+
+package com.fr3ts0n.prot;
+
+import java.util.Arrays;
+
+/**
+ * Latency histogram with log-linear buckets
+ *
+ * Latencies are counted in microseconds within buckets of 8 linear
+ * steps per power of two, so percentiles are reported with a relative
+ * error of max. 12.5% over the range of 1us to approx. 60s.
+ * Recording is a constant time operation without allocations.
+ *
+ * @author erwin
+ */
+public class LatencyHistogram
+{
+	/** number of linear sub-buckets per power of two (as bits) */
+	private static final int SUB_BITS = 3;
+	private static final int SUB_COUNT = 1 << SUB_BITS;
+	/** highest power of two covered */
+	private static final int MAX_EXPONENT = 25;
+	/** total number of buckets */
+	static final int NUM_BUCKETS = SUB_COUNT * (MAX_EXPONENT - SUB_BITS + 2);
+
+	/** counts per bucket */
+	private final int[] counts = new int[NUM_BUCKETS];
+	/** total number of recorded values */
+	private long count = 0;
+	/** sum of recorded values [us] */
+	private long sum_us = 0;
+	/** max. recorded value [us] */
+	private long max_us = 0;
+
+	/**
+	 * get bucket index of a value
+	 *
+	 * @param value_us value [us]
+	 * @return bucket index
+	 */
+	static int bucketOf(long value_us)
+	{
+		if (value_us < SUB_COUNT)
+		{
+			return (int) Math.max(0, value_us);
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(value_us);
+		if (exponent > MAX_EXPONENT)
+		{
+			return NUM_BUCKETS - 1;
+		}
+		int mantissa = (int) (value_us >> (exponent - SUB_BITS));
+		return SUB_COUNT * (exponent - SUB_BITS + 1) + mantissa - SUB_COUNT;
+	}
+
+	/**
+	 * get highest value of a bucket
+	 *
+	 * @param bucket bucket index
+	 * @return highest value [us] which is counted in this bucket
+	 */
+	static long highestValueOf(int bucket)
+	{
+		if (bucket < SUB_COUNT)
+		{
+			return bucket;
+		}
+		int exponent = bucket / SUB_COUNT + SUB_BITS - 1;
+		long mantissa = bucket % SUB_COUNT + SUB_COUNT;
+		return ((mantissa + 1) << (exponent - SUB_BITS)) - 1;
+	}
+
+	/**
+	 * Record a latency
+	 *
+	 * @param latency_ns latency [ns]
+	 */
+	public synchronized void record(long latency_ns)
+	{
+		long value_us = latency_ns / 1000;
+		counts[bucketOf(value_us)]++;
+		count++;
+		sum_us += value_us;
+		if (value_us > max_us)
+		{
+			max_us = value_us;
+		}
+	}
+
+	/**
+	 * @return number of recorded values
+	 */
+	public synchronized long getCount()
+	{
+		return count;
+	}
+
+	/**
+	 * @return average latency [us]
+	 */
+	public synchronized long getMean_us()
+	{
+		return count > 0 ? sum_us / count : 0;
+	}
+
+	/**
+	 * @return maximum latency [us]
+	 */
+	public synchronized long getMax_us()
+	{
+		return max_us;
+	}
+
+	/**
+	 * Get latency percentile
+	 *
+	 * @param percentile percentile (0 .. 100)
+	 * @return latency [us] which is not exceeded by given percentage of values
+	 */
+	public synchronized long getPercentile_us(double percentile)
+	{
+		if (count == 0)
+		{
+			return 0;
+		}
+		long limit = Math.max(1, (long) Math.ceil(count * Math.min(100.0, percentile) / 100.0));
+		long seen = 0;
+		for (int i = 0; i < NUM_BUCKETS; i++)
+		{
+			seen += counts[i];
+			if (seen >= limit)
+			{
+				return Math.min(highestValueOf(i), max_us);
+			}
+		}
+		return max_us;
+	}
+
+	/**
+	 * reset all recorded values
+	 */
+	public synchronized void reset()
+	{
+		Arrays.fill(counts, 0);
+		count = 0;
+		sum_us = 0;
+		max_us = 0;
+	}
+
+	@Override
+	public synchronized String toString()
+	{
+		return String.format("n=%d avg=%dus p50=%dus p90=%dus p99=%dus max=%dus",
+		                     count, getMean_us(),
+		                     getPercentile_us(50), getPercentile_us(90), getPercentile_us(99),
+		                     max_us);
+	}
+}
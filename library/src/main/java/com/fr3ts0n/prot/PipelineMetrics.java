@@ -0,0 +1,288 @@
+/*
+ * (C) Copyright 2015 by fr3ts0n <erwin.scheuch-heilig@gmx.at>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston,
+ * MA 02111-1307 USA
+ */
+
+package com.fr3ts0n.prot;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Latency and throughput metrics of the request/response pipeline
+ *
+ * Latencies are recorded per pipeline stage and optionally per PID.
+ * Counters track requests, NO DATA responses, retries and the depth of
+ * the command queue. All recording methods are cheap enough to be
+ * always on.
+ *
+ * @author erwin
+ */
+public class PipelineMetrics
+{
+	/**
+	 * Stages of the request/response pipeline
+	 */
+	public enum Stage
+	{
+		/** request queued -> written to adapter */
+		TX_QUEUE,
+		/** request sent -> adapter prompt received */
+		ROUND_TRIP,
+		/** first received byte -> complete line framed */
+		FRAMING,
+		/** handling of one received line by protocol (incl. DECODE and LISTENERS) */
+		PARSE,
+		/** conversion of data items of one response */
+		DECODE,
+		/** notification of PV change listeners of one response */
+		LISTENERS
+	}
+
+	/** number of PIDs with individual statistics */
+	private static final int NUM_PIDS = 0x100;
+
+	/** histograms per stage */
+	private final LatencyHistogram[] stages = new LatencyHistogram[Stage.values().length];
+	/** histograms per stage and PID (created on first use) */
+	private final LatencyHistogram[][] pidStages = new LatencyHistogram[Stage.values().length][NUM_PIDS];
+
+	/** counters */
+	private final AtomicLong requests = new AtomicLong();
+	private final AtomicLong noData = new AtomicLong();
+	private final AtomicLong retries = new AtomicLong();
+	private volatile int queueDepth = 0;
+	private volatile int maxQueueDepth = 0;
+	/** start of measurement [ms] */
+	private volatile long startTime = System.currentTimeMillis();
+
+	public PipelineMetrics()
+	{
+		for (int i = 0; i < stages.length; i++)
+		{
+			stages[i] = new LatencyHistogram();
+		}
+	}
+
+	/**
+	 * Record latency of a stage
+	 *
+	 * @param stage      pipeline stage
+	 * @param latency_ns latency [ns]
+	 */
+	public void record(Stage stage, long latency_ns)
+	{
+		stages[stage.ordinal()].record(latency_ns);
+	}
+
+	/**
+	 * Record latency of a stage for a PID
+	 *
+	 * @param stage      pipeline stage
+	 * @param pid        PID (out of range = no PID statistics)
+	 * @param latency_ns latency [ns]
+	 */
+	public void record(Stage stage, int pid, long latency_ns)
+	{
+		record(stage, latency_ns);
+		if (pid >= 0 && pid < NUM_PIDS)
+		{
+			LatencyHistogram hist = pidStages[stage.ordinal()][pid];
+			if (hist == null)
+			{
+				hist = createPidHistogram(stage, pid);
+			}
+			hist.record(latency_ns);
+		}
+	}
+
+	/**
+	 * create histogram for stage and PID if not existing yet
+	 *
+	 * @param stage pipeline stage
+	 * @param pid   PID
+	 * @return histogram of stage and PID
+	 */
+	private synchronized LatencyHistogram createPidHistogram(Stage stage, int pid)
+	{
+		LatencyHistogram hist = pidStages[stage.ordinal()][pid];
+		if (hist == null)
+		{
+			hist = new LatencyHistogram();
+			pidStages[stage.ordinal()][pid] = hist;
+		}
+		return hist;
+	}
+
+	/**
+	 * Count a request sent to the adapter
+	 *
+	 * @param depth number of commands still queued
+	 */
+	public void countRequest(int depth)
+	{
+		requests.incrementAndGet();
+		queueDepth = depth;
+		if (depth > maxQueueDepth)
+		{
+			maxQueueDepth = depth;
+		}
+	}
+
+	/**
+	 * Count a NO DATA response
+	 */
+	public void countNoData()
+	{
+		noData.incrementAndGet();
+	}
+
+	/**
+	 * Count a repeated request
+	 */
+	public void countRetry()
+	{
+		retries.incrementAndGet();
+	}
+
+	/**
+	 * @param stage pipeline stage
+	 * @return latency histogram of stage
+	 */
+	public LatencyHistogram getHistogram(Stage stage)
+	{
+		return stages[stage.ordinal()];
+	}
+
+	/**
+	 * @param stage pipeline stage
+	 * @param pid   PID
+	 * @return latency histogram of stage for PID, null if nothing recorded
+	 */
+	public LatencyHistogram getHistogram(Stage stage, int pid)
+	{
+		return (pid >= 0 && pid < NUM_PIDS) ? pidStages[stage.ordinal()][pid] : null;
+	}
+
+	/**
+	 * @return number of requests
+	 */
+	public long getRequestCount()
+	{
+		return requests.get();
+	}
+
+	/**
+	 * @return average number of requests per second since last reset
+	 */
+	public double getRequestRate()
+	{
+		long elapsed = System.currentTimeMillis() - startTime;
+		return elapsed > 0 ? requests.get() * 1000.0 / elapsed : 0;
+	}
+
+	/**
+	 * @return number of NO DATA responses
+	 */
+	public long getNoDataCount()
+	{
+		return noData.get();
+	}
+
+	/**
+	 * @return ratio of NO DATA responses to requests (0 .. 1)
+	 */
+	public double getNoDataRate()
+	{
+		long numRequests = requests.get();
+		return numRequests > 0 ? (double) noData.get() / numRequests : 0;
+	}
+
+	/**
+	 * @return number of repeated requests
+	 */
+	public long getRetryCount()
+	{
+		return retries.get();
+	}
+
+	/**
+	 * @return depth of command queue at last request
+	 */
+	public int getQueueDepth()
+	{
+		return queueDepth;
+	}
+
+	/**
+	 * @return max. depth of command queue since last reset
+	 */
+	public int getMaxQueueDepth()
+	{
+		return maxQueueDepth;
+	}
+
+	/**
+	 * reset all metrics
+	 */
+	public synchronized void reset()
+	{
+		for (int i = 0; i < stages.length; i++)
+		{
+			stages[i].reset();
+			for (LatencyHistogram hist : pidStages[i])
+			{
+				if (hist != null)
+				{
+					hist.reset();
+				}
+			}
+		}
+		requests.set(0);
+		noData.set(0);
+		retries.set(0);
+		maxQueueDepth = queueDepth;
+		startTime = System.currentTimeMillis();
+	}
+
+	/**
+	 * @return multi line report of all metrics
+	 */
+	@Override
+	public String toString()
+	{
+		StringBuilder result = new StringBuilder();
+		result.append(String.format("Requests: %d (%.1f/s), NO DATA: %d (%.1f%%), retries: %d, queue: %d (max %d)%n",
+		                            getRequestCount(), getRequestRate(),
+		                            getNoDataCount(), getNoDataRate() * 100,
+		                            getRetryCount(), getQueueDepth(), getMaxQueueDepth()));
+		for (Stage stage : Stage.values())
+		{
+			result.append(String.format("%-10s %s%n", stage, getHistogram(stage)));
+		}
+		for (Stage stage : Stage.values())
+		{
+			for (int pid = 0; pid < NUM_PIDS; pid++)
+			{
+				LatencyHistogram hist = getHistogram(stage, pid);
+				if (hist != null && hist.getCount() > 0)
+				{
+					result.append(String.format("%-10s PID %02X %s%n", stage, pid, hist));
+				}
+			}
+		}
+		return result.toString();
+	}
+}
@@ -254,9 +254,23 @@ public abstract class ProtoHeader
 	 * @return parameter value as Object
 	 */
 	public static Integer getParamInt(int start, int len, char[] buffer)
+	{
+		return Integer.valueOf((int) getParamLong(start, len, buffer));
+	}
+
+	/**
+	 * return value of message parameter as primitive long (binary)
+	 * - allocation free variant of getParamInt
+	 *
+	 * @param start  start offset in buffer
+	 * @param len    length in bytes (0 = all the rest of buffer)
+	 * @param buffer telegram buffer to be read
+	 * @return parameter value
+	 */
+	public static long getParamLong(int start, int len, char[] buffer)
 	{
 		int ofs;
-		int value = 0;
+		long value = 0;
 		// if specified length is 0, take all the rest
 		if(len == 0) len = buffer.length - start;
 		for (ofs = start; ofs < start + len; ofs++)
@@ -264,7 +278,7 @@ public abstract class ProtoHeader
 			value <<= 8;
 			value |= buffer[ofs];
 		}
-		return Integer.valueOf(value);
+		return value;
 	}
 
 	/**
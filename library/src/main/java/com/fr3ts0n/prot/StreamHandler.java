@@ -21,10 +21,9 @@ package com.fr3ts0n.prot;
 
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
-import java.io.BufferedWriter;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
+import java.util.Arrays;
 import java.util.Vector;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -39,11 +38,28 @@ public class StreamHandler implements TelegramWriter, Runnable
 {
 	private static final Logger log = Logger.getLogger("stream");
 	private InputStream in;
-	private BufferedWriter out;
+	/** single writer stage for outgoing telegrams */
+	private final TelegramTxQueue txQueue = new TelegramTxQueue();
 	
 	private TelegramListener messageHandler;
+	/** size of bulk receive buffer */
+	private static final int RX_BUFFER_SIZE = 1024;
+	/** initial size of message framing buffer */
+	private static final int MSG_BUFFER_SIZE = 256;
+	// bulk receive buffer
+	private final byte[] rxBuffer = new byte[RX_BUFFER_SIZE];
 	// current receive message
-	private String message = "";
+	private char[] message = new char[MSG_BUFFER_SIZE];
+	// length of current receive message
+	private int messageLen = 0;
+	// poll input stream for available data instead of blocking read
+	private boolean pollingRx = false;
+	// pipeline metrics (optional)
+	private PipelineMetrics metrics = null;
+	// reception time of current bulk read [ns]
+	private long rxTime = 0;
+	// reception time of first byte of current receive message [ns]
+	private long messageTime = 0;
 	
 	public StreamHandler()
 	{
@@ -69,11 +85,41 @@ public class StreamHandler implements TelegramWriter, Runnable
 	public void setStreams(InputStream inStream, OutputStream outStream)
 	{
 		in = inStream;
-		/* Output uses BufferedWriter with buffer size 1 byte to trigger
-		   flushing on every outgoing byte [$Fix #AndrOBD-27] */
-		out = new BufferedWriter(new OutputStreamWriter(outStream), 1);
+		/* Output is flushed after every telegram [$Fix #AndrOBD-27] */
+		txQueue.setOutputStream(outStream);
+	}
+
+	/**
+	 * Close handler
+	 * - stops the TX writer thread and drops pending telegrams
+	 * - streams have to be closed by the owner to end a blocking RX loop
+	 */
+	public void close()
+	{
+		txQueue.close();
+	}
+
+	/**
+	 * Get TX queue for access to queue depth and TX latency statistics
+	 *
+	 * @return TX queue of this handler
+	 */
+	public TelegramTxQueue getTxQueue()
+	{
+		return txQueue;
 	}
 	
+	/**
+	 * Set pipeline metrics to record TX, framing and parsing latencies to
+	 *
+	 * @param metrics pipeline metrics, null = none
+	 */
+	public void setMetrics(PipelineMetrics metrics)
+	{
+		this.metrics = metrics;
+		txQueue.setMetrics(metrics);
+	}
+
 	/* (non-Javadoc)
 	 * @see com.fr3ts0n.prot.TelegramWriter#writeTelegram(char[])
 	 */
@@ -87,76 +133,132 @@ public class StreamHandler implements TelegramWriter, Runnable
 	 * @see com.fr3ts0n.prot.TelegramWriter#writeTelegram(char[], int, java.lang.Object)
 	 */
 	@Override
-	public int writeTelegram(final char[] buffer, int type, Object id)
+	public int writeTelegram(char[] buffer, int type, Object id)
 	{
-		int result = buffer.length;
-		
-		// Send data threaded to de-couple from main thread
-		new Thread(new Runnable()
+		if (log.isLoggable(Level.FINER))
 		{
-			@Override
-			public void run()
+			log.finer(this.toString() + " TX:" + ProtUtils.hexDumpBuffer(buffer));
+		}
+
+		// hand over to writer stage to de-couple from calling thread
+		if (!txQueue.offer(buffer, '\r'))
+		{
+			log.warning("TX queue full, telegram dropped:'"
+			            + String.valueOf(buffer) + "'");
+			return 0;
+		}
+		return buffer.length;
+	}
+	
+	/**
+	 * Select receive mode
+	 *
+	 * By default the receive loop blocks on bulk reads from the input stream.
+	 * Polling mode checks for available data and sleeps 1 ms if there is none.
+	 * This is only required for streams which do not support blocking reads.
+	 *
+	 * @param pollingRx true to poll for available data, false for blocking read
+	 */
+	public void setPollingRx(boolean pollingRx)
+	{
+		this.pollingRx = pollingRx;
+	}
+
+	/**
+	 * forward current receive message to message handler
+	 */
+	private void dispatchMessage()
+	{
+		try
+		{
+			if (messageHandler != null && messageLen > 0)
 			{
-				try
+				if (metrics != null)
 				{
-					String msg = new String(buffer);
-					msg += "\r";
-					
-					log.finer(this.toString() + " TX:"
-					          + ProtUtils.hexDumpBuffer(msg.toCharArray()));
-					
-					out.write(msg.toCharArray());
-					out.flush();
+					long start = System.nanoTime();
+					metrics.record(PipelineMetrics.Stage.FRAMING, start - messageTime);
+					messageHandler.handleTelegram(message, 0, messageLen);
+					metrics.record(PipelineMetrics.Stage.PARSE, System.nanoTime() - start);
 				}
-				catch (Exception ex)
+				else
 				{
-					log.severe("TX error:'"
-					           + ProtUtils.hexDumpBuffer(buffer) + "':"
-					           + ex.getStackTrace());
+					messageHandler.handleTelegram(message, 0, messageLen);
 				}
 			}
-		}).start();
-		return (result);
+		}
+		catch (Exception ex)
+		{
+			log.log(Level.WARNING, "handleTelegram", ex);
+		}
+		messageLen = 0;
 	}
-	
+
 	/**
-	 * process incoming character
+	 * append character to current receive message
 	 *
-	 * @param chr the received char
+	 * @param chr character to be appended
 	 */
-	private void processRxChar(int chr)
+	private void appendRxChar(int chr)
 	{
-		// process incoming data
-		log.finer(this.toString() + " RX: '"
-		          + String.format("%02X : %1c", (byte) chr, chr < 32 ? '.' : chr)
-		          + "'");
-		
-		switch (chr)
+		if (messageLen == message.length)
 		{
-			// ignore special characters
-			case 32:
-				break;
-			
-			// trigger message handling for new request
-			case '>':
-				message += (char) chr;
-				// trigger message handling
-			case 10:
-			case 13:
-				try
-				{
-					if (messageHandler != null && !message.isEmpty())
-					{ messageHandler.handleTelegram(message.toCharArray()); }
-				}
-				catch (Exception ex)
-				{
-					log.log(Level.WARNING, "handleTelegram", ex);
-				}
-				message = "";
-				break;
-			
-			default:
-				message += (char) chr;
+			message = Arrays.copyOf(message, message.length * 2);
+		}
+		if (messageLen == 0)
+		{
+			messageTime = rxTime;
+		}
+		message[messageLen++] = (char) chr;
+	}
+
+	/**
+	 * discard partially received message
+	 * - used by transports after loss of connection
+	 */
+	void resetRx()
+	{
+		messageLen = 0;
+	}
+
+	/**
+	 * process received bytes
+	 * - also used by transports which receive without input stream
+	 *
+	 * @param buffer buffer of received bytes
+	 * @param length number of valid bytes in buffer
+	 */
+	@SuppressWarnings("fallthrough")
+	void processRxBytes(byte[] buffer, int length)
+	{
+		if (log.isLoggable(Level.FINER))
+		{
+			log.finer(this.toString() + " RX:"
+			          + ProtUtils.hexDumpBuffer(new String(buffer, 0, length).toCharArray()));
+		}
+
+		rxTime = System.nanoTime();
+		for (int i = 0; i < length; i++)
+		{
+			int chr = buffer[i] & 0xFF;
+			switch (chr)
+			{
+				// ignore special characters
+				case 0:
+				case 32:
+					break;
+
+				// trigger message handling for new request
+				case '>':
+					appendRxChar(chr);
+					// trigger message handling
+				case 10:
+				case 13:
+					dispatchMessage();
+					break;
+
+				default:
+					appendRxChar(chr);
+			}
 		}
 	}
 	
@@ -164,40 +266,43 @@ public class StreamHandler implements TelegramWriter, Runnable
 	 * start the thread
 	 */
 	@Override
-	@SuppressWarnings("fallthrough")
 	public void run()
 	{
-		int chr;
+		int len;
 		log.info("RX Thread started");
+		messageLen = 0;
 		try
 		{
 			// loop until stream closed / invalid
 			while (true)
 			{
-				// if no data available, then wait for it
-				if (in.available() > 0)
+				if (pollingRx)
 				{
-					// otherwise read- and process ...
-					
-					// Is end of stream reached?
-					if ((chr = in.read()) > 0)
+					// if no data available, then wait for it
+					int avail = in.available();
+					if (avail <= 0)
 					{
-						// process incoming data
-						processRxChar(chr);
-					}
-					else
-					{
-						log.warning(this.toString() + " RX: End of stream!");
-						// stream finished - break loop
-						break;
+						// wait 1 ms for incoming data
+						Thread.sleep(1);
+						continue;
 					}
+					len = in.read(rxBuffer, 0, Math.min(avail, rxBuffer.length));
 				}
 				else
 				{
-					// wait 1 ms for incoming data
-					Thread.sleep(1);
+					// block until data is available
+					len = in.read(rxBuffer, 0, rxBuffer.length);
+				}
+
+				// Is end of stream reached?
+				if (len < 0)
+				{
+					log.warning(this.toString() + " RX: End of stream!");
+					// stream finished - break loop
+					break;
 				}
-				
+				// process incoming data
+				processRxBytes(rxBuffer, len);
 			}
 		}
 		catch (Exception ex)
@@ -0,0 +1,622 @@
+/*
+ * (C) Copyright 2015 by fr3ts0n <erwin.scheuch-heilig@gmx.at>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston,
+ * MA 02111-1307 USA
+ */
+
+
+package com.fr3ts0n.prot;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Non-blocking TCP transport for adapter communication
+ *
+ * One I/O thread ({@link #run()}) serves any number of adapter connections
+ * using a selector. Received data is framed directly into telegrams for
+ * the message handler of each connection (same framing as
+ * {@link StreamHandler}).
+ *
+ * Lost or refused connections are re-established with an exponential
+ * backoff. Telegrams which are written while a connection is down are
+ * kept in its TX buffer and sent after re-connection. A telegram which was
+ * only partially sent on the lost connection is dropped.
+ *
+ * @author erwin
+ */
+public class TcpTransport implements Runnable, Closeable
+{
+	/** min. delay [ms] before re-connection */
+	static final long RECONNECT_MIN = 100;
+	/** max. delay [ms] before re-connection */
+	static final long RECONNECT_MAX = 10000;
+	/** size of receive buffer per connection */
+	private static final int RX_BUFFER_SIZE = 1024;
+	/** size of transmit buffer per connection */
+	private static final int TX_BUFFER_SIZE = 4096;
+
+	private static final Logger log = Logger.getLogger("stream");
+
+	/**
+	 * Listener for connection state changes
+	 */
+	public interface ConnectionListener
+	{
+		/**
+		 * connection state has changed
+		 *
+		 * @param connection connection which has changed
+		 * @param connected  true if connection is established, false if lost
+		 */
+		void connectionChanged(Connection connection, boolean connected);
+	}
+
+	/**
+	 * A single adapter connection
+	 */
+	public class Connection implements TelegramWriter, Closeable
+	{
+		/** address of adapter */
+		private final SocketAddress address;
+		/** framing of received data into telegrams */
+		private final StreamHandler framer = new StreamHandler();
+		/** receive buffer */
+		private final ByteBuffer rxBuffer = ByteBuffer.allocate(RX_BUFFER_SIZE);
+		/** pending TX data (write mode) */
+		private final ByteBuffer txBuffer = ByteBuffer.allocate(TX_BUFFER_SIZE);
+		/** first telegram in TX buffer is partially sent (guarded by txBuffer) */
+		private boolean txPartial = false;
+		/** listener for connection state changes (optional) */
+		private volatile ConnectionListener connectionListener = null;
+
+		/** current channel, null while disconnected (I/O thread only) */
+		private SocketChannel channel = null;
+		private SelectionKey key = null;
+		/** time [ms] of next connection attempt */
+		private long nextConnect = 0;
+		/** current re-connection delay [ms] */
+		private long backoff = RECONNECT_MIN;
+		private volatile boolean connected = false;
+		private volatile boolean closed = false;
+
+		/** statistics */
+		private volatile long numConnects = 0;
+		private volatile long rxBytes = 0;
+		private volatile long txBytes = 0;
+		private volatile long txRejected = 0;
+
+		Connection(SocketAddress address, TelegramListener messageHandler)
+		{
+			this.address = address;
+			framer.setMessageHandler(messageHandler);
+		}
+
+		/**
+		 * @return address of adapter
+		 */
+		public SocketAddress getAddress()
+		{
+			return address;
+		}
+
+		/**
+		 * Set handler for received telegrams
+		 *
+		 * @param messageHandler handler for received telegrams
+		 */
+		public void setMessageHandler(TelegramListener messageHandler)
+		{
+			framer.setMessageHandler(messageHandler);
+		}
+
+		/**
+		 * Set pipeline metrics to record framing and parsing latencies to
+		 *
+		 * @param metrics pipeline metrics, null = none
+		 */
+		public void setMetrics(PipelineMetrics metrics)
+		{
+			framer.setMetrics(metrics);
+		}
+
+		/**
+		 * Set listener for connection state changes
+		 *
+		 * @param listener listener to be notified, null = none
+		 */
+		public void setConnectionListener(ConnectionListener listener)
+		{
+			connectionListener = listener;
+		}
+
+		/**
+		 * @return true if connection is established
+		 */
+		public boolean isConnected()
+		{
+			return connected;
+		}
+
+		/**
+		 * @return number of established connections (1 + re-connections)
+		 */
+		public long getConnectCount()
+		{
+			return numConnects;
+		}
+
+		/**
+		 * @return number of received bytes
+		 */
+		public long getRxBytes()
+		{
+			return rxBytes;
+		}
+
+		/**
+		 * @return number of sent bytes
+		 */
+		public long getTxBytes()
+		{
+			return txBytes;
+		}
+
+		/**
+		 * @return number of telegrams rejected because of full TX buffer
+		 */
+		public long getTxRejected()
+		{
+			return txRejected;
+		}
+
+		@Override
+		public int writeTelegram(char[] buffer)
+		{
+			return writeTelegram(buffer, 0, null);
+		}
+
+		@Override
+		public int writeTelegram(char[] buffer, int type, Object id)
+		{
+			synchronized (txBuffer)
+			{
+				if (closed || txBuffer.remaining() < buffer.length + 1)
+				{
+					txRejected++;
+					log.warning("TX buffer full, telegram dropped:'"
+					            + String.valueOf(buffer) + "'");
+					return 0;
+				}
+				for (char chr : buffer)
+				{
+					txBuffer.put((byte) chr);
+				}
+				txBuffer.put((byte) '\r');
+			}
+			requestUpdate(this);
+			return buffer.length;
+		}
+
+		/**
+		 * Close connection, it is not re-connected any more
+		 */
+		@Override
+		public void close()
+		{
+			closed = true;
+			requestUpdate(this);
+		}
+
+		/**
+		 * start connection attempt (I/O thread)
+		 */
+		private void startConnect() throws IOException
+		{
+			channel = SocketChannel.open();
+			channel.configureBlocking(false);
+			channel.socket().setTcpNoDelay(true);
+			if (channel.connect(address))
+			{
+				key = channel.register(selector, SelectionKey.OP_READ, this);
+				finishConnect();
+			}
+			else
+			{
+				key = channel.register(selector, SelectionKey.OP_CONNECT, this);
+			}
+		}
+
+		/**
+		 * complete connection attempt (I/O thread)
+		 */
+		private void finishConnect() throws IOException
+		{
+			if (channel.finishConnect())
+			{
+				connected = true;
+				numConnects++;
+				backoff = RECONNECT_MIN;
+				log.info("TCP connected: " + address);
+				updateInterest();
+				notifyConnectionChanged(true);
+			}
+		}
+
+		/**
+		 * notify connection listener about state change (I/O thread)
+		 * - listener exceptions are logged and don't affect the I/O loop
+		 *
+		 * @param isConnected true if connection is established, false if lost
+		 */
+		private void notifyConnectionChanged(boolean isConnected)
+		{
+			ConnectionListener listener = connectionListener;
+			if (listener != null)
+			{
+				try
+				{
+					listener.connectionChanged(this, isConnected);
+				}
+				catch (RuntimeException ex)
+				{
+					log.log(Level.WARNING, "connectionChanged: " + address, ex);
+				}
+			}
+		}
+
+		/**
+		 * set selection interest according to pending TX data (I/O thread)
+		 */
+		private void updateInterest()
+		{
+			if (connected && key != null && key.isValid())
+			{
+				synchronized (txBuffer)
+				{
+					key.interestOps(txBuffer.position() > 0
+					                ? SelectionKey.OP_READ | SelectionKey.OP_WRITE
+					                : SelectionKey.OP_READ);
+				}
+			}
+		}
+
+		/**
+		 * read received data and forward framed telegrams (I/O thread)
+		 */
+		private void read() throws IOException
+		{
+			rxBuffer.clear();
+			int len = channel.read(rxBuffer);
+			if (len < 0)
+			{
+				throw new EOFException("Connection closed by adapter");
+			}
+			rxBytes += len;
+			framer.processRxBytes(rxBuffer.array(), len);
+		}
+
+		/**
+		 * write pending TX data (I/O thread)
+		 */
+		private void write() throws IOException
+		{
+			synchronized (txBuffer)
+			{
+				txBuffer.flip();
+				try
+				{
+					int len = channel.write(txBuffer);
+					if (len > 0)
+					{
+						txBytes += len;
+						txPartial = txBuffer.get(txBuffer.position() - 1) != '\r';
+					}
+				}
+				finally
+				{
+					txBuffer.compact();
+				}
+			}
+			updateInterest();
+		}
+
+		/**
+		 * drop remainder of a partially sent telegram,
+		 * a new connection shall only receive complete telegrams
+		 */
+		private void dropPartialTx()
+		{
+			synchronized (txBuffer)
+			{
+				if (txPartial)
+				{
+					txBuffer.flip();
+					while (txBuffer.hasRemaining() && txBuffer.get() != '\r')
+					{
+						// skip remaining characters of telegram
+					}
+					txBuffer.compact();
+					txPartial = false;
+					log.fine("TCP " + address + ": partially sent telegram dropped");
+				}
+			}
+		}
+
+		/**
+		 * drop current channel and schedule re-connection (I/O thread)
+		 *
+		 * @param reason reason of disconnection
+		 * @param now    current time [ms]
+		 */
+		private void disconnect(Exception reason, long now)
+		{
+			boolean wasConnected = connected;
+			connected = false;
+			if (key != null)
+			{
+				key.cancel();
+				key = null;
+			}
+			if (channel != null)
+			{
+				try
+				{
+					channel.close();
+				}
+				catch (IOException ex)
+				{
+					log.log(Level.FINE, "close", ex);
+				}
+				channel = null;
+			}
+			// restart framing and sending with complete telegrams
+			dropPartialTx();
+			framer.resetRx();
+			if (closed)
+			{
+				log.info("TCP closed: " + address);
+			}
+			else
+			{
+				nextConnect = now + backoff;
+				log.log(Level.INFO, String.format("TCP %s: %s, re-connect in %d ms",
+				                                  address, reason, backoff));
+				backoff = Math.min(backoff * 2, RECONNECT_MAX);
+			}
+			if (wasConnected)
+			{
+				notifyConnectionChanged(false);
+			}
+		}
+
+		@Override
+		public String toString()
+		{
+			return String.format("%s (%s, RX: %d bytes, TX: %d bytes)",
+			                     address, connected ? "connected" : "disconnected",
+			                     rxBytes, txBytes);
+		}
+	}
+
+	/** the selector */
+	private final Selector selector;
+	/** all connections (I/O thread only) */
+	private final List<Connection> connections = new ArrayList<Connection>();
+	/** connections which require an update by the I/O thread */
+	private final ConcurrentLinkedQueue<Connection> updates = new ConcurrentLinkedQueue<Connection>();
+	/** I/O loop shall continue */
+	private volatile boolean running = true;
+
+	/**
+	 * Create transport
+	 *
+	 * @throws IOException if selector can't be opened
+	 */
+	public TcpTransport() throws IOException
+	{
+		selector = Selector.open();
+	}
+
+	/**
+	 * Add connection to adapter
+	 * - connection is established (and re-established) by the I/O thread
+	 *
+	 * @param address        address of adapter
+	 * @param messageHandler handler for received telegrams
+	 * @return the new connection
+	 */
+	public Connection connect(SocketAddress address, TelegramListener messageHandler)
+	{
+		return connect(address, messageHandler, null);
+	}
+
+	/**
+	 * Add connection to adapter
+	 * - connection is established (and re-established) by the I/O thread
+	 *
+	 * @param address            address of adapter
+	 * @param messageHandler     handler for received telegrams
+	 * @param connectionListener listener for connection state changes
+	 * @return the new connection
+	 */
+	public Connection connect(SocketAddress address,
+	                          TelegramListener messageHandler,
+	                          ConnectionListener connectionListener)
+	{
+		Connection connection = new Connection(address, messageHandler);
+		connection.setConnectionListener(connectionListener);
+		requestUpdate(connection);
+		return connection;
+	}
+
+	/**
+	 * request update of connection by I/O thread
+	 *
+	 * @param connection connection to be updated
+	 */
+	private void requestUpdate(Connection connection)
+	{
+		updates.add(connection);
+		selector.wakeup();
+	}
+
+	/**
+	 * process requested updates and due connection attempts (I/O thread)
+	 *
+	 * @param now current time [ms]
+	 * @return time [ms] until next connection attempt, 0 if none
+	 */
+	private long processUpdates(long now)
+	{
+		Connection connection;
+		while ((connection = updates.poll()) != null)
+		{
+			if (connection.closed)
+			{
+				if (connections.remove(connection))
+				{
+					connection.disconnect(null, now);
+				}
+			}
+			else if (!connections.contains(connection))
+			{
+				connections.add(connection);
+			}
+			else
+			{
+				connection.updateInterest();
+			}
+		}
+
+		long timeout = 0;
+		for (Connection conn : connections)
+		{
+			if (conn.channel == null)
+			{
+				if (now >= conn.nextConnect)
+				{
+					try
+					{
+						conn.startConnect();
+					}
+					catch (IOException | RuntimeException ex)
+					{
+						conn.disconnect(ex, now);
+					}
+				}
+				if (conn.channel == null)
+				{
+					long delay = Math.max(1, conn.nextConnect - now);
+					timeout = timeout == 0 ? delay : Math.min(timeout, delay);
+				}
+			}
+		}
+		return timeout;
+	}
+
+	/**
+	 * I/O loop, runs until transport is closed
+	 */
+	@Override
+	public void run()
+	{
+		log.info("TCP I/O started");
+		try
+		{
+			while (running)
+			{
+				long timeout = processUpdates(System.currentTimeMillis());
+				selector.select(timeout);
+				long now = System.currentTimeMillis();
+				Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+				while (keys.hasNext())
+				{
+					SelectionKey key = keys.next();
+					keys.remove();
+					Connection connection = (Connection) key.attachment();
+					try
+					{
+						if (key.isValid() && key.isConnectable())
+						{
+							connection.finishConnect();
+						}
+						if (key.isValid() && key.isReadable())
+						{
+							connection.read();
+						}
+						if (key.isValid() && key.isWritable())
+						{
+							connection.write();
+						}
+					}
+					catch (IOException ex)
+					{
+						connection.disconnect(ex, now);
+					}
+					catch (RuntimeException ex)
+					{
+						log.log(Level.SEVERE, "TCP I/O error: " + connection.getAddress(), ex);
+						connection.disconnect(ex, now);
+					}
+				}
+			}
+		}
+		catch (IOException ex)
+		{
+			log.log(Level.SEVERE, "TCP I/O error", ex);
+		}
+		finally
+		{
+			for (Connection connection : connections)
+			{
+				connection.closed = true;
+				connection.disconnect(null, 0);
+			}
+			connections.clear();
+			try
+			{
+				selector.close();
+			}
+			catch (IOException ex)
+			{
+				log.log(Level.FINE, "close", ex);
+			}
+		}
+		log.info("TCP I/O stopped");
+	}
+
+	/**
+	 * Stop I/O loop and close all connections
+	 */
+	@Override
+	public void close()
+	{
+		running = false;
+		selector.wakeup();
+	}
+}
@@ -18,6 +18,7 @@
 
 package com.fr3ts0n.prot;
 
+import java.util.Arrays;
 import java.util.EventListener;
 
 /**
@@ -33,4 +34,21 @@ public interface TelegramListener extends EventListener
 	 * @return number of listeners notified
 	 */
 	int handleTelegram(char[] buffer);
+
+	/**
+	 * handle incoming protocol telegram from a slice of a (re-used) buffer
+	 *
+	 * The buffer content is only valid during this call. Listeners which are
+	 * able to work on the slice directly should override this method, the
+	 * default implementation forwards a copy of the slice.
+	 *
+	 * @param buffer - buffer containing the telegram
+	 * @param offset - offset of telegram within buffer
+	 * @param length - length of telegram
+	 * @return number of listeners notified
+	 */
+	default int handleTelegram(char[] buffer, int offset, int length)
+	{
+		return handleTelegram(Arrays.copyOfRange(buffer, offset, offset + length));
+	}
 }
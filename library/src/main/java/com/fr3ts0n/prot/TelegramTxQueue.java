@@ -0,0 +1,358 @@
+/*
+ * (C) Copyright 2015 by fr3ts0n <erwin.scheuch-heilig@gmx.at>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston,
+ * MA 02111-1307 USA
+ */
+
+package com.fr3ts0n.prot;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Single writer stage for outgoing telegrams
+ *
+ * Telegrams are copied into a fixed ring of re-usable byte buffers and
+ * written to the output stream by one long-lived writer thread in order
+ * of submission. If the ring is full, the telegram is rejected to signal
+ * back-pressure to the sender.
+ *
+ * The writer thread runs until {@link #close()}, which has to be called
+ * when the connection is finished.
+ *
+ * @author erwin
+ */
+public class TelegramTxQueue implements Runnable
+{
+	/** default number of telegrams which may be pending */
+	public static final int DEFAULT_CAPACITY = 32;
+	/** default size of a single TX buffer slot */
+	private static final int DEFAULT_SLOT_SIZE = 64;
+
+	private static final Logger log = Logger.getLogger("stream");
+
+	/** TX buffer slots */
+	private final byte[][] slots;
+	/** number of valid bytes per slot */
+	private final int[] lengths;
+	/** enqueue timestamp [ns] per slot */
+	private final long[] enqueueTimes;
+	/** index of next slot to be written */
+	private int head = 0;
+	/** index of next free slot */
+	private int tail = 0;
+	/** number of pending slots */
+	private int count = 0;
+	/** incremented on each clear, invalidates a slot which is being written */
+	private int generation = 0;
+
+	/** stream to write telegrams to */
+	private OutputStream out;
+	/** the writer thread */
+	private Thread writerThread = null;
+	/** pipeline metrics to record TX latencies to (optional) */
+	private volatile PipelineMetrics metrics = null;
+
+	/** statistics */
+	private long txCount = 0;
+	private long rejectCount = 0;
+	private int maxDepth = 0;
+	private long latencySum_ns = 0;
+	private long latencyMax_ns = 0;
+	private long latencyLast_ns = 0;
+
+	/**
+	 * Create TX queue with default capacity
+	 */
+	public TelegramTxQueue()
+	{
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Create TX queue with specified capacity
+	 *
+	 * @param capacity max. number of pending telegrams
+	 */
+	public TelegramTxQueue(int capacity)
+	{
+		slots = new byte[capacity][DEFAULT_SLOT_SIZE];
+		lengths = new int[capacity];
+		enqueueTimes = new long[capacity];
+	}
+
+	/**
+	 * Set output stream to write telegrams to
+	 * - telegrams pending for a previous stream are dropped
+	 * - starts the writer thread if not already running
+	 *
+	 * @param outStream stream for outgoing telegrams
+	 */
+	public synchronized void setOutputStream(OutputStream outStream)
+	{
+		if (out != null && out != outStream)
+		{
+			clear();
+		}
+		out = outStream;
+		if (writerThread == null)
+		{
+			writerThread = new Thread(this, "TelegramTx");
+			writerThread.setDaemon(true);
+			writerThread.start();
+		}
+		notifyAll();
+	}
+
+	/**
+	 * Drop all pending telegrams
+	 */
+	public synchronized void clear()
+	{
+		head = tail = count = 0;
+		generation++;
+	}
+
+	/**
+	 * Stop writer thread, drop pending telegrams and release output stream
+	 * - the queue may be re-used by setting a new output stream
+	 */
+	public synchronized void close()
+	{
+		if (writerThread != null)
+		{
+			writerThread.interrupt();
+			writerThread = null;
+		}
+		clear();
+		out = null;
+	}
+
+	/**
+	 * Queue telegram for transmission
+	 *
+	 * @param buffer     telegram buffer
+	 * @param terminator termination character to be appended (0 = none)
+	 * @return true if queued, false if queue is full (back-pressure)
+	 */
+	public synchronized boolean offer(char[] buffer, char terminator)
+	{
+		if (count >= slots.length)
+		{
+			rejectCount++;
+			return false;
+		}
+
+		int len = buffer.length + (terminator != 0 ? 1 : 0);
+		byte[] slot = slots[tail];
+		// grow slot once if telegram does not fit, it will be re-used afterwards
+		if (slot.length < len)
+		{
+			slot = new byte[len];
+			slots[tail] = slot;
+		}
+		for (int i = 0; i < buffer.length; i++)
+		{
+			slot[i] = (byte) buffer[i];
+		}
+		if (terminator != 0)
+		{
+			slot[buffer.length] = (byte) terminator;
+		}
+		lengths[tail] = len;
+		enqueueTimes[tail] = System.nanoTime();
+		tail = (tail + 1) % slots.length;
+		count++;
+		maxDepth = Math.max(maxDepth, count);
+		notifyAll();
+		return true;
+	}
+
+	/**
+	 * writer loop
+	 */
+	@Override
+	public void run()
+	{
+		log.info("TX Thread started");
+		try
+		{
+			Thread self = Thread.currentThread();
+			// writer-local copy of telegram, slot may be re-used after a clear
+			byte[] data = new byte[DEFAULT_SLOT_SIZE];
+			while (!self.isInterrupted())
+			{
+				int len;
+				long enqueued;
+				int gen;
+				OutputStream os;
+				synchronized (this)
+				{
+					while (writerThread == self && (count == 0 || out == null))
+					{
+						wait();
+					}
+					// queue was closed
+					if (writerThread != self)
+					{
+						break;
+					}
+					gen = generation;
+					// head slot stays reserved until written (count not yet decremented)
+					len = lengths[head];
+					if (data.length < len)
+					{
+						data = new byte[len];
+					}
+					System.arraycopy(slots[head], 0, data, 0, len);
+					enqueued = enqueueTimes[head];
+					os = out;
+				}
+
+				try
+				{
+					os.write(data, 0, len);
+					os.flush();
+				}
+				catch (IOException ex)
+				{
+					log.log(Level.SEVERE, "TX error", ex);
+				}
+
+				long latency = System.nanoTime() - enqueued;
+				synchronized (this)
+				{
+					latencyLast_ns = latency;
+					latencySum_ns += latency;
+					latencyMax_ns = Math.max(latencyMax_ns, latency);
+					txCount++;
+					// slot is still valid if queue was not cleared meanwhile
+					if (gen == generation)
+					{
+						head = (head + 1) % slots.length;
+						count--;
+					}
+				}
+				PipelineMetrics currMetrics = metrics;
+				if (currMetrics != null)
+				{
+					currMetrics.record(PipelineMetrics.Stage.TX_QUEUE, latency);
+				}
+			}
+		}
+		catch (InterruptedException ex)
+		{
+			// thread was stopped
+		}
+		log.info("TX Thread stopped");
+	}
+
+	/**
+	 * Set pipeline metrics to record TX latencies to
+	 *
+	 * @param metrics pipeline metrics, null = none
+	 */
+	public void setMetrics(PipelineMetrics metrics)
+	{
+		this.metrics = metrics;
+	}
+
+	/**
+	 * @return number of telegrams currently pending
+	 */
+	public synchronized int getQueueDepth()
+	{
+		return count;
+	}
+
+	/**
+	 * @return max. number of pending telegrams since last statistics reset
+	 */
+	public synchronized int getMaxQueueDepth()
+	{
+		return maxDepth;
+	}
+
+	/**
+	 * @return capacity of the queue
+	 */
+	public int getCapacity()
+	{
+		return slots.length;
+	}
+
+	/**
+	 * @return number of telegrams sent
+	 */
+	public synchronized long getTxCount()
+	{
+		return txCount;
+	}
+
+	/**
+	 * @return number of telegrams rejected because of full queue
+	 */
+	public synchronized long getRejectCount()
+	{
+		return rejectCount;
+	}
+
+	/**
+	 * @return TX latency (queued -> flushed) of last telegram [us]
+	 */
+	public synchronized long getLastTxLatency_us()
+	{
+		return latencyLast_ns / 1000;
+	}
+
+	/**
+	 * @return average TX latency (queued -> flushed) [us]
+	 */
+	public synchronized long getAvgTxLatency_us()
+	{
+		return txCount > 0 ? latencySum_ns / txCount / 1000 : 0;
+	}
+
+	/**
+	 * @return maximum TX latency (queued -> flushed) [us]
+	 */
+	public synchronized long getMaxTxLatency_us()
+	{
+		return latencyMax_ns / 1000;
+	}
+
+	/**
+	 * reset TX statistics
+	 */
+	public synchronized void resetStatistics()
+	{
+		txCount = 0;
+		rejectCount = 0;
+		maxDepth = count;
+		latencySum_ns = 0;
+		latencyMax_ns = 0;
+		latencyLast_ns = 0;
+	}
+
+	@Override
+	public synchronized String toString()
+	{
+		return String.format("TX: %d sent, %d rejected, depth %d/%d (max %d), latency avg %d us / max %d us",
+		                     txCount, rejectCount, count, slots.length, maxDepth,
+		                     getAvgTxLatency_us(), getMaxTxLatency_us());
+	}
+}
@@ -0,0 +1,289 @@
+/*
+ * (C) Copyright 2015 by fr3ts0n <erwin.scheuch-heilig@gmx.at>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston,
+ * MA 02111-1307 USA
+ */
+
+
+package com.fr3ts0n.prot;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.PortUnreachableException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Datagram (UDP) transport for adapter communication
+ *
+ * Datagrams are received into a re-usable buffer and framed directly into
+ * telegrams for the message handler (same framing as {@link StreamHandler}),
+ * so reception needs no pipe, no additional thread and no per-packet
+ * allocations. Outgoing telegrams are sent as one datagram each.
+ *
+ * The receive loop runs in the thread calling {@link #run()} until the
+ * transport is closed.
+ *
+ * @author erwin
+ */
+public class UdpTransport implements TelegramWriter, Runnable, Closeable
+{
+	/** max. size of a single datagram */
+	public static final int MAX_DATAGRAM_SIZE = 2048;
+
+	private static final Logger log = Logger.getLogger("stream");
+
+	/** connected datagram channel */
+	private final DatagramChannel channel;
+	/** framing of received data into telegrams */
+	private final StreamHandler framer = new StreamHandler();
+	/** re-usable receive buffer */
+	private final ByteBuffer rxBuffer = ByteBuffer.allocate(MAX_DATAGRAM_SIZE);
+	/** re-usable transmit buffer */
+	private final ByteBuffer txBuffer = ByteBuffer.allocate(MAX_DATAGRAM_SIZE);
+	/** pipeline metrics to record TX latencies to (optional) */
+	private volatile PipelineMetrics metrics = null;
+
+	/** statistics */
+	private volatile long rxPackets = 0;
+	private volatile long rxBytes = 0;
+	private volatile long txPackets = 0;
+	private volatile long txBytes = 0;
+	private volatile long txErrors = 0;
+	private final long startTime = System.currentTimeMillis();
+
+	/**
+	 * Create transport on connected datagram channel
+	 *
+	 * @param channel datagram channel, connected to adapter
+	 */
+	public UdpTransport(DatagramChannel channel)
+	{
+		if (!channel.isConnected())
+		{
+			throw new IllegalArgumentException("Channel not connected");
+		}
+		this.channel = channel;
+	}
+
+	/**
+	 * Open transport to adapter
+	 *
+	 * @param adapter address of adapter
+	 * @return new transport
+	 * @throws IOException if channel can't be opened
+	 */
+	public static UdpTransport open(SocketAddress adapter) throws IOException
+	{
+		DatagramChannel channel = DatagramChannel.open();
+		try
+		{
+			channel.connect(adapter);
+		}
+		catch (IOException ex)
+		{
+			channel.close();
+			throw ex;
+		}
+		log.info("UDP transport: " + channel.getLocalAddress() + " -> " + adapter);
+		return new UdpTransport(channel);
+	}
+
+	/**
+	 * @return datagram channel of transport
+	 */
+	public DatagramChannel getChannel()
+	{
+		return channel;
+	}
+
+	/**
+	 * Set handler for received telegrams
+	 *
+	 * @param messageHandler handler for received telegrams
+	 */
+	public void setMessageHandler(TelegramListener messageHandler)
+	{
+		framer.setMessageHandler(messageHandler);
+	}
+
+	/**
+	 * Set pipeline metrics to record TX, framing and parsing latencies to
+	 *
+	 * @param metrics pipeline metrics, null = none
+	 */
+	public void setMetrics(PipelineMetrics metrics)
+	{
+		this.metrics = metrics;
+		framer.setMetrics(metrics);
+	}
+
+	@Override
+	public int writeTelegram(char[] buffer)
+	{
+		return writeTelegram(buffer, 0, null);
+	}
+
+	@Override
+	public int writeTelegram(char[] buffer, int type, Object id)
+	{
+		if (buffer.length >= txBuffer.capacity())
+		{
+			log.warning("TX telegram too long:'" + String.valueOf(buffer) + "'");
+			return 0;
+		}
+		long start = System.nanoTime();
+		synchronized (txBuffer)
+		{
+			txBuffer.clear();
+			for (char chr : buffer)
+			{
+				txBuffer.put((byte) chr);
+			}
+			txBuffer.put((byte) '\r');
+			txBuffer.flip();
+			try
+			{
+				txBytes += channel.write(txBuffer);
+				txPackets++;
+			}
+			catch (IOException ex)
+			{
+				txErrors++;
+				log.log(Level.SEVERE, "TX error", ex);
+				return 0;
+			}
+		}
+		PipelineMetrics currMetrics = metrics;
+		if (currMetrics != null)
+		{
+			currMetrics.record(PipelineMetrics.Stage.TX_QUEUE, System.nanoTime() - start);
+		}
+		return buffer.length;
+	}
+
+	/**
+	 * receive loop, runs until transport is closed
+	 */
+	@Override
+	public void run()
+	{
+		log.info("UDP RX started");
+		try
+		{
+			while (channel.isOpen())
+			{
+				rxBuffer.clear();
+				int len;
+				try
+				{
+					len = channel.read(rxBuffer);
+				}
+				catch (PortUnreachableException ex)
+				{
+					// adapter not (yet) listening, keep receiving
+					log.fine("UDP port unreachable");
+					continue;
+				}
+				if (len > 0)
+				{
+					rxPackets++;
+					rxBytes += len;
+					framer.processRxBytes(rxBuffer.array(), len);
+				}
+			}
+		}
+		catch (ClosedChannelException ex)
+		{
+			// transport closed
+		}
+		catch (IOException ex)
+		{
+			log.log(Level.WARNING, "UDP RX error", ex);
+		}
+		log.info("UDP RX stopped");
+	}
+
+	/**
+	 * Close transport, this also terminates the receive loop
+	 *
+	 * @throws IOException on close errors
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		channel.close();
+	}
+
+	/**
+	 * @return number of received datagrams
+	 */
+	public long getRxPackets()
+	{
+		return rxPackets;
+	}
+
+	/**
+	 * @return number of received bytes
+	 */
+	public long getRxBytes()
+	{
+		return rxBytes;
+	}
+
+	/**
+	 * @return number of sent datagrams
+	 */
+	public long getTxPackets()
+	{
+		return txPackets;
+	}
+
+	/**
+	 * @return number of sent bytes
+	 */
+	public long getTxBytes()
+	{
+		return txBytes;
+	}
+
+	/**
+	 * @return number of failed transmissions
+	 */
+	public long getTxErrors()
+	{
+		return txErrors;
+	}
+
+	/**
+	 * @return average receive throughput [bytes/s] since creation
+	 */
+	public double getRxThroughput()
+	{
+		long duration = Math.max(1, System.currentTimeMillis() - startTime);
+		return rxBytes * 1000.0 / duration;
+	}
+
+	@Override
+	public String toString()
+	{
+		return String.format("UDP RX: %d pkt/%d bytes (%.0f B/s), TX: %d pkt/%d bytes, %d errors",
+		                     rxPackets, rxBytes, getRxThroughput(), txPackets, txBytes, txErrors);
+	}
+}
@@ -19,15 +19,15 @@
 package com.fr3ts0n.prot.gui;
 
 
-import com.fr3ts0n.prot.ProtUtils;
+import com.fr3ts0n.prot.Kw1281Engine;
 import com.fr3ts0n.prot.SerialExt;
+import com.fr3ts0n.prot.TelegramListener;
 import com.fr3ts0n.prot.TelegramWriter;
 
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.beans.PropertyChangeEvent;
 import java.io.IOException;
-import java.util.Vector;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -42,56 +42,56 @@ public class KLHandler extends SerialHandler
 	implements TelegramWriter
 {
 
-	/**
-	 * Status of package transmission / reception - to determine if we are
-	 * processing data, or complements
-	 */
-	public enum PacketStatus
-	{
-		ECHO,
-		COMPLEMENT,
-		DATA,
-	}
-
 	// baud rates supported by this adapter
 	private final int[] baudRates =
 		{
 			10400, 9600, 4800, 2400
 		};
-	// synch char
-	private static final char SYNC_CHAR = 0x55;
-	// current packet status
-	private PacketStatus pktStat = PacketStatus.COMPLEMENT;
-	// telegram block counter
-	private char blockCounter = 0;
 	/* current address in use */
 	private int currAddress = 0; // (see ecuadr.csv)
 	/** current baud rate */
 	private int currBaudRate = 0;
-	// last byte sent;
-	private char lastTxChar = 0;
-	/** Queue of telegrams to be sent */
-	private final Vector<char[]> txTelegramQueue = new Vector<char[]>();
-	/** current telegram to be sent */
-	private char[] currTxTgm = {};
-	/** current position of byte to be sent from within currTxTgm */
-	private int currTxCharPos = 0;
 
 	/**
 	 * Protocol timing parameters
 	 */
-	/** time of last reception */
-	private long lastRxTime = 0;
 	/** number of bits to pause (parameter fo calculation of interByteTime) */
 	private static final int numBitsPause = 0;
-	/** time [nanoseconds] to wait for sending next byte */
-	private long interByteTime = 0; // [ns]
 
 	/** time [ms] to detect communication timeout */
 	private final int commTimeoutTime = 2000; // [ms]
 	/** Timer to detect communication timeout */
 	private Timer commTimer;
 
+	/** KW1281 byte engine */
+	private final Kw1281Engine engine = new Kw1281Engine(new Kw1281Engine.Link()
+	{
+		@Override
+		public void sendByte(int txByte) throws IOException
+		{
+			wrtr.write(txByte);
+		}
+
+		@Override
+		public void stateChanged(int state)
+		{
+			switch (state)
+			{
+				case Kw1281Engine.STATE_CONNECTING:
+					setProtStat(ProtStatus.CONNECTING);
+					break;
+				case Kw1281Engine.STATE_RECEIVING:
+					setProtStat(ProtStatus.RECEIVING);
+					break;
+				case Kw1281Engine.STATE_SENDING:
+					setProtStat(ProtStatus.SENDING);
+					break;
+				default:
+					break;
+			}
+		}
+	});
+
 	/** Handler for communication Timeout */
 	private final ActionListener commTimeoutHandler = new ActionListener()
 	{
@@ -176,7 +176,7 @@ public class KLHandler extends SerialHandler
 	@Override
 	public void close()
 	{
-		txTelegramQueue.clear();
+		engine.reset();
 		if (commTimer != null)
 		{
 			commTimer.stop();
@@ -222,7 +222,7 @@ public class KLHandler extends SerialHandler
 			log.log(Level.SEVERE,null, e);
 		}
 		// calculate new interByteTime (1M ns *numBits / bps)
-		interByteTime = 1000000000 * numBitsPause / newBaudRate;
+		engine.setInterByteTime(1000000000L * numBitsPause / newBaudRate);
 	}
 
 	/**
@@ -285,49 +285,9 @@ public class KLHandler extends SerialHandler
 	private void send5Baud(int address)
 		throws IOException
 	{
-		int result = 0;
-		setProtStat(ProtStatus.CONNECTING);
-
+		// expect sync and key word bytes from ECU
+		engine.startInit();
 		sendByte5Baud(address);
-		message = "";
-		// return status
-	}
-
-	/**
-	 * send specified char to output device
-	 *
-	 * @param txByte     byte to be sent
-	 * @param rememberTx remember last TX character
-	 */
-	private void writeChar(char txByte, boolean rememberTx)
-	{
-		try
-		{
-			log.fine("TX:" + String.format("%02X", (byte) txByte));
-
-			// if this byte should be remembered as TX byte, do it
-			if (rememberTx)
-			{
-				lastTxChar = txByte;
-			}
-			wrtr.write((int) txByte);
-			pktStat = PacketStatus.ECHO;
-		} catch (Exception ex)
-		{
-			log.log(Level.SEVERE,this.toString(), ex);
-		}
-	}
-
-	/**
-	 * confirm reception of last byte by sending complement of it back
-	 *
-	 * @param lastByte last received byte
-	 */
-	private void confirmByte(char lastByte)
-	{
-		// change to complement status ...
-		pktStat = PacketStatus.COMPLEMENT;
-		writeChar((char) ~lastByte, true);
 	}
 
 	/**
@@ -345,117 +305,13 @@ public class KLHandler extends SerialHandler
 				try
 				{
 					chr = rdr.read();
-					log.fine(String.format("RX:%02X : %c\t%s\t%s", chr, chr < 32 || chr > 127 ? '.' : chr,
-						getProtStat(), pktStat));
-					switch (getProtStat())
+					// restart comm timeout timer
+					if (getProtStat() == ProtStatus.RECEIVING
+						|| getProtStat() == ProtStatus.SENDING)
 					{
-						case RECEIVING:
-							// restart comm timeout timer
-							commTimer.restart();
-							switch (pktStat)
-							{
-								case ECHO:
-									lastTxChar = 0;
-									// ignore the echo of sent complement
-									pktStat = PacketStatus.DATA;
-									break;
-
-								case COMPLEMENT:
-									// ignore the echo of sent complement
-									pktStat = PacketStatus.DATA;
-									break;
-
-								case DATA:
-									// remember time of last RX
-									lastRxTime = System.currentTimeMillis();
-									// add char to current RX message
-									message += (char) chr;
-									// do we have received a complete package?
-									if (chr == 0x03 && message.length() > message.charAt(0))
-									{
-										//
-										// package is complete
-										//
-										log.fine("RX:" + ProtUtils.hexDumpBuffer(message.toCharArray()));
-										// update block counter with the received one
-										blockCounter = message.charAt(1);
-										// notify protocol handler of the new package
-										messageHandler.handleTelegram(message.toCharArray());
-										// clear the message
-										message = "";
-										// and change to send status
-										setProtStat(ProtStatus.SENDING);
-										sendNextByte();
-									} else
-									{
-										//
-										// package is still incomplete
-										//
-
-										// and send out confirmation for received byte
-										confirmByte((char) chr);
-									}
-									break;
-							}
-							break;
-
-						case SENDING:
-						{
-							switch (pktStat)
-							{
-								case ECHO:
-								case DATA:
-									// ignore the echo of sent data
-									pktStat = PacketStatus.COMPLEMENT;
-									break;
-
-								case COMPLEMENT:
-									// restart comm timeout timer
-									commTimer.restart();
-									if (chr == (~lastTxChar & 0xFF))
-									{
-										pktStat = PacketStatus.DATA;
-										sendNextByte();
-									} else
-									{
-										log.log(Level.SEVERE,String.format("Wrong complement:%02X, expected:%02X", chr, ~lastTxChar));
-										// TODO: handle communication error
-									}
-									break;
-							}
-						}
-						break;
-
-						case CONNECTING:
-						{
-							// if we receive the echo of the init byte, sending is done
-							if (chr == lastTxChar)
-							{
-								// ignore echo byte
-							} else
-							{
-								if (chr == SYNC_CHAR)
-								{
-									message = "";
-								}
-								// otherwise collect sync and key bytes
-								message += (char) chr;
-								// did we receive all INIT bytes (SYNC_CHAR, KW-lo, KW-hi)?
-								if (message.length() > 2 && message.charAt(0) == SYNC_CHAR)
-								{
-									// notify protocol handler of initialization message to get keyword etc
-									// messageHandler.handleTelegram(message.toCharArray());
-									message = "";
-									// Initialization is finished, change to status RECEIVING
-									setProtStat(ProtStatus.RECEIVING);
-									// confirm the last received byte
-									confirmByte((char) chr);
-								}
-							}
-						}
-						default:
-							break;
+						commTimer.restart();
 					}
+					engine.receiveByte(chr);
 				} catch (Exception ex)
 				{
 					log.log(Level.SEVERE,ex.toString());
@@ -489,136 +345,46 @@ public class KLHandler extends SerialHandler
 	@Override
 	public int writeTelegram(char[] buffer, int type, Object id)
 	{
-		return enqueueTelegram(buffer);
-	}
-
-	/**
-	 * start the serial handler
-	 * Implementation for compatibility
-	 */
-	@Override
-	public void start()
-	{
-		// start the receive thread
-		new Thread()
-		{
-			@Override
-			public void run()
-			{
-				init5Baud(getCurrAddress());
-			}
-		}.start();
-		new RxThread().start();
-	}
-
-	/**
-	 * send next available byte
-	 *
-	 * @return error status of dequeue and send operation
-	 */
-	private void sendNextByte()
-	{
-		int result = 0;
-		// wait for slow ECUs
-		try
-		{
-			// calculate remaining time to wait (Sytem time resolution sucks...)
-			long tDiff = interByteTime - ((System.currentTimeMillis() - lastRxTime) * 1000000000);
-			if (tDiff > 0)
-			{
-				log.fine("TX: waiting " + tDiff + " ns");
-				Thread.sleep(tDiff / 1000000L, (int) (tDiff % 1000000L));
-			}
-		} catch (InterruptedException ex)
-		{
-			log.log(Level.SEVERE,"wait: " + ex.toString());
-		}
-
-		// if we have to dequeue a new telegram ...
-		if (currTxCharPos >= currTxTgm.length)
-		{
-			// ... then try to dequeue one
-			result = dequeueTelegram();
-		}
-		// if there is something to send, send the next char
-		if (result == 0)
-		{
-			writeChar(currTxTgm[currTxCharPos++], true);
-			if (currTxCharPos >= currTxTgm.length)
-			{
-				setProtStat(ProtStatus.RECEIVING);
-			}
-		}
+		return engine.writeTelegram(buffer, type, id);
 	}
 
 	/**
-	 * enqueue a telegram to be sent
+	 * Set handler for received telegrams
 	 *
-	 * @param buffer telegram to be sent
-	 * @return error status of enqueue
+	 * @param messageHandler handler for received telegrams
 	 */
-	private int enqueueTelegram(char[] buffer)
+	@Override
+	public void setMessageHandler(TelegramListener messageHandler)
 	{
-		int result = 0;
-
-		// if the queue is empty and current message is completely sent
-		if (txTelegramQueue.size() == 0 && currTxCharPos >= currTxTgm.length)
-		{
-			// make buffer the current telegram
-			currTxTgm = buffer;
-			currTxCharPos = 0;
-		} else
-		{
-			// otherwise put it into queue
-			result = txTelegramQueue.add(buffer) ? 0 : -1;
-		}
-
-		return (result);
+		super.setMessageHandler(messageHandler);
+		engine.setMessageHandler(messageHandler);
 	}
 
 	/**
-	 * get a acknowledge telegram for current protocol state
-	 *
-	 * @return ACK telegram with current block counter
+	 * @return KW1281 byte engine (e.g. for timing statistics)
 	 */
-	private char[] getAckTelegram()
+	public Kw1281Engine getEngine()
 	{
-		return new char[]
-			{
-				0x03, ++blockCounter, 0x09, 0x03
-			};
+		return engine;
 	}
 
 	/**
-	 * dequeue next telegram to be sent
-	 *
-	 * @return error code of dequeue operation
+	 * start the serial handler
+	 * Implementation for compatibility
 	 */
-	private int dequeueTelegram()
+	@Override
+	public void start()
 	{
-		int result;
-		// is there any telegram in the queue?
-		if (txTelegramQueue.size() > 0)
+		// start the receive thread
+		new Thread()
 		{
-			// ... then dequeue it
-			currTxTgm = txTelegramQueue.remove(0);
-			// if necessary, adjust block counter
-			if (currTxTgm[1] != (blockCounter + 1))
+			@Override
+			public void run()
 			{
-				log.info(String.format("MsgCounter adjusted:%02x->%02x", (int) currTxTgm[1], (int) blockCounter + 1));
-				currTxTgm[1] = ++blockCounter;
+				init5Baud(getCurrAddress());
 			}
-			// ... and set byte pointer to start of telegram
-			currTxCharPos = 0;
-			result = 0;
-		} else
-		{
-			// nothing in the pipe, so just send an acknowledge telegram
-			currTxTgm = getAckTelegram();
-			currTxCharPos = 0;
-			result = 0;
-		}
-		return (result);
+		}.start();
+		new RxThread().start();
 	}
 
 	/**
@@ -0,0 +1,638 @@
+/*
+ * (C) Copyright 2015 by fr3ts0n <erwin.scheuch-heilig@gmx.at>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston,
+ * MA 02111-1307 USA
+ */
+
+
+package com.fr3ts0n.prot.sim;
+
+import com.fr3ts0n.prot.Kw1281Engine;
+import com.fr3ts0n.prot.Kw1281StreamHandler;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.util.Random;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Byte accurate KW1281 ECU simulator
+ *
+ * Emulates the K-line and a single ECU: every byte of the tester is
+ * echoed, block bytes are confirmed with their complement, and ECU
+ * blocks are sent byte by byte waiting for the tester's complements.
+ *
+ * Supported are the (byte stream) init with sync and key word,
+ * identification blocks, ACK exchange, block counter checks, measurement
+ * group reads, fault code reads and end of session. A session which is
+ * idle longer than the session timeout expects a new init.
+ *
+ * For fault injection, ECU bytes may be delayed (generally or randomly)
+ * and complements may be corrupted.
+ *
+ * @author erwin
+ */
+public class Kw1281Simulator implements Runnable
+{
+	/** default key word (KW-hi, KW-lo) */
+	public static final int DEFAULT_KEYWORD = 0x8A01;
+	/** block titles */
+	public static final int BLK_ACK = 0x09;
+	public static final int BLK_NAK = 0x0A;
+	public static final int BLK_END = 0x06;
+	public static final int BLK_ASCII = 0xF6;
+	public static final int BLK_FAULT_READ = 0x07;
+	public static final int BLK_FAULT_DATA = 0xFC;
+	public static final int BLK_GROUP_READ = 0x29;
+	public static final int BLK_GROUP_DATA = 0xE7;
+
+	/** simulator states */
+	private static final int ST_WAIT_INIT = 0;
+	private static final int ST_KW_CONFIRM = 1;
+	private static final int ST_SENDING = 2;
+	private static final int ST_RECEIVING = 3;
+
+	/** size of piped stream buffers */
+	private static final int PIPE_SIZE = 1024;
+	/** max. length of a block */
+	private static final int MAX_BLOCK_LEN = 256;
+
+	private static final Logger log = Logger.getLogger("sim.kw1281");
+
+	/** ECU address */
+	private final int address;
+	/** key word of ECU */
+	private final int keyword;
+	/** identification strings */
+	private String[] idents = {"038906019FM ", "1,9l R4 EDC ", "  SG  3201  "};
+	/** measurement group data (3 bytes per field: type, a, b) */
+	private final int[][] groups = new int[0x100][];
+	/** random generator for fault injection */
+	private final Random random = new Random(0);
+
+	/** K-line streams */
+	private InputStream in;
+	private OutputStream out;
+
+	/** protocol state */
+	private int state = ST_WAIT_INIT;
+	private int identIndex = 0;
+	private int blockCounter = 0;
+	/** received block */
+	private final int[] rxBlock = new int[MAX_BLOCK_LEN];
+	private int rxLen = 0;
+	/** block to be sent */
+	private final int[] txBlock = new int[MAX_BLOCK_LEN];
+	private int txLen = 0;
+	private int txPos = 0;
+	/** time [ns] of last line activity */
+	private long lastActivity = 0;
+
+	/** timing and fault injection */
+	private volatile long sessionTimeout = 1000;
+	private volatile long byteDelay = 0;
+	private volatile double delayFaultRate = 0;
+	private volatile long delayFault = 0;
+	private volatile double complementFaultRate = 0;
+
+	/** statistics */
+	private volatile long numInits = 0;
+	private volatile long numTimeouts = 0;
+	private volatile long rxBlocks = 0;
+	private volatile long txBlocks = 0;
+	private volatile long groupReads = 0;
+	private volatile long counterErrors = 0;
+	private volatile long complementErrors = 0;
+
+	/**
+	 * Create simulator for ECU with default key word and groups 1..3
+	 *
+	 * @param address ECU address
+	 */
+	public Kw1281Simulator(int address)
+	{
+		this(address, DEFAULT_KEYWORD);
+	}
+
+	/**
+	 * Create simulator for ECU with default groups 1..3
+	 *
+	 * @param address ECU address
+	 * @param keyword ECU key word (KW-hi, KW-lo)
+	 */
+	public Kw1281Simulator(int address, int keyword)
+	{
+		this.address = address;
+		this.keyword = keyword;
+		// RPM, coolant temp, lambda control, binary bits
+		setGroup(1, new int[]{0x01, 0xC8, 0x14, 0x05, 0x0A, 0xBE, 0x15, 0x64, 0x80, 0x10, 0x01, 0x55});
+		// RPM, load, injection time, MAF
+		setGroup(2, new int[]{0x01, 0xC8, 0x14, 0x21, 0x64, 0x1E, 0x0F, 0x0A, 0x3C, 0x19, 0x64, 0x23});
+		// RPM, MAF, throttle angle, ignition angle
+		setGroup(3, new int[]{0x01, 0xC8, 0x14, 0x19, 0x64, 0x23, 0x06, 0x64, 0x0A, 0x08, 0x64, 0x78});
+	}
+
+	/**
+	 * Set streams of K-line
+	 *
+	 * @param lineIn  stream to read tester bytes from
+	 * @param lineOut stream to write ECU bytes and echoes to
+	 */
+	public void setStreams(InputStream lineIn, OutputStream lineOut)
+	{
+		in = lineIn;
+		out = lineOut;
+	}
+
+	/**
+	 * Connect stream handler to a new simulator via piped streams
+	 * - the simulator thread is started, the handler thread has to be started by caller
+	 *
+	 * @param handler stream handler to be connected
+	 * @param address ECU address
+	 * @return the started simulator
+	 * @throws IOException if pipes can't be connected
+	 */
+	public static Kw1281Simulator connect(Kw1281StreamHandler handler, int address)
+		throws IOException
+	{
+		PipedInputStream testerIn = new PipedInputStream(PIPE_SIZE);
+		PipedOutputStream ecuOut = new PipedOutputStream(testerIn);
+		PipedInputStream ecuIn = new PipedInputStream(PIPE_SIZE);
+		PipedOutputStream testerOut = new PipedOutputStream(ecuIn);
+
+		Kw1281Simulator sim = new Kw1281Simulator(address);
+		sim.setStreams(ecuIn, ecuOut);
+		handler.setStreams(testerIn, testerOut);
+		sim.start();
+		return sim;
+	}
+
+	/**
+	 * Start simulator thread
+	 */
+	public void start()
+	{
+		Thread thread = new Thread(this, "Kw1281Simulator");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Stop simulator by closing the streams
+	 */
+	public void stop()
+	{
+		try
+		{
+			if (in != null) { in.close(); }
+			if (out != null) { out.close(); }
+		}
+		catch (IOException ex)
+		{
+			log.log(Level.FINE, "stop", ex);
+		}
+	}
+
+	/**
+	 * Set identification strings which are sent after init
+	 *
+	 * @param idents identification strings (max. 12 chars each)
+	 */
+	public void setIdents(String... idents)
+	{
+		this.idents = idents.clone();
+	}
+
+	/**
+	 * Set data of measurement group
+	 *
+	 * @param group  group number
+	 * @param fields field data, 3 bytes per field (type, a, b)
+	 */
+	public synchronized void setGroup(int group, int[] fields)
+	{
+		if (fields.length % 3 != 0)
+		{
+			throw new IllegalArgumentException("Incomplete group field: " + fields.length);
+		}
+		groups[group & 0xFF] = fields.clone();
+	}
+
+	/**
+	 * Set idle time after which session is terminated by ECU
+	 *
+	 * @param timeout session timeout [ms]
+	 */
+	public void setSessionTimeout(long timeout)
+	{
+		sessionTimeout = timeout;
+	}
+
+	/**
+	 * Set delay before each ECU byte (complements included)
+	 *
+	 * @param delay delay [ns]
+	 */
+	public void setByteDelay(long delay)
+	{
+		byteDelay = delay;
+	}
+
+	/**
+	 * Inject timing faults: ECU bytes are randomly delayed
+	 *
+	 * @param rate  probability of a delayed byte (0..1)
+	 * @param delay additional delay [ms]
+	 */
+	public void setDelayFaults(double rate, long delay)
+	{
+		delayFault = delay;
+		delayFaultRate = rate;
+	}
+
+	/**
+	 * Inject complement faults: complements of tester bytes are randomly corrupted
+	 *
+	 * @param rate probability of a wrong complement (0..1)
+	 */
+	public void setComplementFaults(double rate)
+	{
+		complementFaultRate = rate;
+	}
+
+	/**
+	 * @return number of successful inits
+	 */
+	public long getInitCount()
+	{
+		return numInits;
+	}
+
+	/**
+	 * @return number of sessions terminated by timeout
+	 */
+	public long getTimeoutCount()
+	{
+		return numTimeouts;
+	}
+
+	/**
+	 * @return number of blocks received from tester
+	 */
+	public long getRxBlocks()
+	{
+		return rxBlocks;
+	}
+
+	/**
+	 * @return number of blocks sent to tester
+	 */
+	public long getTxBlocks()
+	{
+		return txBlocks;
+	}
+
+	/**
+	 * @return number of answered measurement group reads
+	 */
+	public long getGroupReads()
+	{
+		return groupReads;
+	}
+
+	/**
+	 * @return number of tester blocks with unexpected block counter
+	 */
+	public long getCounterErrors()
+	{
+		return counterErrors;
+	}
+
+	/**
+	 * @return number of wrong complements received from tester
+	 */
+	public long getComplementErrors()
+	{
+		return complementErrors;
+	}
+
+	/**
+	 * K-line loop
+	 * - reads tester bytes until end of stream
+	 */
+	@Override
+	public void run()
+	{
+		log.info(String.format("KW1281 simulator started: Address:%02x", address));
+		try
+		{
+			int chr;
+			while ((chr = in.read()) >= 0)
+			{
+				long now = System.nanoTime();
+				if (state != ST_WAIT_INIT && now - lastActivity > sessionTimeout * 1000000L)
+				{
+					log.info("Session timeout");
+					numTimeouts++;
+					state = ST_WAIT_INIT;
+				}
+
+				if (state == ST_WAIT_INIT)
+				{
+					// 5 baud address is not echoed
+					handleInit(chr);
+				}
+				else
+				{
+					// K-line echo of tester byte
+					out.write(chr);
+					handleByte(chr);
+				}
+				out.flush();
+				lastActivity = System.nanoTime();
+			}
+		}
+		catch (IOException ex)
+		{
+			log.log(Level.FINE, "Stream closed", ex);
+		}
+		log.info("KW1281 simulator stopped");
+	}
+
+	/**
+	 * handle init address
+	 *
+	 * @param chr received address
+	 * @throws IOException on write errors
+	 */
+	private void handleInit(int chr) throws IOException
+	{
+		if (chr != address)
+		{
+			if (log.isLoggable(Level.FINE))
+			{
+				log.fine(String.format("Init for other address:%02x", chr));
+			}
+			return;
+		}
+		numInits++;
+		identIndex = 0;
+		blockCounter = 0;
+		// sync, KW-lo, KW-hi
+		writeEcuByte(Kw1281Engine.SYNC_CHAR);
+		writeEcuByte(keyword & 0xFF);
+		writeEcuByte(keyword >> 8 & 0xFF);
+		state = ST_KW_CONFIRM;
+	}
+
+	/**
+	 * handle tester byte within session
+	 *
+	 * @param chr received byte
+	 * @throws IOException on write errors
+	 */
+	private void handleByte(int chr) throws IOException
+	{
+		switch (state)
+		{
+			case ST_KW_CONFIRM:
+				if (chr == (~keyword >> 8 & 0xFF))
+				{
+					startBlock();
+				}
+				else
+				{
+					complementErrors++;
+					state = ST_WAIT_INIT;
+				}
+				break;
+
+			case ST_SENDING:
+				if (chr == (~txBlock[txPos - 1] & 0xFF))
+				{
+					sendNextByte();
+				}
+				else
+				{
+					// ECU stops sending, tester has to re-init
+					complementErrors++;
+					log.warning(String.format("Wrong complement:%02X", chr));
+				}
+				break;
+
+			case ST_RECEIVING:
+				if (rxLen == rxBlock.length)
+				{
+					rxLen = 0;
+				}
+				rxBlock[rxLen++] = chr;
+				if (chr == Kw1281Engine.BLOCK_END && rxLen > rxBlock[0])
+				{
+					rxBlocks++;
+					handleBlock();
+					startBlock();
+				}
+				else
+				{
+					writeComplement(chr);
+				}
+				break;
+
+			default:
+				break;
+		}
+	}
+
+	/**
+	 * handle complete tester block and prepare response block
+	 */
+	private synchronized void handleBlock()
+	{
+		int counter = rxBlock[1];
+		if (counter != ((blockCounter + 1) & 0xFF))
+		{
+			counterErrors++;
+			log.warning(String.format("Block counter:%02x, expected:%02x", counter, (blockCounter + 1) & 0xFF));
+		}
+		blockCounter = counter;
+
+		int title = rxBlock[2];
+		switch (title)
+		{
+			case Kw1281Engine.BLOCK_ACK:
+				if (identIndex < idents.length)
+				{
+					prepareIdent();
+				}
+				else
+				{
+					prepareBlock(BLK_ACK);
+				}
+				break;
+
+			case BLK_GROUP_READ:
+				int[] fields = groups[rxBlock[3]];
+				if (rxLen > 4 && fields != null)
+				{
+					prepareBlock(BLK_GROUP_DATA);
+					for (int field : fields)
+					{
+						txBlock[txLen++] = field;
+					}
+					groupReads++;
+				}
+				else
+				{
+					prepareBlock(BLK_NAK);
+				}
+				break;
+
+			case BLK_FAULT_READ:
+				// no faults stored
+				prepareBlock(BLK_FAULT_DATA);
+				txBlock[txLen++] = 0xFF;
+				txBlock[txLen++] = 0xFF;
+				txBlock[txLen++] = 0x88;
+				break;
+
+			case BLK_END:
+				txLen = 0;
+				break;
+
+			default:
+				prepareBlock(BLK_NAK);
+				break;
+		}
+	}
+
+	/**
+	 * prepare identification block
+	 */
+	private void prepareIdent()
+	{
+		prepareBlock(BLK_ASCII);
+		String ident = idents[identIndex++];
+		for (int i = 0; i < ident.length(); i++)
+		{
+			txBlock[txLen++] = ident.charAt(i) & 0xFF;
+		}
+	}
+
+	/**
+	 * prepare new ECU block with next block counter
+	 *
+	 * @param title block title
+	 */
+	private void prepareBlock(int title)
+	{
+		blockCounter = (blockCounter + 1) & 0xFF;
+		txLen = 0;
+		txBlock[txLen++] = 0;
+		txBlock[txLen++] = blockCounter;
+		txBlock[txLen++] = title;
+	}
+
+	/**
+	 * start sending of prepared block (ident block after init)
+	 *
+	 * @throws IOException on write errors
+	 */
+	private void startBlock() throws IOException
+	{
+		if (state == ST_KW_CONFIRM)
+		{
+			prepareIdent();
+		}
+		if (txLen == 0)
+		{
+			// end of session
+			state = ST_WAIT_INIT;
+			return;
+		}
+		// block length excludes block end
+		txBlock[0] = txLen;
+		txBlock[txLen++] = Kw1281Engine.BLOCK_END;
+		txPos = 0;
+		sendNextByte();
+	}
+
+	/**
+	 * send next byte of current ECU block
+	 *
+	 * @throws IOException on write errors
+	 */
+	private void sendNextByte() throws IOException
+	{
+		writeEcuByte(txBlock[txPos++]);
+		if (txPos < txLen)
+		{
+			state = ST_SENDING;
+		}
+		else
+		{
+			// no complement for block end
+			txBlocks++;
+			rxLen = 0;
+			state = ST_RECEIVING;
+		}
+	}
+
+	/**
+	 * confirm tester byte with its complement
+	 *
+	 * @param chr received byte
+	 * @throws IOException on write errors
+	 */
+	private void writeComplement(int chr) throws IOException
+	{
+		int complement = ~chr & 0xFF;
+		if (complementFaultRate > 0 && random.nextDouble() < complementFaultRate)
+		{
+			complement ^= 0x01;
+		}
+		writeEcuByte(complement);
+	}
+
+	/**
+	 * write ECU byte with configured timing
+	 *
+	 * @param chr byte to be written
+	 * @throws IOException on write errors
+	 */
+	private void writeEcuByte(int chr) throws IOException
+	{
+		long delay = byteDelay;
+		if (delayFaultRate > 0 && random.nextDouble() < delayFaultRate)
+		{
+			delay += delayFault * 1000000L;
+		}
+		if (delay > 0)
+		{
+			out.flush();
+			long end = System.nanoTime() + delay;
+			for (long remaining = delay; remaining > 0; remaining = end - System.nanoTime())
+			{
+				LockSupport.parkNanos(remaining);
+			}
+		}
+		out.write(chr);
+	}
+}
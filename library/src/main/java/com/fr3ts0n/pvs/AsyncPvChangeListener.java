@@ -0,0 +1,224 @@
+/*
+ * (C) Copyright 2015 by fr3ts0n <erwin.scheuch-heilig@gmx.at>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston,
+ * MA 02111-1307 USA
+ */
+
+package com.fr3ts0n.pvs;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.Executor;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Asynchronous delivery of process var changes
+ *
+ * Events are queued in a bounded queue and delivered to the target listener
+ * by the specified executor (e.g. UI thread). Pending events of the same
+ * process var attribute are coalesced, so only the latest value is delivered.
+ * If the queue is full, the oldest pending event is dropped.
+ *
+ * The executor is expected to run the delivery tasks sequentially.
+ *
+ * @author erwin
+ */
+public class AsyncPvChangeListener
+	implements PvChangeListener, Runnable
+{
+	/** default max. number of pending events */
+	public static final int DEFAULT_CAPACITY = 256;
+
+	private static final Logger log = Logger.getLogger("pvs.async");
+
+	/**
+	 * Key of a process var attribute (source + attribute key)
+	 */
+	private static final class EventKey
+	{
+		Object source;
+		Object key;
+
+		EventKey set(Object source, Object key)
+		{
+			this.source = source;
+			this.key = key;
+			return this;
+		}
+
+		@Override
+		public boolean equals(Object o)
+		{
+			if (!(o instanceof EventKey)) return false;
+			EventKey other = (EventKey) o;
+			return source == other.source
+			       && (key == null ? other.key == null : key.equals(other.key));
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return 31 * System.identityHashCode(source) + (key != null ? key.hashCode() : 0);
+		}
+	}
+
+	/** listener to deliver events to */
+	private final PvChangeListener target;
+	/** executor to run delivery */
+	private final Executor executor;
+	/** max. number of pending events */
+	private final int capacity;
+	/** pending events in order of first occurrence, latest event per attribute */
+	private final LinkedHashMap<EventKey, PvChangeEvent> pending;
+	/** re-usable key for lookups */
+	private final EventKey probe = new EventKey();
+	/** events being delivered */
+	private final ArrayList<PvChangeEvent> delivering;
+	/** delivery task is scheduled */
+	private boolean scheduled = false;
+
+	/** statistics */
+	private long numCoalesced = 0;
+	private long numDropped = 0;
+
+	/**
+	 * Create asynchronous listener with default capacity
+	 *
+	 * @param target   listener to deliver events to
+	 * @param executor executor to run delivery (e.g. UI thread)
+	 */
+	public AsyncPvChangeListener(PvChangeListener target, Executor executor)
+	{
+		this(target, executor, DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Create asynchronous listener
+	 *
+	 * @param target   listener to deliver events to
+	 * @param executor executor to run delivery (e.g. UI thread)
+	 * @param capacity max. number of pending events
+	 */
+	public AsyncPvChangeListener(PvChangeListener target, Executor executor, int capacity)
+	{
+		this.target = target;
+		this.executor = executor;
+		this.capacity = Math.max(1, capacity);
+		pending = new LinkedHashMap<>(this.capacity * 2);
+		delivering = new ArrayList<>(this.capacity);
+	}
+
+	/**
+	 * @return listener events are delivered to
+	 */
+	public PvChangeListener getTarget()
+	{
+		return target;
+	}
+
+	/**
+	 * Queue event for delivery
+	 *
+	 * @param event the event to be delivered
+	 */
+	@Override
+	public void pvChanged(PvChangeEvent event)
+	{
+		boolean schedule;
+		synchronized (this)
+		{
+			probe.set(event.getSource(), event.getKey());
+			if (pending.containsKey(probe))
+			{
+				// latest value wins
+				pending.put(probe, event);
+				numCoalesced++;
+			}
+			else
+			{
+				if (pending.size() >= capacity)
+				{
+					// drop oldest event
+					Iterator<EventKey> it = pending.keySet().iterator();
+					it.next();
+					it.remove();
+					numDropped++;
+				}
+				pending.put(new EventKey().set(event.getSource(), event.getKey()), event);
+			}
+			probe.set(null, null);
+			schedule = !scheduled;
+			scheduled = true;
+		}
+
+		if (schedule)
+		{
+			executor.execute(this);
+		}
+	}
+
+	/**
+	 * Deliver all pending events to target listener
+	 */
+	@Override
+	public void run()
+	{
+		synchronized (this)
+		{
+			delivering.addAll(pending.values());
+			pending.clear();
+			scheduled = false;
+		}
+
+		for (PvChangeEvent event : delivering)
+		{
+			try
+			{
+				target.pvChanged(event);
+			}
+			catch (Exception ex)
+			{
+				log.log(Level.WARNING, "pvChanged", ex);
+			}
+		}
+		delivering.clear();
+	}
+
+	/**
+	 * @return number of events currently pending
+	 */
+	public synchronized int getQueueDepth()
+	{
+		return pending.size();
+	}
+
+	/**
+	 * @return number of events replaced by a newer event of same attribute
+	 */
+	public synchronized long getCoalescedCount()
+	{
+		return numCoalesced;
+	}
+
+	/**
+	 * @return number of events dropped because of full queue
+	 */
+	public synchronized long getDroppedCount()
+	{
+		return numDropped;
+	}
+}
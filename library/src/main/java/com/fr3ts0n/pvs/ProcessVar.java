@@ -19,11 +19,11 @@
 package com.fr3ts0n.pvs;
 
 import java.io.Serializable;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.Map;
-import java.util.Set;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 // For logging ...
@@ -54,13 +54,32 @@ public class ProcessVar
 	/** default change action */
 	int defaultAction = PvChangeEvent.PV_NOACTION;
 	/** flag if to allow ChangeEvents to be fired */
-	boolean allowEvents = false;
-	/** list of process var change listeners */
-	private transient Map<PvChangeListener, Integer> PvChangeListeners =
-		Collections.synchronizedMap(new HashMap<PvChangeListener, Integer>());
-	/** Map of attribute changes */
+	volatile boolean allowEvents = false;
+	/** empty list of listeners */
+	private static final Registration[] NO_LISTENERS = new Registration[0];
+	/**
+	 * list of process var change listeners
+	 * - copy on write, so event dispatch does not need any locking
+	 */
+	private transient volatile Registration[] PvChangeListeners = NO_LISTENERS;
+	/** Map of manual attribute changes */
 	private final Map<Object, PvChangeEvent> changes =
 		Collections.synchronizedMap(new HashMap<Object, PvChangeEvent>());
+
+	/**
+	 * Registration of a single change listener
+	 */
+	private static final class Registration
+	{
+		final PvChangeListener listener;
+		final int eventMask;
+
+		Registration(PvChangeListener listener, int eventMask)
+		{
+			this.listener = listener;
+			this.eventMask = eventMask;
+		}
+	}
 	/** The logger object */
 	public static final Logger log = Logger.getLogger(ProcessVar.class.getPackage().getName());
 
@@ -142,13 +161,20 @@ public class ProcessVar
 	 * handler for process variable changes
 	 * forwarding of child process variables to current handler
 	 */
-	public synchronized void pvChanged(PvChangeEvent event)
+	public void pvChanged(PvChangeEvent event)
 	{
-		log.finer(toString() + ":Child PvChange:" + event.toString());
-		firePvChanged(new PvChangeEvent(this,
+		if (log.isLoggable(Level.FINER))
+		{
+			log.finer(toString() + ":Child PvChange:" + event.toString());
+		}
+		PvChangeEvent childEvent = new PvChangeEvent(this,
 			((ProcessVar) event.getSource()).getKeyValue(),
 			event.getSource(),
-			event.getType() | PvChangeEvent.PV_CHILDCHANGE));
+			event.getType() | PvChangeEvent.PV_CHILDCHANGE);
+		// keep time and changed attribute of original change
+		childEvent.setTime(event.getTime());
+		childEvent.setChildKey(event.isChildEvent() ? event.getChildKey() : event.getKey());
+		firePvChanged(childEvent);
 	}
 
 	/** return String representation */
@@ -167,61 +193,87 @@ public class ProcessVar
 	 * @param action type of action event @see PvChangeEvent
 	 * @return previous value of attribute
 	 */
+	public Object put(Object key, Object value, int action)
+	{
+		return (put(key, value, action, System.currentTimeMillis()));
+	}
+
+	/**
+	 * set attribute of selected key to selected value
+	 * with specified time of change (e.g. for replay of recorded data)
+	 *
+	 * @param key    key of attribute
+	 * @param value  value of attribute
+	 * @param action type of action event @see PvChangeEvent
+	 * @param time   time of change [ms]
+	 * @return previous value of attribute
+	 */
 	@SuppressWarnings("unchecked")
-	public synchronized Object put(Object key, Object value, int action)
+	public Object put(Object key, Object value, int action, long time)
 	{
 		Object oldvalue;
+		boolean fireEvent;
 
-		// if new value is a child process variable, try to re-use previous one ...
-		if (value instanceof ProcessVar)
+		synchronized (this)
 		{
-			// get previous PV
-			oldvalue = get(key);
-			if (oldvalue instanceof ProcessVar)
+			// if new value is a child process variable, try to re-use previous one ...
+			if (value instanceof ProcessVar)
 			{
-				// PV is existing
-				((HashMap) oldvalue).putAll((Map) value);
+				// get previous PV
+				oldvalue = get(key);
+				if (oldvalue instanceof ProcessVar)
+				{
+					// PV is existing
+					((HashMap) oldvalue).putAll((Map) value);
+				} else
+				{
+					// this will be a new child PV
+					oldvalue = super.put(key, value);
+				}
 			} else
 			{
-				// this will be a new child PV
+				// NON child PV
 				oldvalue = super.put(key, value);
 			}
-		} else
-		{
-			// NON child PV
-			oldvalue = super.put(key, value);
-		}
 
-		if (oldvalue == null)
-		{
-			// new attribute -> PV_ADDED
-			if (value != null)
+			if (oldvalue == null)
 			{
-				action |= PvChangeEvent.PV_ADDED;
-				// if we add a new child process variable, add listener for child
-				if (value instanceof ProcessVar)
+				// new attribute -> PV_ADDED
+				if (value != null)
 				{
-					((ProcessVar) value).addPvChangeListener(this);
+					action |= PvChangeEvent.PV_ADDED;
+					// if we add a new child process variable, add listener for child
+					if (value instanceof ProcessVar)
+					{
+						((ProcessVar) value).addPvChangeListener(this);
+					}
 				}
-			}
-		} else
-		{
-			// Attribute has changed -> PV_MODIFIED
-			if (!oldvalue.equals(value))
-			{
-				action |= PvChangeEvent.PV_MODIFIED;
 			} else
 			{
-				// Attribute MANUAL_MOD confirmed -> PV_CONFIRMED
-				PvChangeEvent lstChange = changes.get(key);
-				if (lstChange != null && (lstChange.getType() & PvChangeEvent.PV_MANUAL_MOD) != 0)
+				// Attribute has changed -> PV_MODIFIED
+				if (!oldvalue.equals(value))
+				{
+					action |= PvChangeEvent.PV_MODIFIED;
+				} else if (!changes.isEmpty())
 				{
-					action |= PvChangeEvent.PV_CONFIRMED;
+					// Attribute MANUAL_MOD confirmed -> PV_CONFIRMED
+					PvChangeEvent lstChange = changes.get(key);
+					if (lstChange != null && (lstChange.getType() & PvChangeEvent.PV_MANUAL_MOD) != 0)
+					{
+						action |= PvChangeEvent.PV_CONFIRMED;
+					}
 				}
 			}
+			fireEvent = allowEvents;
 		}
 
-		firePvChanged(new PvChangeEvent(this, key, value, action));
+		// notify listeners outside of lock to not block the writer
+		if (fireEvent)
+		{
+			PvChangeEvent event = new PvChangeEvent(this, key, value, action);
+			event.setTime(time);
+			dispatchPvChanged(event);
+		}
 
 		// .. and return
 		return (oldvalue);
@@ -236,10 +288,14 @@ public class ProcessVar
 	 * @return previous value of attribute
 	 */
 	@Override
-	public synchronized Object put(Object key, Object value)
+	public Object put(Object key, Object value)
 	{
 		// find out the type of the action
-		int action = containsKey(key) ? defaultAction : PvChangeEvent.PV_ADDED;
+		int action;
+		synchronized (this)
+		{
+			action = containsKey(key) ? defaultAction : PvChangeEvent.PV_ADDED;
+		}
 		// and perform the put operation
 		return (put(key, value, action));
 	}
@@ -288,7 +344,7 @@ public class ProcessVar
 	 * @param key   key of attribute
 	 * @param value value of attribute
 	 */
-	synchronized void putAsInt(Object key, int value)
+	void putAsInt(Object key, int value)
 	{
 		put(key, Integer.valueOf(value));
 	}
@@ -301,9 +357,13 @@ public class ProcessVar
 	 * @return previous value of attribute
 	 */
 	@Override
-	public synchronized Object remove(Object key)
+	public Object remove(Object key)
 	{
-		Object result = super.remove(key);
+		Object result;
+		synchronized (this)
+		{
+			result = super.remove(key);
+		}
 
 		if (result != null)
 		{
@@ -324,10 +384,13 @@ public class ProcessVar
 	 * overridden clear method to allow notification of process var changes
 	 */
 	@Override
-	public synchronized void clear()
+	public void clear()
 	{
 		// now really clear the hashmap
-		super.clear();
+		synchronized (this)
+		{
+			super.clear();
+		}
 		// notify listeners of removal
 		firePvChanged(new PvChangeEvent(this, null, null, PvChangeEvent.PV_CLEARED));
 	}
@@ -356,39 +419,62 @@ public class ProcessVar
 		put(getKeyAttribute(), newKeyValue);
 	}
 
-	/**
-	 * ensure there is a list of PvChangeListeners
-	 * * it may be null, if PV has been de-serialized
-	 */
-	private void ensurePvChangeListeners()
-	{
-		if (PvChangeListeners == null)
-			PvChangeListeners = new HashMap<PvChangeListener, Integer>();
-	}
 	/**
 	 * Handling for list of PvChangeListeners
 	 */
 	/** remove listener for Pv changes */
 	public synchronized void removePvChangeListener(PvChangeListener l)
 	{
-		ensurePvChangeListeners();
-		PvChangeListeners.remove(l);
-		allowEvents = !PvChangeListeners.isEmpty();
-		log.finer("-PvListener:" + toString() + "->" + String.valueOf(l));
+		Registration[] current = getPvChangeListeners();
+		for (int i = 0; i < current.length; i++)
+		{
+			if (current[i].listener == l)
+			{
+				Registration[] updated = new Registration[current.length - 1];
+				System.arraycopy(current, 0, updated, 0, i);
+				System.arraycopy(current, i + 1, updated, i, current.length - i - 1);
+				PvChangeListeners = updated;
+				break;
+			}
+		}
+		allowEvents = PvChangeListeners.length > 0;
+		if (log.isLoggable(Level.FINER))
+		{
+			log.finer("-PvListener:" + toString() + "->" + String.valueOf(l));
+		}
 	}
 
 	/**
 	 * add listener for Pv changes with specified change events
+	 * - if listener is already registered, the event mask is updated
 	 *
 	 * @param l         event listener to be registered
 	 * @param eventMask events the listener wants to be notified about
 	 */
 	public synchronized void addPvChangeListener(PvChangeListener l, int eventMask)
 	{
-		ensurePvChangeListeners();
-		PvChangeListeners.put(l, Integer.valueOf(eventMask));
+		Registration[] current = getPvChangeListeners();
+		Registration[] updated = null;
+		for (int i = 0; i < current.length; i++)
+		{
+			if (current[i].listener == l)
+			{
+				updated = current.clone();
+				updated[i] = new Registration(l, eventMask);
+				break;
+			}
+		}
+		if (updated == null)
+		{
+			updated = Arrays.copyOf(current, current.length + 1);
+			updated[current.length] = new Registration(l, eventMask);
+		}
+		PvChangeListeners = updated;
 		allowEvents = true;
-		log.finer("+PvListener:" + toString() + "->" + String.valueOf(l));
+		if (log.isLoggable(Level.FINER))
+		{
+			log.finer("+PvListener:" + toString() + "->" + String.valueOf(l));
+		}
 	}
 
 	/**
@@ -401,45 +487,73 @@ public class ProcessVar
 		addPvChangeListener(l, PvChangeEvent.PV_ALLEVENTS);
 	}
 
+	/**
+	 * get current list of PvChangeListeners
+	 * - it may be null, if PV has been de-serialized
+	 *
+	 * @return list of registered listeners
+	 */
+	private Registration[] getPvChangeListeners()
+	{
+		Registration[] result = PvChangeListeners;
+		return result != null ? result : NO_LISTENERS;
+	}
+
 	/**
 	 * fire a Pv Change event
+	 * - dispatch works on a snapshot of the listener list without any locking,
+	 *   so listeners may be (un)registered during dispatch
 	 *
 	 * @param e the event to be fired
 	 */
-	public synchronized void firePvChanged(PvChangeEvent e)
+	public void firePvChanged(PvChangeEvent e)
 	{
-		if (allowEvents && e.getType() != PvChangeEvent.PV_NOACTION)
+		if (allowEvents)
 		{
-			log.finer("PvChange:" + e.toString());
+			dispatchPvChanged(e);
+		}
+	}
 
-			Integer evtMask;
-			Map.Entry curr;
+	/**
+	 * dispatch a Pv Change event to all registered listeners
+	 *
+	 * @param e the event to be dispatched
+	 */
+	private void dispatchPvChanged(PvChangeEvent e)
+	{
+		if (e.getType() != PvChangeEvent.PV_NOACTION)
+		{
+			boolean logFiner = log.isLoggable(Level.FINER);
+			if (logFiner)
+			{
+				log.finer("PvChange:" + e.toString());
+			}
 
-			ensurePvChangeListeners();
 			// loop through all registered listeners ...
-			Set entries = PvChangeListeners.entrySet();
-			Iterator it = entries.iterator();
-
-			while (it.hasNext())
+			for (Registration curr : getPvChangeListeners())
 			{
-				curr = (Map.Entry) it.next();
-
-				if (curr.getKey() != null && curr.getKey() != this)
+				// check if listener wants to be notified by this event
+				if (curr.listener != this && (curr.eventMask & e.getType()) != 0)
 				{
-					// check if listener wants to be notified by this event
-					evtMask = (Integer) curr.getValue();
-
-					if ((evtMask.intValue() & e.getType()) != 0)
+					if (logFiner)
 					{
-						log.finer("Notify:" + curr);
-						((PvChangeListener) curr.getKey()).pvChanged(e);
+						log.finer("Notify:" + curr.listener);
 					}
+					curr.listener.pvChanged(e);
 				}
 			}
 			// set time and type of last change
 			lastChange = e.getTime();
 			lastChangeType = e.getType();
-			changes.put(e.getKey(), e);
+			// remember manual modifications for confirmation of changes
+			if ((e.getType() & PvChangeEvent.PV_MANUAL_MOD) != 0)
+			{
+				changes.put(e.getKey(), e);
+			}
+			else if (!changes.isEmpty())
+			{
+				changes.remove(e.getKey());
+			}
 		}
 	}
 
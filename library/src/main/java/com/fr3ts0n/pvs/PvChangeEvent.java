@@ -48,6 +48,7 @@ public class PvChangeEvent extends EventObject
 	private Object key = ProcessVar.DEF_KEYNAME;
 	private Object value = ProcessVar.DEF_KEYNAME;
 	private long time = System.currentTimeMillis();
+	private Object childKey = null;
 
 	public PvChangeEvent(Object source, Object Key, Object Value, int Type)
 	{
@@ -99,6 +100,19 @@ public class PvChangeEvent extends EventObject
 		return (String.valueOf(getType()) + ":" + getKey() + "=" + getValue());
 	}
 
+	/**
+	 * @return attribute key which was changed within child PV (child events only)
+	 */
+	public Object getChildKey()
+	{
+		return childKey;
+	}
+
+	public void setChildKey(Object childKey)
+	{
+		this.childKey = childKey;
+	}
+
 	public long getTime()
 	{
 		return time;
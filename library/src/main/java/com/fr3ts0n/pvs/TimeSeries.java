@@ -0,0 +1,373 @@
+/*
+ * (C) Copyright 2015 by fr3ts0n <erwin.scheuch-heilig@gmx.at>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston,
+ * MA 02111-1307 USA
+ */
+
+package com.fr3ts0n.pvs;
+
+import java.io.Serializable;
+
+/**
+ * Bounded time series of numeric samples
+ *
+ * Samples are kept in a primitive ring buffer of fixed capacity, so memory
+ * consumption is constant regardless of the recording duration.
+ * If the buffer is full, either the oldest sample is dropped, or (with
+ * decimation enabled) the older half of the samples is compressed to the
+ * min/max values of each block of samples.
+ * Optionally samples older than a specified time window are dropped.
+ *
+ * Samples are indexed in chronological order (index 0 = oldest sample).
+ * Additionally each sample has a sequence number which stays valid while
+ * samples are only added or dropped from the start. Decimation and clearing
+ * change the layout count instead, so views can be updated incrementally.
+ *
+ * @author erwin
+ */
+public class TimeSeries implements Serializable
+{
+	private static final long serialVersionUID = 2817334532894523801L;
+
+	/** default number of samples */
+	public static final int DEFAULT_CAPACITY = 4096;
+	/** number of samples compressed into one min/max pair on decimation */
+	private static final int DECIMATION_BLOCK = 4;
+
+	/** time stamps [ms] */
+	private final long[] times;
+	/** sample values */
+	private final double[] values;
+	/** ring index of oldest sample */
+	private int head = 0;
+	/** number of samples */
+	private int size = 0;
+	/** time window [ms], 0 = unlimited */
+	private long window_ms = 0;
+	/** compress older data instead of dropping it */
+	private boolean decimation = true;
+	/** modification counter */
+	private long modCount = 0;
+	/** sequence number of oldest sample */
+	private long firstSeq = 0;
+	/** layout counter, changed if samples are restructured */
+	private long layoutCount = 0;
+
+	/**
+	 * Create time series with default capacity
+	 */
+	public TimeSeries()
+	{
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Create time series with specified capacity
+	 *
+	 * @param capacity max. number of samples
+	 */
+	public TimeSeries(int capacity)
+	{
+		capacity = Math.max(2 * DECIMATION_BLOCK, capacity);
+		times = new long[capacity];
+		values = new double[capacity];
+	}
+
+	/**
+	 * @return max. number of samples
+	 */
+	public int getCapacity()
+	{
+		return times.length;
+	}
+
+	/**
+	 * Set time window of samples to be kept
+	 *
+	 * @param window_ms time window [ms], 0 = unlimited
+	 */
+	public synchronized void setWindow(long window_ms)
+	{
+		this.window_ms = Math.max(0, window_ms);
+	}
+
+	/**
+	 * @return time window of samples to be kept [ms], 0 = unlimited
+	 */
+	public synchronized long getWindow()
+	{
+		return window_ms;
+	}
+
+	/**
+	 * Enable/disable min/max decimation of older data if buffer is full
+	 *
+	 * @param decimation true to compress older data, false to drop oldest sample
+	 */
+	public synchronized void setDecimation(boolean decimation)
+	{
+		this.decimation = decimation;
+	}
+
+	/**
+	 * @return true if older data is compressed if buffer is full
+	 */
+	public synchronized boolean isDecimation()
+	{
+		return decimation;
+	}
+
+	/**
+	 * Add new sample
+	 *
+	 * @param time  time stamp [ms]
+	 * @param value sample value
+	 */
+	public synchronized void add(long time, double value)
+	{
+		if (size == times.length)
+		{
+			if (decimation)
+			{
+				decimate();
+			}
+			else
+			{
+				dropOldest(1);
+			}
+		}
+		int idx = ringIdx(size++);
+		times[idx] = time;
+		values[idx] = value;
+
+		// drop samples outside time window
+		if (window_ms > 0)
+		{
+			int num = 0;
+			while (num < size - 1 && times[ringIdx(num)] < time - window_ms)
+			{
+				num++;
+			}
+			dropOldest(num);
+		}
+		modCount++;
+	}
+
+	/**
+	 * Remove all samples
+	 */
+	public synchronized void clear()
+	{
+		head = 0;
+		size = 0;
+		layoutCount++;
+		modCount++;
+	}
+
+	/**
+	 * @return number of samples
+	 */
+	public synchronized int size()
+	{
+		return size;
+	}
+
+	/**
+	 * Get time stamp of sample
+	 *
+	 * @param index sample index (0 = oldest)
+	 * @return time stamp [ms]
+	 */
+	public synchronized long getTime(int index)
+	{
+		checkIndex(index);
+		return times[ringIdx(index)];
+	}
+
+	/**
+	 * Get value of sample
+	 *
+	 * @param index sample index (0 = oldest)
+	 * @return sample value
+	 */
+	public synchronized double getValue(int index)
+	{
+		checkIndex(index);
+		return values[ringIdx(index)];
+	}
+
+	/**
+	 * Find sample with specified time stamp
+	 *
+	 * @param time time stamp [ms]
+	 * @return sample index, -1 if not found
+	 */
+	public synchronized int indexOf(long time)
+	{
+		int lo = 0;
+		int hi = size - 1;
+		while (lo <= hi)
+		{
+			int mid = (lo + hi) >>> 1;
+			long midTime = times[ringIdx(mid)];
+			if (midTime < time)
+			{
+				lo = mid + 1;
+			}
+			else if (midTime > time)
+			{
+				hi = mid - 1;
+			}
+			else
+			{
+				return mid;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Copy samples into provided arrays
+	 *
+	 * @param timeDst  destination array for time stamps
+	 * @param valueDst destination array for values
+	 * @return number of samples copied
+	 */
+	public synchronized int copyTo(long[] timeDst, double[] valueDst)
+	{
+		return copySince(firstSeq, timeDst, valueDst);
+	}
+
+	/**
+	 * Copy samples starting at specified sequence number into provided arrays
+	 *
+	 * @param seq      sequence number of first sample to copy
+	 * @param timeDst  destination array for time stamps
+	 * @param valueDst destination array for values
+	 * @return number of samples copied
+	 */
+	public synchronized int copySince(long seq, long[] timeDst, double[] valueDst)
+	{
+		int first = (int) Math.max(0, Math.min(size, seq - firstSeq));
+		int num = Math.min(size - first, Math.min(timeDst.length, valueDst.length));
+		for (int i = 0; i < num; i++)
+		{
+			int idx = ringIdx(first + i);
+			timeDst[i] = times[idx];
+			valueDst[i] = values[idx];
+		}
+		return num;
+	}
+
+	/**
+	 * Get sequence number of oldest sample
+	 * - the newest sample has sequence number (first + size - 1)
+	 *
+	 * @return sequence number of oldest sample
+	 */
+	public synchronized long getFirstSequence()
+	{
+		return firstSeq;
+	}
+
+	/**
+	 * Get layout counter to detect restructuring (decimation, clear)
+	 * - sequence numbers are only comparable while layout count is unchanged
+	 *
+	 * @return layout counter
+	 */
+	public synchronized long getLayoutCount()
+	{
+		return layoutCount;
+	}
+
+	/**
+	 * Get modification counter to allow detection of changes
+	 *
+	 * @return modification counter
+	 */
+	public synchronized long getModCount()
+	{
+		return modCount;
+	}
+
+	/**
+	 * Compress older half of samples into min/max pairs per block of samples
+	 */
+	private void decimate()
+	{
+		int older = (size / 2) - ((size / 2) % DECIMATION_BLOCK);
+		int dst = 0;
+		for (int blk = 0; blk < older; blk += DECIMATION_BLOCK)
+		{
+			int minPos = blk;
+			int maxPos = blk;
+			for (int i = blk + 1; i < blk + DECIMATION_BLOCK; i++)
+			{
+				if (values[ringIdx(i)] < values[ringIdx(minPos)]) { minPos = i; }
+				if (values[ringIdx(i)] > values[ringIdx(maxPos)]) { maxPos = i; }
+			}
+			// keep min and max in chronological order
+			dst = moveSample(Math.min(minPos, maxPos), dst);
+			if (minPos != maxPos)
+			{
+				dst = moveSample(Math.max(minPos, maxPos), dst);
+			}
+		}
+		// move remaining newer samples behind compressed data
+		for (int i = older; i < size; i++)
+		{
+			dst = moveSample(i, dst);
+		}
+		size = dst;
+		layoutCount++;
+	}
+
+	/**
+	 * move sample within buffer
+	 *
+	 * @param src source index
+	 * @param dst destination index
+	 * @return next destination index
+	 */
+	private int moveSample(int src, int dst)
+	{
+		int s = ringIdx(src);
+		int d = ringIdx(dst);
+		times[d] = times[s];
+		values[d] = values[s];
+		return dst + 1;
+	}
+
+	private void dropOldest(int num)
+	{
+		head = ringIdx(num);
+		size -= num;
+		firstSeq += num;
+	}
+
+	private int ringIdx(int index)
+	{
+		return (head + index) % times.length;
+	}
+
+	private void checkIndex(int index)
+	{
+		if (index < 0 || index >= size)
+		{
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+		}
+	}
+}
@@ -0,0 +1,372 @@
+/*
+ * (C) Copyright 2015 by fr3ts0n <erwin.scheuch-heilig@gmx.at>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston,
+ * MA 02111-1307 USA
+ */
+
+
+package com.fr3ts0n.pvs.io;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Batching of data samples into compact binary frames
+ *
+ * Samples (name, time, double value) are collected in primitive arrays and
+ * delivered to a listener as one batch when either the max. number of
+ * samples is reached or the flush interval has elapsed
+ * (checked on each sample and on {@link #tick(long)}).
+ *
+ * A batch may be encoded into a binary frame:
+ * <pre>
+ * magic:int "OBDF", version:byte, baseTime:long,
+ * numDefs:varint,    { id:varint, nameLen:varint, name:UTF-8 }
+ * numSamples:varint, { id:varint, dt:zigzag varint, value:double }
+ * </pre>
+ * Names are mapped to numeric ids. The definition of an id is sent once
+ * with the first frame which contains it (or again after
+ * {@link #resendDefinitions()}). Sample times are deltas [ms] to the
+ * previous sample, the first one to the frame base time.
+ * Frames are decoded with a {@link Decoder}, which keeps the id table of
+ * the sender.
+ *
+ * @author erwin
+ */
+public class SampleBatcher
+{
+	/** frame magic "OBDF" */
+	public static final int MAGIC = 0x4F424446;
+	/** frame format version */
+	public static final byte VERSION = 1;
+	/** size of frame header */
+	private static final int HEADER_SIZE = 4 + 1 + 8;
+	/** max. size of an encoded sample */
+	private static final int MAX_SAMPLE_SIZE = 5 + 10 + 8;
+
+	/**
+	 * Receiver of sample batches
+	 */
+	public interface Listener
+	{
+		/**
+		 * handle a batch of samples
+		 * - the batch is only valid during this call
+		 *
+		 * @param batch batch of samples
+		 */
+		void onBatch(SampleBatcher batch);
+	}
+
+	/**
+	 * Receiver of decoded samples
+	 */
+	public interface SampleListener
+	{
+		/**
+		 * handle decoded sample
+		 *
+		 * @param name  name of sample
+		 * @param time  sample time [ms]
+		 * @param value sample value
+		 */
+		void onSample(String name, long time, double value);
+	}
+
+	/** max. number of samples per batch */
+	private final int maxSamples;
+	/** max. time [ms] samples are held back */
+	private final long flushInterval;
+	/** receiver of batches */
+	private final Listener listener;
+
+	/** ids by name */
+	private final HashMap<String, Integer> ids = new HashMap<String, Integer>();
+	/** names by id */
+	private final ArrayList<String> names = new ArrayList<String>();
+	/** number of ids which are defined to receivers already */
+	private int numDefined = 0;
+
+	/** samples of current batch */
+	private final int[] sampleIds;
+	private final long[] sampleTimes;
+	private final double[] sampleValues;
+	private int numSamples = 0;
+	/** time [ms] of first sample in current batch */
+	private long batchStart = 0;
+	/** re-usable frame buffer */
+	private ByteBuffer frame = ByteBuffer.allocate(256);
+
+	/** statistics */
+	private long numBatches = 0;
+	private long numTotalSamples = 0;
+
+	/**
+	 * Create sample batcher
+	 *
+	 * @param maxSamples    max. number of samples per batch
+	 * @param flushInterval max. time [ms] samples are held back
+	 * @param listener      receiver of batches
+	 */
+	public SampleBatcher(int maxSamples, long flushInterval, Listener listener)
+	{
+		if (maxSamples <= 0)
+		{
+			throw new IllegalArgumentException("maxSamples " + maxSamples);
+		}
+		this.maxSamples = maxSamples;
+		this.flushInterval = flushInterval;
+		this.listener = listener;
+		sampleIds = new int[maxSamples];
+		sampleTimes = new long[maxSamples];
+		sampleValues = new double[maxSamples];
+	}
+
+	/**
+	 * Add sample to current batch
+	 *
+	 * @param name  name of sample (e.g. data item mnemonic)
+	 * @param time  sample time [ms]
+	 * @param value sample value
+	 */
+	public synchronized void add(String name, long time, double value)
+	{
+		Integer id = ids.get(name);
+		if (id == null)
+		{
+			id = names.size();
+			ids.put(name, id);
+			names.add(name);
+		}
+		if (numSamples == 0)
+		{
+			batchStart = System.currentTimeMillis();
+		}
+		sampleIds[numSamples] = id;
+		sampleTimes[numSamples] = time;
+		sampleValues[numSamples] = value;
+		numSamples++;
+		if (numSamples >= maxSamples
+		    || System.currentTimeMillis() - batchStart >= flushInterval)
+		{
+			flush();
+		}
+	}
+
+	/**
+	 * Flush current batch if flush interval has elapsed
+	 *
+	 * @param now current time [ms]
+	 * @return true if a batch was delivered
+	 */
+	public synchronized boolean tick(long now)
+	{
+		if (numSamples > 0 && now - batchStart >= flushInterval)
+		{
+			flush();
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Deliver current batch to listener
+	 */
+	public synchronized void flush()
+	{
+		if (numSamples == 0)
+		{
+			return;
+		}
+		numBatches++;
+		numTotalSamples += numSamples;
+		try
+		{
+			listener.onBatch(this);
+		}
+		finally
+		{
+			numSamples = 0;
+		}
+	}
+
+	/**
+	 * Send all name definitions again with next encoded frame
+	 * (e.g. when a new receiver is connected)
+	 */
+	public synchronized void resendDefinitions()
+	{
+		numDefined = 0;
+	}
+
+	/**
+	 * @return number of samples in current batch
+	 */
+	public synchronized int size()
+	{
+		return numSamples;
+	}
+
+	/**
+	 * @param index sample index within current batch
+	 * @return name of sample
+	 */
+	public synchronized String getName(int index)
+	{
+		return names.get(sampleIds[index]);
+	}
+
+	/**
+	 * @param index sample index within current batch
+	 * @return time [ms] of sample
+	 */
+	public synchronized long getTime(int index)
+	{
+		return sampleTimes[index];
+	}
+
+	/**
+	 * @param index sample index within current batch
+	 * @return value of sample
+	 */
+	public synchronized double getValue(int index)
+	{
+		return sampleValues[index];
+	}
+
+	/**
+	 * @return number of delivered batches
+	 */
+	public synchronized long getBatchCount()
+	{
+		return numBatches;
+	}
+
+	/**
+	 * @return number of delivered samples
+	 */
+	public synchronized long getSampleCount()
+	{
+		return numTotalSamples;
+	}
+
+	/**
+	 * Encode current batch into binary frame
+	 * - names which are not yet defined to receivers are included
+	 *
+	 * @return frame buffer, ready to read (valid until next call)
+	 */
+	public synchronized ByteBuffer encode()
+	{
+		int maxId = numDefined;
+		for (int i = 0; i < numSamples; i++)
+		{
+			maxId = Math.max(maxId, sampleIds[i] + 1);
+		}
+		byte[][] newNames = new byte[maxId - numDefined][];
+		int size = HEADER_SIZE + 5 + 5 + numSamples * MAX_SAMPLE_SIZE;
+		for (int id = numDefined; id < maxId; id++)
+		{
+			newNames[id - numDefined] = names.get(id).getBytes(SessionFormat.UTF8);
+			size += 5 + 5 + newNames[id - numDefined].length;
+		}
+		if (frame.capacity() < size)
+		{
+			frame = ByteBuffer.allocate(Math.max(size, frame.capacity() * 2));
+		}
+
+		long lastTime = numSamples > 0 ? sampleTimes[0] : 0;
+		frame.clear();
+		frame.putInt(MAGIC);
+		frame.put(VERSION);
+		frame.putLong(lastTime);
+		SessionFormat.putVarLong(frame, newNames.length);
+		for (int i = 0; i < newNames.length; i++)
+		{
+			SessionFormat.putVarLong(frame, numDefined + i);
+			SessionFormat.putVarLong(frame, newNames[i].length);
+			frame.put(newNames[i]);
+		}
+		numDefined = maxId;
+		SessionFormat.putVarLong(frame, numSamples);
+		for (int i = 0; i < numSamples; i++)
+		{
+			SessionFormat.putVarLong(frame, sampleIds[i]);
+			SessionFormat.putVarLong(frame, SessionFormat.zigZag(sampleTimes[i] - lastTime));
+			frame.putDouble(sampleValues[i]);
+			lastTime = sampleTimes[i];
+		}
+		frame.flip();
+		return frame;
+	}
+
+	/**
+	 * Decoder of binary sample frames
+	 * - keeps the name definitions of one sender
+	 */
+	public static class Decoder
+	{
+		/** names by id */
+		private String[] names = new String[16];
+
+		/**
+		 * Decode frame and deliver all samples
+		 *
+		 * @param frame    frame data
+		 * @param listener receiver of samples
+		 * @return number of delivered samples
+		 * @throws IllegalArgumentException if frame is invalid or incomplete
+		 */
+		public int decode(ByteBuffer frame, SampleListener listener)
+		{
+			try
+			{
+				if (frame.getInt() != MAGIC || frame.get() != VERSION)
+				{
+					throw new IllegalArgumentException("No sample frame");
+				}
+				long time = frame.getLong();
+				long numDefs = SessionFormat.getVarLong(frame);
+				for (long i = 0; i < numDefs; i++)
+				{
+					int id = (int) SessionFormat.getVarLong(frame);
+					byte[] name = new byte[(int) SessionFormat.getVarLong(frame)];
+					frame.get(name);
+					if (id >= names.length)
+					{
+						names = Arrays.copyOf(names, Math.max(id + 1, names.length * 2));
+					}
+					names[id] = new String(name, SessionFormat.UTF8);
+				}
+				int count = (int) SessionFormat.getVarLong(frame);
+				for (int i = 0; i < count; i++)
+				{
+					int id = (int) SessionFormat.getVarLong(frame);
+					time += SessionFormat.unZigZag(SessionFormat.getVarLong(frame));
+					double value = frame.getDouble();
+					listener.onSample(id < names.length ? names[id] : null, time, value);
+				}
+				return count;
+			}
+			catch (BufferUnderflowException | NegativeArraySizeException ex)
+			{
+				throw new IllegalArgumentException("Incomplete sample frame", ex);
+			}
+		}
+	}
+}
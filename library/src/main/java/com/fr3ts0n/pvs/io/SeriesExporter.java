@@ -0,0 +1,479 @@
+/*
+ * (C) Copyright 2015 by fr3ts0n <erwin.scheuch-heilig@gmx.at>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston,
+ * MA 02111-1307 USA
+ */
+
+package com.fr3ts0n.pvs.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+/**
+ * Streaming export of sampled data series
+ *
+ * Series are exported either as CSV table or in a compact columnar format.
+ * For CSV output the series are merged by time stamp (k-way merge),
+ * so each row holds the samples of all series at one point in time
+ * (empty fields for series without a sample at this time).
+ * Output is encoded into a reused buffer and written to a channel,
+ * time stamps and numbers are formatted without per-cell objects.
+ *
+ * Columnar format:
+ * <pre>
+ * header  magic "OBDC":int, version:byte, columns:varint
+ * column  nameLen:varint, name:UTF-8, scale:varint (fraction digits), count:varint,
+ *         times:zigzag varint deltas [ms], values:zigzag varint deltas of scaled values
+ * </pre>
+ *
+ * @author erwin
+ */
+public class SeriesExporter
+{
+	/** magic of columnar format "OBDC" */
+	public static final int COLUMNAR_MAGIC = 0x4F424443;
+	/** version of columnar format */
+	public static final byte COLUMNAR_VERSION = 1;
+
+	/** size of output buffer */
+	private static final int BUFFER_SIZE = 0x10000;
+	/** max. size of a formatted cell */
+	private static final int MAX_CELL_SIZE = 64;
+	/** number of rows between progress reports */
+	private static final int PROGRESS_INTERVAL = 1024;
+	/** powers of 10 for number formatting */
+	private static final long[] POW10 =
+		{
+			1L, 10L, 100L, 1000L, 10000L, 100000L, 1000000L, 10000000L, 100000000L
+		};
+
+	/**
+	 * Listener for export progress
+	 */
+	public interface ProgressListener
+	{
+		/**
+		 * Report export progress
+		 *
+		 * @param done  number of exported samples
+		 * @param total total number of samples
+		 */
+		void onProgress(long done, long total);
+	}
+
+	/** series names */
+	private final String[] names;
+	/** sample times [ms] of series (ascending) */
+	private final long[][] times;
+	/** sample values of series */
+	private final double[][] values;
+	/** number of samples of series */
+	private final int[] counts;
+	/** total number of samples */
+	private final long total;
+
+	/** number of fraction digits */
+	private int fractionDigits = 4;
+	/** progress listener */
+	private ProgressListener progressListener;
+
+	/** output */
+	private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+	private WritableByteChannel out;
+
+	/**
+	 * Create exporter for series data
+	 *
+	 * @param names  series names
+	 * @param times  sample times [ms] of each series (ascending)
+	 * @param values sample values of each series
+	 * @param counts number of samples of each series
+	 */
+	public SeriesExporter(String[] names, long[][] times, double[][] values, int[] counts)
+	{
+		this.names = names;
+		this.times = times;
+		this.values = values;
+		this.counts = counts;
+		long sum = 0;
+		for (int count : counts)
+		{
+			sum += count;
+		}
+		total = sum;
+	}
+
+	/**
+	 * Set number of fraction digits of exported values
+	 *
+	 * @param fractionDigits number of fraction digits (0..8)
+	 */
+	public void setFractionDigits(int fractionDigits)
+	{
+		if (fractionDigits < 0 || fractionDigits >= POW10.length)
+		{
+			throw new IllegalArgumentException("Fraction digits " + fractionDigits);
+		}
+		this.fractionDigits = fractionDigits;
+	}
+
+	/**
+	 * Set listener for export progress
+	 *
+	 * @param progressListener listener to be notified, null for none
+	 */
+	public void setProgressListener(ProgressListener progressListener)
+	{
+		this.progressListener = progressListener;
+	}
+
+	/**
+	 * Export series as CSV table
+	 *
+	 * @param out        channel to write to
+	 * @param timeTitle  title of time column
+	 * @param fieldDelim field delimiter
+	 * @param lineDelim  record delimiter
+	 * @param quoted     quote text fields
+	 * @throws IOException on write errors
+	 */
+	public void writeCsv(WritableByteChannel out, String timeTitle,
+	                     String fieldDelim, String lineDelim, boolean quoted)
+		throws IOException
+	{
+		this.out = out;
+		buffer.clear();
+		byte[] fDelim = fieldDelim.getBytes(SessionFormat.UTF8);
+		byte[] lDelim = lineDelim.getBytes(SessionFormat.UTF8);
+		int k = counts.length;
+
+		// header line
+		putText(timeTitle, quoted);
+		putBytes(fDelim);
+		for (String name : names)
+		{
+			putText(name, quoted);
+			putBytes(fDelim);
+		}
+		putBytes(lDelim);
+
+		// min heap of series indices ordered by time of next sample
+		int[] heap = new int[k];
+		int[] pos = new int[k];
+		int heapSize = 0;
+		for (int i = 0; i < k; i++)
+		{
+			if (counts[i] > 0)
+			{
+				heap[heapSize++] = i;
+			}
+		}
+		for (int i = heapSize / 2 - 1; i >= 0; i--)
+		{
+			siftDown(heap, heapSize, i, pos);
+		}
+
+		// current row
+		double[] row = new double[k];
+		boolean[] inRow = new boolean[k];
+		TimeFormatter timeFmt = new TimeFormatter();
+		long done = 0;
+		int rows = 0;
+
+		while (heapSize > 0)
+		{
+			// collect all samples of this time stamp
+			long time = times[heap[0]][pos[heap[0]]];
+			while (heapSize > 0 && times[heap[0]][pos[heap[0]]] == time)
+			{
+				int ch = heap[0];
+				row[ch] = values[ch][pos[ch]];
+				inRow[ch] = true;
+				done++;
+				if (++pos[ch] >= counts[ch])
+				{
+					heap[0] = heap[--heapSize];
+				}
+				siftDown(heap, heapSize, 0, pos);
+			}
+
+			// write row
+			ensureSpace(MAX_CELL_SIZE + fDelim.length);
+			timeFmt.put(buffer, time);
+			putBytes(fDelim);
+			for (int ch = 0; ch < k; ch++)
+			{
+				if (inRow[ch])
+				{
+					ensureSpace(MAX_CELL_SIZE);
+					putNumber(row[ch]);
+					inRow[ch] = false;
+				}
+				putBytes(fDelim);
+			}
+			putBytes(lDelim);
+
+			if (progressListener != null && ++rows % PROGRESS_INTERVAL == 0)
+			{
+				progressListener.onProgress(done, total);
+			}
+		}
+		flushBuffer();
+		if (progressListener != null)
+		{
+			progressListener.onProgress(done, total);
+		}
+	}
+
+	/**
+	 * restore heap order downwards from specified heap index
+	 */
+	private void siftDown(int[] heap, int size, int idx, int[] pos)
+	{
+		while (true)
+		{
+			int min = idx;
+			int left = 2 * idx + 1;
+			int right = left + 1;
+			if (left < size && before(heap[left], heap[min], pos)) min = left;
+			if (right < size && before(heap[right], heap[min], pos)) min = right;
+			if (min == idx)
+			{
+				return;
+			}
+			int tmp = heap[idx];
+			heap[idx] = heap[min];
+			heap[min] = tmp;
+			idx = min;
+		}
+	}
+
+	/**
+	 * @return true if next sample of series a is before next sample of series b
+	 */
+	private boolean before(int a, int b, int[] pos)
+	{
+		long ta = times[a][pos[a]];
+		long tb = times[b][pos[b]];
+		return ta < tb || (ta == tb && a < b);
+	}
+
+	/**
+	 * Export series in compact columnar format
+	 *
+	 * @param out channel to write to
+	 * @throws IOException on write errors
+	 */
+	public void writeColumnar(WritableByteChannel out) throws IOException
+	{
+		this.out = out;
+		buffer.clear();
+		long scale = POW10[fractionDigits];
+		long done = 0;
+
+		buffer.putInt(COLUMNAR_MAGIC).put(COLUMNAR_VERSION);
+		SessionFormat.putVarLong(buffer, names.length);
+		for (int ch = 0; ch < names.length; ch++)
+		{
+			byte[] name = names[ch].getBytes(SessionFormat.UTF8);
+			ensureSpace(5);
+			SessionFormat.putVarLong(buffer, name.length);
+			putBytes(name);
+			ensureSpace(2 * 5);
+			SessionFormat.putVarLong(buffer, fractionDigits);
+			SessionFormat.putVarLong(buffer, counts[ch]);
+
+			long last = 0;
+			for (int i = 0; i < counts[ch]; i++)
+			{
+				ensureSpace(10);
+				SessionFormat.putVarLong(buffer, SessionFormat.zigZag(times[ch][i] - last));
+				last = times[ch][i];
+			}
+			last = 0;
+			for (int i = 0; i < counts[ch]; i++)
+			{
+				ensureSpace(10);
+				long scaled = Math.round(values[ch][i] * scale);
+				SessionFormat.putVarLong(buffer, SessionFormat.zigZag(scaled - last));
+				last = scaled;
+				if (progressListener != null && ++done % (PROGRESS_INTERVAL * 8) == 0)
+				{
+					progressListener.onProgress(done, total);
+				}
+			}
+		}
+		flushBuffer();
+		if (progressListener != null)
+		{
+			progressListener.onProgress(total, total);
+		}
+	}
+
+	/**
+	 * put text field, optionally quoted
+	 */
+	private void putText(String text, boolean quoted) throws IOException
+	{
+		if (quoted)
+		{
+			putBytes(new byte[]{'"'});
+		}
+		putBytes(text.getBytes(SessionFormat.UTF8));
+		if (quoted)
+		{
+			putBytes(new byte[]{'"'});
+		}
+	}
+
+	/**
+	 * put byte sequence of any length
+	 */
+	private void putBytes(byte[] bytes) throws IOException
+	{
+		int ofs = 0;
+		while (ofs < bytes.length)
+		{
+			if (!buffer.hasRemaining())
+			{
+				flushBuffer();
+			}
+			int len = Math.min(buffer.remaining(), bytes.length - ofs);
+			buffer.put(bytes, ofs, len);
+			ofs += len;
+		}
+	}
+
+	/**
+	 * put number with selected number of fraction digits
+	 * - trailing zeros of the fraction are omitted
+	 *
+	 * @param value value to be written
+	 */
+	private void putNumber(double value)
+	{
+		long scale = POW10[fractionDigits];
+		if (value != value || Math.abs(value) * scale >= Long.MAX_VALUE / 10)
+		{
+			// NaN, infinity or too large for fixed point
+			byte[] text = String.valueOf(value).getBytes(SessionFormat.UTF8);
+			buffer.put(text, 0, Math.min(text.length, MAX_CELL_SIZE));
+			return;
+		}
+		long scaled = Math.round(value * scale);
+		if (scaled < 0)
+		{
+			buffer.put((byte) '-');
+			scaled = -scaled;
+		}
+		putDigits(scaled / scale, 1);
+		long fraction = scaled % scale;
+		if (fraction != 0)
+		{
+			int digits = fractionDigits;
+			while (fraction % 10 == 0)
+			{
+				fraction /= 10;
+				digits--;
+			}
+			buffer.put((byte) '.');
+			putDigits(fraction, digits);
+		}
+	}
+
+	/**
+	 * put decimal digits of non-negative value
+	 *
+	 * @param value     value to be written
+	 * @param minDigits min. number of digits (leading zeros)
+	 */
+	private void putDigits(long value, int minDigits)
+	{
+		int start = buffer.position();
+		do
+		{
+			buffer.put((byte) ('0' + value % 10));
+			value /= 10;
+			minDigits--;
+		} while (value != 0 || minDigits > 0);
+		// digits were written in reverse order
+		for (int i = start, j = buffer.position() - 1; i < j; i++, j--)
+		{
+			byte tmp = buffer.get(i);
+			buffer.put(i, buffer.get(j));
+			buffer.put(j, tmp);
+		}
+	}
+
+	/**
+	 * ensure output buffer has space for specified number of bytes
+	 */
+	private void ensureSpace(int size) throws IOException
+	{
+		if (buffer.remaining() < size)
+		{
+			flushBuffer();
+		}
+	}
+
+	/**
+	 * write buffered data to output channel
+	 */
+	private void flushBuffer() throws IOException
+	{
+		buffer.flip();
+		while (buffer.hasRemaining())
+		{
+			out.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	/**
+	 * Formatter of time stamps (yyyy-MM-dd HH:mm:ss.SSS)
+	 * - date and time are only formatted once per second
+	 */
+	static final class TimeFormatter
+	{
+		private final DateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.");
+		private long second = Long.MIN_VALUE;
+		private byte[] prefix;
+
+		/**
+		 * put formatted time stamp into buffer
+		 *
+		 * @param buffer buffer to write to
+		 * @param time   time stamp [ms]
+		 */
+		void put(ByteBuffer buffer, long time)
+		{
+			long sec = (time >= 0 ? time : time - 999) / 1000;
+			if (sec != second)
+			{
+				second = sec;
+				prefix = dateFormat.format(new Date(sec * 1000)).getBytes(SessionFormat.UTF8);
+			}
+			buffer.put(prefix);
+			int millis = (int) (time - sec * 1000);
+			buffer.put((byte) ('0' + millis / 100))
+			      .put((byte) ('0' + millis / 10 % 10))
+			      .put((byte) ('0' + millis % 10));
+		}
+	}
+}
@@ -0,0 +1,259 @@
+/*
+ * (C) Copyright 2015 by fr3ts0n <erwin.scheuch-heilig@gmx.at>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston,
+ * MA 02111-1307 USA
+ */
+
+package com.fr3ts0n.pvs.io;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * Binary format of recorded sessions
+ *
+ * A session file starts with a header (magic, version, start time [ms])
+ * followed by a sequence of records, each starting with a tag byte:
+ * <pre>
+ * DEFINE  id:varint, nameLen:varint, name:UTF-8    - define name of a PV id
+ * LONG    dt:varint, id:varint, value:zigzag varint - integral sample value
+ * FLOAT   dt:varint, id:varint, value:float         - float sample value
+ * DOUBLE  dt:varint, id:varint, value:double        - double sample value
+ * INDEX   time:long, samples:long, crc:int          - time sync / index point
+ * </pre>
+ * Sample times are deltas [ms] to the previous sample or index point.
+ * Index records carry the absolute time, the total number of samples
+ * so far and the CRC32 of all bytes since the previous index record.
+ *
+ * @author erwin
+ */
+final class SessionFormat
+{
+	/** file magic "OBDR" */
+	static final int MAGIC = 0x4F424452;
+	/** format version */
+	static final byte VERSION = 1;
+	/** size of file header */
+	static final int HEADER_SIZE = 4 + 1 + 8;
+
+	/** record tags */
+	static final byte TAG_DEFINE = 0x01;
+	static final byte TAG_LONG = 0x02;
+	static final byte TAG_FLOAT = 0x03;
+	static final byte TAG_DOUBLE = 0x04;
+	static final byte TAG_INDEX = 0x10;
+
+	/** size of index record */
+	static final int INDEX_SIZE = 1 + 8 + 8 + 4;
+	/** max. size of a sample record */
+	static final int MAX_SAMPLE_SIZE = 1 + 10 + 5 + 8;
+
+	/** charset of PV names */
+	static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private SessionFormat()
+	{
+	}
+
+	/**
+	 * write variable length unsigned value (7 bits per byte, LSB first)
+	 *
+	 * @param buffer buffer to write to
+	 * @param value  value to be written
+	 */
+	static void putVarLong(ByteBuffer buffer, long value)
+	{
+		while ((value & ~0x7FL) != 0)
+		{
+			buffer.put((byte) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		buffer.put((byte) value);
+	}
+
+	/**
+	 * read variable length unsigned value
+	 *
+	 * @param buffer buffer to read from
+	 * @return value read
+	 * @throws BufferUnderflowException if value is incomplete or malformed
+	 */
+	static long getVarLong(ByteBuffer buffer)
+	{
+		long result = 0;
+		for (int shift = 0; shift < 64; shift += 7)
+		{
+			byte b = buffer.get();
+			result |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0)
+			{
+				return result;
+			}
+		}
+		throw new BufferUnderflowException();
+	}
+
+	/** zigzag encoding of signed values */
+	static long zigZag(long value)
+	{
+		return (value << 1) ^ (value >> 63);
+	}
+
+	/** zigzag decoding of signed values */
+	static long unZigZag(long value)
+	{
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	/**
+	 * Sequential reader of session records
+	 */
+	static final class Cursor
+	{
+		private final ByteBuffer buffer;
+		/** tag of current record */
+		byte tag;
+		/** start position of current record */
+		int position;
+		/** time [ms] of current record */
+		long time;
+		/** PV id of current record */
+		int id;
+		/** sample value of current record */
+		double value;
+		/** PV name of current DEFINE record */
+		String name;
+		/** number of samples of current INDEX record */
+		long samples;
+		/** CRC of current INDEX record */
+		int crc;
+
+		/**
+		 * Create cursor for session data
+		 *
+		 * @param buffer buffer with complete session data
+		 * @throws IllegalArgumentException if buffer is no valid session
+		 */
+		Cursor(ByteBuffer buffer)
+		{
+			this.buffer = buffer;
+			buffer.position(0);
+			if (buffer.limit() < HEADER_SIZE
+			    || buffer.getInt() != MAGIC
+			    || buffer.get() != VERSION)
+			{
+				throw new IllegalArgumentException("No valid session data");
+			}
+			time = buffer.getLong();
+			position = HEADER_SIZE;
+		}
+
+		/**
+		 * @return start time of session [ms]
+		 */
+		long getStartTime()
+		{
+			return buffer.getLong(5);
+		}
+
+		/**
+		 * Continue reading at specified position
+		 *
+		 * @param position buffer position of a record
+		 * @param time     time [ms] valid at this position
+		 */
+		void seek(int position, long time)
+		{
+			buffer.position(position);
+			this.position = position;
+			this.time = time;
+		}
+
+		/**
+		 * Read next record
+		 *
+		 * @return true if a complete record was read,
+		 *         false on end of data or incomplete/invalid record
+		 */
+		boolean next()
+		{
+			int start = buffer.position();
+			long startTime = time;
+			try
+			{
+				tag = buffer.get();
+				switch (tag)
+				{
+					case TAG_DEFINE:
+						id = (int) getVarLong(buffer);
+						int len = (int) getVarLong(buffer);
+						if (len < 0 || len > buffer.remaining())
+						{
+							throw new BufferUnderflowException();
+						}
+						byte[] bytes = new byte[len];
+						buffer.get(bytes);
+						name = new String(bytes, UTF8);
+						break;
+
+					case TAG_LONG:
+					case TAG_FLOAT:
+					case TAG_DOUBLE:
+						time += getVarLong(buffer);
+						id = (int) getVarLong(buffer);
+						value = tag == TAG_LONG ? unZigZag(getVarLong(buffer))
+						      : tag == TAG_FLOAT ? buffer.getFloat()
+						      : buffer.getDouble();
+						break;
+
+					case TAG_INDEX:
+						time = buffer.getLong();
+						samples = buffer.getLong();
+						crc = buffer.getInt();
+						break;
+
+					default:
+						throw new BufferUnderflowException();
+				}
+				position = start;
+				return true;
+			}
+			catch (BufferUnderflowException ex)
+			{
+				// incomplete or invalid record
+				buffer.position(start);
+				time = startTime;
+				return false;
+			}
+		}
+
+		/**
+		 * @return position behind current record
+		 */
+		int getEndPosition()
+		{
+			return buffer.position();
+		}
+
+		/**
+		 * @return true if all data has been read
+		 */
+		boolean isAtEnd()
+		{
+			return !buffer.hasRemaining();
+		}
+	}
+}
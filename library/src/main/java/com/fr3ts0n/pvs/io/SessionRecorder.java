@@ -0,0 +1,559 @@
+/*
+ * (C) Copyright 2015 by fr3ts0n <erwin.scheuch-heilig@gmx.at>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston,
+ * MA 02111-1307 USA
+ */
+
+package com.fr3ts0n.pvs.io;
+
+import com.fr3ts0n.pvs.ProcessVar;
+import com.fr3ts0n.pvs.PvChangeEvent;
+import com.fr3ts0n.pvs.PvChangeListener;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.IdentityHashMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * Continuous recorder of process var samples
+ *
+ * Each change of a recorded PV value is appended to a session file as a
+ * compact binary record (time delta, PV id, primitive value),
+ * see {@link SessionFormat}. Samples are encoded into memory buffers which
+ * are written to the file by a separate writer thread, so recording
+ * never blocks data acquisition and costs constant time per sample.
+ * If the writer can't keep up, samples are dropped and counted.
+ *
+ * Index records are written periodically to allow seeking and to detect
+ * corrupted data. When an existing session file is opened, an incomplete
+ * or corrupted tail (e.g. after a crash) is cut off and recording continues
+ * behind the last valid record.
+ *
+ * The recorder is registered as PvChangeListener at single PVs or at
+ * PV lists (child change events).
+ *
+ * @author erwin
+ */
+public class SessionRecorder
+	implements PvChangeListener
+{
+	/** number of samples between index records */
+	static final int INDEX_INTERVAL = 1024;
+	/** max. time [ms] until recorded data is written to file */
+	static final long FLUSH_INTERVAL = 1000;
+	/** size of a single write buffer */
+	private static final int BUFFER_SIZE = 0x10000;
+	/** number of write buffers */
+	private static final int NUM_BUFFERS = 4;
+	/** end marker for writer */
+	private static final ByteBuffer END = ByteBuffer.allocate(0);
+
+	private static final Logger log = Logger.getLogger("pvs.recorder");
+
+	/** attribute key of recorded value */
+	private final Object valueKey;
+	/** attribute key of PV name, null to use PV key value */
+	private final Object nameKey;
+	/** session file */
+	private final File file;
+	private final RandomAccessFile raf;
+	private final FileChannel channel;
+	/** empty buffers */
+	private final ArrayBlockingQueue<ByteBuffer> freeBuffers = new ArrayBlockingQueue<ByteBuffer>(NUM_BUFFERS);
+	/** filled buffers to be written */
+	private final ArrayBlockingQueue<ByteBuffer> fullBuffers = new ArrayBlockingQueue<ByteBuffer>(NUM_BUFFERS + 1);
+	/** buffer currently being filled */
+	private ByteBuffer current;
+	/** writer thread */
+	private final Thread writer;
+
+	/** ids of PVs */
+	private final IdentityHashMap<Object, Integer> pvIds = new IdentityHashMap<Object, Integer>();
+	/** next free PV id */
+	private int nextId = 0;
+	/** time [ms] of last record */
+	private long lastTime;
+	/** CRC of data since last index record */
+	private final CRC32 crc = new CRC32();
+	/** samples since last index record */
+	private int samplesSinceIndex = 0;
+	/** recording is closed */
+	private volatile boolean closed = false;
+
+	/** statistics */
+	private long numSamples = 0;
+	private long numDropped = 0;
+	private volatile long numBytesWritten = 0;
+
+	/**
+	 * Create recorder for session file
+	 * - a new file is created, an existing file is continued
+	 * - PVs are named by their key value
+	 *
+	 * @param file     session file
+	 * @param valueKey attribute key of PV value to be recorded
+	 * @throws IOException if file can't be opened or is no session file
+	 */
+	public SessionRecorder(File file, Object valueKey) throws IOException
+	{
+		this(file, valueKey, null);
+	}
+
+	/**
+	 * Create recorder for session file
+	 * - a new file is created, an existing file is continued
+	 *
+	 * @param file     session file
+	 * @param valueKey attribute key of PV value to be recorded
+	 * @param nameKey  attribute key of PV name (if not set, the PV key value is used)
+	 * @throws IOException if file can't be opened or is no session file
+	 */
+	public SessionRecorder(File file, Object valueKey, Object nameKey) throws IOException
+	{
+		this.file = file;
+		this.valueKey = valueKey;
+		this.nameKey = nameKey;
+		raf = new RandomAccessFile(file, "rw");
+		channel = raf.getChannel();
+
+		for (int i = 0; i < NUM_BUFFERS; i++)
+		{
+			freeBuffers.add(ByteBuffer.allocate(BUFFER_SIZE));
+		}
+		current = freeBuffers.poll();
+
+		try
+		{
+			if (channel.size() == 0)
+			{
+				// new session
+				lastTime = System.currentTimeMillis();
+				ByteBuffer header = ByteBuffer.allocate(SessionFormat.HEADER_SIZE);
+				header.putInt(SessionFormat.MAGIC)
+				      .put(SessionFormat.VERSION)
+				      .putLong(lastTime);
+				header.flip();
+				channel.write(header, 0);
+				channel.position(SessionFormat.HEADER_SIZE);
+			}
+			else
+			{
+				recover();
+			}
+		}
+		catch (IOException | IllegalArgumentException ex)
+		{
+			raf.close();
+			throw new IOException(file + ": " + ex.getMessage(), ex);
+		}
+		// re-sync time base of appended data
+		writeIndex(System.currentTimeMillis());
+
+		writer = new Thread(writerTask, "SessionRecorder");
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	/**
+	 * Recover existing session file
+	 * - cut off incomplete/corrupted tail
+	 * - continue with PV ids and CRC behind last valid record
+	 *
+	 * @throws IOException on file errors
+	 */
+	private void recover() throws IOException
+	{
+		MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		SessionFormat.Cursor cursor = new SessionFormat.Cursor(data);
+		CRC32 check = new CRC32();
+		int blockStart = SessionFormat.HEADER_SIZE;
+		int validEnd = SessionFormat.HEADER_SIZE;
+		int maxId = -1;
+		long samples = 0;
+		long indexSamples = 0;
+
+		while (cursor.next())
+		{
+			if (cursor.tag == SessionFormat.TAG_INDEX)
+			{
+				// verify data since previous index
+				check.reset();
+				updateCrc(check, data, blockStart, cursor.position);
+				if ((int) check.getValue() != cursor.crc)
+				{
+					log.warning(String.format("%s: CRC error at %d", file, blockStart));
+					validEnd = blockStart;
+					samples = indexSamples;
+					break;
+				}
+				blockStart = cursor.getEndPosition();
+				samples = indexSamples = cursor.samples;
+			}
+			else if (cursor.tag == SessionFormat.TAG_DEFINE)
+			{
+				maxId = Math.max(maxId, cursor.id);
+			}
+			else
+			{
+				samples++;
+			}
+			validEnd = cursor.getEndPosition();
+		}
+
+		if (validEnd < channel.size())
+		{
+			log.warning(String.format("%s: %d bytes of incomplete data removed",
+			                          file, channel.size() - validEnd));
+			channel.truncate(validEnd);
+		}
+		// continue CRC of current block
+		updateCrc(crc, data, blockStart, validEnd);
+
+		nextId = maxId + 1;
+		numSamples = samples;
+		channel.position(validEnd);
+		numBytesWritten = validEnd;
+	}
+
+	/**
+	 * update CRC with a range of buffer data
+	 *
+	 * @param crc    CRC to be updated
+	 * @param buffer data buffer
+	 * @param start  start position
+	 * @param end    end position (exclusive)
+	 */
+	private static void updateCrc(CRC32 crc, ByteBuffer buffer, int start, int end)
+	{
+		byte[] chunk = new byte[4096];
+		ByteBuffer range = buffer.duplicate();
+		range.position(Math.min(start, end)).limit(end);
+		while (range.hasRemaining())
+		{
+			int len = Math.min(chunk.length, range.remaining());
+			range.get(chunk, 0, len);
+			crc.update(chunk, 0, len);
+		}
+	}
+
+	/**
+	 * @return session file
+	 */
+	public File getFile()
+	{
+		return file;
+	}
+
+	/**
+	 * Record changed PV value
+	 *
+	 * @param event PvChangeEvent which is reported
+	 */
+	@Override
+	public void pvChanged(PvChangeEvent event)
+	{
+		ProcessVar pv;
+		if (event.isChildEvent())
+		{
+			if (!valueKey.equals(event.getChildKey()))
+			{
+				return;
+			}
+			pv = (ProcessVar) event.getValue();
+		}
+		else
+		{
+			if (!valueKey.equals(event.getKey()))
+			{
+				return;
+			}
+			pv = (ProcessVar) event.getSource();
+		}
+		Object value = pv.get(valueKey);
+		if (value instanceof Number)
+		{
+			Object name = nameKey != null ? pv.get(nameKey) : null;
+			record(pv, name != null ? name : pv.getKeyValue(),
+			       event.getTime(), (Number) value);
+		}
+	}
+
+	/**
+	 * Record a sample
+	 *
+	 * @param pv    sampled object (identity used to assign PV id)
+	 * @param name  name of sampled value (written once per PV)
+	 * @param time  sample time [ms]
+	 * @param value sample value
+	 */
+	public synchronized void record(Object pv, Object name, long time, Number value)
+	{
+		if (closed)
+		{
+			return;
+		}
+		Integer id = pvIds.get(pv);
+		if (id == null)
+		{
+			byte[] nameBytes = String.valueOf(name).getBytes(SessionFormat.UTF8);
+			if (!ensureSpace(1 + 5 + 5 + nameBytes.length))
+			{
+				numDropped++;
+				return;
+			}
+			id = nextId++;
+			int start = current.position();
+			current.put(SessionFormat.TAG_DEFINE);
+			SessionFormat.putVarLong(current, id);
+			SessionFormat.putVarLong(current, nameBytes.length);
+			current.put(nameBytes);
+			crc.update(current.array(), start, current.position() - start);
+			pvIds.put(pv, id);
+		}
+
+		// time stamps going backwards require a new time base
+		if (time < lastTime)
+		{
+			writeIndex(time);
+		}
+		if (!ensureSpace(SessionFormat.MAX_SAMPLE_SIZE))
+		{
+			numDropped++;
+			return;
+		}
+
+		int start = current.position();
+		double dVal = value.doubleValue();
+		long lVal = (long) dVal;
+		if (lVal == dVal)
+		{
+			current.put(SessionFormat.TAG_LONG);
+			SessionFormat.putVarLong(current, time - lastTime);
+			SessionFormat.putVarLong(current, id);
+			SessionFormat.putVarLong(current, SessionFormat.zigZag(lVal));
+		}
+		else if ((float) dVal == dVal || dVal != dVal)
+		{
+			current.put(SessionFormat.TAG_FLOAT);
+			SessionFormat.putVarLong(current, time - lastTime);
+			SessionFormat.putVarLong(current, id);
+			current.putFloat((float) dVal);
+		}
+		else
+		{
+			current.put(SessionFormat.TAG_DOUBLE);
+			SessionFormat.putVarLong(current, time - lastTime);
+			SessionFormat.putVarLong(current, id);
+			current.putDouble(dVal);
+		}
+		crc.update(current.array(), start, current.position() - start);
+		lastTime = time;
+		numSamples++;
+
+		if (++samplesSinceIndex >= INDEX_INTERVAL)
+		{
+			writeIndex(time);
+		}
+	}
+
+	/**
+	 * write index record and start new time base
+	 *
+	 * @param time absolute time of index
+	 */
+	private void writeIndex(long time)
+	{
+		if (!ensureSpace(SessionFormat.INDEX_SIZE))
+		{
+			return;
+		}
+		current.put(SessionFormat.TAG_INDEX)
+		       .putLong(time)
+		       .putLong(numSamples)
+		       .putInt((int) crc.getValue());
+		crc.reset();
+		lastTime = time;
+		samplesSinceIndex = 0;
+	}
+
+	/**
+	 * ensure current buffer has space for a record
+	 *
+	 * @param size size of record
+	 * @return true if space is available, false if no buffer is available
+	 */
+	private boolean ensureSpace(int size)
+	{
+		if (current != null && current.remaining() >= size)
+		{
+			return true;
+		}
+		if (current != null)
+		{
+			fullBuffers.add(current);
+		}
+		current = freeBuffers.poll();
+		return current != null;
+	}
+
+	/**
+	 * Hand over recorded data to writer
+	 * - an index record is added to allow seeking up to current time
+	 */
+	public synchronized void flush()
+	{
+		if (closed || current == null)
+		{
+			return;
+		}
+		if (samplesSinceIndex > 0)
+		{
+			writeIndex(lastTime);
+		}
+		if (current != null && current.position() > 0)
+		{
+			fullBuffers.add(current);
+			current = freeBuffers.poll();
+		}
+	}
+
+	/**
+	 * Finish recording and close file
+	 */
+	public void close()
+	{
+		synchronized (this)
+		{
+			if (closed)
+			{
+				return;
+			}
+			flush();
+			closed = true;
+			fullBuffers.add(END);
+		}
+		try
+		{
+			writer.join();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+		try
+		{
+			raf.close();
+		}
+		catch (IOException ex)
+		{
+			log.log(Level.WARNING, file.toString(), ex);
+		}
+		log.info(String.format("%s: %d samples, %d dropped, %d bytes",
+		                       file, getSampleCount(), getDroppedCount(), numBytesWritten));
+	}
+
+	/**
+	 * write buffer to file
+	 *
+	 * @param buffer buffer to be written
+	 * @throws IOException on write errors
+	 */
+	private void writeBuffer(ByteBuffer buffer) throws IOException
+	{
+		buffer.flip();
+		while (buffer.hasRemaining())
+		{
+			channel.write(buffer);
+		}
+		numBytesWritten = channel.position();
+		buffer.clear();
+		freeBuffers.add(buffer);
+	}
+
+	/**
+	 * Writer stage: write filled buffers to file
+	 */
+	private final Runnable writerTask = new Runnable()
+	{
+		@Override
+		public void run()
+		{
+			try
+			{
+				while (true)
+				{
+					ByteBuffer buffer = fullBuffers.poll(FLUSH_INTERVAL, TimeUnit.MILLISECONDS);
+					if (buffer == null)
+					{
+						// nothing written within flush interval
+						flush();
+						continue;
+					}
+					if (buffer == END)
+					{
+						break;
+					}
+					writeBuffer(buffer);
+					if (fullBuffers.isEmpty())
+					{
+						channel.force(false);
+					}
+				}
+			}
+			catch (InterruptedException ex)
+			{
+				log.log(Level.WARNING, file.toString(), ex);
+			}
+			catch (IOException ex)
+			{
+				log.log(Level.SEVERE, file.toString(), ex);
+				closed = true;
+			}
+		}
+	};
+
+	/**
+	 * @return number of recorded samples
+	 */
+	public synchronized long getSampleCount()
+	{
+		return numSamples;
+	}
+
+	/**
+	 * @return number of samples dropped because writer couldn't keep up
+	 */
+	public synchronized long getDroppedCount()
+	{
+		return numDropped;
+	}
+
+	/**
+	 * @return number of bytes written to file
+	 */
+	public long getBytesWritten()
+	{
+		return numBytesWritten;
+	}
+}
@@ -0,0 +1,549 @@
+/*
+ * (C) Copyright 2015 by fr3ts0n <erwin.scheuch-heilig@gmx.at>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston,
+ * MA 02111-1307 USA
+ */
+
+package com.fr3ts0n.pvs.io;
+
+import com.fr3ts0n.pvs.ProcessVar;
+import com.fr3ts0n.pvs.PvChangeEvent;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Replay of recorded sessions
+ *
+ * The session file (see {@link SessionRecorder}) is memory mapped, so only
+ * the time index and the PV names are held in memory. Seeking to a
+ * timestamp is a binary search on the index records followed by a scan of
+ * at most one index block. Index times are clamped to be ascending, so
+ * sessions with clock steps backwards (or appended sessions) stay seekable.
+ *
+ * Replayed samples are written to bound process vars with their recorded
+ * time, so listeners receive the same PvChangeEvents as for live data.
+ * Playback runs at real time, at a multiple of real time or as fast as
+ * possible (speed 0).
+ *
+ * @author erwin
+ */
+public class SessionReplay
+	implements Runnable
+{
+	private static final Logger log = Logger.getLogger("pvs.replay");
+
+	private final FileChannel channel;
+	private final SessionFormat.Cursor cursor;
+
+	/** time index: time and buffer position of index points */
+	private long[] indexTimes = new long[64];
+	private int[] indexPositions = new int[64];
+	private int numIndices = 0;
+
+	/** PV names by id */
+	private final ArrayList<String> names = new ArrayList<String>();
+	/** bound PVs and their value keys by id */
+	private ProcessVar[] targets = new ProcessVar[0];
+	private Object[] valueKeys = new Object[0];
+
+	/** session time range [ms] */
+	private final long startTime;
+	private long endTime;
+	/** total number of samples */
+	private long numSamples = 0;
+
+	/** cursor holds a sample which is not delivered yet */
+	private boolean pending = false;
+	/** replay speed (multiple of real time), 0 = as fast as possible */
+	private volatile double speed = 1.0;
+	/** playback is running */
+	private volatile boolean running = false;
+	/** seek counter, makes running playback re-sync with clock */
+	private long generation = 0;
+
+	/**
+	 * Open session file for replay
+	 *
+	 * @param file session file
+	 * @throws IOException if file can't be read or is no session file
+	 */
+	public SessionReplay(File file) throws IOException
+	{
+		this(new FileInputStream(file).getChannel());
+	}
+
+	/**
+	 * Open session data for replay
+	 *
+	 * @param channel channel to read session data from (closed by {@link #close()})
+	 * @throws IOException if channel can't be mapped or contains no session
+	 */
+	public SessionReplay(FileChannel channel) throws IOException
+	{
+		this.channel = channel;
+		try
+		{
+			if (channel.size() > Integer.MAX_VALUE)
+			{
+				throw new IOException("Session too large: " + channel.size());
+			}
+			MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			cursor = new SessionFormat.Cursor(data);
+		}
+		catch (IOException | IllegalArgumentException ex)
+		{
+			channel.close();
+			throw new IOException(ex.getMessage(), ex);
+		}
+		startTime = endTime = cursor.getStartTime();
+		buildIndex();
+		rewind();
+	}
+
+	/**
+	 * scan session once to build time index and name table
+	 */
+	private void buildIndex()
+	{
+		addIndex(startTime, SessionFormat.HEADER_SIZE);
+		while (cursor.next())
+		{
+			switch (cursor.tag)
+			{
+				case SessionFormat.TAG_INDEX:
+					addIndex(cursor.time, cursor.getEndPosition());
+					break;
+
+				case SessionFormat.TAG_DEFINE:
+					while (names.size() <= cursor.id)
+					{
+						names.add(null);
+					}
+					names.set(cursor.id, cursor.name);
+					break;
+
+				default:
+					numSamples++;
+					endTime = Math.max(endTime, cursor.time);
+					break;
+			}
+		}
+		if (!cursor.isAtEnd())
+		{
+			log.warning(String.format("Incomplete session data at %d", cursor.getEndPosition()));
+		}
+		targets = new ProcessVar[names.size()];
+		valueKeys = new Object[names.size()];
+	}
+
+	/**
+	 * add index point
+	 * - index time is clamped to the previous index time to keep the index
+	 *   sorted for binary search
+	 *
+	 * @param time     absolute time [ms]
+	 * @param position buffer position of following record
+	 */
+	private void addIndex(long time, int position)
+	{
+		if (numIndices == indexTimes.length)
+		{
+			indexTimes = Arrays.copyOf(indexTimes, numIndices * 2);
+			indexPositions = Arrays.copyOf(indexPositions, numIndices * 2);
+		}
+		if (numIndices > 0)
+		{
+			time = Math.max(time, indexTimes[numIndices - 1]);
+		}
+		indexTimes[numIndices] = time;
+		indexPositions[numIndices] = position;
+		numIndices++;
+	}
+
+	/**
+	 * Bind process vars to recorded PV names
+	 *
+	 * Samples of a bound PV are written to its value attribute. Values are
+	 * delivered in the numeric type of the current attribute value
+	 * (e.g. Float for EcuDataPv values).
+	 *
+	 * @param pvs      map of process vars by recorded name (e.g. a PvList)
+	 * @param valueKey attribute key of replayed value
+	 * @return number of recorded names which got bound
+	 */
+	public synchronized int bind(Map<?, ?> pvs, Object valueKey)
+	{
+		int result = 0;
+		for (int id = 0; id < names.size(); id++)
+		{
+			Object pv = names.get(id) != null ? pvs.get(names.get(id)) : null;
+			if (pv instanceof ProcessVar)
+			{
+				targets[id] = (ProcessVar) pv;
+				valueKeys[id] = valueKey;
+				result++;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Remove all PV bindings
+	 */
+	public synchronized void unbind()
+	{
+		Arrays.fill(targets, null);
+		Arrays.fill(valueKeys, null);
+	}
+
+	/**
+	 * @return recorded PV names (index is PV id)
+	 */
+	public List<String> getNames()
+	{
+		return Collections.unmodifiableList(names);
+	}
+
+	/**
+	 * @return session start time [ms]
+	 */
+	public long getStartTime()
+	{
+		return startTime;
+	}
+
+	/**
+	 * @return time of last sample [ms]
+	 */
+	public long getEndTime()
+	{
+		return endTime;
+	}
+
+	/**
+	 * @return total number of samples
+	 */
+	public long getSampleCount()
+	{
+		return numSamples;
+	}
+
+	/**
+	 * @return current replay time [ms]
+	 */
+	public synchronized long getTime()
+	{
+		return cursor.time;
+	}
+
+	/**
+	 * Restart replay at session start
+	 */
+	public synchronized void rewind()
+	{
+		cursor.seek(indexPositions[0], indexTimes[0]);
+		pending = false;
+		generation++;
+		notifyAll();
+	}
+
+	/**
+	 * Set replay position to specified time
+	 * - the last value of each PV within the skipped index block is delivered,
+	 *   so bound PVs show the state at the new position
+	 *
+	 * @param time time [ms] to continue replay with
+	 */
+	public synchronized void seek(long time)
+	{
+		// binary search for last index point at or before time
+		int idx = Arrays.binarySearch(indexTimes, 0, numIndices, time);
+		if (idx < 0)
+		{
+			idx = Math.max(0, -idx - 2);
+		}
+		// for equal times, use first of them
+		while (idx > 0 && indexTimes[idx - 1] == indexTimes[idx])
+		{
+			idx--;
+		}
+		cursor.seek(indexPositions[idx], indexTimes[idx]);
+		pending = false;
+		// wake up running playback to continue at new position
+		generation++;
+		notifyAll();
+
+		// skip samples before requested time, remember last values
+		double[] lastValues = new double[targets.length];
+		byte[] lastTags = new byte[targets.length];
+		while (readSample())
+		{
+			if (cursor.time >= time)
+			{
+				pending = true;
+				break;
+			}
+			if (cursor.id < lastTags.length)
+			{
+				lastValues[cursor.id] = cursor.value;
+				lastTags[cursor.id] = cursor.tag;
+			}
+		}
+		for (int id = 0; id < lastTags.length; id++)
+		{
+			if (lastTags[id] != 0)
+			{
+				deliver(id, lastTags[id], lastValues[id], time);
+			}
+		}
+	}
+
+	/**
+	 * read next sample record into cursor
+	 *
+	 * @return true if a sample was read, false at end of data
+	 */
+	private boolean readSample()
+	{
+		while (cursor.next())
+		{
+			if (cursor.tag != SessionFormat.TAG_INDEX && cursor.tag != SessionFormat.TAG_DEFINE)
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Deliver next sample
+	 *
+	 * @return true if a sample was delivered, false at end of session
+	 */
+	public synchronized boolean step()
+	{
+		if (!pending && !readSample())
+		{
+			return false;
+		}
+		pending = false;
+		deliver(cursor.id, cursor.tag, cursor.value, cursor.time);
+		return true;
+	}
+
+	/**
+	 * Deliver all samples up to specified time
+	 *
+	 * @param time end time [ms] (inclusive)
+	 * @return number of delivered samples
+	 */
+	public synchronized int playUntil(long time)
+	{
+		int result = 0;
+		while (pending || readSample())
+		{
+			if (cursor.time > time)
+			{
+				pending = true;
+				break;
+			}
+			pending = false;
+			deliver(cursor.id, cursor.tag, cursor.value, cursor.time);
+			result++;
+		}
+		return result;
+	}
+
+	/**
+	 * write sample to bound PV
+	 *
+	 * @param id    PV id
+	 * @param tag   record tag of sample
+	 * @param value sample value
+	 * @param time  sample time [ms]
+	 */
+	private void deliver(int id, byte tag, double value, long time)
+	{
+		ProcessVar pv = id < targets.length ? targets[id] : null;
+		if (pv != null)
+		{
+			pv.put(valueKeys[id], box(pv.get(valueKeys[id]), tag, value),
+			       PvChangeEvent.PV_MODIFIED, time);
+		}
+	}
+
+	/**
+	 * box sample value in type of current value
+	 *
+	 * @param current current attribute value
+	 * @param tag     record tag of sample
+	 * @param value   sample value
+	 * @return boxed value
+	 */
+	private static Number box(Object current, byte tag, double value)
+	{
+		if (current instanceof Float) return (float) value;
+		if (current instanceof Double) return value;
+		if (current instanceof Integer) return (int) value;
+		if (current instanceof Number) return (long) value;
+		switch (tag)
+		{
+			case SessionFormat.TAG_LONG: return (long) value;
+			case SessionFormat.TAG_FLOAT: return (float) value;
+			default: return value;
+		}
+	}
+
+	/**
+	 * @return replay speed (multiple of real time), 0 = as fast as possible
+	 */
+	public double getSpeed()
+	{
+		return speed;
+	}
+
+	/**
+	 * Set replay speed
+	 *
+	 * @param speed multiple of real time (1 = real time), 0 = as fast as possible
+	 */
+	public synchronized void setSpeed(double speed)
+	{
+		if (speed < 0)
+		{
+			throw new IllegalArgumentException("Speed " + speed);
+		}
+		this.speed = speed;
+		notifyAll();
+	}
+
+	/**
+	 * @return true if playback is running
+	 */
+	public boolean isRunning()
+	{
+		return running;
+	}
+
+	/**
+	 * Stop running playback
+	 */
+	public synchronized void stop()
+	{
+		running = false;
+		notifyAll();
+	}
+
+	/**
+	 * Play back session from current position with selected speed
+	 * until end of session or {@link #stop()}
+	 */
+	@Override
+	public void run()
+	{
+		running = true;
+		try
+		{
+			double currSpeed = -1;
+			long currGeneration = -1;
+			long baseTime = 0;
+			long baseClock = 0;
+			while (running)
+			{
+				synchronized (this)
+				{
+					if (!pending && !readSample())
+					{
+						break;
+					}
+					pending = true;
+					long time = cursor.time;
+					// re-sync with clock on start, seek and speed changes
+					if (speed != currSpeed || generation != currGeneration)
+					{
+						currSpeed = speed;
+						currGeneration = generation;
+						baseTime = time;
+						baseClock = System.currentTimeMillis();
+					}
+					if (currSpeed > 0)
+					{
+						long delay = baseClock + (long) ((time - baseTime) / currSpeed)
+						             - System.currentTimeMillis();
+						if (delay > 0)
+						{
+							// seek, setSpeed and stop wake up and cause a re-check
+							wait(delay);
+							continue;
+						}
+					}
+					playUntil(time);
+				}
+			}
+		}
+		catch (InterruptedException ex)
+		{
+			Thread.currentThread().interrupt();
+		}
+		finally
+		{
+			running = false;
+		}
+	}
+
+	/**
+	 * Close session data
+	 *
+	 * @throws IOException on close errors
+	 */
+	public void close() throws IOException
+	{
+		stop();
+		channel.close();
+	}
+
+	/**
+	 * Check if stream starts with session data
+	 * - the stream is read up to the end of the file magic
+	 *
+	 * @param in stream to check
+	 * @return true if stream starts with session file magic
+	 * @throws IOException on read errors
+	 */
+	public static boolean isSession(InputStream in) throws IOException
+	{
+		try
+		{
+			return new DataInputStream(in).readInt() == SessionFormat.MAGIC;
+		}
+		catch (EOFException ex)
+		{
+			return false;
+		}
+	}
+}
@@ -6,7 +6,12 @@ import com.fr3ts0n.pvs.PvChangeListener;
 
 import org.junit.jupiter.api.Test;
 
+import java.util.HashMap;
+import java.util.Random;
+import java.util.Vector;
+
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 /**
  * Test class for dynamic conversion ranges via PID 0x4F
@@ -128,6 +133,73 @@ class EcuDataItemsTest
 		pv.removePvChangeListener(this);
 	}
 
+	/**
+	 * Precompiled decoders match generic conversion for all PID definitions
+	 */
+	@Test
+	void getDecoder_MatchesConversion()
+	{
+		int oldSystem = EcuDataItem.cnvSystem;
+		Random rnd = new Random(4711);
+		char[] buffer = new char[64];
+		int numChecked = 0;
+		for (int system = 0; system < EcuDataItem.SYSTEM_TYPES; system++)
+		{
+			EcuDataItem.cnvSystem = system;
+			for (HashMap<Integer, Vector<EcuDataItem>> service : items.values())
+			{
+				for (Vector<EcuDataItem> pidItems : service.values())
+				{
+					for (EcuDataItem item : pidItems)
+					{
+						LinearDecoder decoder = item.getDecoder();
+						if (decoder == null)
+						{
+							continue;
+						}
+						for (int i = 0; i < 100; i++)
+						{
+							for (int j = 0; j < buffer.length; j++)
+							{
+								buffer[j] = (char) rnd.nextInt(0x100);
+							}
+							double expected = ((LinearConversion) item.cnv[system])
+								.memToPhysDouble(item.rawFromBuffer(buffer));
+							assertEquals(expected, decoder.decode(buffer), 0.0, item.toString());
+						}
+						numChecked++;
+					}
+				}
+			}
+		}
+		EcuDataItem.cnvSystem = oldSystem;
+		assertTrue(numChecked > 300, "checked " + numChecked);
+	}
+
+	/**
+	 * Items appended at runtime are decoded via array index
+	 */
+	@Test
+	void appendItemToService_Indexed()
+	{
+		assertEquals(0, items.getPidDataLength(0x01, 0xE0));
+
+		Conversion[] cnvs = {EcuConversions.dfltCnv, EcuConversions.dfltCnv};
+		EcuDataItem item = new EcuDataItem(0xE0, 0, 2, 0, 16, 0xFFFF, cnvs,
+		                                   "%d", null, null, 0, "PID E0", "PID_E0");
+		items.appendItemToService(0x01, item);
+		assertEquals(2, items.getPidDataLength(0x01, 0xE0));
+		assertEquals(item, items.getPidDataItems(0x01, 0xE0).get(0));
+
+		item.pv.addPvChangeListener(this, PvChangeEvent.PV_MODIFIED);
+		items.updateDataItems(0x01, 0xE0, new char[]{0x12, 0x34});
+		assertEquals(0x1234, resultValue.intValue());
+		item.pv.removePvChangeListener(this);
+
+		// existing items are still indexed
+		assertEquals(2, items.getPidDataLength(0x01, 0x0C));
+	}
+
 	/**
 	 * Handle PV change event
 	 * - store changed value to test result
@@ -0,0 +1,78 @@
+package com.fr3ts0n.ecu;
+
+import com.fr3ts0n.ecu.prot.obd.Messages;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ObdCodeListTest
+{
+	private Locale oldLocale;
+	private final ObdCodeList codes = new ObdCodeList();
+
+	@BeforeEach
+	void setUp()
+	{
+		oldLocale = Locale.getDefault();
+		Locale.setDefault(Locale.ENGLISH);
+		Messages.init("com.fr3ts0n.ecu.prot.obd.res.messages");
+	}
+
+	@AfterEach
+	void tearDown()
+	{
+		Locale.setDefault(oldLocale);
+	}
+
+	/**
+	 * Known and unknown codes are found by numeric value
+	 */
+	@Test
+	void get_Code()
+	{
+		EcuCodeItem item = codes.get(0x0300);
+		assertEquals("P0300", item.get(EcuCodeItem.FID_CODE));
+		assertEquals("Random/Multiple Cylinder Misfire Detected", item.get(EcuCodeItem.FID_DESCRIPT));
+
+		// unknown, manufacturer specific code
+		item = codes.get(0x1FFF);
+		assertEquals("P1FFF", item.get(EcuCodeItem.FID_CODE));
+		assertEquals(Messages.getString("customer.specific.trouble.code.see.manual"),
+		             item.get(EcuCodeItem.FID_DESCRIPT));
+	}
+
+	/**
+	 * Prefix query delivers all codes of a group in ascending order
+	 */
+	@Test
+	void getPrefix_Group()
+	{
+		List<EcuCodeItem> items = codes.getPrefix("p03");
+		assertEquals(95, items.size());
+		assertEquals("P0300", items.get(0).get(EcuCodeItem.FID_CODE));
+		for (EcuCodeItem item : items)
+		{
+			assertTrue(String.valueOf(item.get(EcuCodeItem.FID_CODE)).startsWith("P03"));
+		}
+		assertEquals(1, codes.getPrefix("P0301").size());
+		assertTrue(codes.find("misfire").size() > 10);
+	}
+
+	/**
+	 * Catalog is re-loaded on change of locale
+	 */
+	@Test
+	void get_LocaleChange()
+	{
+		assertTrue(String.valueOf(codes.get(0x0300).get(EcuCodeItem.FID_DESCRIPT)).startsWith("Random"));
+		Locale.setDefault(Locale.GERMAN);
+		assertTrue(String.valueOf(codes.get(0x0300).get(EcuCodeItem.FID_DESCRIPT)).startsWith("Zufall"));
+	}
+}
@@ -0,0 +1,68 @@
+package com.fr3ts0n.ecu.prot.obd;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CommandQueueTest
+{
+	/**
+	 * Higher priorities are sent first, push/add order within priority
+	 */
+	@Test
+	void poll_PriorityOrder()
+	{
+		CommandQueue queue = new CommandQueue();
+		queue.add("010C", CommandQueue.Priority.POLL);
+		queue.add("03", CommandQueue.Priority.USER);
+		queue.add("07", CommandQueue.Priority.USER);
+		queue.push("ATE0", CommandQueue.Priority.INIT);
+		queue.push("ATL0", CommandQueue.Priority.INIT);
+		assertEquals(5, queue.size());
+
+		String[] expected = {"ATL0", "ATE0", "03", "07", "010C"};
+		for (String cmd : expected)
+		{
+			CommandQueue.Command next = queue.poll();
+			assertEquals(cmd, next.cmd);
+		}
+		assertNull(queue.poll());
+		assertTrue(queue.isEmpty());
+	}
+
+	/**
+	 * Identical pending commands are queued once
+	 */
+	@Test
+	void push_Deduplication()
+	{
+		CommandQueue queue = new CommandQueue();
+		assertTrue(queue.push("ATSP0", CommandQueue.Priority.INIT));
+		assertFalse(queue.push("ATSP0", CommandQueue.Priority.INIT));
+		assertTrue(queue.push("ATSP0", CommandQueue.Priority.USER));
+		assertEquals(2, queue.size());
+
+		assertEquals(CommandQueue.Priority.INIT, queue.poll().priority);
+		assertFalse(queue.contains("ATSP0", CommandQueue.Priority.INIT));
+		assertTrue(queue.push("ATSP0", CommandQueue.Priority.INIT));
+		queue.clear();
+		assertNull(queue.poll());
+	}
+
+	/**
+	 * Expired commands are dropped
+	 */
+	@Test
+	void poll_Timeout() throws InterruptedException
+	{
+		CommandQueue queue = new CommandQueue();
+		queue.push("010C", CommandQueue.Priority.POLL, 1);
+		queue.add("010D", CommandQueue.Priority.POLL, 60000);
+		Thread.sleep(20);
+		assertEquals("010D", queue.poll().cmd);
+		assertTrue(queue.isEmpty());
+	}
+}
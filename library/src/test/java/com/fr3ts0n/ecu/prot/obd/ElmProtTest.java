@@ -1,12 +1,16 @@
 package com.fr3ts0n.ecu.prot.obd;
 
 import com.fr3ts0n.ecu.EcuDataItem;
+import com.fr3ts0n.ecu.EcuDataPv;
 import com.fr3ts0n.pvs.PvChangeEvent;
 import com.fr3ts0n.pvs.PvChangeListener;
 
 import org.junit.jupiter.api.Test;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class ElmProtTest
 	implements PvChangeListener
@@ -256,4 +260,148 @@ class ElmProtTest
 		assertEquals(true, ObdProt.tCodes.containsKey(0x0456));
 		assertEquals(true, ObdProt.tCodes.containsKey(0x0789));
 	}
-}
\ No newline at end of file
+
+	/**
+	 * Response to batched multi PID request is de-multiplexed into single PIDs
+	 */
+	@Test
+	void handleTelegram_BatchedPids()
+	{
+		prot.setService(ObdProt.OBD_SVC_DATA);
+		// 00180000 -> PID's 0x0C, 0x0D set
+		prot.handleTelegram("410000180000".toCharArray());
+		prot.setPidBatching(true);
+		prot.requestNextPids();
+		assertEquals(true, prot.isBatchPending());
+
+		EcuDataItem itm = prot.dataItems.getPidDataItems(0x01, 0x0D).get(0);
+		itm.pv.addPvChangeListener(this);
+		result[0] = null;
+		// RPM = 0x1AF8 / 4, speed = 0x32
+		prot.handleTelegram("410C1AF80D32".toCharArray());
+		// speed updated (unit depends on selected conversion system)
+		assertNotNull(result[0]);
+		assertEquals(1726, ((Number) prot.dataItems.getPidDataItems(0x01, 0x0C).get(0)
+			.pv.get(EcuDataPv.FID_VALUE)).intValue());
+
+		itm.pv.removePvChangeListener(this);
+		prot.setPidBatching(false);
+	}
+
+	/**
+	 * Interrupted requests are re-queued with their original priority
+	 */
+	@Test
+	void handleTelegram_StoppedPriority()
+	{
+		prot.setService(ObdProt.OBD_SVC_NONE);
+		// user selected service requests supported PIDs
+		prot.setService(ObdProt.OBD_SVC_VEH_INFO);
+		prot.handleTelegram("STOPPED".toCharArray());
+		assertTrue(prot.cmdQueue.contains("0900", CommandQueue.Priority.USER));
+		assertFalse(prot.cmdQueue.contains("0900", CommandQueue.Priority.POLL));
+		prot.cmdQueue.clear();
+
+		// cyclic data request
+		prot.handleTelegram("4900A5000000".toCharArray());
+		prot.requestNextPids();
+		prot.handleTelegram("STOPPED".toCharArray());
+		assertTrue(prot.cmdQueue.contains(prot.lastTxMsg, CommandQueue.Priority.POLL));
+		prot.cmdQueue.clear();
+		prot.setService(ObdProt.OBD_SVC_NONE);
+	}
+
+	/**
+	 * Single NO DATA to batched request keeps batching,
+	 * repeated NO DATA suspends it until service is set up again
+	 */
+	@Test
+	void handleTelegram_BatchNoData()
+	{
+		prot.setService(ObdProt.OBD_SVC_DATA);
+		prot.handleTelegram("410000180000".toCharArray());
+		prot.setPidBatching(true);
+		for (int i = 0; i < ObdProt.MAX_BATCH_NODATA; i++)
+		{
+			assertFalse(prot.isPidBatchingSuspended());
+			prot.requestNextPids();
+			assertTrue(prot.isBatchPending());
+			prot.handleTelegram("NODATA".toCharArray());
+			prot.handleTelegram(">".toCharArray());
+		}
+		assertTrue(prot.isPidBatchingSuspended());
+		prot.requestNextPids();
+		assertFalse(prot.isBatchPending());
+
+		// service is set up again
+		prot.setService(ObdProt.OBD_SVC_NONE);
+		prot.setService(ObdProt.OBD_SVC_DATA);
+		assertFalse(prot.isPidBatchingSuspended());
+		prot.setPidBatching(false);
+	}
+
+	/**
+	 * Batched request rejected by adapter suspends batching immediately
+	 */
+	@Test
+	void handleTelegram_BatchRejected()
+	{
+		prot.setService(ObdProt.OBD_SVC_DATA);
+		prot.handleTelegram("410000180000".toCharArray());
+		prot.setPidBatching(true);
+		prot.requestNextPids();
+		assertTrue(prot.isBatchPending());
+		prot.handleTelegram("?".toCharArray());
+		prot.handleTelegram(">".toCharArray());
+		assertTrue(prot.isPidBatchingSuspended());
+
+		prot.setPidBatching(false);
+		assertFalse(prot.isPidBatchingSuspended());
+	}
+
+	/**
+	 * Replies to other commands after a batched request don't affect batching
+	 */
+	@Test
+	void handleTelegram_BatchOtherCommand()
+	{
+		prot.setService(ObdProt.OBD_SVC_DATA);
+		prot.handleTelegram("410000180000".toCharArray());
+		prot.setPidBatching(true);
+		prot.requestNextPids();
+		assertTrue(prot.isBatchPending());
+		// adapter command sent after batched request is rejected
+		prot.sendCommand(ElmProt.CMD.SETTIMEOUT, 10);
+		assertFalse(prot.isBatchPending());
+		prot.handleTelegram("?".toCharArray());
+		prot.handleTelegram(">".toCharArray());
+		assertFalse(prot.isPidBatchingSuspended());
+
+		// no batching with non-CAN protocols
+		ElmProt.setPreferredProtocol(ElmProt.PROT.ELM_PROT_9141_2.ordinal());
+		prot.requestNextPids();
+		assertFalse(prot.isBatchPending());
+		ElmProt.setPreferredProtocol(ElmProt.PROT.ELM_PROT_AUTO.ordinal());
+		prot.setPidBatching(false);
+		prot.cmdQueue.clear();
+	}
+
+	/**
+	 * Telegrams from a slice of a re-used buffer are handled like copies
+	 */
+	@Test
+	void handleTelegram_Slice()
+	{
+		prot.setService(ObdProt.OBD_SVC_NONE);
+		prot.setService(ObdProt.OBD_SVC_VEH_INFO);
+		char[] rx = "xx0900\r4900A5000000\r>".toCharArray();
+		// echo of request is ignored
+		assertEquals(0, prot.handleTelegram(rx, 2, 4));
+		prot.handleTelegram(rx, 7, 12);
+		assertEquals(1, prot.getNextSupportedPid());
+		assertEquals(3, prot.getNextSupportedPid());
+		prot.handleTelegram(rx, 20, 1);
+		prot.setService(ObdProt.OBD_SVC_NONE);
+		prot.cmdQueue.clear();
+	}
+}
@@ -0,0 +1,71 @@
+package com.fr3ts0n.ecu.prot.obd;
+
+import com.fr3ts0n.ecu.EcuDataPv;
+import com.fr3ts0n.ecu.prot.obd.sim.ElmSimulator;
+import com.fr3ts0n.ecu.prot.obd.sim.VehicleProfile;
+import com.fr3ts0n.prot.StreamHandler;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ElmSessionPoolTest
+{
+	/**
+	 * read engine speed of session, 0 if not received yet
+	 */
+	private static float getRpm(ElmSessionPool.Session session)
+	{
+		EcuDataPv pv = (EcuDataPv) session.getProt().getPidPvs().get("0C.0.0");
+		return pv != null ? ((Number) pv.get(EcuDataPv.FID_VALUE)).floatValue() : 0f;
+	}
+
+	/**
+	 * Two sessions poll different vehicles without sharing data
+	 */
+	@Test
+	void open_IndependentSessions() throws Exception
+	{
+		ElmSessionPool pool = new ElmSessionPool();
+		ElmSimulator[] sims = new ElmSimulator[2];
+		ElmSessionPool.Session[] sessions = new ElmSessionPool.Session[2];
+		for (int i = 0; i < 2; i++)
+		{
+			VehicleProfile profile = new VehicleProfile();
+			profile.setPidData(0x0C, i == 0 ? "0C80" : "1900");
+			StreamHandler handler = new StreamHandler();
+			sims[i] = ElmSimulator.connect(handler, profile);
+			sessions[i] = pool.open(handler);
+			assertTrue(sessions[i].getProt().isSession());
+			assertNotSame(ObdProt.PidPvs, sessions[i].getProt().getPidPvs());
+			sessions[i].getProt().reset();
+		}
+		assertEquals(2, pool.getSessions().size());
+
+		for (ElmSessionPool.Session session : sessions)
+		{
+			for (int i = 0; i < 200 && session.getProt().getStatus() != ElmProt.STAT.ECU_DETECTED; i++)
+			{
+				Thread.sleep(10);
+			}
+			assertEquals(ElmProt.STAT.ECU_DETECTED, session.getProt().getStatus());
+			session.getProt().setService(ObdProt.OBD_SVC_DATA);
+		}
+		for (int i = 0; i < 200 && (getRpm(sessions[0]) == 0f || getRpm(sessions[1]) == 0f); i++)
+		{
+			Thread.sleep(10);
+		}
+		assertEquals(800f, getRpm(sessions[0]), 0.1f);
+		assertEquals(1600f, getRpm(sessions[1]), 0.1f);
+		assertTrue(sessions[0].isActive());
+
+		pool.close();
+		assertEquals(0, pool.getSessions().size());
+		for (ElmSimulator sim : sims)
+		{
+			sim.stop();
+		}
+	}
+}
@@ -0,0 +1,153 @@
+package com.fr3ts0n.ecu.prot.obd;
+
+import com.fr3ts0n.ecu.ObdPid;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class PidSchedulerTest
+{
+	static PidScheduler createScheduler(int... pids)
+	{
+		PidScheduler scheduler = new PidScheduler();
+		for (int pid : pids)
+		{
+			scheduler.add(new ObdPid(pid));
+		}
+		return scheduler;
+	}
+
+	/**
+	 * Without responses all PIDs are requested in turn
+	 */
+	@Test
+	void next_RoundRobin()
+	{
+		PidScheduler scheduler = createScheduler(0x04, 0x05, 0x0C, 0x0D);
+		for (int loop = 0; loop < 3; loop++)
+		{
+			assertEquals(0x04, scheduler.next(1000).getPid());
+			assertEquals(0x05, scheduler.next(1000).getPid());
+			assertEquals(0x0C, scheduler.next(1000).getPid());
+			assertEquals(0x0D, scheduler.next(1000).getPid());
+		}
+	}
+
+	/**
+	 * PIDs with a pending update period are deferred
+	 */
+	@Test
+	void next_Deadline()
+	{
+		PidScheduler scheduler = createScheduler(0x04, 0x05, 0x0C);
+		assertEquals(0x04, scheduler.next(1000).getPid());
+		// PID 4 shall not be requested for next 500 ms
+		scheduler.responseReceived(0x04, 1000, 500);
+		assertEquals(0x05, scheduler.next(1010).getPid());
+		scheduler.responseReceived(0x05, 1010, 0);
+		assertEquals(0x0C, scheduler.next(1020).getPid());
+		scheduler.responseReceived(0x0C, 1020, 0);
+		assertEquals(0x05, scheduler.next(1030).getPid());
+		scheduler.responseReceived(0x05, 1030, 0);
+		assertEquals(0x0C, scheduler.next(1040).getPid());
+	}
+
+	/**
+	 * PIDs with higher priority are requested more often
+	 */
+	@Test
+	void next_Weighted()
+	{
+		PidScheduler scheduler = createScheduler(0x04, 0x0C);
+		scheduler.setPolicy(PidScheduler.Policies.WEIGHTED);
+		scheduler.setPriority(0x0C, 3);
+
+		int[] counts = new int[0x100];
+		for (int i = 0; i < 400; i++)
+		{
+			counts[scheduler.next(1000).getPid()]++;
+		}
+		assertEquals(100, counts[0x04], 1);
+		assertEquals(300, counts[0x0C], 1);
+	}
+
+	/**
+	 * Fixed PIDs limit scheduling to specified PIDs
+	 */
+	@Test
+	void setActivePids()
+	{
+		PidScheduler scheduler = createScheduler(0x04, 0x05, 0x0C);
+		scheduler.setActivePids(new int[]{0x0C});
+		assertEquals(1, scheduler.size());
+		assertEquals(0x0C, scheduler.next(1000).getPid());
+		assertEquals(0x0C, scheduler.next(1000).getPid());
+
+		// unknown PIDs only -> all PIDs are scheduled
+		scheduler.setActivePids(new int[]{0x42});
+		assertEquals(3, scheduler.size());
+
+		scheduler.clear();
+		assertNull(scheduler.next(1000));
+	}
+
+	/**
+	 * PIDs added later are only scheduled if allowed by active PIDs
+	 */
+	@Test
+	void add_ActivePids()
+	{
+		PidScheduler scheduler = createScheduler(0x04, 0x05);
+		scheduler.setActivePids(new int[]{0x0C, 0x0D});
+		// no active PID known yet -> all PIDs are scheduled
+		assertEquals(2, scheduler.size());
+
+		scheduler.add(new ObdPid(0x0C));
+		assertEquals(1, scheduler.size());
+		scheduler.add(new ObdPid(0x06));
+		assertEquals(1, scheduler.size());
+		scheduler.add(new ObdPid(0x0D));
+		assertEquals(2, scheduler.size());
+
+		// active PIDs are kept when supported PIDs are re-read
+		scheduler.clear();
+		scheduler.add(new ObdPid(0x04));
+		assertEquals(1, scheduler.size());
+		scheduler.add(new ObdPid(0x0D));
+		assertEquals(0x0D, scheduler.next(1000).getPid());
+		assertEquals(1, scheduler.size());
+
+		scheduler.setActivePids(null);
+		assertEquals(2, scheduler.size());
+	}
+
+	/**
+	 * Achieved sample rate is reported per PID
+	 */
+	@Test
+	void getSampleRate()
+	{
+		PidScheduler scheduler = createScheduler(0x0C);
+		for (long t = 0; t <= 1000; t += 100)
+		{
+			scheduler.responseReceived(0x0C, t, 0);
+		}
+		assertEquals(10.0, scheduler.getSampleRate(0x0C), 0.01);
+		assertEquals(0.0, scheduler.getSampleRate(0x0D), 0.01);
+	}
+
+	/**
+	 * Priority follows the minimum update period of a PID
+	 */
+	@Test
+	void priorityOf()
+	{
+		assertEquals(PidScheduler.MAX_PRIORITY, PidScheduler.priorityOf(0));
+		assertEquals(PidScheduler.MAX_PRIORITY, PidScheduler.priorityOf(50));
+		assertEquals(4, PidScheduler.priorityOf(250));
+		assertEquals(1, PidScheduler.priorityOf(1000));
+		assertEquals(1, PidScheduler.priorityOf(15000));
+	}
+}
@@ -0,0 +1,130 @@
+package com.fr3ts0n.ecu.prot.obd;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TimingModelTest
+{
+	private static final int KEY = TimingModel.getKey(0x7E8, 0x01);
+
+	/**
+	 * Timeout converges to percentile plus margin within a few responses
+	 */
+	@Test
+	void getTimeout_Percentile()
+	{
+		TimingModel model = new TimingModel();
+		model.setTarget(90, 8);
+		assertEquals(200, model.getTimeout(KEY, 200));
+
+		for (int i = 0; i < TimingModel.MIN_SAMPLES - 1; i++)
+		{
+			model.addLatency(KEY, 30);
+			assertEquals(200, model.getTimeout(KEY, 200));
+		}
+		model.addLatency(KEY, 30);
+		assertEquals(38, model.getTimeout(KEY, 200));
+
+		// outliers below target percentile don't increase timeout
+		for (int i = 0; i < 28; i++)
+		{
+			model.addLatency(KEY, i < 2 ? 90 : 30);
+		}
+		assertEquals(38, model.getTimeout(KEY, 200));
+
+		// other services are independent
+		assertEquals(200, model.getTimeout(TimingModel.getKey(0x7E8, 0x09), 200));
+	}
+
+	/**
+	 * Expired timeouts increase timeout
+	 */
+	@Test
+	void addTimeout_Increase()
+	{
+		TimingModel model = new TimingModel();
+		model.setTarget(90, 8);
+		for (int i = 0; i < TimingModel.WINDOW; i++)
+		{
+			model.addLatency(KEY, 20);
+		}
+		assertEquals(28, model.getTimeout(KEY, 200));
+		for (int i = 0; i < 4; i++)
+		{
+			model.addTimeout(KEY, model.getTimeout(KEY, 200), 4);
+		}
+		assertTrue(model.getTimeout(KEY, 200) > 28, "timeout " + model.getTimeout(KEY, 200));
+	}
+
+	/**
+	 * Consecutive NO DATA replies raise timeout by bounded steps only
+	 */
+	@Test
+	void addTimeout_ConsecutiveNoData()
+	{
+		TimingModel model = new TimingModel();
+		model.setTarget(90, 8);
+		for (int i = 0; i < TimingModel.WINDOW; i++)
+		{
+			model.addLatency(KEY, 20);
+		}
+		int timeout = model.getTimeout(KEY, 200);
+		for (int i = 0; i < 10; i++)
+		{
+			model.addTimeout(KEY, timeout, 4);
+			int next = model.getTimeout(KEY, 200);
+			assertTrue(next >= timeout, "timeout decreased " + timeout + " -> " + next);
+			assertTrue(next <= timeout + 4 + 8, "timeout " + timeout + " -> " + next);
+			timeout = next;
+		}
+		assertTrue(timeout > 28, "timeout " + timeout);
+		assertTrue(timeout < 200, "timeout " + timeout);
+	}
+
+	/**
+	 * Learned timeouts are used until enough latencies are measured
+	 */
+	@Test
+	void setLearned_Persistence()
+	{
+		TimingModel model = new TimingModel();
+		for (int i = 0; i < TimingModel.WINDOW; i++)
+		{
+			model.addLatency(KEY, 40);
+		}
+		String learned = model.getLearned();
+		assertEquals("7E801=48", learned);
+
+		TimingModel next = new TimingModel();
+		next.setLearned(learned + ";invalid;X=1");
+		assertEquals(48, next.getTimeout(KEY, 200));
+		next.addLatency(KEY, 10);
+		assertEquals(48, next.getTimeout(KEY, 200));
+		for (int i = 1; i < TimingModel.MIN_SAMPLES; i++)
+		{
+			next.addLatency(KEY, 10);
+		}
+		assertEquals(18, next.getTimeout(KEY, 200));
+	}
+
+	/**
+	 * Learned timeouts of another vehicle are replaced
+	 */
+	@Test
+	void setLearned_Replace()
+	{
+		int other = TimingModel.getKey(0x7E9, 0x01);
+		TimingModel model = new TimingModel();
+		model.setLearned("7E801=48;7E901=60");
+		assertEquals(60, model.getTimeout(other, 200));
+
+		model.setLearned("7E801=32");
+		assertEquals(32, model.getTimeout(KEY, 200));
+		assertEquals(200, model.getTimeout(other, 200));
+
+		model.setLearned(null);
+		assertEquals(200, model.getTimeout(KEY, 200));
+	}
+}
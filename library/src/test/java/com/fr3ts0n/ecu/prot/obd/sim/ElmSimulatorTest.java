@@ -0,0 +1,129 @@
+package com.fr3ts0n.ecu.prot.obd.sim;
+
+import com.fr3ts0n.ecu.prot.obd.ElmProt;
+import com.fr3ts0n.ecu.prot.obd.ObdProt;
+import com.fr3ts0n.prot.StreamHandler;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ElmSimulatorTest
+{
+	/**
+	 * create simulator with echo and spaces off
+	 */
+	private static ElmSimulator createSimulator(VehicleProfile profile)
+	{
+		ElmSimulator sim = new ElmSimulator(profile);
+		assertEquals("ATZ\r\rELM327 v1.5\r\r>", sim.handleCommand("ATZ"));
+		assertEquals("ATE0\rOK\r\r>", sim.handleCommand("ATE0"));
+		assertEquals("OK\r\r>", sim.handleCommand("ATS0"));
+		return sim;
+	}
+
+	/**
+	 * Supported PIDs and data values are taken from profile
+	 */
+	@Test
+	void handleCommand_Data()
+	{
+		ElmSimulator sim = createSimulator(VehicleProfile.getDefault());
+
+		assertEquals("SEARCHING...\r4100BE3FA013\r\r>", sim.handleCommand("0100"));
+		assertEquals("412080022001\r\r>", sim.handleCommand("0120"));
+		// values are cycled on each request
+		assertEquals("410C0C80\r\r>", sim.handleCommand("010C"));
+		assertEquals("410C1AF8\r\r>", sim.handleCommand("010C"));
+		// multi PID request
+		assertEquals("410C2EE00D00\r\r>", sim.handleCommand("010C0D"));
+		// unsupported PID
+		assertEquals("NO DATA\r\r>", sim.handleCommand("0102"));
+		assertEquals(6, sim.getRequestCount());
+	}
+
+	/**
+	 * Multi frame responses in CAN and ISO format
+	 */
+	@Test
+	void handleCommand_MultiFrame()
+	{
+		VehicleProfile profile = VehicleProfile.getDefault();
+		ElmSimulator sim = createSimulator(profile);
+		sim.handleCommand("ATSP6");
+		assertEquals("014\r0:490201574155\r1:5A5A5A38503441\r2:30303535353434\r\r>",
+		             sim.handleCommand("0902"));
+		assertEquals("430201000300\r\r>", sim.handleCommand("03"));
+
+		profile.setProtocol(3);
+		profile.setEcuAddress(0x10);
+		sim = createSimulator(profile);
+		assertEquals("SEARCHING...\r49020100000057\r49020241555A5A\r"
+		             + "4902035A385034\r49020441303035\r49020535353434\r\r>",
+		             sim.handleCommand("0902"));
+		assertEquals("43010003000000\r\r>", sim.handleCommand("03"));
+		assertEquals("OK\r\r>", sim.handleCommand("ATH1"));
+		assertEquals("486B10410C0C809C\r\r>", sim.handleCommand("010C"));
+	}
+
+	/**
+	 * Injected errors and trouble code clearing
+	 */
+	@Test
+	void handleCommand_Errors()
+	{
+		VehicleProfile profile = VehicleProfile.getDefault();
+		profile.setErrorRates(1.0, 0.0, 0);
+		ElmSimulator sim = createSimulator(profile);
+		assertEquals("SEARCHING...\rNO DATA\r\r>", sim.handleCommand("010C"));
+		assertEquals("NO DATA\r\r>", sim.handleCommand("010C"));
+		assertEquals(2, sim.getErrorCount());
+
+		profile.setErrorRates(0.0, 0.0, 0);
+		assertEquals("44\r\r>", sim.handleCommand("04"));
+		assertEquals("4300\r\r>", sim.handleCommand("03"));
+		assertEquals("7F0811\r\r>", sim.handleCommand("08"));
+		assertEquals("?\r\r>", sim.handleCommand("ATMA"));
+	}
+
+	/**
+	 * ElmProt polls data from simulator via stream handler
+	 */
+	@Test
+	void run_Polling() throws Exception
+	{
+		VehicleProfile profile = new VehicleProfile();
+		profile.setPidData(0x05, "7B", "7C");
+		profile.setPidData(0x0C, "0C80", "2EE0");
+		profile.setPidData(0x0D, "0A", "14");
+
+		ElmProt prot = new ElmProt();
+		StreamHandler handler = new StreamHandler();
+		ElmSimulator sim = ElmSimulator.connect(handler, profile);
+		prot.addTelegramWriter(handler);
+		handler.setMessageHandler(prot);
+		Thread rxThread = new Thread(handler, "SimRx");
+		rxThread.setDaemon(true);
+		rxThread.start();
+
+		prot.reset();
+		for (int i = 0; i < 200 && prot.getStatus() != ElmProt.STAT.ECU_DETECTED; i++)
+		{
+			Thread.sleep(10);
+		}
+		assertEquals(ElmProt.STAT.ECU_DETECTED, prot.getStatus());
+
+		prot.setService(ObdProt.OBD_SVC_DATA);
+		long requests = sim.getRequestCount();
+		for (int i = 0; i < 200 && sim.getRequestCount() < requests + 50; i++)
+		{
+			Thread.sleep(10);
+		}
+		assertTrue(sim.getRequestCount() >= requests + 50);
+		assertTrue(ObdProt.PidPvs.size() > 0);
+
+		prot.setService(ObdProt.OBD_SVC_NONE);
+		sim.stop();
+	}
+}
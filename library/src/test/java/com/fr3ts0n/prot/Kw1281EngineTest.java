@@ -0,0 +1,183 @@
+package com.fr3ts0n.prot;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test KW1281 byte engine with scripted ECU bytes
+ */
+class Kw1281EngineTest
+	implements Kw1281Engine.Link, TelegramListener
+{
+	/** bytes sent by engine */
+	private final List<Integer> sent = new ArrayList<>();
+	/** K-line echoes of sent bytes, not yet received */
+	private final ArrayDeque<Integer> echoes = new ArrayDeque<>();
+	/** blocks delivered by engine */
+	private final List<char[]> blocks = new ArrayList<>();
+	private final List<Integer> states = new ArrayList<>();
+	private Kw1281Engine engine;
+
+	@Override
+	public void sendByte(int txByte)
+	{
+		sent.add(txByte);
+		echoes.add(txByte);
+	}
+
+	@Override
+	public void stateChanged(int state)
+	{
+		states.add(state);
+	}
+
+	@Override
+	public int handleTelegram(char[] buffer)
+	{
+		blocks.add(buffer);
+		return 0;
+	}
+
+	/**
+	 * ECU sends a byte, K-line echoes are received afterwards
+	 */
+	private void ecuSend(int chr)
+	{
+		engine.receiveByte(chr);
+		while (!echoes.isEmpty())
+		{
+			engine.receiveByte(echoes.poll());
+		}
+	}
+
+	/**
+	 * ECU sends a block, and confirms the following block of the engine
+	 *
+	 * @return block sent by engine
+	 */
+	private int[] ecuExchange(int... block)
+	{
+		for (int i = 0; i < block.length - 1; i++)
+		{
+			ecuSend(block[i]);
+		}
+		sent.clear();
+		// first byte of response is sent on reception of block end
+		ecuSend(block[block.length - 1]);
+		while (engine.getState() == Kw1281Engine.STATE_SENDING)
+		{
+			ecuSend(~sent.get(sent.size() - 1) & 0xFF);
+		}
+		int[] result = new int[sent.size()];
+		for (int i = 0; i < result.length; i++)
+		{
+			result[i] = sent.get(i);
+		}
+		return result;
+	}
+
+	@BeforeEach
+	void setUp()
+	{
+		engine = new Kw1281Engine(this);
+		engine.setMessageHandler(this);
+		engine.startInit();
+		// sync and keyword
+		ecuSend(0x55);
+		ecuSend(0x01);
+		ecuSend(0x8A);
+	}
+
+	/**
+	 * Keyword is confirmed with its complement
+	 */
+	@Test
+	void receiveByte_Init()
+	{
+		assertEquals(0x8A01, engine.getKeyword());
+		assertEquals(Kw1281Engine.STATE_RECEIVING, engine.getState());
+		assertEquals(1, sent.size());
+		assertEquals(0x75, (int) sent.get(0));
+	}
+
+	/**
+	 * Block bytes are confirmed, idle engine answers with ACK block
+	 */
+	@Test
+	void receiveByte_BlockAck()
+	{
+		sent.clear();
+		for (int chr : new int[]{0x04, 0x01, 0xF6, 0x41})
+		{
+			ecuSend(chr);
+		}
+		assertEquals(4, sent.size());
+		assertEquals(0xFB, (int) sent.get(0));
+		assertEquals(0xBE, (int) sent.get(3));
+
+		int[] ack = ecuExchange(0x03);
+		assertArrayEquals(new int[]{0x03, 0x02, 0x09, 0x03}, ack);
+		assertEquals(1, blocks.size());
+		assertArrayEquals(new char[]{0x04, 0x01, 0xF6, 0x41, 0x03}, blocks.get(0));
+		assertEquals(Kw1281Engine.STATE_RECEIVING, engine.getState());
+		assertEquals(1, engine.getRxBlocks());
+		assertEquals(1, engine.getTxBlocks());
+		assertTrue(engine.getInterByteStats().getCount() > 10);
+	}
+
+	/**
+	 * Queued telegrams are sent with adjusted block counter
+	 */
+	@Test
+	void writeTelegram_BlockCounter()
+	{
+		engine.writeTelegram(new char[]{0x04, 0x00, 0x29, 0x01, 0x03});
+		int[] block = ecuExchange(0x03, 0x01, 0x09, 0x03);
+		assertArrayEquals(new int[]{0x04, 0x02, 0x29, 0x01, 0x03}, block);
+
+		// next response is an ACK again, counter continues after ECU block
+		block = ecuExchange(0x03, 0x03, 0x09, 0x03);
+		assertArrayEquals(new int[]{0x03, 0x04, 0x09, 0x03}, block);
+		assertEquals(4, engine.getBlockCounter());
+	}
+
+	/**
+	 * Blocks of equal length are delivered in the same array
+	 */
+	@Test
+	void receiveByte_ReusedBlocks()
+	{
+		ecuExchange(0x03, 0x01, 0x09, 0x03);
+		ecuExchange(0x03, 0x03, 0x09, 0x03);
+		assertEquals(2, blocks.size());
+		assertSame(blocks.get(0), blocks.get(1));
+		assertEquals(0x03, blocks.get(1)[1]);
+	}
+
+	/**
+	 * Wrong complement stops transmission and is counted
+	 */
+	@Test
+	void receiveByte_WrongComplement()
+	{
+		for (int chr : new int[]{0x03, 0x01, 0x09, 0x03})
+		{
+			ecuSend(chr);
+		}
+		assertEquals(Kw1281Engine.STATE_SENDING, engine.getState());
+		int numSent = sent.size();
+		ecuSend(0x00);
+		assertEquals(numSent, sent.size());
+		assertEquals(1, engine.getComplementErrors());
+		assertTrue(states.contains(Kw1281Engine.STATE_SENDING));
+	}
+}
@@ -0,0 +1,51 @@
+package com.fr3ts0n.prot;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LatencyHistogramTest
+{
+	/**
+	 * Buckets are contiguous and cover all values
+	 */
+	@Test
+	void bucketOf_Contiguous()
+	{
+		long low = 0;
+		for (int bucket = 0; bucket < LatencyHistogram.NUM_BUCKETS - 1; bucket++)
+		{
+			long high = LatencyHistogram.highestValueOf(bucket);
+			assertEquals(bucket, LatencyHistogram.bucketOf(low));
+			assertEquals(bucket, LatencyHistogram.bucketOf(high));
+			// relative bucket width max. 12.5%
+			assertTrue(high - low <= Math.max(0, low / 8), "bucket " + bucket);
+			low = high + 1;
+		}
+		assertEquals(LatencyHistogram.NUM_BUCKETS - 1, LatencyHistogram.bucketOf(Long.MAX_VALUE));
+	}
+
+	/**
+	 * Percentiles are reported within bucket precision
+	 */
+	@Test
+	void getPercentile_Uniform()
+	{
+		LatencyHistogram hist = new LatencyHistogram();
+		for (int i = 1; i <= 1000; i++)
+		{
+			hist.record(i * 1000000L);
+		}
+		assertEquals(1000, hist.getCount());
+		assertEquals(500500, hist.getMean_us());
+		assertEquals(1000000, hist.getMax_us());
+		assertEquals(500000, hist.getPercentile_us(50), 500000 / 8);
+		assertEquals(990000, hist.getPercentile_us(99), 990000 / 8);
+		assertEquals(1000000, hist.getPercentile_us(100));
+
+		hist.reset();
+		assertEquals(0, hist.getCount());
+		assertEquals(0, hist.getPercentile_us(50));
+	}
+}
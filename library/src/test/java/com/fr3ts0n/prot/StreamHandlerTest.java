@@ -0,0 +1,204 @@
+package com.fr3ts0n.prot;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.Vector;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Test framing of received telegrams and ordering of sent telegrams
+ */
+class StreamHandlerTest
+	implements TelegramListener
+{
+	final Vector<String> received = new Vector<>();
+
+	@Override
+	public int handleTelegram(char[] buffer)
+	{
+		received.add(new String(buffer));
+		return 0;
+	}
+
+	/**
+	 * Telegrams are framed on CR, LF and prompt, spaces are removed
+	 */
+	@Test
+	void run_Framing()
+	{
+		String rx = "41 0C 1A F8\r\n41 0D 32\r\r>SEARCHING...\r";
+		StreamHandler hdlr = new StreamHandler(new ByteArrayInputStream(rx.getBytes()),
+		                                       new ByteArrayOutputStream());
+		hdlr.setMessageHandler(this);
+		// returns on end of stream
+		hdlr.run();
+
+		assertEquals(4, received.size());
+		assertEquals("410C1AF8", received.get(0));
+		assertEquals("410D32", received.get(1));
+		assertEquals(">", received.get(2));
+		assertEquals("SEARCHING...", received.get(3));
+	}
+
+	/**
+	 * Telegrams are sent in order of submission, terminated with CR
+	 */
+	@Test
+	void writeTelegram_Order() throws InterruptedException
+	{
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		StreamHandler hdlr = new StreamHandler(new ByteArrayInputStream(new byte[0]), out);
+
+		hdlr.writeTelegram("ATZ".toCharArray());
+		hdlr.writeTelegram("ATE0".toCharArray());
+		hdlr.writeTelegram("0100".toCharArray());
+
+		// wait for writer stage to finish
+		for (int i = 0; i < 100 && hdlr.getTxQueue().getTxCount() < 3; i++)
+		{
+			Thread.sleep(10);
+		}
+		assertEquals(3, hdlr.getTxQueue().getTxCount());
+		assertEquals(0, hdlr.getTxQueue().getQueueDepth());
+		assertEquals("ATZ\rATE0\r0100\r", out.toString());
+	}
+
+	/**
+	 * @return number of running TX writer threads
+	 */
+	private static int countTxThreads()
+	{
+		int result = 0;
+		for (Thread thread : Thread.getAllStackTraces().keySet())
+		{
+			if ("TelegramTx".equals(thread.getName()) && thread.isAlive())
+			{
+				result++;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Close stops the writer thread
+	 */
+	@Test
+	void close_StopsWriter() throws InterruptedException
+	{
+		int numThreads = countTxThreads();
+		StreamHandler hdlr = new StreamHandler();
+		// telegrams before connection wait for the stream
+		hdlr.writeTelegram("ATZ".toCharArray());
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		hdlr.setStreams(new ByteArrayInputStream(new byte[0]), out);
+		for (int i = 0; i < 100 && hdlr.getTxQueue().getTxCount() < 1; i++)
+		{
+			Thread.sleep(10);
+		}
+		assertEquals("ATZ\r", out.toString());
+		assertEquals(numThreads + 1, countTxThreads());
+
+		hdlr.close();
+		for (int i = 0; i < 100 && countTxThreads() > numThreads; i++)
+		{
+			Thread.sleep(10);
+		}
+		assertEquals(numThreads, countTxThreads());
+	}
+
+	/**
+	 * Telegrams pending for a previous stream are not sent to a new stream
+	 */
+	@Test
+	void setStreams_DropsPending() throws InterruptedException
+	{
+		final CountDownLatch release = new CountDownLatch(1);
+		OutputStream blocking = new OutputStream()
+		{
+			@Override
+			public void write(int b) throws IOException
+			{
+				try
+				{
+					release.await();
+				}
+				catch (InterruptedException ex)
+				{
+					throw new InterruptedIOException();
+				}
+			}
+		};
+		StreamHandler hdlr = new StreamHandler(new ByteArrayInputStream(new byte[0]), blocking);
+		hdlr.writeTelegram("ATZ".toCharArray());
+		hdlr.writeTelegram("0100".toCharArray());
+		Thread.sleep(50);
+		assertEquals(2, hdlr.getTxQueue().getQueueDepth());
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		hdlr.setStreams(new ByteArrayInputStream(new byte[0]), out);
+		assertEquals(0, hdlr.getTxQueue().getQueueDepth());
+		release.countDown();
+
+		hdlr.writeTelegram("0101".toCharArray());
+		for (int i = 0; i < 100 && hdlr.getTxQueue().getTxCount() < 2; i++)
+		{
+			Thread.sleep(10);
+		}
+		assertEquals("0101\r", out.toString());
+		assertEquals(0, hdlr.getTxQueue().getQueueDepth());
+		hdlr.close();
+	}
+
+	/**
+	 * Telegram being written is not affected by re-use of its slot after clear
+	 */
+	@Test
+	void clear_WhileWriting() throws InterruptedException
+	{
+		final CountDownLatch release = new CountDownLatch(1);
+		final ByteArrayOutputStream written = new ByteArrayOutputStream();
+		OutputStream blocking = new OutputStream()
+		{
+			@Override
+			public void write(int b) throws IOException
+			{
+				try
+				{
+					release.await();
+				}
+				catch (InterruptedException ex)
+				{
+					throw new InterruptedIOException();
+				}
+				written.write(b);
+			}
+		};
+		int numThreads = countTxThreads();
+		TelegramTxQueue queue = new TelegramTxQueue();
+		queue.setOutputStream(blocking);
+		queue.offer("ATZ".toCharArray(), '\r');
+		Thread.sleep(50);
+		// slot of pending telegram is re-used
+		queue.clear();
+		queue.offer("0100".toCharArray(), '\r');
+		release.countDown();
+
+		for (int i = 0; i < 100 && queue.getTxCount() < 2; i++)
+		{
+			Thread.sleep(10);
+		}
+		assertEquals("ATZ\r0100\r", written.toString());
+		queue.close();
+		for (int i = 0; i < 100 && countTxThreads() > numThreads; i++)
+		{
+			Thread.sleep(10);
+		}
+	}
+}
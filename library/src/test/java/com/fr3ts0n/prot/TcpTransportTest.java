@@ -0,0 +1,269 @@
+package com.fr3ts0n.prot;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Vector;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test TCP transport against local adapter stand-ins
+ */
+class TcpTransportTest
+{
+	private static final int NUM_REQUESTS = 200;
+
+	/**
+	 * Adapter stand-in, answers each command with "<command>\r\r>"
+	 */
+	static class Adapter extends Thread
+	{
+		final ServerSocket server;
+		/** number of commands after which first client gets disconnected, 0 = never */
+		final int dropAfter;
+		int numClients = 0;
+
+		Adapter(int dropAfter) throws IOException
+		{
+			super("TcpAdapter");
+			this.dropAfter = dropAfter;
+			server = new ServerSocket(0, 5, InetAddress.getLoopbackAddress());
+			setDaemon(true);
+			start();
+		}
+
+		InetSocketAddress getAddress()
+		{
+			return new InetSocketAddress(server.getInetAddress(), server.getLocalPort());
+		}
+
+		@Override
+		public void run()
+		{
+			try
+			{
+				while (true)
+				{
+					Socket client = server.accept();
+					numClients++;
+					serve(client, numClients == 1 ? dropAfter : 0);
+				}
+			}
+			catch (IOException ex)
+			{
+				// adapter closed
+			}
+		}
+
+		private void serve(Socket client, int maxCommands)
+		{
+			int numCommands = 0;
+			try
+			{
+				InputStream in = client.getInputStream();
+				OutputStream out = client.getOutputStream();
+				StringBuilder cmd = new StringBuilder();
+				int chr;
+				while ((chr = in.read()) >= 0)
+				{
+					if (chr != '\r')
+					{
+						cmd.append((char) chr);
+						continue;
+					}
+					out.write((cmd + "\r\r>").getBytes());
+					out.flush();
+					cmd.setLength(0);
+					if (++numCommands == maxCommands)
+					{
+						break;
+					}
+				}
+				client.close();
+			}
+			catch (IOException ex)
+			{
+				// client closed
+			}
+		}
+
+		void close() throws IOException
+		{
+			server.close();
+		}
+	}
+
+	/**
+	 * Collects received telegrams, except prompts
+	 */
+	static class Receiver implements TelegramListener
+	{
+		final Vector<String> received = new Vector<>();
+
+		@Override
+		public int handleTelegram(char[] buffer)
+		{
+			String telegram = new String(buffer);
+			if (!">".equals(telegram))
+			{
+				received.add(telegram);
+			}
+			return 0;
+		}
+
+		void await(int count) throws InterruptedException
+		{
+			for (int i = 0; i < 500 && received.size() < count; i++)
+			{
+				Thread.sleep(10);
+			}
+		}
+	}
+
+	private TcpTransport transport;
+
+	@BeforeEach
+	void setUp() throws IOException
+	{
+		transport = new TcpTransport();
+		Thread ioThread = new Thread(transport, "TcpIo");
+		ioThread.setDaemon(true);
+		ioThread.start();
+	}
+
+	@AfterEach
+	void tearDown()
+	{
+		transport.close();
+	}
+
+	/**
+	 * Several adapters are served by one I/O thread
+	 */
+	@Test
+	void writeTelegram_Multiplex() throws Exception
+	{
+		Adapter adapter1 = new Adapter(0);
+		Adapter adapter2 = new Adapter(0);
+		Receiver rx1 = new Receiver();
+		Receiver rx2 = new Receiver();
+		TcpTransport.Connection conn1 = transport.connect(adapter1.getAddress(), rx1);
+		TcpTransport.Connection conn2 = transport.connect(adapter2.getAddress(), rx2);
+
+		for (int i = 0; i < NUM_REQUESTS; i++)
+		{
+			conn1.writeTelegram(String.format("01%02X", i & 0xFF).toCharArray());
+			conn2.writeTelegram(String.format("09%02X", i & 0xFF).toCharArray());
+			// let TX buffer drain now and then
+			if (i % 50 == 49)
+			{
+				rx1.await(i + 1);
+			}
+		}
+		rx1.await(NUM_REQUESTS);
+		rx2.await(NUM_REQUESTS);
+
+		assertEquals(NUM_REQUESTS, rx1.received.size());
+		assertEquals(NUM_REQUESTS, rx2.received.size());
+		assertEquals("0100", rx1.received.get(0));
+		assertEquals("09C7", rx2.received.get(NUM_REQUESTS - 1));
+		assertTrue(conn1.isConnected());
+		assertEquals(1, conn2.getConnectCount());
+		assertEquals(0, conn1.getTxRejected());
+
+		adapter1.close();
+		adapter2.close();
+	}
+
+	/**
+	 * Commands written while connection is lost are sent after re-connection
+	 */
+	@Test
+	void writeTelegram_Reconnect() throws Exception
+	{
+		Adapter adapter = new Adapter(1);
+		Receiver rx = new Receiver();
+		final Vector<Boolean> changes = new Vector<>();
+		TcpTransport.Connection conn = transport.connect(
+			adapter.getAddress(), rx, new TcpTransport.ConnectionListener()
+			{
+				@Override
+				public void connectionChanged(TcpTransport.Connection connection, boolean connected)
+				{
+					changes.add(connected);
+				}
+			});
+
+		conn.writeTelegram("ATZ".toCharArray());
+		rx.await(1);
+		assertEquals("ATZ", rx.received.get(0));
+		// adapter drops connection after first command
+		for (int i = 0; i < 100 && changes.size() < 2; i++)
+		{
+			Thread.sleep(10);
+		}
+		assertFalse(changes.get(1));
+
+		conn.writeTelegram("0100".toCharArray());
+		conn.writeTelegram("010C".toCharArray());
+		rx.await(3);
+
+		assertEquals(3, rx.received.size());
+		assertEquals("0100", rx.received.get(1));
+		assertEquals("010C", rx.received.get(2));
+		assertEquals(2, conn.getConnectCount());
+		assertEquals(2, adapter.numClients);
+		assertEquals(3, changes.size());
+		assertTrue(changes.get(2));
+
+		conn.close();
+		adapter.close();
+	}
+
+	/**
+	 * Exceptions of connection listeners don't stop the I/O thread
+	 */
+	@Test
+	void connectionListener_Exception() throws Exception
+	{
+		Adapter adapter = new Adapter(1);
+		Receiver rx = new Receiver();
+		TcpTransport.Connection conn = transport.connect(
+			adapter.getAddress(), rx, new TcpTransport.ConnectionListener()
+			{
+				@Override
+				public void connectionChanged(TcpTransport.Connection connection, boolean connected)
+				{
+					throw new IllegalStateException("listener failed");
+				}
+			});
+
+		conn.writeTelegram("ATZ".toCharArray());
+		rx.await(1);
+		// adapter drops connection after first command
+		for (int i = 0; i < 100 && conn.isConnected(); i++)
+		{
+			Thread.sleep(10);
+		}
+		conn.writeTelegram("0100".toCharArray());
+		rx.await(2);
+
+		assertEquals(2, rx.received.size());
+		assertEquals("0100", rx.received.get(1));
+		assertEquals(2, conn.getConnectCount());
+
+		conn.close();
+		adapter.close();
+	}
+}
@@ -0,0 +1,106 @@
+package com.fr3ts0n.prot;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.Vector;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test UDP transport against a loopback adapter stand-in
+ */
+class UdpTransportTest
+	implements TelegramListener
+{
+	private static final int NUM_REQUESTS = 500;
+
+	final Vector<String> received = new Vector<>();
+	private DatagramChannel adapter;
+	private UdpTransport transport;
+
+	@Override
+	public int handleTelegram(char[] buffer)
+	{
+		received.add(new String(buffer));
+		return 0;
+	}
+
+	@BeforeEach
+	void setUp() throws IOException
+	{
+		// adapter answers each command with a response split into 2 datagrams
+		adapter = DatagramChannel.open();
+		adapter.bind(new InetSocketAddress("127.0.0.1", 0));
+		Thread adapterThread = new Thread("UdpAdapter")
+		{
+			@Override
+			public void run()
+			{
+				ByteBuffer buffer = ByteBuffer.allocate(256);
+				try
+				{
+					while (true)
+					{
+						buffer.clear();
+						SocketAddress client = adapter.receive(buffer);
+						adapter.send(ByteBuffer.wrap("41 0C 1A".getBytes()), client);
+						adapter.send(ByteBuffer.wrap(" F8\r\r>".getBytes()), client);
+					}
+				}
+				catch (IOException ex)
+				{
+					// adapter closed
+				}
+			}
+		};
+		adapterThread.setDaemon(true);
+		adapterThread.start();
+
+		transport = UdpTransport.open(adapter.getLocalAddress());
+		transport.setMessageHandler(this);
+		Thread rxThread = new Thread(transport, "UdpRx");
+		rxThread.setDaemon(true);
+		rxThread.start();
+	}
+
+	@AfterEach
+	void tearDown() throws IOException
+	{
+		transport.close();
+		adapter.close();
+	}
+
+	/**
+	 * Responses are framed across datagrams, counters are updated
+	 */
+	@Test
+	void run_RequestResponse() throws InterruptedException
+	{
+		for (int i = 0; i < NUM_REQUESTS; i++)
+		{
+			int expected = received.size() + 2;
+			assertEquals(4, transport.writeTelegram("010C".toCharArray()));
+			for (int wait = 0; wait < 1000 && received.size() < expected; wait++)
+			{
+				Thread.sleep(1);
+			}
+		}
+
+		assertEquals(2 * NUM_REQUESTS, received.size());
+		assertEquals("410C1AF8", received.get(0));
+		assertEquals(">", received.get(1));
+		assertEquals(NUM_REQUESTS, transport.getTxPackets());
+		assertEquals(5 * NUM_REQUESTS, transport.getTxBytes());
+		assertEquals(2 * NUM_REQUESTS, transport.getRxPackets());
+		assertEquals(14 * NUM_REQUESTS, transport.getRxBytes());
+		assertTrue(transport.getRxThroughput() > 0);
+	}
+}
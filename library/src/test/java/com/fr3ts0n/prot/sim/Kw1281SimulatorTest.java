@@ -0,0 +1,147 @@
+package com.fr3ts0n.prot.sim;
+
+import com.fr3ts0n.prot.Kw1281Engine;
+import com.fr3ts0n.prot.Kw1281StreamHandler;
+import com.fr3ts0n.prot.TelegramListener;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Vector;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test KW1281 stream handler against ECU simulator
+ */
+class Kw1281SimulatorTest
+	implements TelegramListener
+{
+	private static final int ADDRESS = 0x01;
+	private static final int NUM_READS = 50;
+
+	private final Vector<char[]> identBlocks = new Vector<>();
+	private final Vector<char[]> groupBlocks = new Vector<>();
+	private final Semaphore responses = new Semaphore(0);
+	private Kw1281StreamHandler handler;
+	private Kw1281Simulator sim;
+
+	@Override
+	public int handleTelegram(char[] buffer)
+	{
+		switch (buffer[2])
+		{
+			case Kw1281Simulator.BLK_ASCII:
+				identBlocks.add(buffer.clone());
+				break;
+
+			case Kw1281Simulator.BLK_GROUP_DATA:
+			case Kw1281Simulator.BLK_NAK:
+				groupBlocks.add(buffer.clone());
+				responses.release();
+				break;
+
+			default:
+				break;
+		}
+		return 0;
+	}
+
+	@BeforeEach
+	void setUp() throws IOException, InterruptedException
+	{
+		handler = new Kw1281StreamHandler();
+		handler.setMessageHandler(this);
+		sim = Kw1281Simulator.connect(handler, ADDRESS);
+		Thread rxThread = new Thread(handler, "Kw1281Rx");
+		rxThread.setDaemon(true);
+		rxThread.start();
+		handler.init(ADDRESS);
+		assertTrue(handler.awaitState(Kw1281Engine.STATE_RECEIVING, 1000));
+	}
+
+	@AfterEach
+	void tearDown()
+	{
+		sim.stop();
+	}
+
+	/**
+	 * read measurement group
+	 *
+	 * @return true if response was received
+	 */
+	private boolean readGroup(int group) throws InterruptedException
+	{
+		handler.writeTelegram(new char[]{0x04, 0x00, Kw1281Simulator.BLK_GROUP_READ, (char) group, 0x03});
+		return responses.tryAcquire(1, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * Init, identification and group reads with continuous block counters
+	 */
+	@Test
+	void readGroup_Session() throws InterruptedException
+	{
+		for (int i = 0; i < NUM_READS; i++)
+		{
+			assertTrue(readGroup(1 + i % 3));
+		}
+		assertTrue(readGroup(0x42));
+
+		Kw1281Engine engine = handler.getEngine();
+		assertEquals(Kw1281Simulator.DEFAULT_KEYWORD, engine.getKeyword());
+		assertEquals(3, identBlocks.size());
+		assertEquals("038906019FM ", new String(identBlocks.get(0), 3, 12));
+		assertEquals(NUM_READS, sim.getGroupReads());
+		assertEquals(NUM_READS + 1, groupBlocks.size());
+		char[] group1 = groupBlocks.get(0);
+		assertEquals(16, group1.length);
+		assertArrayEquals(new char[]{0x01, 0xC8, 0x14}, java.util.Arrays.copyOfRange(group1, 3, 6));
+		assertEquals(Kw1281Simulator.BLK_NAK, groupBlocks.get(NUM_READS)[2]);
+		assertEquals(0, sim.getCounterErrors());
+		assertEquals(0, sim.getComplementErrors());
+		assertEquals(0, engine.getComplementErrors());
+		assertEquals(1, sim.getInitCount());
+	}
+
+	/**
+	 * Wrong complement stalls session, new init after session timeout recovers
+	 */
+	@Test
+	void readGroup_ComplementFault() throws Exception
+	{
+		sim.setSessionTimeout(100);
+		sim.setComplementFaults(1.0);
+		assertTrue(!readGroup(1));
+		assertTrue(handler.getEngine().getComplementErrors() > 0);
+
+		sim.setComplementFaults(0);
+		Thread.sleep(150);
+		handler.init(ADDRESS);
+		assertTrue(readGroup(1));
+		assertEquals(2, sim.getInitCount());
+		assertEquals(1, sim.getTimeoutCount());
+	}
+
+	/**
+	 * Delayed ECU bytes show up in inter byte timing
+	 */
+	@Test
+	void readGroup_DelayFault() throws InterruptedException
+	{
+		sim.setDelayFaults(0.2, 5);
+		for (int i = 0; i < 5; i++)
+		{
+			assertTrue(readGroup(2));
+		}
+		assertTrue(handler.getEngine().getInterByteStats().getMax_us() >= 5000);
+		assertEquals(5, sim.getGroupReads());
+	}
+}
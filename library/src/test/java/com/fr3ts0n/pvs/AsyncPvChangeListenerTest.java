@@ -0,0 +1,71 @@
+package com.fr3ts0n.pvs;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Vector;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class AsyncPvChangeListenerTest
+	implements PvChangeListener
+{
+	final Vector<Object> received = new Vector<>();
+	final Vector<Runnable> tasks = new Vector<>();
+
+	@Override
+	public void pvChanged(PvChangeEvent event)
+	{
+		received.add(event.getValue());
+	}
+
+	/**
+	 * Pending changes of same attribute are coalesced, latest value wins
+	 */
+	@Test
+	void pvChanged_Coalescing()
+	{
+		AsyncPvChangeListener async = new AsyncPvChangeListener(this, tasks::add);
+		ProcessVar pv = new ProcessVar();
+		pv.addPvChangeListener(async, PvChangeEvent.PV_MODIFIED | PvChangeEvent.PV_ADDED);
+
+		pv.put("VALUE", 1);
+		pv.put("UNITS", "km/h");
+		pv.put("VALUE", 2);
+		pv.put("VALUE", 3);
+		// nothing delivered synchronously, one delivery task scheduled
+		assertEquals(0, received.size());
+		assertEquals(1, tasks.size());
+		assertEquals(2, async.getQueueDepth());
+
+		tasks.remove(0).run();
+		assertEquals(2, received.size());
+		assertEquals(3, received.get(0));
+		assertEquals("km/h", received.get(1));
+		assertEquals(2, async.getCoalescedCount());
+	}
+
+	/**
+	 * Oldest pending event is dropped if queue is full
+	 */
+	@Test
+	void pvChanged_Overflow()
+	{
+		AsyncPvChangeListener async = new AsyncPvChangeListener(this, tasks::add, 2);
+		ProcessVar pv = new ProcessVar();
+		pv.addPvChangeListener(async);
+
+		pv.put("A", 1);
+		pv.put("B", 2);
+		pv.put("C", 3);
+		tasks.remove(0).run();
+		assertEquals(2, received.size());
+		assertEquals(2, received.get(0));
+		assertEquals(3, received.get(1));
+		assertEquals(1, async.getDroppedCount());
+
+		// listener removal takes effect immediately
+		pv.removePvChangeListener(async);
+		pv.put("A", 4);
+		assertEquals(0, tasks.size());
+	}
+}
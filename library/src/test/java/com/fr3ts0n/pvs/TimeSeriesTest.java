@@ -0,0 +1,113 @@
+package com.fr3ts0n.pvs;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TimeSeriesTest
+{
+	/**
+	 * Without decimation the oldest samples are dropped
+	 */
+	@Test
+	void add_Ring()
+	{
+		TimeSeries series = new TimeSeries(8);
+		series.setDecimation(false);
+		for (int i = 0; i < 20; i++)
+		{
+			series.add(i * 100, i);
+		}
+		assertEquals(8, series.size());
+		assertEquals(1200, series.getTime(0));
+		assertEquals(19.0, series.getValue(7), 0.0);
+		assertEquals(3, series.indexOf(1500));
+		assertEquals(-1, series.indexOf(1550));
+	}
+
+	/**
+	 * Samples outside time window are dropped
+	 */
+	@Test
+	void add_Window()
+	{
+		TimeSeries series = new TimeSeries(100);
+		series.setWindow(1000);
+		for (int i = 0; i < 50; i++)
+		{
+			series.add(i * 100, i);
+		}
+		assertEquals(11, series.size());
+		assertEquals(3900, series.getTime(0));
+	}
+
+	/**
+	 * Older samples are compressed to min/max values, newest samples are kept
+	 */
+	@Test
+	void add_Decimation()
+	{
+		TimeSeries series = new TimeSeries(16);
+		double[] values = {1, 5, 3, 2, 0, 4, 4, 9};
+		for (int i = 0; i < 16; i++)
+		{
+			series.add(i, i < 8 ? values[i] : i);
+		}
+		// buffer full -> older half gets compressed into 2 min/max pairs
+		series.add(16, 16);
+		assertEquals(13, series.size());
+		assertEquals(0, series.getTime(0));
+		assertEquals(1.0, series.getValue(0), 0.0);
+		assertEquals(1, series.getTime(1));
+		assertEquals(5.0, series.getValue(1), 0.0);
+		assertEquals(4, series.getTime(2));
+		assertEquals(0.0, series.getValue(2), 0.0);
+		assertEquals(7, series.getTime(3));
+		assertEquals(9.0, series.getValue(3), 0.0);
+		assertEquals(8, series.getTime(4));
+		assertEquals(16, series.getTime(12));
+
+		// memory stays bounded
+		for (int i = 17; i < 10000; i++)
+		{
+			series.add(i, i);
+		}
+		assertEquals(16, series.getCapacity());
+		assertEquals(9999, series.getTime(series.size() - 1));
+	}
+
+	/**
+	 * Sequence numbers allow copying of new samples only
+	 */
+	@Test
+	void copySince_Sequence()
+	{
+		TimeSeries series = new TimeSeries(8);
+		series.setDecimation(false);
+		for (int i = 0; i < 6; i++)
+		{
+			series.add(i * 100, i);
+		}
+		long layout = series.getLayoutCount();
+		long end = series.getFirstSequence() + series.size();
+
+		for (int i = 6; i < 10; i++)
+		{
+			series.add(i * 100, i);
+		}
+		// 2 samples dropped, 4 samples added
+		assertEquals(2, series.getFirstSequence());
+		assertEquals(layout, series.getLayoutCount());
+		long[] times = new long[8];
+		double[] values = new double[8];
+		assertEquals(4, series.copySince(end, times, values));
+		assertEquals(600, times[0]);
+		assertEquals(9.0, values[3], 0.0);
+
+		// decimation restructures samples
+		series.setDecimation(true);
+		series.add(1000, 10);
+		assertTrue(layout != series.getLayoutCount());
+	}
+}
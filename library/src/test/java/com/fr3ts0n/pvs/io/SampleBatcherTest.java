@@ -0,0 +1,80 @@
+package com.fr3ts0n.pvs.io;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SampleBatcherTest
+{
+	private final ArrayList<ByteBuffer> frames = new ArrayList<>();
+	private final ArrayList<String> samples = new ArrayList<>();
+
+	private final SampleBatcher batcher = new SampleBatcher(3, 60000, new SampleBatcher.Listener()
+	{
+		@Override
+		public void onBatch(SampleBatcher batch)
+		{
+			ByteBuffer frame = batch.encode();
+			ByteBuffer copy = ByteBuffer.allocate(frame.remaining());
+			copy.put(frame).flip();
+			frames.add(copy);
+		}
+	});
+
+	private final SampleBatcher.SampleListener sampleListener = new SampleBatcher.SampleListener()
+	{
+		@Override
+		public void onSample(String name, long time, double value)
+		{
+			samples.add(name + "@" + time + "=" + value);
+		}
+	};
+
+	/**
+	 * Batches are delivered on size threshold and on tick
+	 */
+	@Test
+	void add_Flush()
+	{
+		batcher.add("rpm", 1000, 800);
+		batcher.add("speed", 1010, 12.5);
+		assertEquals(0, frames.size());
+		batcher.add("rpm", 1100, 850);
+		assertEquals(1, frames.size());
+		assertEquals(0, batcher.size());
+
+		batcher.add("rpm", 1200, 900);
+		assertFalse(batcher.tick(System.currentTimeMillis()));
+		assertTrue(batcher.tick(System.currentTimeMillis() + 60000));
+		assertEquals(2, frames.size());
+		assertEquals(2, batcher.getBatchCount());
+		assertEquals(4, batcher.getSampleCount());
+	}
+
+	/**
+	 * Frames decode to original samples, names are defined once
+	 */
+	@Test
+	void encode_Decode()
+	{
+		batcher.add("rpm", 1000, 800);
+		batcher.add("speed", 990, -12.5);
+		batcher.add("rpm", 1100, 850);
+		batcher.add("rpm", 1200, 900);
+		batcher.flush();
+		assertEquals(2, frames.size());
+		// second frame holds no definitions
+		assertTrue(frames.get(1).remaining() < frames.get(0).remaining() - 8);
+
+		SampleBatcher.Decoder decoder = new SampleBatcher.Decoder();
+		assertEquals(3, decoder.decode(frames.get(0), sampleListener));
+		assertEquals(1, decoder.decode(frames.get(1), sampleListener));
+		assertEquals("[rpm@1000=800.0, speed@990=-12.5, rpm@1100=850.0, rpm@1200=900.0]",
+		             samples.toString());
+	}
+}
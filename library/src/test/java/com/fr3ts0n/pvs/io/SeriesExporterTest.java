@@ -0,0 +1,133 @@
+package com.fr3ts0n.pvs.io;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SeriesExporterTest
+{
+	private static final long T0 = 1500000000000L;
+
+	private static SeriesExporter createExporter()
+	{
+		return new SeriesExporter(
+			new String[]{"RPM", "Speed"},
+			new long[][]{{T0, T0 + 100, T0 + 1200, 0}, {T0 + 100, T0 + 1500}},
+			new double[][]{{800, 812.5, 2000, 0}, {0.1f, -12.34567}},
+			new int[]{3, 2});
+	}
+
+	/**
+	 * Series are merged by time, missing samples give empty fields
+	 */
+	@Test
+	void writeCsv_Merge() throws IOException
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		SeriesExporter exporter = createExporter();
+		final long[] progress = new long[2];
+		exporter.setProgressListener(new SeriesExporter.ProgressListener()
+		{
+			@Override
+			public void onProgress(long done, long total)
+			{
+				progress[0] = done;
+				progress[1] = total;
+			}
+		});
+		exporter.writeCsv(Channels.newChannel(bytes), "Time", ";", "\n", true);
+
+		SimpleDateFormat fmt = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+		String expected = "\"Time\";\"RPM\";\"Speed\";\n"
+		                  + fmt.format(new Date(T0)) + ";800;;\n"
+		                  + fmt.format(new Date(T0 + 100)) + ";812.5;0.1;\n"
+		                  + fmt.format(new Date(T0 + 1200)) + ";2000;;\n"
+		                  + fmt.format(new Date(T0 + 1500)) + ";;-12.3457;\n";
+		assertEquals(expected, bytes.toString("UTF-8"));
+		assertEquals(5, progress[0]);
+		assertEquals(5, progress[1]);
+	}
+
+	/**
+	 * Columnar output holds delta encoded, scaled values
+	 */
+	@Test
+	void writeColumnar_Decode() throws IOException
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		SeriesExporter exporter = createExporter();
+		exporter.setFractionDigits(2);
+		exporter.writeColumnar(Channels.newChannel(bytes));
+
+		ByteBuffer data = ByteBuffer.wrap(bytes.toByteArray());
+		assertEquals(SeriesExporter.COLUMNAR_MAGIC, data.getInt());
+		assertEquals(SeriesExporter.COLUMNAR_VERSION, data.get());
+		assertEquals(2, SessionFormat.getVarLong(data));
+		String[] names = {"RPM", "Speed"};
+		long[][] times = {{T0, T0 + 100, T0 + 1200}, {T0 + 100, T0 + 1500}};
+		long[][] values = {{80000, 81250, 200000}, {10, -1235}};
+		for (int ch = 0; ch < 2; ch++)
+		{
+			byte[] name = new byte[(int) SessionFormat.getVarLong(data)];
+			data.get(name);
+			assertEquals(names[ch], new String(name, SessionFormat.UTF8));
+			assertEquals(2, SessionFormat.getVarLong(data));
+			int count = (int) SessionFormat.getVarLong(data);
+			assertEquals(times[ch].length, count);
+			long last = 0;
+			for (int i = 0; i < count; i++)
+			{
+				last += SessionFormat.unZigZag(SessionFormat.getVarLong(data));
+				assertEquals(times[ch][i], last);
+			}
+			last = 0;
+			for (int i = 0; i < count; i++)
+			{
+				last += SessionFormat.unZigZag(SessionFormat.getVarLong(data));
+				assertEquals(values[ch][i], last);
+			}
+		}
+		assertEquals(0, data.remaining());
+	}
+
+	/**
+	 * Channel name which exactly fills the output buffer
+	 */
+	@Test
+	void writeColumnar_NameAtBufferEnd() throws IOException
+	{
+		// header (6 bytes) + name length (3 bytes) + name = 64k buffer
+		char[] chars = new char[0x10000 - 6 - 3];
+		Arrays.fill(chars, 'x');
+		String name = new String(chars);
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		SeriesExporter exporter = new SeriesExporter(
+			new String[]{name},
+			new long[][]{{T0}},
+			new double[][]{{1.5}},
+			new int[]{1});
+		exporter.setFractionDigits(1);
+		exporter.writeColumnar(Channels.newChannel(bytes));
+
+		ByteBuffer data = ByteBuffer.wrap(bytes.toByteArray());
+		assertEquals(SeriesExporter.COLUMNAR_MAGIC, data.getInt());
+		assertEquals(SeriesExporter.COLUMNAR_VERSION, data.get());
+		assertEquals(1, SessionFormat.getVarLong(data));
+		assertEquals(chars.length, SessionFormat.getVarLong(data));
+		assertEquals(0x10000, data.position() + chars.length);
+		data.position(data.position() + chars.length);
+		assertEquals(1, SessionFormat.getVarLong(data));
+		assertEquals(1, SessionFormat.getVarLong(data));
+		assertEquals(T0, SessionFormat.unZigZag(SessionFormat.getVarLong(data)));
+		assertEquals(15, SessionFormat.unZigZag(SessionFormat.getVarLong(data)));
+		assertEquals(0, data.remaining());
+	}
+}
@@ -0,0 +1,155 @@
+package com.fr3ts0n.pvs.io;
+
+import com.fr3ts0n.pvs.ProcessVar;
+import com.fr3ts0n.pvs.PvChangeEvent;
+import com.fr3ts0n.pvs.PvList;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SessionRecorderTest
+{
+	/**
+	 * read all sample values of session file
+	 */
+	static ArrayList<Double> readSamples(File file) throws IOException
+	{
+		ArrayList<Double> result = new ArrayList<>();
+		try (RandomAccessFile raf = new RandomAccessFile(file, "r"))
+		{
+			ByteBuffer data = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+			SessionFormat.Cursor cursor = new SessionFormat.Cursor(data);
+			while (cursor.next())
+			{
+				if (cursor.tag != SessionFormat.TAG_DEFINE && cursor.tag != SessionFormat.TAG_INDEX)
+				{
+					result.add(cursor.value);
+				}
+			}
+			assertTrue(cursor.isAtEnd());
+		}
+		return result;
+	}
+
+	/**
+	 * PV changes are recorded with their primitive values
+	 */
+	@Test
+	void pvChanged_Record() throws IOException
+	{
+		File file = File.createTempFile("session", ".obdr");
+		file.delete();
+		SessionRecorder recorder = new SessionRecorder(file, "VALUE");
+		ProcessVar pv = new ProcessVar();
+		pv.setKeyValue("RPM");
+		pv.addPvChangeListener(recorder, PvChangeEvent.PV_ADDED | PvChangeEvent.PV_MODIFIED);
+
+		for (int i = 0; i < 3000; i++)
+		{
+			pv.put("VALUE", i % 2 == 0 ? (Object) i : (Object) (i + 0.5f));
+		}
+		// not a recorded attribute
+		pv.put("UNITS", "/min");
+		recorder.close();
+
+		assertEquals(3000, recorder.getSampleCount());
+		ArrayList<Double> samples = readSamples(file);
+		assertEquals(3000, samples.size());
+		assertEquals(0.0, samples.get(0));
+		assertEquals(1.5, samples.get(1));
+		assertEquals(2999.5, samples.get(2999));
+		file.delete();
+	}
+
+	/**
+	 * Incomplete tail is removed and recording is continued
+	 */
+	@Test
+	void open_Recovery() throws IOException
+	{
+		File file = File.createTempFile("session", ".obdr");
+		file.delete();
+		SessionRecorder recorder = new SessionRecorder(file, "VALUE");
+		Object pv = new Object();
+		long time = System.currentTimeMillis();
+		for (int i = 0; i < 100; i++)
+		{
+			recorder.record(pv, "SPEED", time + i * 10, 1.25 * i);
+		}
+		recorder.close();
+		long length = file.length();
+
+		// simulate crash within writing a record
+		try (FileOutputStream out = new FileOutputStream(file, true))
+		{
+			out.write(new byte[]{SessionFormat.TAG_DOUBLE, 0x05, 0x00, 0x12});
+		}
+
+		recorder = new SessionRecorder(file, "VALUE");
+		assertEquals(100, recorder.getSampleCount());
+		recorder.record(pv, "SPEED", time + 2000, 3.0);
+		recorder.close();
+
+		assertTrue(file.length() > length);
+		ArrayList<Double> samples = readSamples(file);
+		assertEquals(101, samples.size());
+		assertEquals(123.75, samples.get(99));
+		assertEquals(3.0, samples.get(100));
+		file.delete();
+	}
+
+	/**
+	 * Child changes are recorded with event time, other attributes are ignored
+	 */
+	@Test
+	void pvChanged_ChildEvents() throws IOException
+	{
+		File file = File.createTempFile("session", ".obdr");
+		file.delete();
+		SessionRecorder recorder = new SessionRecorder(file, "VALUE");
+		PvList list = new PvList();
+		ProcessVar pv = new ProcessVar();
+		pv.setKeyValue("RPM");
+		pv.put("VALUE", 0);
+		list.put("RPM", pv);
+		list.addPvChangeListener(recorder, PvChangeEvent.PV_MODIFIED);
+
+		long time = System.currentTimeMillis() - 100000;
+		for (int i = 0; i < 10; i++)
+		{
+			pv.put("VALUE", 100 + i, PvChangeEvent.PV_MODIFIED, time + i * 10);
+			// not a recorded attribute
+			pv.put("MAX", 200 + i, PvChangeEvent.PV_MODIFIED, time + i * 10 + 5);
+		}
+		recorder.close();
+
+		assertEquals(10, recorder.getSampleCount());
+		HashMap<String, ProcessVar> pvs = new HashMap<>();
+		ProcessVar target = new ProcessVar();
+		target.put("VALUE", 0);
+		pvs.put("RPM", target);
+		SessionReplay replay = new SessionReplay(file);
+		replay.bind(pvs, "VALUE");
+		for (int i = 0; i < 10; i++)
+		{
+			assertTrue(replay.step());
+			assertEquals(time + i * 10, replay.getTime());
+			assertEquals(100 + i, target.get("VALUE"));
+		}
+		assertFalse(replay.step());
+		replay.close();
+		file.delete();
+	}
+}
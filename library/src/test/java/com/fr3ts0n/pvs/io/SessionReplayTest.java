@@ -0,0 +1,209 @@
+package com.fr3ts0n.pvs.io;
+
+import com.fr3ts0n.pvs.ProcessVar;
+import com.fr3ts0n.pvs.PvChangeEvent;
+import com.fr3ts0n.pvs.PvChangeListener;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SessionReplayTest
+{
+	private static final int NUM_SAMPLES = 5000;
+
+	private File file;
+	private long time;
+	private final HashMap<String, ProcessVar> pvs = new HashMap<>();
+	private final ArrayList<PvChangeEvent> events = new ArrayList<>();
+
+	@BeforeEach
+	void setUp() throws IOException
+	{
+		file = File.createTempFile("session", ".obdr");
+		file.delete();
+		SessionRecorder recorder = new SessionRecorder(file, "VALUE");
+		time = System.currentTimeMillis();
+		Object rpm = new Object();
+		Object speed = new Object();
+		// RPM every 10 ms, SPEED every 20 ms
+		for (int i = 0; i < NUM_SAMPLES; i++)
+		{
+			recorder.record(rpm, "RPM", time + i * 10, 1000 + i);
+			if (i % 2 == 0)
+			{
+				recorder.record(speed, "SPEED", time + i * 10, i * 0.5f);
+			}
+		}
+		recorder.close();
+
+		for (String name : new String[]{"RPM", "SPEED"})
+		{
+			ProcessVar pv = new ProcessVar();
+			pv.setKeyValue(name);
+			pv.put("VALUE", 0f);
+			pv.addPvChangeListener(new PvChangeListener()
+			{
+				@Override
+				public void pvChanged(PvChangeEvent event)
+				{
+					events.add(event);
+				}
+			}, PvChangeEvent.PV_MODIFIED);
+			pvs.put(name, pv);
+		}
+	}
+
+	@AfterEach
+	void tearDown()
+	{
+		file.delete();
+	}
+
+	/**
+	 * All samples are delivered with their recorded time
+	 */
+	@Test
+	void step_AllSamples() throws IOException
+	{
+		SessionReplay replay = new SessionReplay(file);
+		assertEquals(NUM_SAMPLES * 3 / 2, replay.getSampleCount());
+		assertEquals(time + (NUM_SAMPLES - 1) * 10, replay.getEndTime());
+		assertEquals(2, replay.bind(pvs, "VALUE"));
+
+		while (replay.step())
+		{
+		}
+		replay.close();
+
+		assertEquals(NUM_SAMPLES * 3 / 2, events.size());
+		PvChangeEvent first = events.get(0);
+		assertEquals(time, first.getTime());
+		assertEquals(1000f, first.getValue());
+		PvChangeEvent last = events.get(events.size() - 1);
+		assertEquals(time + (NUM_SAMPLES - 1) * 10, last.getTime());
+		assertEquals((float) (1000 + NUM_SAMPLES - 1), last.getValue());
+	}
+
+	/**
+	 * Seek sets PVs to the state at the requested time
+	 */
+	@Test
+	void seek_Time() throws IOException
+	{
+		SessionReplay replay = new SessionReplay(file);
+		replay.bind(pvs, "VALUE");
+
+		// seek between two samples
+		replay.seek(time + 3001 * 10 + 5);
+		assertEquals(3001f + 1000, pvs.get("RPM").get("VALUE"));
+		assertEquals(1500f, pvs.get("SPEED").get("VALUE"));
+
+		events.clear();
+		assertTrue(replay.step());
+		assertEquals(time + 3002 * 10, events.get(0).getTime());
+		assertEquals(4002f, events.get(0).getValue());
+
+		// seek backwards
+		replay.seek(time);
+		assertEquals(time, replay.getTime());
+		events.clear();
+		assertEquals(2, replay.playUntil(time + 5));
+		assertEquals(1000f, pvs.get("RPM").get("VALUE"));
+		replay.close();
+	}
+
+	/**
+	 * Seek works on sessions with time stamps going backwards
+	 */
+	@Test
+	void seek_TimeBackwards() throws IOException
+	{
+		File jumpFile = File.createTempFile("jump", ".obdr");
+		jumpFile.delete();
+		SessionRecorder recorder = new SessionRecorder(jumpFile, "VALUE");
+		Object rpm = new Object();
+		// clock is set back by 1000s after 3000 samples
+		for (int i = 0; i < 20000; i++)
+		{
+			long t = i < 3000 ? time + i * 10 : time - 1000000 + i * 10;
+			recorder.record(rpm, "RPM", t, 1000 + i);
+		}
+		recorder.close();
+
+		SessionReplay replay = new SessionReplay(jumpFile);
+		replay.bind(pvs, "VALUE");
+		replay.seek(time + 1000 * 10 + 5);
+		assertEquals(2000f, pvs.get("RPM").get("VALUE"));
+		events.clear();
+		assertTrue(replay.step());
+		assertEquals(time + 1001 * 10, events.get(0).getTime());
+		replay.close();
+		jumpFile.delete();
+	}
+
+	/**
+	 * Session files are detected by their file magic
+	 */
+	@Test
+	void isSession() throws IOException
+	{
+		try (FileInputStream in = new FileInputStream(file))
+		{
+			assertTrue(SessionReplay.isSession(in));
+		}
+		assertFalse(SessionReplay.isSession(new ByteArrayInputStream(new byte[]{'O', 'B'})));
+		assertFalse(SessionReplay.isSession(new ByteArrayInputStream(new byte[]{1, 2, 3, 4, 5})));
+	}
+
+	/**
+	 * Playback with max. speed delivers all remaining samples
+	 */
+	@Test
+	void run_MaxSpeed() throws IOException
+	{
+		SessionReplay replay = new SessionReplay(file);
+		replay.bind(pvs, "VALUE");
+		replay.seek(time + (NUM_SAMPLES - 100) * 10);
+		events.clear();
+
+		replay.setSpeed(0);
+		replay.run();
+		assertFalse(replay.isRunning());
+		assertEquals(150, events.size());
+		assertFalse(replay.step());
+		replay.close();
+	}
+
+	/**
+	 * Seek during real time playback continues at new position without delay
+	 */
+	@Test
+	void run_SeekWhileRunning() throws IOException, InterruptedException
+	{
+		SessionReplay replay = new SessionReplay(file);
+		replay.bind(pvs, "VALUE");
+		Thread player = new Thread(replay);
+		player.start();
+		Thread.sleep(100);
+		assertTrue(replay.isRunning());
+
+		// remaining samples take 100 ms at real time
+		replay.seek(time + (NUM_SAMPLES - 10) * 10);
+		player.join(5000);
+		assertFalse(player.isAlive());
+		assertEquals(time + (NUM_SAMPLES - 1) * 10, events.get(events.size() - 1).getTime());
+		replay.close();
+	}
+}